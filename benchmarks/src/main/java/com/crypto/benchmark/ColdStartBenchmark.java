@@ -0,0 +1,161 @@
+package com.crypto.benchmark;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.engine.BookWarmUp;
+import com.crypto.engine.OrderBookDistributor;
+import com.crypto.engine.PairOrderBookProcessor;
+import com.crypto.feed.MessageSerializer;
+import com.crypto.feed.MessageSerializerImpl;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.*;
+
+/**
+ * What clients see right after a restart, with and without BookWarmUp.  Every fork starts a fresh JVM, so each
+ * measurement is of an engine the JIT has not seen before; only meaningful with many forks, JMH's own warm up is off.
+ *
+ * timeToReady times building the engine of two pairs up to the point clients may be let in, the warm up included.
+ * firstRoundTrips times the first ROUND_TRIPS limit order round trips a freshly started engine serves, standing in
+ * for the first minute of trading, and prints the percentiles of those round trips once the fork is done.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+    private static final int ROUND_TRIPS = 20_000;
+    private static final String LIMIT_ORDER = NEW_LIMIT_ORDER + MESSAGE_DELIMITER + "666" + MESSAGE_DELIMITER + "1"
+            + MESSAGE_DELIMITER + BTCUSD + MESSAGE_DELIMITER + BID + MESSAGE_DELIMITER + "100" + MESSAGE_DELIMITER + "10000";
+    private static final String CANCEL_ALL_ORDERS = CANCEL_ALL + MESSAGE_DELIMITER + "666";
+
+    /**
+     * An engine being started by the benchmark itself, shut down again outside of the measurement
+     */
+    @State(Scope.Benchmark)
+    public static class Startup {
+
+        @Param({"false", "true"})
+        public boolean warmUp;
+
+        private Engine engine;
+
+        @TearDown(Level.Invocation)
+        public void shutdown() {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * An engine started before the measurement, with the latency of every round trip it serves
+     */
+    @State(Scope.Benchmark)
+    public static class ReadyEngine {
+
+        @Param({"false", "true"})
+        public boolean warmUp;
+
+        private Engine engine;
+        private final long[] roundTripNanos = new long[ROUND_TRIPS];
+
+        @Setup(Level.Trial)
+        public void start() {
+            engine = new Engine(warmUp);
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            engine.shutdown();
+            long[] sorted = roundTripNanos.clone();
+            Arrays.sort(sorted);
+            System.out.println("First " + ROUND_TRIPS + " round trips, warm up " + warmUp + ": p50 " + percentile(sorted, 0.5)
+                    + " ns, p99 " + percentile(sorted, 0.99) + " ns, p99.9 " + percentile(sorted, 0.999) + " ns, max " + sorted[sorted.length - 1] + " ns");
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+        }
+    }
+
+    @Benchmark
+    public void timeToReady(Startup startup) {
+        startup.engine = new Engine(startup.warmUp);
+    }
+
+    @Benchmark
+    public void firstRoundTrips(ReadyEngine readyEngine, Blackhole blackhole) {
+        Engine engine = readyEngine.engine;
+        long[] roundTripNanos = readyEngine.roundTripNanos;
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            long start = System.nanoTime();
+            engine.serializer.onMessage(LIMIT_ORDER);
+            engine.awaitExecution(blackhole);
+            roundTripNanos[i] = System.nanoTime() - start;
+            engine.serializer.onMessage(CANCEL_ALL_ORDERS);
+            engine.awaitExecution(blackhole);
+        }
+    }
+
+    /**
+     * Books of two pairs behind a distributor, started and ready for clients once constructed
+     */
+    private static class Engine {
+
+        private final ObjectPool<Execution> executionPool;
+        private final RingBuffer<Execution> executionPublishQueue;
+        private final MessageSerializer serializer;
+        private final OrderBookDistributor distributor;
+        private final List<PairOrderBookProcessor> pairProcessors;
+
+        private Engine(boolean warmUp) {
+            ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+            executionPool = new ObjectPool<>(Execution::new);
+            executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+            pairProcessors = new ArrayList<>(2);
+            List<RingBuffer<Message>> queues = new ArrayList<>(4);
+            for (CcyPair pair : new CcyPair[]{CcyPair.BTCUSD, CcyPair.ETHUSD}) {
+                RingBuffer<Message> queue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+                queues.add(queue);
+                queues.add(queue);
+                pairProcessors.add(new PairOrderBookProcessor(pair, executionPool, messagePool, queue, executionPublishQueue));
+            }
+
+            if (warmUp) {
+                BookWarmUp bookWarmUp = new BookWarmUp();
+                bookWarmUp.prewarmPools(messagePool, executionPool);
+                pairProcessors.forEach(bookWarmUp::warmUp);
+            }
+
+            RingBuffer<Message> distributorInboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+            serializer = new MessageSerializerImpl(distributorInboundQueue, messagePool, 3, 100, MESSAGE_DELIMITER);
+            distributor = new OrderBookDistributor(distributorInboundQueue, queues, messagePool);
+            pairProcessors.forEach(PairOrderBookProcessor::startOrderBook);
+        }
+
+        private void awaitExecution(Blackhole blackhole) {
+            Execution execution;
+            while ((execution = executionPublishQueue.poll()) == null) {
+                //Spin, we're measuring the engine not the wake up time of this thread
+            }
+            blackhole.consume(execution.getType());
+            executionPool.returnObject(execution);
+        }
+
+        private void shutdown() {
+            distributor.shutdown();
+            pairProcessors.forEach(PairOrderBookProcessor::shutdown);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.crypto.benchmark;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.engine.*;
+import com.crypto.feed.BinaryMessageCodec;
+import com.crypto.feed.MessageSerializer;
+import com.crypto.feed.MessageSerializerImpl;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.*;
+
+/**
+ * Round trip latency through the full pipeline: MessageSerializerImpl.onMessage, the OrderBookDistributor thread,
+ * the book side thread and back out on the execution queue.  Every invocation places a limit order, waits for the
+ * accept, then mass cancels it and waits for the cancel accept so the book never grows.
+ *
+ * Both threading models are measured: a thread per side of book, and a PairOrderBookProcessor running both sides
+ * of a pair on one thread.  The limit order round trip is also measured with the instructions arriving as
+ * BinaryMessageCodec frames, to show what parsing the delimited strings costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndLatencyBenchmark {
+
+    private static final String LIMIT_ORDER = NEW_LIMIT_ORDER + MESSAGE_DELIMITER + "666" + MESSAGE_DELIMITER + "1"
+            + MESSAGE_DELIMITER + BTCUSD + MESSAGE_DELIMITER + BID + MESSAGE_DELIMITER + "100" + MESSAGE_DELIMITER + "10000";
+    private static final String CANCEL_ALL_ORDERS = CANCEL_ALL + MESSAGE_DELIMITER + "666";
+    private static final String MARKET_ORDER = NEW_MARKET_ORDER + MESSAGE_DELIMITER + "667" + MESSAGE_DELIMITER + "2"
+            + MESSAGE_DELIMITER + BTCUSD + MESSAGE_DELIMITER + OFFER + MESSAGE_DELIMITER + "100";
+
+    @Param({"false", "true"})
+    public boolean singleThreadPerPair;
+
+    private ObjectPool<Execution> executionPool;
+    private RingBuffer<Execution> executionPublishQueue;
+    private MessageSerializer serializer;
+    private OrderBookDistributor distributor;
+    private List<OrderBookProcessor> processors;
+    private List<PairOrderBookProcessor> pairProcessors;
+    private ByteBuffer binaryFrames;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<RingBuffer<Message>> queues = new ArrayList<>(4);
+        for (int i = 0; i < 4; i++) {
+            queues.add(new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY));
+        }
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
+
+        RingBuffer<Message> distributorInboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        serializer = new MessageSerializerImpl(distributorInboundQueue, messagePool, 3, 100, MESSAGE_DELIMITER);
+        processors = new ArrayList<>(4);
+        pairProcessors = new ArrayList<>(2);
+        binaryFrames = encodeFrames();
+
+        if (singleThreadPerPair) {
+            queues.set(1, queues.get(0));
+            queues.set(3, queues.get(2));
+            distributor = new OrderBookDistributor(distributorInboundQueue, queues, messagePool);
+            pairProcessors.add(new PairOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, queues.get(0), executionPublishQueue));
+            pairProcessors.add(new PairOrderBookProcessor(CcyPair.ETHUSD, executionPool, messagePool, queues.get(2), executionPublishQueue));
+            pairProcessors.forEach(PairOrderBookProcessor::startOrderBook);
+            return;
+        }
+
+        distributor = new OrderBookDistributor(distributorInboundQueue, queues, messagePool);
+
+        OrderBookProcessor btcOfferProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, queues.get(0), executionPublishQueue);
+        OrderBookProcessor btcBidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, queues.get(1), executionPublishQueue);
+        OrderBookProcessor ethOfferProcessor = new OfferOrderBookProcessor(CcyPair.ETHUSD, executionPool, messagePool, queues.get(2), executionPublishQueue);
+        OrderBookProcessor ethBidProcessor = new BidOrderBookProcessor(CcyPair.ETHUSD, executionPool, messagePool, queues.get(3), executionPublishQueue);
+
+        btcOfferProcessor.setCorrespondingBook(btcBidProcessor);
+        btcBidProcessor.setCorrespondingBook(btcOfferProcessor);
+        ethOfferProcessor.setCorrespondingBook(ethBidProcessor);
+        ethBidProcessor.setCorrespondingBook(ethOfferProcessor);
+
+        processors.add(btcOfferProcessor);
+        processors.add(btcBidProcessor);
+        processors.add(ethOfferProcessor);
+        processors.add(ethBidProcessor);
+        processors.forEach(OrderBookProcessor::startOrderBook);
+    }
+
+    @Benchmark
+    public void limitOrderRoundTrip(Blackhole blackhole) {
+        serializer.onMessage(LIMIT_ORDER);
+        awaitExecution(blackhole);
+        serializer.onMessage(CANCEL_ALL_ORDERS);
+        awaitExecution(blackhole);
+    }
+
+    @Benchmark
+    public void binaryLimitOrderRoundTrip(Blackhole blackhole) {
+        serializer.onMessage(binaryFrames, 0, BinaryMessageCodec.FRAME_LENGTH);
+        awaitExecution(blackhole);
+        serializer.onMessage(binaryFrames, BinaryMessageCodec.FRAME_LENGTH, BinaryMessageCodec.FRAME_LENGTH);
+        awaitExecution(blackhole);
+    }
+
+    /**
+     * Places a limit bid and takes it out with a market offer, so both sides of the pair are involved.
+     */
+    @Benchmark
+    public void limitThenMarketRoundTrip(Blackhole blackhole) {
+        serializer.onMessage(LIMIT_ORDER);
+        awaitExecution(blackhole);
+        serializer.onMessage(MARKET_ORDER);
+        awaitExecution(blackhole);
+        awaitExecution(blackhole);
+    }
+
+    /**
+     * @return the binary equivalents of LIMIT_ORDER and CANCEL_ALL_ORDERS, one after the other
+     */
+    private static ByteBuffer encodeFrames() {
+        BinaryMessageCodec codec = new BinaryMessageCodec(InstrumentRegistry.withDefaultPairs());
+        ByteBuffer frames = ByteBuffer.allocateDirect(2 * BinaryMessageCodec.FRAME_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+
+        Message limitOrder = new Message();
+        limitOrder.setType(MessageType.NewLimitOrder);
+        limitOrder.setClientId(666);
+        limitOrder.setClientOrderId(1);
+        limitOrder.setPair(CcyPair.BTCUSD);
+        limitOrder.setSide(Side.Bid);
+        limitOrder.setQuantity(100);
+        limitOrder.setPrice(10000);
+        codec.encodeMessage(limitOrder, frames, 0);
+
+        Message cancelAll = new Message();
+        cancelAll.setType(MessageType.CancelAllOrders);
+        cancelAll.setClientId(666);
+        codec.encodeMessage(cancelAll, frames, BinaryMessageCodec.FRAME_LENGTH);
+        return frames;
+    }
+
+    private void awaitExecution(Blackhole blackhole) {
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) == null) {
+            //Spin, we're measuring the engine not the wake up time of this thread
+        }
+        blackhole.consume(execution.getType());
+        executionPool.returnObject(execution);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        distributor.shutdown();
+        processors.forEach(OrderBookProcessor::shutdown);
+        pairProcessors.forEach(PairOrderBookProcessor::shutdown);
+    }
+}
@@ -0,0 +1,63 @@
+package com.crypto.benchmark;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.Message;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * One producer thread handing messages to one consumer thread through the queue types used between the engine
+ * stages.  The gc profiler shows the node allocated per element by ConcurrentLinkedQueue against none for the
+ * ring buffers.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueHandOffBenchmark {
+
+    @Param({"ConcurrentLinkedQueue", "SpscRingBuffer", "MpscRingBuffer"})
+    public String queueType;
+
+    private final Message message = new Message();
+    private Queue<Message> queue;
+
+    //A fresh queue per iteration as the unbounded queue grows whenever the producer runs ahead
+    @Setup(Level.Iteration)
+    public void setup() {
+        switch (queueType) {
+            case "ConcurrentLinkedQueue":
+                queue = new ConcurrentLinkedQueue<>();
+                return;
+            case "SpscRingBuffer":
+                queue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+                return;
+            case "MpscRingBuffer":
+                queue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown queue type " + queueType);
+        }
+    }
+
+    @Benchmark
+    @Group("handOff")
+    public boolean offer() {
+        return queue.offer(message);
+    }
+
+    @Benchmark
+    @Group("handOff")
+    public void poll(Blackhole blackhole) {
+        blackhole.consume(queue.poll());
+    }
+}
@@ -0,0 +1,123 @@
+package com.crypto.benchmark;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.engine.JournalReplayer;
+import com.crypto.engine.MessageRouter;
+import com.crypto.engine.PairOrderBookProcessor;
+import com.crypto.feed.ObjectPool;
+import com.crypto.journal.InputJournal;
+import com.crypto.journal.JournalSyncPolicy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * How fast a JournalReplayer rebuilds the books of two pairs from a journal of a million messages: limit orders
+ * either side of mid, market orders taking liquidity and regular mass cancels, spread over 64 clients.  Every
+ * invocation replays the whole journal into fresh books, the score is in messages per microsecond, millions of
+ * messages per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+    private static final int MESSAGES = 1 << 20;
+    private static final int CLIENTS = 64;
+    private static final int LEVELS = 16;
+    private static final long MID = 1 << 20;
+    private static final long ORDER_SIZE = 10;
+
+    private File directory;
+    private InputJournal journal;
+    private JournalReplayer replayer;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws IOException {
+        directory = Files.createTempDirectory("replay-benchmark").toFile();
+        Message message = new Message();
+        try (InputJournal journal = new InputJournal(directory, JournalSyncPolicy.Async)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                journal.append(message(i, message));
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void freshBooks() throws IOException {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+        replayer = new JournalReplayer(new MessageRouter(Collections.emptyList(), messagePool), messagePool, executionPublishQueue, executionPool);
+        for (CcyPair pair : new CcyPair[]{CcyPair.BTCUSD, CcyPair.ETHUSD}) {
+            replayer.addBook(new PairOrderBookProcessor(pair, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue));
+        }
+        journal = new InputJournal(directory, JournalSyncPolicy.Async);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJournal() {
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() {
+        File[] segments = directory.listFiles();
+        if (segments != null) {
+            for (File segment : segments) {
+                segment.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void replay(Blackhole blackhole) throws IOException {
+        blackhole.consume(replayer.replay(journal, execution -> blackhole.consume(execution.getQuantity())));
+    }
+
+    /**
+     * Every eighth message mass cancels a client, every fourth of the others is a market order, the rest are limit
+     * orders alternating sides up to LEVELS ticks from mid
+     */
+    private static Message message(int i, Message message) {
+        CcyPair pair = (i & 1) == 0 ? CcyPair.BTCUSD : CcyPair.ETHUSD;
+        Side side = (i & 2) == 0 ? Side.Bid : Side.Offer;
+        long depth = (i >>> 2) % LEVELS + 1;
+
+        message.setClientId(i % CLIENTS);
+        message.setClientOrderId(i);
+        message.setOrderId(0);
+        message.setPair(pair);
+        message.setSide(side);
+        message.setQuantity(ORDER_SIZE * pair.getLotSize());
+        message.setPrice(0);
+        if (i % 8 == 7) {
+            message.setType(MessageType.CancelAllOrders);
+            message.setClientId((i / 8) % CLIENTS);
+            message.setPair(null);
+            message.setSide(null);
+        } else if (i % 4 == 3) {
+            message.setType(MessageType.NewMarketOrder);
+        } else {
+            message.setType(MessageType.NewLimitOrder);
+            message.setPrice((side == Side.Bid ? MID - depth : MID + depth) * pair.getTickSize());
+        }
+        return message;
+    }
+}
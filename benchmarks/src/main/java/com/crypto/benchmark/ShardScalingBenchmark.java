@@ -0,0 +1,117 @@
+package com.crypto.benchmark;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.ThreadAffinity;
+import com.crypto.data.*;
+import com.crypto.engine.ShardedEngine;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * Throughput of the sharded engine as shards are added.  Every invocation places a batch of limit orders spread
+ * round robin over the instruments, waits for the accepts, then cancels them all again, so the books never grow.
+ * The benchmark thread plays the serializer and publishes straight to the distributor.
+ *
+ * Scaling is bounded by the single distributor and execution queue, and of course by the cores of the host:
+ * run with pinFromCpu set to a range of isolated cpus for meaningful numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardScalingBenchmark {
+
+    private static final int INSTRUMENTS = 64;
+    private static final int BATCH_SIZE = 1024;
+    private static final long CLIENT_ID = 666;
+
+    @Param({"1", "2", "4", "8"})
+    public int shardCount;
+
+    /**
+     * First cpu to pin shards to, shard i goes to pinFromCpu + i.  -1 leaves the shards unpinned.
+     */
+    @Param({"-1"})
+    public int pinFromCpu;
+
+    private ShardedEngine engine;
+    private CcyPair[] pairs;
+    private ObjectPool<Message> messagePool;
+    private ObjectPool<Execution> executionPool;
+    private RingBuffer<Execution> executionPublishQueue;
+    private final long[] orderIds = new long[BATCH_SIZE];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] cpus = new int[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            cpus[shard] = pinFromCpu < 0 ? ThreadAffinity.NO_AFFINITY : pinFromCpu + shard;
+        }
+        messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        engine = new ShardedEngine(cpus, executionPool, messagePool, executionPublishQueue);
+
+        pairs = new CcyPair[INSTRUMENTS];
+        for (int instrument = 0; instrument < INSTRUMENTS; instrument++) {
+            pairs[instrument] = new CcyPair(instrument, "PAIR" + instrument, 1, 1, 0);
+            engine.addInstrument(pairs[instrument]);
+        }
+        engine.start();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2 * BATCH_SIZE)
+    public void limitAndCancelBatch(Blackhole blackhole) {
+        RingBuffer<Message> inboundQueue = engine.getInboundQueue();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Message message = messagePool.acquireObject();
+            message.setType(MessageType.NewLimitOrder);
+            message.setClientId(CLIENT_ID);
+            message.setClientOrderId(i);
+            message.setPair(pairs[i % INSTRUMENTS]);
+            message.setSide(Side.Bid);
+            message.setPrice(1000 + i / INSTRUMENTS);
+            message.setQuantity(100);
+            inboundQueue.put(message);
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            orderIds[i] = awaitExecution(blackhole);
+        }
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Message message = messagePool.acquireObject();
+            message.setType(MessageType.CancelOrder);
+            message.setClientId(CLIENT_ID);
+            message.setOrderId(orderIds[i]);
+            inboundQueue.put(message);
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            awaitExecution(blackhole);
+        }
+    }
+
+    private long awaitExecution(Blackhole blackhole) {
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) == null) {
+            //Spin, we're measuring the engine not the wake up time of this thread
+        }
+        long orderId = execution.getOrderId();
+        blackhole.consume(execution.getType());
+        executionPool.returnObject(execution);
+        return orderId;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+}
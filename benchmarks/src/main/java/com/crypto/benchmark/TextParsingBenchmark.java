@@ -0,0 +1,100 @@
+package com.crypto.benchmark;
+
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import com.crypto.feed.TextMessageParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.*;
+
+/**
+ * Cost of turning a text instruction into a Message: the String.split parser the serializer used to have against
+ * the single pass TextMessageParser, on Strings and on bytes.  BenchmarkRunner's gc profiler reports the allocation
+ * per instruction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextParsingBenchmark {
+
+    @Param({"LIMIT;666;1;BTCUSD;BID;100;10000", "CANCELALL;666"})
+    public String instruction;
+
+    private byte[] instructionBytes;
+    private InstrumentRegistry registry;
+    private TextMessageParser parser;
+    private ObjectPool<Message> messagePool;
+
+    @Setup
+    public void setup() {
+        instructionBytes = instruction.getBytes(StandardCharsets.US_ASCII);
+        registry = InstrumentRegistry.withDefaultPairs();
+        parser = new TextMessageParser(MESSAGE_DELIMITER.charAt(0), registry);
+        messagePool = new ObjectPool<>(Message::new);
+    }
+
+    @Benchmark
+    public MessageType split() {
+        return release(splitParse(instruction));
+    }
+
+    @Benchmark
+    public MessageType scan() {
+        return release(parser.parse(instruction, messagePool));
+    }
+
+    @Benchmark
+    public MessageType scanBytes() {
+        return release(parser.parse(instructionBytes, 0, instructionBytes.length, messagePool));
+    }
+
+    private MessageType release(Message message) {
+        MessageType type = message.getType();
+        messagePool.returnObject(message);
+        return type;
+    }
+
+    /**
+     * The parser MessageSerializerImpl had before TextMessageParser, kept as the baseline
+     */
+    private Message splitParse(String msgToDeSerialize) {
+        String[] messageString = msgToDeSerialize.split(MESSAGE_DELIMITER);
+        Message message = messagePool.acquireObject();
+
+        switch (messageString[0]) {
+            case NEW_MARKET_ORDER:
+            case NEW_LIMIT_ORDER:
+                message.setType(NEW_LIMIT_ORDER.equals(messageString[0]) ? MessageType.NewLimitOrder : MessageType.NewMarketOrder);
+                message.setClientId(Long.valueOf(messageString[1]));
+                message.setClientOrderId(Long.valueOf(messageString[2]));
+                message.setPair(registry.getBySymbol(messageString[3]));
+                message.setSide(BID.equals(messageString[4]) ? Side.Bid : Side.Offer);
+                message.setQuantity(Long.valueOf(messageString[5]));
+                if (message.getType() == MessageType.NewLimitOrder) {
+                    message.setPrice(Long.valueOf(messageString[6]));
+                }
+                return message;
+
+            case CANCEL_ORDER:
+                message.setType(MessageType.CancelOrder);
+                message.setClientId(Long.valueOf(messageString[1]));
+                message.setOrderId(Long.valueOf(messageString[2]));
+                return message;
+
+            case CANCEL_ALL:
+                message.setType(MessageType.CancelAllOrders);
+                message.setClientId(Long.valueOf(messageString[1]));
+                return message;
+
+            default:
+                messagePool.returnObject(message);
+                return null;
+        }
+    }
+}
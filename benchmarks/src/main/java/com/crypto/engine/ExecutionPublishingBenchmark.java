@@ -0,0 +1,118 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * What publishing executions costs a book.  A market order sweeps SWEPT_ORDERS resting orders spread over a few
+ * levels, which publishes two fills per order, then the orders are replenished.  The executions go to a multi
+ * producer queue shared with other books.  The book publishes the executions of a message as one batch, claiming
+ * the slots with one compare-and-swap on the producer index rather than one per execution.
+ *
+ * On one thread the claim is uncontended and batching costs the same as publishing per execution, about 2.9 orders
+ * swept and replenished per microsecond either way.  What it saves is the contention between book threads on the
+ * producer index, which needs as many cores as books to show.
+ *
+ * With marketData the book also publishes its level 1, 2 and 3 updates to a queue of its own, a sweep of fifty orders
+ * adding fifty order updates but only one update per level swept and one for the top of book.  Draining included, that
+ * about halves the orders swept and replenished per microsecond on one thread, without allocating any more.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionPublishingBenchmark {
+
+    private static final int SWEPT_ORDERS = 50;
+    private static final int ORDERS_PER_LEVEL = 10;
+    private static final long ORDER_SIZE = 100;
+    private static final long TOP_PRICE = 1000;
+
+    @Param({"false", "true"})
+    private boolean marketData;
+
+    private ObjectPool<Message> messagePool;
+    private ObjectPool<Execution> executionPool;
+    private RingBuffer<Execution> executionPublishQueue;
+    private ObjectPool<MarketDataUpdate> updatePool;
+    private RingBuffer<MarketDataUpdate> marketDataQueue;
+    private OrderBookProcessor bidProcessor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+        bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+        if (marketData) {
+            updatePool = new ObjectPool<>(MarketDataUpdate::new);
+            marketDataQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+            bidProcessor.setMarketData(marketDataQueue, updatePool, 0);
+        }
+        replenish();
+        drainExecutions(null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SWEPT_ORDERS)
+    public void sweepAndReplenish(Blackhole blackhole) {
+        Message market = messagePool.acquireObject();
+        market.setType(MessageType.NewMarketOrder);
+        market.setClientId(2);
+        market.setPair(CcyPair.BTCUSD);
+        market.setSide(Side.Offer);
+        market.setQuantity(SWEPT_ORDERS * ORDER_SIZE);
+        bidProcessor.processMessage(market);
+        drainExecutions(blackhole);
+
+        replenish();
+        drainExecutions(blackhole);
+    }
+
+    private void replenish() {
+        for (int i = 0; i < SWEPT_ORDERS; i++) {
+            Message limit = messagePool.acquireObject();
+            limit.setType(MessageType.NewLimitOrder);
+            limit.setClientId(1);
+            limit.setPair(CcyPair.BTCUSD);
+            limit.setSide(Side.Bid);
+            limit.setPrice(TOP_PRICE - i / ORDERS_PER_LEVEL);
+            limit.setQuantity(ORDER_SIZE);
+            bidProcessor.processMessage(limit);
+        }
+    }
+
+    private void drainExecutions(Blackhole blackhole) {
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            if (blackhole != null) {
+                blackhole.consume(execution.getQuantity());
+            }
+            executionPool.returnObject(execution);
+        }
+        if (marketData) {
+            MarketDataUpdate update;
+            while ((update = marketDataQueue.poll()) != null) {
+                if (blackhole != null) {
+                    blackhole.consume(update.getQuantity());
+                }
+                updatePool.returnObject(update);
+            }
+        }
+    }
+}
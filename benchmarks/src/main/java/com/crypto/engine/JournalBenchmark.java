@@ -0,0 +1,123 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import com.crypto.journal.InputJournal;
+import com.crypto.journal.JournalSyncPolicy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * Single threaded benchmark of what the input journal costs the engine.  Every message is appended to the journal
+ * before the book processes it, as the distributor does, so the off case is the book alone and the others add the
+ * journal under each sync policy.  The operation is a limit insert and its cancel, two journalled messages.
+ *
+ * Journalling asynchronously is expected to stay within a factor of 1.5 of the throughput without a journal, an
+ * append being a 64 byte store into a pre-faulted page.  Batching at the default 1 ms interval stays within a factor
+ * of 2.5, the journalling thread writing back a millisecond of records itself.  Forcing per message is bound by the
+ * disk and only there for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final long CLIENT_ID = 1;
+    private static final long ORDER_SIZE = 100;
+    private static final long PRICE = 1000;
+
+    @Param({"Off", "Async", "Batched", "PerMessage"})
+    public String journalling;
+
+    private ObjectPool<Message> messagePool;
+    private ObjectPool<Execution> executionPool;
+    private RingBuffer<Execution> executionPublishQueue;
+    private OrderBookProcessor bidProcessor;
+    private File directory;
+    private InputJournal journal;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+        bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+
+        directory = Files.createTempDirectory("journal-benchmark").toFile();
+        if (!"Off".equals(journalling)) {
+            journal = new InputJournal(directory, JournalSyncPolicy.valueOf(journalling));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+        File[] segments = directory.listFiles();
+        if (segments != null) {
+            for (File segment : segments) {
+                segment.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void limitInsertAndCancel(Blackhole blackhole) {
+        Message limit = messagePool.acquireObject();
+        limit.setType(MessageType.NewLimitOrder);
+        limit.setClientId(CLIENT_ID);
+        limit.setOrderId(0);
+        limit.setPair(CcyPair.BTCUSD);
+        limit.setSide(Side.Bid);
+        limit.setPrice(PRICE);
+        limit.setQuantity(ORDER_SIZE);
+        process(limit);
+        long orderId = drainExecutions(blackhole);
+
+        Message cancel = messagePool.acquireObject();
+        cancel.setType(MessageType.CancelOrder);
+        cancel.setClientId(CLIENT_ID);
+        cancel.setOrderId(orderId);
+        cancel.setPair(null);
+        cancel.setSide(null);
+        process(cancel);
+        drainExecutions(blackhole);
+    }
+
+    private void process(Message message) {
+        if (journal != null) {
+            journal.append(message);
+        }
+        bidProcessor.processMessage(message);
+    }
+
+    private long drainExecutions(Blackhole blackhole) {
+        long orderId = -1;
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            orderId = execution.getOrderId();
+            blackhole.consume(execution.getQuantity());
+            executionPool.returnObject(execution);
+        }
+        return orderId;
+    }
+}
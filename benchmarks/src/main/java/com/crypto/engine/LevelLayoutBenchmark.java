@@ -0,0 +1,135 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * A market order sweeping one price level thousands of orders deep, with the queue of the level linked through the
+ * order store or kept in the parallel arrays of an ArrayLimitLevel.  Before every sweep the level is filled afresh
+ * and, if asked for, a share of its orders cancelled at random, leaving gaps in the queue to be skipped or compacted.
+ * Only the sweep is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelLayoutBenchmark {
+
+    private static final long RESTING_CLIENT_ID = 1;
+    private static final long ACTIVE_CLIENT_ID = 2;
+    private static final long ORDER_SIZE = 100;
+    private static final long PRICE = 100;
+
+    @Param({"linked", "array"})
+    public String layout;
+
+    @Param({"heap", "offHeap"})
+    public String store;
+
+    @Param({"10000"})
+    public int ordersPerLevel;
+
+    @Param({"0", "50"})
+    public int cancelledPercent;
+
+    private ObjectPool<Message> messagePool;
+    private ObjectPool<Execution> executionPool;
+    private RingBuffer<Execution> executionPublishQueue;
+    private OrderBookProcessor bidProcessor;
+    private long[] orderIds;
+    private final Random random = new Random(11);
+    private long restingQuantity;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+        bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+        if ("array".equals(layout)) {
+            bidProcessor.setArrayLimitLevels();
+        }
+        if ("offHeap".equals(store)) {
+            bidProcessor.setOffHeapOrderStore(ordersPerLevel);
+        }
+        bidProcessor.presize(ordersPerLevel, 2, 1);
+        orderIds = new long[ordersPerLevel];
+    }
+
+    @Setup(Level.Invocation)
+    public void fillLevel() {
+        for (int i = 0; i < ordersPerLevel; i++) {
+            Message message = messagePool.acquireObject();
+            message.setType(MessageType.NewLimitOrder);
+            message.setClientId(RESTING_CLIENT_ID);
+            message.setClientOrderId(i);
+            message.setPair(CcyPair.BTCUSD);
+            message.setSide(Side.Bid);
+            message.setPrice(PRICE);
+            message.setQuantity(ORDER_SIZE);
+            bidProcessor.processMessage(message);
+            orderIds[i] = drainExecutions(null);
+        }
+        restingQuantity = ordersPerLevel * ORDER_SIZE;
+
+        for (int i = 0; i < ordersPerLevel; i++) {
+            if (random.nextInt(100) < cancelledPercent) {
+                Message cancel = messagePool.acquireObject();
+                cancel.setType(MessageType.CancelOrder);
+                cancel.setClientId(RESTING_CLIENT_ID);
+                cancel.setOrderId(orderIds[i]);
+                bidProcessor.processMessage(cancel);
+                restingQuantity -= ORDER_SIZE;
+            }
+        }
+        drainExecutions(null);
+    }
+
+    /**
+     * Market order for exactly what rests on the level, filling every order on it.
+     */
+    @Benchmark
+    public void sweepLevel(Blackhole blackhole) {
+        Message market = messagePool.acquireObject();
+        market.setType(MessageType.NewMarketOrder);
+        market.setClientId(ACTIVE_CLIENT_ID);
+        market.setPair(CcyPair.BTCUSD);
+        market.setSide(Side.Offer);
+        market.setQuantity(restingQuantity);
+        bidProcessor.processMessage(market);
+        drainExecutions(blackhole);
+    }
+
+    /**
+     * Return all executions to the pool so the benchmark does not measure an ever growing queue.
+     * @return order id of the last execution seen
+     */
+    private long drainExecutions(Blackhole blackhole) {
+        long orderId = -1;
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            orderId = execution.getOrderId();
+            if (blackhole != null) {
+                blackhole.consume(execution.getQuantity());
+            }
+            executionPool.returnObject(execution);
+        }
+        return orderId;
+    }
+}
@@ -0,0 +1,153 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * Single threaded benchmark of the book side hot paths.  The processors are never started, instead messages are fed
+ * straight into processMessage so only the matching logic itself is measured.  Every benchmark leaves the book in
+ * the state it found it so the number of price levels stays constant throughout an iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookProcessorBenchmark {
+
+    private static final long RESTING_CLIENT_ID = 1;
+    private static final long ACTIVE_CLIENT_ID = 2;
+    private static final long ORDER_SIZE = 100;
+    private static final int ORDERS_PER_MASS_CANCEL = 10;
+    private static final int INSERT_DEPTH = 10;
+
+    @Param({"10", "1000", "100000"})
+    public int priceLevels;
+
+    private ObjectPool<Message> messagePool;
+    private ObjectPool<Execution> executionPool;
+    private RingBuffer<Execution> executionPublishQueue;
+    private OrderBookProcessor bidProcessor;
+    private long topOfBookPrice;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+        bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+
+        //Even prices only, leaving the odd prices free for new levels to be inserted in between
+        for (int i = 1; i <= priceLevels; i++) {
+            bidProcessor.processMessage(limitOrder(RESTING_CLIENT_ID, i * 2L));
+        }
+        topOfBookPrice = priceLevels * 2L;
+        drainExecutions(null);
+    }
+
+    /**
+     * Creates a new price level a few levels below top of book, then cancels it again.
+     */
+    @Benchmark
+    public void limitInsertAndCancel(Blackhole blackhole) {
+        insertAndCancel(topOfBookPrice - 2L * Math.min(INSERT_DEPTH, priceLevels - 1) - 1, blackhole);
+    }
+
+    /**
+     * Creates a new price level half way down the book, then cancels it again.  On deep books this lands outside
+     * the price ladder window.
+     */
+    @Benchmark
+    public void midBookInsertAndCancel(Blackhole blackhole) {
+        insertAndCancel(topOfBookPrice - 2L * (priceLevels / 2) - 1, blackhole);
+    }
+
+    private void insertAndCancel(long price, Blackhole blackhole) {
+        bidProcessor.processMessage(limitOrder(ACTIVE_CLIENT_ID, price));
+        long orderId = drainExecutions(blackhole);
+
+        Message cancel = messagePool.acquireObject();
+        cancel.setType(MessageType.CancelOrder);
+        cancel.setClientId(ACTIVE_CLIENT_ID);
+        cancel.setOrderId(orderId);
+        bidProcessor.processMessage(cancel);
+        drainExecutions(blackhole);
+    }
+
+    /**
+     * Market order lifting the entire top of book, which is then replenished at the same price.
+     */
+    @Benchmark
+    public void marketSweepAndReplenish(Blackhole blackhole) {
+        Message market = messagePool.acquireObject();
+        market.setType(MessageType.NewMarketOrder);
+        market.setClientId(ACTIVE_CLIENT_ID);
+        market.setPair(CcyPair.BTCUSD);
+        market.setSide(Side.Offer);
+        market.setQuantity(ORDER_SIZE);
+        bidProcessor.processMessage(market);
+        drainExecutions(blackhole);
+
+        bidProcessor.processMessage(limitOrder(RESTING_CLIENT_ID, topOfBookPrice));
+        drainExecutions(blackhole);
+    }
+
+    /**
+     * Places a handful of orders on existing levels for one client and mass cancels them.
+     */
+    @Benchmark
+    public void cancelAllOrders(Blackhole blackhole) {
+        for (int i = 0; i < ORDERS_PER_MASS_CANCEL; i++) {
+            bidProcessor.processMessage(limitOrder(ACTIVE_CLIENT_ID, topOfBookPrice - 2L * (i % priceLevels)));
+        }
+        drainExecutions(blackhole);
+
+        Message cancelAll = messagePool.acquireObject();
+        cancelAll.setType(MessageType.CancelAllOrders);
+        cancelAll.setClientId(ACTIVE_CLIENT_ID);
+        bidProcessor.processMessage(cancelAll);
+        drainExecutions(blackhole);
+    }
+
+    private Message limitOrder(long clientId, long price) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.NewLimitOrder);
+        message.setClientId(clientId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Bid);
+        message.setPrice(price);
+        message.setQuantity(ORDER_SIZE);
+        return message;
+    }
+
+    /**
+     * Return all executions to the pool so the benchmark does not measure an ever growing queue.
+     * @return order id of the last execution seen
+     */
+    private long drainExecutions(Blackhole blackhole) {
+        long orderId = -1;
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            orderId = execution.getOrderId();
+            if (blackhole != null) {
+                blackhole.consume(execution.getQuantity());
+            }
+            executionPool.returnObject(execution);
+        }
+        return orderId;
+    }
+}
@@ -0,0 +1,129 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * Limit order throughput over many books run by several threads at once.  The books of the trial are spread over the
+ * benchmark threads, each book driven by exactly one of them as a book thread of the engine would be.  Every
+ * invocation inserts a limit order into each of the thread's books in turn and cancels it again, with the order id
+ * handed out as the book does: its own sequence shifted past the book index, no state shared with any other book.
+ * sharedCounter additionally takes an id from one AtomicLong per order, shared by all threads of the trial, standing
+ * in for the single order counter all books used to share.
+ *
+ * Runs on four threads by default, change with -t; the number of books must be a multiple of it.  Only on as many
+ * cores as threads does the cache line of the shared counter bounce between them, on fewer cores the threads take
+ * turns and the counter is as good as uncontended.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class OrderIdAllocationBenchmark {
+
+    private static final long CLIENT_ID = 1;
+    private static final long PRICE = 100;
+    private static final long ORDER_SIZE = 100;
+
+    @Param({"4", "16", "64"})
+    public int books;
+
+    @Param({"false", "true"})
+    public boolean sharedCounter;
+
+    private final AtomicLong sharedOrderCounter = new AtomicLong();
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    /**
+     * The books one benchmark thread drives, with pools and an execution queue of their own
+     */
+    @State(Scope.Thread)
+    public static class BookThread {
+
+        private ObjectPool<Message> messagePool;
+        private ObjectPool<Execution> executionPool;
+        private RingBuffer<Execution> executionPublishQueue;
+        private OrderBookProcessor[] bidProcessors;
+
+        @Setup(Level.Trial)
+        public void setup(OrderIdAllocationBenchmark benchmark, BenchmarkParams params) {
+            int threads = params.getThreads();
+            if (benchmark.books % threads != 0) {
+                throw new IllegalStateException(benchmark.books + " books can not be spread evenly over " + threads + " threads");
+            }
+            int thread = benchmark.nextThread.getAndIncrement();
+
+            messagePool = new ObjectPool<>(Message::new);
+            executionPool = new ObjectPool<>(Execution::new);
+            executionPublishQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+            bidProcessors = new OrderBookProcessor[benchmark.books / threads];
+            for (int i = 0; i < bidProcessors.length; i++) {
+                //Pairs numbered across all threads, so every book has an index of its own in the order ids
+                int pairId = i * threads + thread;
+                CcyPair pair = new CcyPair(pairId, "PAIR" + pairId, 1, 1, 0);
+                bidProcessors[i] = new BidOrderBookProcessor(pair, executionPool, messagePool, new SpscRingBuffer<>(1024), executionPublishQueue);
+                OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(pair, executionPool, messagePool, new SpscRingBuffer<>(1024), executionPublishQueue);
+                bidProcessors[i].setCorrespondingBook(offerProcessor);
+                offerProcessor.setCorrespondingBook(bidProcessors[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(64)
+    public void limitInsertAndCancel(BookThread thread, Blackhole blackhole) {
+        //The same number of orders whatever the number of books, so the results compare per order
+        OrderBookProcessor[] bidProcessors = thread.bidProcessors;
+        for (int i = 0; i < 64; i++) {
+            OrderBookProcessor book = bidProcessors[i % bidProcessors.length];
+            if (sharedCounter) {
+                blackhole.consume(sharedOrderCounter.getAndIncrement());
+            }
+            Message limit = thread.messagePool.acquireObject();
+            limit.setType(MessageType.NewLimitOrder);
+            limit.setClientId(CLIENT_ID);
+            limit.setPair(book.getPair());
+            limit.setSide(Side.Bid);
+            limit.setPrice(PRICE);
+            limit.setQuantity(ORDER_SIZE);
+            book.processMessage(limit);
+            long orderId = drainExecutions(thread, blackhole);
+
+            Message cancel = thread.messagePool.acquireObject();
+            cancel.setType(MessageType.CancelOrder);
+            cancel.setClientId(CLIENT_ID);
+            cancel.setOrderId(orderId);
+            book.processMessage(cancel);
+            drainExecutions(thread, blackhole);
+        }
+    }
+
+    /**
+     * @return order id of the last execution seen
+     */
+    private static long drainExecutions(BookThread thread, Blackhole blackhole) {
+        long orderId = -1;
+        Execution execution;
+        while ((execution = thread.executionPublishQueue.poll()) != null) {
+            orderId = execution.getOrderId();
+            blackhole.consume(execution.getQuantity());
+            thread.executionPool.returnObject(execution);
+        }
+        return orderId;
+    }
+}
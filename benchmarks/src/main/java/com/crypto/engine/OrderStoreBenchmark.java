@@ -0,0 +1,138 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * The book side hot paths over a deep book of millions of resting orders, kept in pooled Order objects on the heap
+ * or in rows outside of it.  Setup prints the heap used once the book is built and the bytes held outside the heap,
+ * run with -prof gc to see what the collector makes of either.  The heap needs to hold the Order objects, so give
+ * the forked JVM room, e.g. -jvmArgs -Xmx4g.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderStoreBenchmark {
+
+    private static final long RESTING_CLIENT_ID = 1;
+    private static final long ACTIVE_CLIENT_ID = 2;
+    private static final long ORDER_SIZE = 100;
+    private static final int PRICE_LEVELS = 1000;
+
+    @Param({"heap", "offHeap"})
+    public String store;
+
+    @Param({"1000000", "4000000"})
+    public int restingOrders;
+
+    private ObjectPool<Message> messagePool;
+    private ObjectPool<Execution> executionPool;
+    private RingBuffer<Execution> executionPublishQueue;
+    private OrderBookProcessor bidProcessor;
+    private long topOfBookPrice;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+        bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+        bidProcessor.presize(restingOrders, 2, PRICE_LEVELS);
+        if ("offHeap".equals(store)) {
+            bidProcessor.setOffHeapOrderStore(restingOrders);
+        }
+
+        //Even prices only, leaving the odd prices free for new levels to be inserted in between
+        for (int i = 0; i < restingOrders; i++) {
+            bidProcessor.processMessage(limitOrder(RESTING_CLIENT_ID, (1 + i % PRICE_LEVELS) * 2L));
+            drainExecutions(null);
+        }
+        topOfBookPrice = PRICE_LEVELS * 2L;
+
+        System.gc();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        OrderStore orders = bidProcessor.getOrderStore();
+        long offHeap = orders instanceof OffHeapOrderStore ? ((OffHeapOrderStore) orders).getAllocatedBytes() : 0;
+        System.out.println();
+        System.out.println(store + " store, " + orders.size() + " orders: heap used " + (heapUsed >> 20) + " MB, off heap " + (offHeap >> 20) + " MB");
+    }
+
+    /**
+     * Creates a new price level a few levels below top of book, then cancels it again.
+     */
+    @Benchmark
+    public void limitInsertAndCancel(Blackhole blackhole) {
+        bidProcessor.processMessage(limitOrder(ACTIVE_CLIENT_ID, topOfBookPrice - 21));
+        long orderId = drainExecutions(blackhole);
+
+        Message cancel = messagePool.acquireObject();
+        cancel.setType(MessageType.CancelOrder);
+        cancel.setClientId(ACTIVE_CLIENT_ID);
+        cancel.setOrderId(orderId);
+        bidProcessor.processMessage(cancel);
+        drainExecutions(blackhole);
+    }
+
+    /**
+     * Market order filling the order first in line at top of book, which is then replenished at the back of the queue.
+     */
+    @Benchmark
+    public void marketFillAndReplenish(Blackhole blackhole) {
+        Message market = messagePool.acquireObject();
+        market.setType(MessageType.NewMarketOrder);
+        market.setClientId(ACTIVE_CLIENT_ID);
+        market.setPair(CcyPair.BTCUSD);
+        market.setSide(Side.Offer);
+        market.setQuantity(ORDER_SIZE);
+        bidProcessor.processMessage(market);
+        drainExecutions(blackhole);
+
+        bidProcessor.processMessage(limitOrder(RESTING_CLIENT_ID, topOfBookPrice));
+        drainExecutions(blackhole);
+    }
+
+    private Message limitOrder(long clientId, long price) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.NewLimitOrder);
+        message.setClientId(clientId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Bid);
+        message.setPrice(price);
+        message.setQuantity(ORDER_SIZE);
+        return message;
+    }
+
+    /**
+     * Return all executions to the pool so the benchmark does not measure an ever growing queue.
+     * @return order id of the last execution seen
+     */
+    private long drainExecutions(Blackhole blackhole) {
+        long orderId = -1;
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            orderId = execution.getOrderId();
+            if (blackhole != null) {
+                blackhole.consume(execution.getQuantity());
+            }
+            executionPool.returnObject(execution);
+        }
+        return orderId;
+    }
+}
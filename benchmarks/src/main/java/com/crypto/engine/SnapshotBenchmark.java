@@ -0,0 +1,102 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * Time to write and to restore a snapshot of a bid book of a million resting orders, spread over 1024 prices and
+ * 1024 clients.  Every restore goes into a fresh book whose order pool already holds the million orders, as one
+ * prewarmed on startup would, so the score is the cost of reading the file and rebuilding the levels, the indexes and
+ * the client chains.  A restart replays only the journal after the snapshot on top of that.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SnapshotBenchmark {
+
+    private static final int ORDERS = 1 << 20;
+    private static final int LEVELS = 1 << 10;
+    private static final int CLIENTS = 1 << 10;
+    private static final long TOP_PRICE = 1 << 20;
+
+    private File directory;
+    private File snapshot;
+    private OrderBookProcessor book;
+    private OrderBookProcessor[] restoredBooks;
+    private MessageRouter router;
+
+    @Setup(Level.Trial)
+    public void fillBook() throws IOException {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        book = bidBook(executionPool, messagePool, executionPublishQueue);
+        book.presize(ORDERS, CLIENTS, LEVELS);
+
+        Message message = new Message();
+        for (int i = 0; i < ORDERS; i++) {
+            message.setType(MessageType.NewLimitOrder);
+            message.setClientId(i % CLIENTS);
+            message.setClientOrderId(i);
+            message.setPair(CcyPair.BTCUSD);
+            message.setSide(Side.Bid);
+            message.setPrice((TOP_PRICE - i % LEVELS) * CcyPair.BTCUSD.getTickSize());
+            message.setQuantity(CcyPair.BTCUSD.getLotSize());
+            book.processMessage(message);
+            executionPool.returnObject(executionPublishQueue.poll());
+        }
+
+        directory = Files.createTempDirectory("snapshot-benchmark").toFile();
+        snapshot = new File(directory, "book.bin");
+        BookSnapshot.write(snapshot, ORDERS, Collections.singletonList(book));
+    }
+
+    @Setup(Level.Invocation)
+    public void freshBook() {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        OrderBookProcessor restoredBook = bidBook(new ObjectPool<>(Execution::new), messagePool, new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY));
+        restoredBook.getOrderStore().presize(ORDERS);
+        restoredBooks = new OrderBookProcessor[OrderIds.MAX_BOOKS];
+        restoredBooks[OrderIds.bookIndex(CcyPair.BTCUSD, Side.Bid)] = restoredBook;
+        router = new MessageRouter(Collections.emptyList(), messagePool);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSnapshot() {
+        snapshot.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public long restore() throws IOException {
+        return BookSnapshot.read(snapshot, restoredBooks, router);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        BookSnapshot.write(snapshot, ORDERS, Collections.singletonList(book));
+    }
+
+    private static OrderBookProcessor bidBook(ObjectPool<Execution> executionPool, ObjectPool<Message> messagePool, RingBuffer<Execution> executionPublishQueue) {
+        OrderBookProcessor bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+        return bidProcessor;
+    }
+}
@@ -1,17 +1,26 @@
 package com.crypto.application;
 
+import com.crypto.concurrent.BackoffWaitStrategy;
+import com.crypto.concurrent.BusySpinWaitStrategy;
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
 import com.crypto.data.CcyPair;
 import com.crypto.data.Execution;
 import com.crypto.data.Message;
-import com.crypto.data.Order;
 import com.crypto.engine.*;
 import com.crypto.feed.ObjectPool;
 import com.crypto.feed.MessageSerializer;
 import com.crypto.feed.MessageSerializerImpl;
-import java.util.ArrayList;
+import com.crypto.journal.InputJournal;
+import com.crypto.journal.JournalSyncPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
 
 import static com.crypto.data.Constants.*;
 
@@ -21,40 +30,65 @@ import static com.crypto.data.Constants.*;
  */
 public class MatchingEngineRunner {
 
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
 
-        List<ConcurrentLinkedQueue<Message>> queues = new ArrayList<>(4);
-        for (int i = 0; i < 4; i++) {
-            queues.add(new ConcurrentLinkedQueue<>());
-        }
+        //Both sides of a pair run on one thread and share its queue, which is what lets the journal be replayed
+        RingBuffer<Message> btcQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        RingBuffer<Message> ethQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        List<RingBuffer<Message>> queues = Arrays.asList(btcQueue, btcQueue, ethQueue, ethQueue);
 
-        AtomicLong orderIdCounter = new AtomicLong(0);
         ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
-        ObjectPool<Order> orderPool = new ObjectPool<>(Order::new);
         ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
 
+        //Prewarmed so the first orders do not pay for allocation
+        long startupTime = System.nanoTime();
+        BookWarmUp warmUp = new BookWarmUp();
+        warmUp.prewarmPools(messagePool, executionPool);
 
-        ConcurrentLinkedQueue<Message> distributorInboundQueue = new ConcurrentLinkedQueue<>();
-        ConcurrentLinkedQueue<Execution> executionPublishQueue = new ConcurrentLinkedQueue<>();
-        MessageSerializer serializer = new MessageSerializerImpl(distributorInboundQueue, messagePool, 3, 100, MESSAGE_DELIMITER);
-
-        OrderBookDistributor orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, queues, messagePool);
 
+        //Any number of gateway threads may hand messages to the serializer
+        RingBuffer<Message> distributorInboundQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        MessageSerializer serializer = new MessageSerializerImpl(distributorInboundQueue, messagePool, 3, 100, MESSAGE_DELIMITER);
 
-        OrderBookProcessor btcOfferProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, orderPool, executionPool, messagePool, queues.get(0), executionPublishQueue, orderIdCounter);
-        OrderBookProcessor btcBidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, orderPool, executionPool, messagePool, queues.get(1), executionPublishQueue, orderIdCounter);
-        OrderBookProcessor ethBidProcessor = new BidOrderBookProcessor(CcyPair.ETHUSD, orderPool, executionPool, messagePool, queues.get(2), executionPublishQueue, orderIdCounter);
-        OrderBookProcessor ethOfferProcessor = new OfferOrderBookProcessor(CcyPair.ETHUSD, orderPool, executionPool, messagePool, queues.get(3), executionPublishQueue, orderIdCounter);
-
-        btcOfferProcessor.setCorrespondingBook(btcBidProcessor);
-        btcBidProcessor.setCorrespondingBook(btcOfferProcessor);
-        ethOfferProcessor.setCorrespondingBook(ethBidProcessor);
-        ethBidProcessor.setCorrespondingBook(ethOfferProcessor);
+        PairOrderBookProcessor btcProcessor = new PairOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, btcQueue, executionPublishQueue);
+        PairOrderBookProcessor ethProcessor = new PairOrderBookProcessor(CcyPair.ETHUSD, executionPool, messagePool, ethQueue, executionPublishQueue);
+
+        //Nothing trades on ETH in this sample, let its pair back off rather than burn a core
+        ethProcessor.setWaitStrategy(new BackoffWaitStrategy(1000, 100, 1000, TimeUnit.MILLISECONDS.toNanos(1)));
+
+        //Compile the hot paths before opening to clients rather than on their first orders
+        warmUp.warmUp(btcProcessor);
+        warmUp.warmUp(ethProcessor);
+
+        //Given a directory the input is journalled there, and whatever a previous run journalled is replayed into the
+        //books before they are started.  The router then knows the clients with resting orders for the distributor.
+        //The latest snapshot is restored first so only the journal after it is replayed.
+        MessageRouter router = new MessageRouter(queues, messagePool);
+        InputJournal journal = null;
+        BookSnapshotter snapshotter = null;
+        if (args.length > 0) {
+            journal = new InputJournal(new File(args[0]), JournalSyncPolicy.Batched);
+            File snapshots = new File(args[0], "snapshots");
+            JournalReplayer replayer = new JournalReplayer(router, messagePool, executionPublishQueue, executionPool);
+            replayer.addBook(btcProcessor);
+            replayer.addBook(ethProcessor);
+            File snapshot = BookSnapshotter.latestSnapshot(snapshots);
+            if (snapshot != null) {
+                System.out.println("Restored snapshot " + snapshot + " taken at sequence " + replayer.restore(snapshot));
+            }
+            System.out.println("Recovered " + replayer.replay(journal, null) + " journalled messages");
+            snapshotter = new BookSnapshotter(journal, snapshots, Arrays.asList(CcyPair.BTCUSD, CcyPair.ETHUSD));
+            snapshotter.start(1, TimeUnit.MINUTES);
+        }
+        OrderBookDistributor orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, router, messagePool, new BusySpinWaitStrategy(), journal);
+        //Executions go out through the publisher stage, here to a sink printing them
+        ExecutionPublisher executionPublisher = new ExecutionPublisher(Collections.singletonList(executionPublishQueue),
+                Collections.singletonList(MatchingEngineRunner::printExecutions), executionPool, new BackoffWaitStrategy(1000, 100, 1000, TimeUnit.MILLISECONDS.toNanos(1)));
+        System.out.println("Engine ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startupTime) + " ms");
 
-        btcOfferProcessor.startOrderBook();
-        btcBidProcessor.startOrderBook();
-        ethOfferProcessor.startOrderBook();
-        ethBidProcessor.startOrderBook();
+        btcProcessor.startOrderBook();
+        ethProcessor.startOrderBook();
 
 
         String limitOrder = getLimitOrder("666", "123", "100", BID, BTCUSD, "10000");
@@ -62,26 +96,33 @@ public class MatchingEngineRunner {
 
         serializer.onMessage(limitOrder);
         Thread.sleep(200);
-        if(executionPublishQueue.size() == 1){
-            System.out.println("Something came back: " + executionPublishQueue.poll());
-        }
 
         String marketOrder = getMarketOrder("667", "321", OFFER, BTCUSD, "500");
 
         serializer.onMessage(marketOrder);
         Thread.sleep(200);
 
-        if(executionPublishQueue.size() == 2){
-            System.out.println("Something came back: " + executionPublishQueue.poll());
-            System.out.println("Something came back: " + executionPublishQueue.poll());
-        }
+        System.out.println("BTC book idle cycles: " + btcProcessor.getWaitStrategy().getIdleCycles() + " busy cycles: " + btcProcessor.getWaitStrategy().getWorkCycles());
+        System.out.println("ETH book idle cycles: " + ethProcessor.getWaitStrategy().getIdleCycles() + " busy cycles: " + ethProcessor.getWaitStrategy().getWorkCycles());
+        System.out.println("Message pool hits: " + messagePool.getHits() + " misses: " + messagePool.getMisses() + " high water mark: " + messagePool.getHighWaterMark());
 
+        //Upstream first, so the publisher drains whatever the books published last
         orderBookDistributor.shutdown();
-        btcBidProcessor.shutdown();
-        btcOfferProcessor.shutdown();
-        ethBidProcessor.shutdown();
-        ethOfferProcessor.shutdown();
+        btcProcessor.shutdown();
+        ethProcessor.shutdown();
+        executionPublisher.shutdown();
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
 
+    private static void printExecutions(Execution[] executions, int count) {
+        for (int i = 0; i < count; i++) {
+            System.out.println("Something came back: " + executions[i]);
+        }
     }
 
     private static String getLimitOrder(String clientId, String clientOrderId, String price, String side, String ccy , String quantity) {
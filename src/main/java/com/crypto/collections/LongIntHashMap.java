@@ -0,0 +1,173 @@
+package com.crypto.collections;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to primitive int values, laid out and probed as LongObjectHashMap.
+ * Neither keys nor values are boxed, so the map only allocates when it grows past its load factor.
+ *
+ * The missing value given at construction is returned for keys which are not mapped and marks a free slot, so it can
+ * not be mapped itself.  Not thread safe.
+ */
+public class LongIntHashMap {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+
+    /**
+     * @param missingValue value returned for keys which are not mapped, which can not be mapped itself
+     */
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        if (expectedSize < 1 || expectedSize > MAX_CAPACITY / 2) {
+            throw new IllegalArgumentException("Expected size must be between 1 and " + MAX_CAPACITY / 2 + " but was " + expectedSize);
+        }
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Grow the map up front so it holds expectedSize mappings without growing on the hot path
+     * @param expectedSize number of mappings the map should hold
+     */
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize < 1 || expectedSize > MAX_CAPACITY / 2) {
+            throw new IllegalArgumentException("Expected size must be between 1 and " + MAX_CAPACITY / 2 + " but was " + expectedSize);
+        }
+        int capacity = capacityFor(expectedSize);
+        if (capacity > values.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * @return the value mapped to the key, the missing value if there is none
+     */
+    public int get(long key) {
+        int index = indexOf(key);
+        int value;
+        while ((value = values[index]) != missingValue) {
+            if (keys[index] == key) {
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * @param key key to map
+     * @param value any value but the missing value
+     * @return the value previously mapped to the key, the missing value if there was none
+     */
+    public int put(long key, int value) {
+        if (value == missingValue) {
+            throw new IllegalArgumentException("The missing value " + missingValue + " can not be mapped, key " + key);
+        }
+        int index = indexOf(key);
+        int existing;
+        while ((existing = values[index]) != missingValue) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return existing;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @param key key to remove
+     * @return the value which was mapped to the key, the missing value if there was none
+     */
+    public int remove(long key) {
+        int index = indexOf(key);
+        int value;
+        while ((value = values[index]) != missingValue) {
+            if (keys[index] == key) {
+                values[index] = missingValue;
+                size--;
+                closeGap(index);
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getMissingValue() {
+        return missingValue;
+    }
+
+    /**
+     * Backward shift deletion, see LongObjectHashMap
+     * @param gap slot which was just freed
+     */
+    private void closeGap(int gap) {
+        int index = (gap + 1) & mask;
+        int value;
+        while ((value = values[index]) != missingValue) {
+            int home = indexOf(keys[index]);
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = keys[index];
+                values[gap] = value;
+                values[index] = missingValue;
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private int indexOf(long key) {
+        long hash = key * GOLDEN_RATIO;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Map can not grow beyond " + MAX_CAPACITY + " slots");
+        }
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != missingValue) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(expectedSize * 2 - 1));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        if (missingValue != 0) {
+            Arrays.fill(values, missingValue);
+        }
+        mask = capacity - 1;
+        resizeThreshold = capacity / 2;
+    }
+}
@@ -0,0 +1,165 @@
+package com.crypto.collections;
+
+/**
+ * Open addressing hash map from primitive long keys to objects.  Keys and values are held in two parallel arrays
+ * and collisions are resolved by linear probing, so neither the key nor an entry node is allocated per mapping.
+ * Removal shifts the following entries of the probe chain back instead of leaving tombstones, which keeps lookups
+ * short in maps seeing a constant churn of inserts and removes.
+ *
+ * The map only allocates when it grows past its load factor, size it up front to keep the hot path garbage free.
+ * Null values are not supported as a null value marks a free slot.  Not thread safe.
+ *
+ * @param <V> type of values held in the map
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+
+    public LongObjectHashMap(int expectedSize) {
+        if (expectedSize < 1 || expectedSize > MAX_CAPACITY / 2) {
+            throw new IllegalArgumentException("Expected size must be between 1 and " + MAX_CAPACITY / 2 + " but was " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Grow the map up front so it holds expectedSize mappings without growing on the hot path
+     * @param expectedSize number of mappings the map should hold
+     */
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize < 1 || expectedSize > MAX_CAPACITY / 2) {
+            throw new IllegalArgumentException("Expected size must be between 1 and " + MAX_CAPACITY / 2 + " but was " + expectedSize);
+        }
+        int capacity = capacityFor(expectedSize);
+        if (capacity > values.length) {
+            rehash(capacity);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @param key key to map
+     * @param value non null value
+     * @return the value previously mapped to the key, null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported, key " + key);
+        }
+        int index = indexOf(key);
+        Object existing;
+        while ((existing = values[index]) != null) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return (V) existing;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @param key key to remove
+     * @return the value which was mapped to the key, null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                values[index] = null;
+                size--;
+                closeGap(index);
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Backward shift deletion.  Walks the probe chain after a freed slot and moves back every entry whose home slot
+     * does not lie cyclically between the gap and its current slot, so no lookup stops early at the gap.
+     * @param gap slot which was just freed
+     */
+    private void closeGap(int gap) {
+        int index = (gap + 1) & mask;
+        Object value;
+        while ((value = values[index]) != null) {
+            int home = indexOf(keys[index]);
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = keys[index];
+                values[gap] = value;
+                values[index] = null;
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private int indexOf(long key) {
+        long hash = key * GOLDEN_RATIO;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Map can not grow beyond " + MAX_CAPACITY + " slots");
+        }
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(expectedSize * 2 - 1));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity / 2;
+    }
+}
@@ -0,0 +1,51 @@
+package com.crypto.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Progressive back off for cold books: spin first, then yield, then park for an exponentially growing period
+ * capped at maxParkNanos.  An idle thread therefore ends up waking roughly every maxParkNanos, which bounds both
+ * its cpu usage and the worst case latency of the first message after a quiet period.
+ */
+public class BackoffWaitStrategy extends WaitStrategy {
+
+    private final int maxSpins;
+    private final int maxYields;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    private int spins;
+    private int yields;
+    private long parkNanos;
+
+    public BackoffWaitStrategy(int maxSpins, int maxYields, long minParkNanos, long maxParkNanos) {
+        if (minParkNanos < 1 || maxParkNanos < minParkNanos) {
+            throw new IllegalArgumentException("Park period must satisfy 1 <= min <= max, was min " + minParkNanos + " max " + maxParkNanos);
+        }
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+        this.parkNanos = minParkNanos;
+    }
+
+    @Override
+    protected void waitForWork() {
+        if (spins < maxSpins) {
+            spins++;
+        } else if (yields < maxYields) {
+            yields++;
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos << 1, maxParkNanos);
+        }
+    }
+
+    @Override
+    protected void reset() {
+        spins = 0;
+        yields = 0;
+        parkNanos = minParkNanos;
+    }
+}
@@ -0,0 +1,54 @@
+package com.crypto.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocks the consumer on a condition until a producer signals that it published something.  Uses no cpu at all
+ * while idle, but every wake up is a full context switch.  Producers only take the lock when the consumer has not
+ * yet been told about new work, so a busy consumer costs producers one volatile read per item.
+ *
+ * The wait is bounded by timeoutNanos so a signal racing with the consumer going to sleep can delay a message by
+ * at most that period rather than indefinitely.
+ */
+public class BlockingWaitStrategy extends WaitStrategy {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final long timeoutNanos;
+    private volatile boolean signalled;
+
+    public BlockingWaitStrategy(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    @Override
+    protected void waitForWork() {
+        lock.lock();
+        try {
+            long remainingNanos = timeoutNanos;
+            while (!signalled && remainingNanos > 0) {
+                remainingNanos = workAvailable.awaitNanos(remainingNanos);
+            }
+            signalled = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        if (!signalled) {
+            lock.lock();
+            try {
+                signalled = true;
+                workAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.crypto.concurrent;
+
+/**
+ * Never gives up the core.  Lowest possible latency, at the cost of one fully loaded cpu per thread even when there
+ * is nothing to do.  This is how the engine threads always used to behave.
+ */
+public class BusySpinWaitStrategy extends WaitStrategy {
+
+    @Override
+    protected void waitForWork() {
+    }
+}
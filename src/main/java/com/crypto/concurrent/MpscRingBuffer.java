@@ -0,0 +1,223 @@
+package com.crypto.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Multi producer, single consumer ring buffer.  Producers claim a slot by a compare-and-swap on the producer index
+ * and then publish the element with an ordered write into the slot.  The consumer treats a null slot below the
+ * producer index as a claimed but not yet published element and waits for it to appear.
+ *
+ * Any number of threads may offer, exactly one thread may poll / drain.
+ *
+ * @param <E> type of elements held in the buffer
+ */
+public class MpscRingBuffer<E> extends MpscRingBufferConsumerFields<E> implements RingBuffer<E> {
+
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    public MpscRingBuffer(int requestedCapacity) {
+        super(requestedCapacity);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException("Null elements are not supported");
+        }
+        long currentProducerIndex;
+        do {
+            currentProducerIndex = producerIndex;
+            if (currentProducerIndex >= producerLimit) {
+                long newLimit = consumerIndex + capacity;
+                if (currentProducerIndex >= newLimit) {
+                    return false;
+                }
+                producerLimit = newLimit;
+            }
+        } while (!PRODUCER_INDEX.compareAndSet(this, currentProducerIndex, currentProducerIndex + 1));
+
+        buffer.lazySet((int) currentProducerIndex & mask, e);
+        WaitStrategy waitStrategy = consumerWaitStrategy;
+        if (waitStrategy != null) {
+            waitStrategy.signal();
+        }
+        return true;
+    }
+
+    /**
+     * Claims the free slots for as much of the batch as fits with a single compare-and-swap, so producers sharing the
+     * buffer contend once per batch rather than once per element
+     */
+    @Override
+    public void putAll(E[] elements, int count) {
+        for (int i = 0; i < count; i++) {
+            if (elements[i] == null) {
+                throw new NullPointerException("Null elements are not supported");
+            }
+        }
+        int offset = 0;
+        while (offset < count) {
+            long currentProducerIndex = producerIndex;
+            long available = producerLimit - currentProducerIndex;
+            if (available <= 0) {
+                long newLimit = consumerIndex + capacity;
+                available = newLimit - currentProducerIndex;
+                if (available <= 0) {
+                    Thread.yield();
+                    continue;
+                }
+                producerLimit = newLimit;
+            }
+            int claimed = (int) Math.min(available, count - offset);
+            if (!PRODUCER_INDEX.compareAndSet(this, currentProducerIndex, currentProducerIndex + claimed)) {
+                continue;
+            }
+
+            for (int i = 0; i < claimed; i++) {
+                buffer.lazySet((int) (currentProducerIndex + i) & mask, elements[offset + i]);
+            }
+            offset += claimed;
+            WaitStrategy waitStrategy = consumerWaitStrategy;
+            if (waitStrategy != null) {
+                waitStrategy.signal();
+            }
+        }
+    }
+
+    @Override
+    public E poll() {
+        long currentConsumerIndex = consumerIndex;
+        int slot = (int) currentConsumerIndex & mask;
+        E e = buffer.get(slot);
+        if (e == null) {
+            if (currentConsumerIndex == producerIndex) {
+                return null;
+            }
+            //A producer has claimed the slot but not yet written to it, it will very shortly
+            do {
+                e = buffer.get(slot);
+            } while (e == null);
+        }
+        buffer.lazySet(slot, null);
+        CONSUMER_INDEX.lazySet(this, currentConsumerIndex + 1);
+        return e;
+    }
+
+    @Override
+    public int drain(Consumer<E> handler, int limit) {
+        long currentConsumerIndex = consumerIndex;
+        int drained = 0;
+        while (drained < limit) {
+            int slot = (int) (currentConsumerIndex + drained) & mask;
+            E e = buffer.get(slot);
+            if (e == null) {
+                //Unlike poll we don't wait for claimed slots, whatever isn't published yet is picked up next drain
+                break;
+            }
+            buffer.lazySet(slot, null);
+            handler.accept(e);
+            drained++;
+        }
+        if (drained > 0) {
+            CONSUMER_INDEX.lazySet(this, currentConsumerIndex + drained);
+        }
+        return drained;
+    }
+
+    @Override
+    public E peek() {
+        long currentConsumerIndex = consumerIndex;
+        int slot = (int) currentConsumerIndex & mask;
+        E e = buffer.get(slot);
+        while (e == null && currentConsumerIndex != producerIndex) {
+            e = buffer.get(slot);
+        }
+        return e;
+    }
+
+    @Override
+    public int size() {
+        long currentConsumerIndex = consumerIndex;
+        return (int) Math.max(0, producerIndex - currentConsumerIndex);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex >= producerIndex;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void setConsumerWaitStrategy(WaitStrategy waitStrategy) {
+        this.consumerWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Weakly consistent: iterates over a copy of the elements in the buffer when called, leaving out those the
+     * consumer took meanwhile and without those offered after.  Elements can only be taken by polling or draining,
+     * removing them through the iterator is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        long from = consumerIndex;
+        Object[] slots = new Object[(int) Math.max(0, producerIndex - from)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = buffer.get((int) (from + i) & mask);
+        }
+        return RingBuffers.snapshotIterator(slots, from, consumerIndex);
+    }
+}
+
+abstract class MpscRingBufferPad0<E> extends AbstractQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class MpscRingBufferProducerFields<E> extends MpscRingBufferPad0<E> {
+
+    @SuppressWarnings("unchecked")
+    static final AtomicLongFieldUpdater<MpscRingBufferProducerFields<?>> PRODUCER_INDEX =
+            AtomicLongFieldUpdater.newUpdater((Class<MpscRingBufferProducerFields<?>>) (Class<?>) MpscRingBufferProducerFields.class, "producerIndex");
+
+    protected final AtomicReferenceArray<E> buffer;
+    protected final int mask;
+    protected final int capacity;
+    protected volatile long producerIndex;
+    protected volatile WaitStrategy consumerWaitStrategy;
+    protected volatile long producerLimit;
+
+    MpscRingBufferProducerFields(int requestedCapacity) {
+        capacity = RingBuffers.roundToPowerOfTwo(requestedCapacity);
+        mask = capacity - 1;
+        buffer = new AtomicReferenceArray<>(capacity);
+        producerLimit = capacity;
+    }
+}
+
+abstract class MpscRingBufferPad1<E> extends MpscRingBufferProducerFields<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+
+    MpscRingBufferPad1(int requestedCapacity) {
+        super(requestedCapacity);
+    }
+}
+
+abstract class MpscRingBufferConsumerFields<E> extends MpscRingBufferPad1<E> {
+
+    @SuppressWarnings("unchecked")
+    static final AtomicLongFieldUpdater<MpscRingBufferConsumerFields<?>> CONSUMER_INDEX =
+            AtomicLongFieldUpdater.newUpdater((Class<MpscRingBufferConsumerFields<?>>) (Class<?>) MpscRingBufferConsumerFields.class, "consumerIndex");
+
+    protected volatile long consumerIndex;
+
+    MpscRingBufferConsumerFields(int requestedCapacity) {
+        super(requestedCapacity);
+    }
+}
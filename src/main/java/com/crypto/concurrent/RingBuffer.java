@@ -0,0 +1,59 @@
+package com.crypto.concurrent;
+
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, pre-allocated queue used to hand messages between the engine threads.  Unlike ConcurrentLinkedQueue
+ * no node is allocated per element, the element reference is simply written into a slot of a fixed array.
+ * Being bounded, offer returns false once the buffer is full, which lets producers apply back pressure.
+ *
+ * Elements need no synchronisation of their own.  A buffer publishes an element with one ordered store after the
+ * producer wrote all its fields and the consumer takes it over with one volatile read, so plain fields written before
+ * the offer are seen after the poll.  The producer must not touch an element once it has offered it, nor any thread
+ * once it returned it to an ObjectPool, whose depot is locked.
+ *
+ * @param <E> type of elements held in the buffer
+ */
+public interface RingBuffer<E> extends Queue<E> {
+
+    /**
+     * Hand up to limit available elements to the handler in one go.  The consumer index is only published once for
+     * the whole batch, which is considerably cheaper than polling element by element.
+     * @param handler callback invoked for every drained element
+     * @param limit maximum number of elements to drain
+     * @return number of elements drained
+     */
+    int drain(Consumer<E> handler, int limit);
+
+    /**
+     * Offer the element, yielding the cpu until there is space available in the buffer.
+     * @param e element to add
+     */
+    default void put(E e) {
+        while (!offer(e)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Put the first count elements of the array in order, yielding the cpu while the buffer is full.  Buffers claim
+     * the slots for as much of the batch as fits at once and wake the consumer once per claim rather than per element.
+     * @param elements elements to add, the array is not retained
+     * @param count number of elements to add from the start of the array
+     */
+    default void putAll(E[] elements, int count) {
+        for (int i = 0; i < count; i++) {
+            put(elements[i]);
+        }
+    }
+
+    int capacity();
+
+    /**
+     * Register the wait strategy of the consuming thread so producers can wake it up after publishing.
+     * Must be set before producers start offering.
+     * @param waitStrategy wait strategy of the thread polling / draining this buffer
+     */
+    void setConsumerWaitStrategy(WaitStrategy waitStrategy);
+}
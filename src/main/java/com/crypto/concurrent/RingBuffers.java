@@ -0,0 +1,49 @@
+package com.crypto.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Helpers shared by the ring buffer implementations
+ */
+final class RingBuffers {
+
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private RingBuffers() {
+    }
+
+    /**
+     * Slots are addressed by masking the index, so the capacity must be a power of two.
+     * @param requestedCapacity minimum capacity wanted
+     * @return requestedCapacity rounded up to the next power of two
+     */
+    static int roundToPowerOfTwo(int requestedCapacity) {
+        if (requestedCapacity < 1 || requestedCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY + " but was " + requestedCapacity);
+        }
+        return 1 << (32 - Integer.numberOfLeadingZeros(requestedCapacity - 1));
+    }
+
+    /**
+     * Iterator over slots copied from a ring buffer, for the weakly consistent iterator of the buffers
+     * @param slots copies of the slots from the consumer index read before copying up to the producer index
+     * @param from consumer index read before copying
+     * @param consumed consumer index read after copying, the copies of slots below it may already have been refilled
+     * by the producers and are dropped
+     * @return iterator over the elements copied, in order, which does not support removal
+     */
+    @SuppressWarnings("unchecked")
+    static <E> Iterator<E> snapshotIterator(Object[] slots, long from, long consumed) {
+        List<E> elements = new ArrayList<>(slots.length);
+        for (int i = (int) Math.max(0, Math.min(consumed - from, slots.length)); i < slots.length; i++) {
+            //Null if claimed by a producer but not published yet
+            if (slots[i] != null) {
+                elements.add((E) slots[i]);
+            }
+        }
+        return Collections.unmodifiableList(elements).iterator();
+    }
+}
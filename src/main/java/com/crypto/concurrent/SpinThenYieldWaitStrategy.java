@@ -0,0 +1,29 @@
+package com.crypto.concurrent;
+
+/**
+ * Busy spins for a number of idle cycles and then yields the cpu on every further idle cycle, letting other
+ * runnable threads on the same core in while still reacting within a scheduler quantum.
+ */
+public class SpinThenYieldWaitStrategy extends WaitStrategy {
+
+    private final int maxSpins;
+    private int spins;
+
+    public SpinThenYieldWaitStrategy(int maxSpins) {
+        this.maxSpins = maxSpins;
+    }
+
+    @Override
+    protected void waitForWork() {
+        if (spins < maxSpins) {
+            spins++;
+        } else {
+            Thread.yield();
+        }
+    }
+
+    @Override
+    protected void reset() {
+        spins = 0;
+    }
+}
@@ -0,0 +1,209 @@
+package com.crypto.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Single producer, single consumer ring buffer.  The producer and consumer indexes live on their own cache lines
+ * and each side keeps a cached copy of the other sides index, so in the common case offer and poll touch no
+ * cache line written by the other thread except the element slot itself.  Elements are published by an ordered
+ * (lazySet) write of the producer index, which is a plain store on x86.
+ *
+ * Exactly one thread may offer and exactly one thread may poll / drain.
+ *
+ * @param <E> type of elements held in the buffer
+ */
+public class SpscRingBuffer<E> extends SpscRingBufferConsumerFields<E> implements RingBuffer<E> {
+
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    public SpscRingBuffer(int requestedCapacity) {
+        super(requestedCapacity);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException("Null elements are not supported");
+        }
+        long currentProducerIndex = producerIndex;
+        if (currentProducerIndex >= producerLimit) {
+            producerLimit = consumerIndex + capacity;
+            if (currentProducerIndex >= producerLimit) {
+                return false;
+            }
+        }
+        buffer[(int) currentProducerIndex & mask] = e;
+        PRODUCER_INDEX.lazySet(this, currentProducerIndex + 1);
+        WaitStrategy waitStrategy = consumerWaitStrategy;
+        if (waitStrategy != null) {
+            waitStrategy.signal();
+        }
+        return true;
+    }
+
+    /**
+     * Writes as much of the batch as fits and publishes it with a single write of the producer index
+     */
+    @Override
+    public void putAll(E[] elements, int count) {
+        int offset = 0;
+        while (offset < count) {
+            long currentProducerIndex = producerIndex;
+            if (currentProducerIndex >= producerLimit) {
+                producerLimit = consumerIndex + capacity;
+                if (currentProducerIndex >= producerLimit) {
+                    Thread.yield();
+                    continue;
+                }
+            }
+            int batch = (int) Math.min(producerLimit - currentProducerIndex, count - offset);
+            for (int i = 0; i < batch; i++) {
+                E e = elements[offset + i];
+                if (e == null) {
+                    throw new NullPointerException("Null elements are not supported");
+                }
+                buffer[(int) (currentProducerIndex + i) & mask] = e;
+            }
+            PRODUCER_INDEX.lazySet(this, currentProducerIndex + batch);
+            offset += batch;
+            WaitStrategy waitStrategy = consumerWaitStrategy;
+            if (waitStrategy != null) {
+                waitStrategy.signal();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long currentConsumerIndex = consumerIndex;
+        if (currentConsumerIndex >= cachedProducerIndex) {
+            cachedProducerIndex = producerIndex;
+            if (currentConsumerIndex >= cachedProducerIndex) {
+                return null;
+            }
+        }
+        int slot = (int) currentConsumerIndex & mask;
+        E e = (E) buffer[slot];
+        buffer[slot] = null;
+        CONSUMER_INDEX.lazySet(this, currentConsumerIndex + 1);
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<E> handler, int limit) {
+        long currentConsumerIndex = consumerIndex;
+        if (currentConsumerIndex >= cachedProducerIndex) {
+            cachedProducerIndex = producerIndex;
+        }
+        int available = (int) Math.min(cachedProducerIndex - currentConsumerIndex, limit);
+        for (int i = 0; i < available; i++) {
+            int slot = (int) (currentConsumerIndex + i) & mask;
+            E e = (E) buffer[slot];
+            buffer[slot] = null;
+            handler.accept(e);
+        }
+        if (available > 0) {
+            CONSUMER_INDEX.lazySet(this, currentConsumerIndex + available);
+        }
+        return available;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long currentConsumerIndex = consumerIndex;
+        if (currentConsumerIndex >= producerIndex) {
+            return null;
+        }
+        return (E) buffer[(int) currentConsumerIndex & mask];
+    }
+
+    @Override
+    public int size() {
+        //Read the consumer first, so a concurrent poll can only make us over estimate
+        long currentConsumerIndex = consumerIndex;
+        return (int) Math.max(0, producerIndex - currentConsumerIndex);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex >= producerIndex;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void setConsumerWaitStrategy(WaitStrategy waitStrategy) {
+        this.consumerWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Weakly consistent: iterates over a copy of the elements in the buffer when called, leaving out those the
+     * consumer took meanwhile and without those offered after.  Elements can only be taken by polling or draining,
+     * removing them through the iterator is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        long from = consumerIndex;
+        Object[] slots = new Object[(int) Math.max(0, producerIndex - from)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = buffer[(int) (from + i) & mask];
+        }
+        return RingBuffers.snapshotIterator(slots, from, consumerIndex);
+    }
+}
+
+abstract class SpscRingBufferPad0<E> extends AbstractQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class SpscRingBufferProducerFields<E> extends SpscRingBufferPad0<E> {
+
+    @SuppressWarnings("unchecked")
+    static final AtomicLongFieldUpdater<SpscRingBufferProducerFields<?>> PRODUCER_INDEX =
+            AtomicLongFieldUpdater.newUpdater((Class<SpscRingBufferProducerFields<?>>) (Class<?>) SpscRingBufferProducerFields.class, "producerIndex");
+
+    protected final Object[] buffer;
+    protected final int mask;
+    protected final int capacity;
+    protected volatile long producerIndex;
+    protected volatile WaitStrategy consumerWaitStrategy;
+    protected long producerLimit;
+
+    SpscRingBufferProducerFields(int requestedCapacity) {
+        capacity = RingBuffers.roundToPowerOfTwo(requestedCapacity);
+        mask = capacity - 1;
+        buffer = new Object[capacity];
+        producerLimit = capacity;
+    }
+}
+
+abstract class SpscRingBufferPad1<E> extends SpscRingBufferProducerFields<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+
+    SpscRingBufferPad1(int requestedCapacity) {
+        super(requestedCapacity);
+    }
+}
+
+abstract class SpscRingBufferConsumerFields<E> extends SpscRingBufferPad1<E> {
+
+    @SuppressWarnings("unchecked")
+    static final AtomicLongFieldUpdater<SpscRingBufferConsumerFields<?>> CONSUMER_INDEX =
+            AtomicLongFieldUpdater.newUpdater((Class<SpscRingBufferConsumerFields<?>>) (Class<?>) SpscRingBufferConsumerFields.class, "consumerIndex");
+
+    protected volatile long consumerIndex;
+    protected long cachedProducerIndex;
+
+    SpscRingBufferConsumerFields(int requestedCapacity) {
+        super(requestedCapacity);
+    }
+}
@@ -0,0 +1,48 @@
+package com.crypto.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Pins the calling thread to a cpu.  The JDK has no affinity API, so on Linux the thread's kernel id is read from
+ * /proc/thread-self and handed to taskset.  Elsewhere, or without taskset installed, pinning fails and the thread
+ * keeps running wherever the scheduler puts it.  Ideally the pinned cpus are isolated from the OS scheduler as well.
+ */
+public final class ThreadAffinity {
+
+    public static final int NO_AFFINITY = -1;
+
+    private ThreadAffinity() {
+    }
+
+    /**
+     * @param cpu cpu to pin the calling thread to, NO_AFFINITY leaves the thread alone
+     * @return true if the thread is now pinned to the cpu
+     */
+    public static boolean pinCurrentThread(int cpu) {
+        if (cpu == NO_AFFINITY) {
+            return false;
+        }
+        try {
+            //Resolves to <pid>/task/<tid>
+            Path threadPath = Files.readSymbolicLink(Paths.get("/proc/thread-self"));
+            String threadId = threadPath.getFileName().toString();
+            Process taskset = new ProcessBuilder("taskset", "-cp", Integer.toString(cpu), threadId)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null")))
+                    .start();
+            if (taskset.waitFor() == 0) {
+                return true;
+            }
+            System.out.println("Could not pin thread " + Thread.currentThread().getName() + " to cpu " + cpu + ", taskset exited with " + taskset.exitValue());
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("Could not pin thread " + Thread.currentThread().getName() + " to cpu " + cpu + ": " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+}
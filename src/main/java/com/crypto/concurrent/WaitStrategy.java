@@ -0,0 +1,87 @@
+package com.crypto.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Decides what a consumer thread does when a duty cycle found no work.  Latency critical threads busy spin and
+ * burn a full core, cold ones can back off or block so they give the core back to the host.
+ *
+ * Implementations keep state between calls (back off steps, counters) so an instance belongs to exactly one
+ * consumer thread.  Producers may call signal from any thread.
+ *
+ * The strategy also counts idle and busy duty cycles.  The counters are written with ordered stores by the owning
+ * thread only, so reading them from a monitoring thread is cheap but may lag slightly behind.  A busy spinning thread
+ * bumps its idle counter on every cycle, so the counters are padded onto a cache line of their own: producers calling
+ * signal read the object header and the fields of the implementation, which must not be invalidated on every spin.
+ */
+public abstract class WaitStrategy extends WaitStrategyPad1 {
+
+    /**
+     * To be called by the consumer thread at the end of every duty cycle.
+     * @param workCount number of items processed in the cycle, zero means the thread was idle
+     */
+    public final void idle(int workCount) {
+        if (workCount > 0) {
+            WORK_CYCLES.lazySet(this, workCycles + 1);
+            reset();
+        } else {
+            IDLE_CYCLES.lazySet(this, idleCycles + 1);
+            waitForWork();
+        }
+    }
+
+    /**
+     * Called by producers once an item has been made available to the consumer.  Only strategies that block the
+     * consumer need to do anything here.
+     */
+    public void signal() {
+    }
+
+    /**
+     * @return number of duty cycles which found no work
+     */
+    public long getIdleCycles() {
+        return idleCycles;
+    }
+
+    /**
+     * @return number of duty cycles which processed at least one item
+     */
+    public long getWorkCycles() {
+        return workCycles;
+    }
+
+    /**
+     * Back off, called after a duty cycle which found no work
+     */
+    protected abstract void waitForWork();
+
+    /**
+     * Work was found, the next idle period should start backing off from scratch
+     */
+    protected void reset() {
+    }
+}
+
+abstract class WaitStrategyPad0 {
+    //The pads here and ahead of the hot fields of books, the distributor and TopOfBook start with an int, which takes
+    //the gap after the 12 byte object header that the JVM would otherwise fill with an int field of a subclass, leaving
+    //it unpadded on the line of whatever was allocated before.  CacheLineLayoutTest checks the offsets.
+    int p08;
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class WaitStrategyCounters extends WaitStrategyPad0 {
+
+    static final AtomicLongFieldUpdater<WaitStrategyCounters> IDLE_CYCLES =
+            AtomicLongFieldUpdater.newUpdater(WaitStrategyCounters.class, "idleCycles");
+    static final AtomicLongFieldUpdater<WaitStrategyCounters> WORK_CYCLES =
+            AtomicLongFieldUpdater.newUpdater(WaitStrategyCounters.class, "workCycles");
+
+    protected volatile long idleCycles;
+    protected volatile long workCycles;
+}
+
+abstract class WaitStrategyPad1 extends WaitStrategyCounters {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
@@ -1,6 +1,58 @@
 package com.crypto.data;
 
-public enum CcyPair {
-    BTCUSD,
-    ETHUSD
+/**
+ * A tradable currency pair.  Prices and quantities travel through the engine as longs, priceScale gives the number
+ * of decimals they carry.  Limit prices must be a multiple of the tick size and order quantities a multiple of the
+ * lot size.  The id is the pair's slot in the InstrumentRegistry and indexes its books, so it must be unique among
+ * the pairs which are registered at the same time.
+ */
+public final class CcyPair {
+
+    public static final CcyPair BTCUSD = new CcyPair(0, Constants.BTCUSD, 1, 1, 0);
+    public static final CcyPair ETHUSD = new CcyPair(1, Constants.ETHUSD, 1, 1, 0);
+
+    private final int id;
+    private final String symbol;
+    private final long tickSize;
+    private final long lotSize;
+    private final int priceScale;
+
+    public CcyPair(int id, String symbol, long tickSize, long lotSize, int priceScale) {
+        if (id < 0 || id >= InstrumentRegistry.MAX_INSTRUMENTS) {
+            throw new IllegalArgumentException("Instrument id must be between 0 and " + (InstrumentRegistry.MAX_INSTRUMENTS - 1) + " but was " + id);
+        }
+        if (tickSize < 1 || lotSize < 1) {
+            throw new IllegalArgumentException("Tick and lot size must be positive for " + symbol + ", were " + tickSize + " and " + lotSize);
+        }
+        this.id = id;
+        this.symbol = symbol;
+        this.tickSize = tickSize;
+        this.lotSize = lotSize;
+        this.priceScale = priceScale;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getTickSize() {
+        return tickSize;
+    }
+
+    public long getLotSize() {
+        return lotSize;
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    @Override
+    public String toString() {
+        return symbol;
+    }
 }
@@ -11,4 +11,5 @@ public class Constants {
     public static final String BID = "BID";
     public static final String OFFER = "OFFER";
     public static final String MESSAGE_DELIMITER = ";";
+    public static final int DEFAULT_RING_BUFFER_CAPACITY = 1 << 16;
 }
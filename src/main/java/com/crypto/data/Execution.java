@@ -2,17 +2,19 @@ package com.crypto.data;
 
 /**
  * POJO representation of a response / execution message from the matching engine
+ *
+ * Plain fields, handed between threads only through a RingBuffer or the object pool, see RingBuffer.
  */
 
 public class Execution {
-    private volatile ExecutionType type;
-    private volatile long clientId;
-    private volatile long quantity;
-    private volatile long price;
-    private volatile CcyPair pair;
-    private volatile Side side;
-    private volatile long orderId;
-    private volatile long clientOrderId;
+    private ExecutionType type;
+    private long clientId;
+    private long quantity;
+    private long price;
+    private CcyPair pair;
+    private Side side;
+    private long orderId;
+    private long clientOrderId;
 
     public void setClientId(long clientId) {
         this.clientId = clientId;
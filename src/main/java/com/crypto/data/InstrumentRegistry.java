@@ -0,0 +1,134 @@
+package com.crypto.data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The currency pairs the engine currently trades, looked up by id or by symbol.  Pairs can be registered and
+ * unregistered while the engine is running, lookups never lock nor allocate.
+ *
+ * Parsers looking symbols up straight out of the text they scan use an open addressing table of their own, keyed by
+ * the characters of the symbol.  It is copied and swapped in whole on every change, changes being rare.
+ */
+public class InstrumentRegistry {
+
+    public static final int MAX_INSTRUMENTS = 1 << 10;
+
+    private static final int MIN_SYMBOL_TABLE_SIZE = 16;
+
+    private final AtomicReferenceArray<CcyPair> pairsById = new AtomicReferenceArray<>(MAX_INSTRUMENTS);
+    private final ConcurrentHashMap<String, CcyPair> pairsBySymbol = new ConcurrentHashMap<>();
+    private volatile CcyPair[] symbolTable = new CcyPair[MIN_SYMBOL_TABLE_SIZE];
+
+    /**
+     * @return a registry holding the pairs traded out of the box, BTCUSD and ETHUSD
+     */
+    public static InstrumentRegistry withDefaultPairs() {
+        InstrumentRegistry registry = new InstrumentRegistry();
+        registry.register(CcyPair.BTCUSD);
+        registry.register(CcyPair.ETHUSD);
+        return registry;
+    }
+
+    /**
+     * @param pair pair to start trading
+     * @throws IllegalStateException if the id or symbol is already taken by another pair
+     */
+    public synchronized void register(CcyPair pair) {
+        CcyPair existing = pairsById.get(pair.getId());
+        if (existing != null) {
+            throw new IllegalStateException("Instrument id " + pair.getId() + " is already taken by " + existing);
+        }
+        if (pairsBySymbol.putIfAbsent(pair.getSymbol(), pair) != null) {
+            throw new IllegalStateException("Symbol " + pair.getSymbol() + " is already registered");
+        }
+        pairsById.set(pair.getId(), pair);
+        rebuildSymbolTable();
+    }
+
+    /**
+     * @param pair pair to stop trading, new messages for it will no longer be parsed
+     * @return true if the pair was registered
+     */
+    public synchronized boolean unregister(CcyPair pair) {
+        if (pairsById.get(pair.getId()) != pair) {
+            return false;
+        }
+        pairsBySymbol.remove(pair.getSymbol());
+        pairsById.set(pair.getId(), null);
+        rebuildSymbolTable();
+        return true;
+    }
+
+    /**
+     * @return the pair registered under the id, null if there is none
+     */
+    public CcyPair getById(int id) {
+        return id >= 0 && id < MAX_INSTRUMENTS ? pairsById.get(id) : null;
+    }
+
+    /**
+     * @return the pair registered under the symbol, null if there is none
+     */
+    public CcyPair getBySymbol(String symbol) {
+        return pairsBySymbol.get(symbol);
+    }
+
+    /**
+     * Look a symbol up without creating a String of it
+     * @param text text holding the symbol
+     * @param start index of the first character of the symbol
+     * @param end index after the last character of the symbol
+     * @return the pair registered under the symbol, null if there is none
+     */
+    public CcyPair getBySymbol(CharSequence text, int start, int end) {
+        CcyPair[] table = symbolTable;
+        int mask = table.length - 1;
+        for (int slot = symbolHash(text, start, end) & mask; ; slot = (slot + 1) & mask) {
+            CcyPair pair = table[slot];
+            if (pair == null) {
+                return null;
+            }
+            if (symbolMatches(pair.getSymbol(), text, start, end)) {
+                return pair;
+            }
+        }
+    }
+
+    private void rebuildSymbolTable() {
+        int size = MIN_SYMBOL_TABLE_SIZE;
+        while (size < pairsBySymbol.size() * 2) {
+            size <<= 1;
+        }
+        CcyPair[] table = new CcyPair[size];
+        for (CcyPair pair : pairsBySymbol.values()) {
+            String symbol = pair.getSymbol();
+            int slot = symbolHash(symbol, 0, symbol.length()) & (size - 1);
+            while (table[slot] != null) {
+                slot = (slot + 1) & (size - 1);
+            }
+            table[slot] = pair;
+        }
+        symbolTable = table;
+    }
+
+    private static int symbolHash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean symbolMatches(String symbol, CharSequence text, int start, int end) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package com.crypto.data;
+
+/**
+ * Kinds of market data update a book publishes.  TopOfBook is level 1, PriceLevel level 2 and the order updates level
+ * 3.  A snapshot is the SnapshotLevel and SnapshotOrder updates between a SnapshotStart and a SnapshotEnd, each level
+ * followed by its orders, best level first.  A snapshot may take several duty cycles of the book, with live updates
+ * in between, see BookMarketData for which of those a consumer applies.
+ */
+public enum MarketDataType {
+    TopOfBook,
+    PriceLevel,
+    OrderAdded,
+    OrderReduced,
+    OrderRemoved,
+    SnapshotStart,
+    SnapshotLevel,
+    SnapshotOrder,
+    SnapshotEnd
+}
@@ -0,0 +1,100 @@
+package com.crypto.data;
+
+/**
+ * POJO representation of a market data update of one side of a book.  Updates are numbered per book side, a gap in
+ * the sequence means order updates were lost.
+ *
+ * TopOfBook, PriceLevel and SnapshotLevel carry the price, the quantity resting at it and the number of orders, a
+ * quantity of 0 meaning the side or the level is empty.  The order updates and SnapshotOrder carry the order id, its
+ * price and the size left resting, 0 once the order is filled or cancelled.
+ *
+ * Plain fields, handed between threads only through a RingBuffer or the object pool, see RingBuffer.
+ */
+public class MarketDataUpdate {
+    private MarketDataType type;
+    private CcyPair pair;
+    private Side side;
+    private long sequence;
+    private long orderId;
+    private long price;
+    private long quantity;
+    private int orderCount;
+
+    public MarketDataType getType() {
+        return type;
+    }
+
+    public void setType(MarketDataType type) {
+        this.type = type;
+    }
+
+    public CcyPair getPair() {
+        return pair;
+    }
+
+    public void setPair(CcyPair pair) {
+        this.pair = pair;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public void setSide(Side side) {
+        this.side = side;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(long orderId) {
+        this.orderId = orderId;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public void setPrice(long price) {
+        this.price = price;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(int orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    @Override
+    public String toString() {
+        return "MarketDataUpdate{" +
+                "type=" + type +
+                ", pair=" + pair +
+                ", side=" + side +
+                ", sequence=" + sequence +
+                ", orderId=" + orderId +
+                ", price=" + price +
+                ", quantity=" + quantity +
+                ", orderCount=" + orderCount +
+                '}';
+    }
+}
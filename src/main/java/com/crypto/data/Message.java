@@ -3,17 +3,19 @@ package com.crypto.data;
 
 /**
  * Representing an instruction type message from clients to the matching engine for processing
+ *
+ * Plain fields, handed between threads only through a RingBuffer or the object pool, see RingBuffer.
  */
 public class Message {
 
-    private volatile MessageType type;
-    private volatile CcyPair pair;
-    private volatile Side side;
-    private volatile long quantity;
-    private volatile long price;
-    private volatile long orderId;
-    private volatile long clientId;
-    private volatile long clientOrderId;
+    private MessageType type;
+    private CcyPair pair;
+    private Side side;
+    private long quantity;
+    private long price;
+    private long orderId;
+    private long clientId;
+    private long clientOrderId;
 
 
     public MessageType getType() {
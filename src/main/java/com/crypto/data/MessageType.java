@@ -6,5 +6,7 @@ public enum MessageType {
     NewLimitOrder,
     CancelOrder,
     CancelAllOrders,
+    //Engine internal, hands a book over from one shard to another
+    TransferBook,
 
 }
@@ -4,11 +4,15 @@ import com.crypto.engine.LimitLevel;
 
 /**
  * Internal representation of an order in a order book.  The order has knowledge of the order infront and behind
- * in the queue on the particular limit, this allows for O(1) removal and matching should such occur.
+ * in the queue on the particular limit, this allows for O(1) removal and matching should such occur.  It is also
+ * linked to the other resting orders of the same client, allowing mass cancels without a per client collection.
+ * Books keeping their orders on the heap address each order by its index in their order store.
  */
 public class Order {
     private Order head;
     private Order tail;
+    private Order previousClientOrder;
+    private Order nextClientOrder;
     private CcyPair pair;
     private Side side;
     private long orderId;
@@ -16,6 +20,8 @@ public class Order {
     private long clientId;
     private LimitLevel limitLevel;
     private long clientOrderId;
+    private int index;
+    private int levelPosition;
 
     public void setTail(Order order){
         tail = order;
@@ -24,6 +30,42 @@ public class Order {
         head = order;
     }
 
+    public Order getHead() {
+        return head;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getLevelPosition() {
+        return levelPosition;
+    }
+
+    public void setLevelPosition(int levelPosition) {
+        this.levelPosition = levelPosition;
+    }
+
+    public Order getPreviousClientOrder() {
+        return previousClientOrder;
+    }
+
+    public void setPreviousClientOrder(Order previousClientOrder) {
+        this.previousClientOrder = previousClientOrder;
+    }
+
+    public Order getNextClientOrder() {
+        return nextClientOrder;
+    }
+
+    public void setNextClientOrder(Order nextClientOrder) {
+        this.nextClientOrder = nextClientOrder;
+    }
+
     public long getSize() {
         return size;
     }
@@ -56,28 +98,6 @@ public class Order {
         return orderId;
     }
 
-    /**
-     * Cancels orders and ties up adjacent orders in the linked list of orders on the particular price.
-     *
-     * @return true if this was the last order on the particular price. If so, the limit level should be discarded, else false
-     */
-    public boolean cancelOrder(){
-        if(head != null && tail != null){
-            tail.setHead(head);
-            head.setTail(tail);
-            return false;
-        }else if(head != null){
-            head.setTail(null);
-            limitLevel.setOutsideOfBookOrder(head);
-            return false;
-        }else if(tail != null){
-            tail.setHead(null);
-            limitLevel.setInsideOfBookOrder(tail);
-            return false;
-        }else{
-            return true;
-        }
-    }
     public long getClientOrderId() {
         return clientOrderId;
     }
@@ -86,14 +106,16 @@ public class Order {
         this.clientOrderId = clientOrderId;
     }
 
-    public void populate(long id, Message message, LimitLevel limitLevel) {
+    public void populate(long id, long clientId, long clientOrderId, long size, CcyPair pair, Side side, LimitLevel limitLevel) {
         this.orderId = id;
         this.limitLevel = limitLevel;
-        this.pair = message.getPair();
-        this.side = message.getSide();
-        this.size = message.getQuantity();
-        this.clientId = message.getClientId();
-        this.clientOrderId = message.getClientOrderId();
+        this.pair = pair;
+        this.side = side;
+        this.size = size;
+        this.clientId = clientId;
+        this.clientOrderId = clientOrderId;
+        this.previousClientOrder = null;
+        this.nextClientOrder = null;
     }
 
     @Override
@@ -0,0 +1,187 @@
+package com.crypto.engine;
+
+import com.crypto.data.Execution;
+import com.crypto.feed.ObjectPool;
+
+import static com.crypto.engine.OrderStore.NONE;
+
+/**
+ * A price level keeping its queue in parallel arrays of order index, order id, client id, client order id and size
+ * rather than linked through the order store, so a sweep through a deep level reads each array front to back instead
+ * of one order store entry per order hit.
+ *
+ * The arrays form a ring addressed by ever increasing positions, the slot of a position being the position masked by
+ * the capacity.  Orders join at the tail and are filled from the head.  A cancelled order leaves a tombstone in its
+ * slot, found through the position the order store keeps for the order.  Tombstones at either end are dropped at once,
+ * those in between are compacted away once they take up half the queue.  The ring doubles when full and keeps its
+ * arrays when the level goes back to the pool.
+ */
+class ArrayLimitLevel extends LimitLevel {
+
+    private static final int INITIAL_CAPACITY = 16;
+    //Below this many tombstones compacting costs more than skipping them
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 32;
+
+    private int[] queue = new int[INITIAL_CAPACITY];
+    private long[] orderIds = new long[INITIAL_CAPACITY];
+    private long[] clientIds = new long[INITIAL_CAPACITY];
+    private long[] clientOrderIds = new long[INITIAL_CAPACITY];
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    //Position of the order first in line, equal to tail when the level is empty
+    private int head;
+    //Position the next order joins at
+    private int tail;
+    private int tombstones;
+
+    @Override
+    public void populate(long price, ObjectPool<Execution> executionObjectPool, OrderBookProcessor processor) {
+        super.populate(price, executionObjectPool, processor);
+        head = 0;
+        tail = 0;
+        tombstones = 0;
+    }
+
+    @Override
+    void enqueue(int order) {
+        if (tail - head == queue.length) {
+            grow();
+        }
+        int slot = tail & mask;
+        queue[slot] = order;
+        orderIds[slot] = orders.getOrderId(order);
+        clientIds[slot] = orders.getClientId(order);
+        clientOrderIds[slot] = orders.getClientOrderId(order);
+        sizes[slot] = orders.getSize(order);
+        orders.setLevelPosition(order, tail);
+        tail++;
+    }
+
+    @Override
+    public int peekInsideOfBook() {
+        return head == tail ? NONE : queue[head & mask];
+    }
+
+    @Override
+    public int nextOrder(int order) {
+        for (int position = orders.getLevelPosition(order) + 1; position != tail; position++) {
+            int next = queue[position & mask];
+            if (next != NONE) {
+                return next;
+            }
+        }
+        return NONE;
+    }
+
+    @Override
+    public long getInsideOfBookOrderId() {
+        return orderIds[head & mask];
+    }
+
+    @Override
+    public long getInsideOfBookClientId() {
+        return clientIds[head & mask];
+    }
+
+    @Override
+    public long getInsideOfBookClientOrderId() {
+        return clientOrderIds[head & mask];
+    }
+
+    @Override
+    public long getInsideOfBookSize() {
+        return sizes[head & mask];
+    }
+
+    @Override
+    void dequeue() {
+        head++;
+        dropTombstonesAtHead();
+    }
+
+    @Override
+    public void reduceOrder(int order, long fillSize) {
+        super.reduceOrder(order, fillSize);
+        sizes[orders.getLevelPosition(order) & mask] -= fillSize;
+    }
+
+    @Override
+    void unlink(int order) {
+        int position = orders.getLevelPosition(order);
+        queue[position & mask] = NONE;
+        tombstones++;
+        if (position == head) {
+            dropTombstonesAtHead();
+        } else if (position == tail - 1) {
+            while (queue[(tail - 1) & mask] == NONE) {
+                tail--;
+                tombstones--;
+            }
+        } else if (tombstones >= MIN_TOMBSTONES_TO_COMPACT && tombstones << 1 >= tail - head) {
+            compact();
+        }
+    }
+
+    private void dropTombstonesAtHead() {
+        while (head != tail && queue[head & mask] == NONE) {
+            head++;
+            tombstones--;
+        }
+    }
+
+    /**
+     * Close the gaps left by cancelled orders, moving the orders behind them forward in line and telling the order
+     * store their new positions
+     */
+    private void compact() {
+        int to = head;
+        for (int from = head; from != tail; from++) {
+            int fromSlot = from & mask;
+            int order = queue[fromSlot];
+            if (order == NONE) {
+                continue;
+            }
+            if (from != to) {
+                int toSlot = to & mask;
+                queue[toSlot] = order;
+                orderIds[toSlot] = orderIds[fromSlot];
+                clientIds[toSlot] = clientIds[fromSlot];
+                clientOrderIds[toSlot] = clientOrderIds[fromSlot];
+                sizes[toSlot] = sizes[fromSlot];
+                orders.setLevelPosition(order, to);
+            }
+            to++;
+        }
+        tail = to;
+        tombstones = 0;
+    }
+
+    /**
+     * Double the ring.  Every position keeps its order, only the slots change with the mask, so the positions the
+     * order store holds stay valid.
+     */
+    private void grow() {
+        int capacity = queue.length << 1;
+        int newMask = capacity - 1;
+        int[] newQueue = new int[capacity];
+        long[] newOrderIds = new long[capacity];
+        long[] newClientIds = new long[capacity];
+        long[] newClientOrderIds = new long[capacity];
+        long[] newSizes = new long[capacity];
+        for (int position = head; position != tail; position++) {
+            int from = position & mask;
+            int to = position & newMask;
+            newQueue[to] = queue[from];
+            newOrderIds[to] = orderIds[from];
+            newClientIds[to] = clientIds[from];
+            newClientOrderIds[to] = clientOrderIds[from];
+            newSizes[to] = sizes[from];
+        }
+        queue = newQueue;
+        orderIds = newOrderIds;
+        clientIds = newClientIds;
+        clientOrderIds = newClientOrderIds;
+        sizes = newSizes;
+        mask = newMask;
+    }
+}
@@ -1,23 +1,26 @@
 package com.crypto.engine;
 
+import com.crypto.concurrent.RingBuffer;
 import com.crypto.data.*;
 import com.crypto.feed.ObjectPool;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of the Bid side of an order book
  */
 public class BidOrderBookProcessor extends OrderBookProcessor{
 
-    public BidOrderBookProcessor(CcyPair pair, ObjectPool<Order> orderObjectPool, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, ConcurrentLinkedQueue<Message> distributorInboundQueue, ConcurrentLinkedQueue<Execution> executionPublishQueue, AtomicLong orderCounter) {
-        super(pair, orderObjectPool, executionObjectPool, messageObjectPool, distributorInboundQueue, executionPublishQueue, orderCounter);
+    public BidOrderBookProcessor(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Message> distributorInboundQueue, RingBuffer<Execution> executionPublishQueue) {
+        super(pair, executionObjectPool, messageObjectPool, distributorInboundQueue, executionPublishQueue);
+    }
+
+    BidOrderBookProcessor(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Execution> executionPublishQueue) {
+        super(pair, executionObjectPool, messageObjectPool, executionPublishQueue);
     }
 
     @Override
     protected boolean priceCrossingSpread(long price) {
-        return price >= correspondingProcessor.getTopOfBookPrice();
+        return price >= correspondingProcessor.getPublishedTopOfBook().getPrice();
     }
 
     @Override
@@ -40,36 +43,8 @@ public class BidOrderBookProcessor extends OrderBookProcessor{
         return limitLevelToExecute.getNextLower();
     }
 
-    /**
-     * Limits are ordered in a sorted double linked list. When a new limit arrives, we traverse the list and insert
-     * at the appropriate spot
-     * @param limitToInsert new price level to be added
-     * @param currentLimitLevel limit price level to compare to, normally start at top of book
-     */
-    protected void insertInChain(LimitLevel limitToInsert, LimitLevel currentLimitLevel) {
-            if (limitToInsert.getPrice() > currentLimitLevel.getPrice()) {
-                LimitLevel limitAboveCurrent = currentLimitLevel.getNextHigher();
-                if (limitAboveCurrent == null) {
-                    //We're inserting a new best price
-                    currentLimitLevel.setNextHigher(limitToInsert);
-                    limitToInsert.setNextLower(currentLimitLevel);
-                    topOfBook = limitToInsert;
-                }else{
-                    //We're inserting a new price somewhere in the middle of the book
-                    limitAboveCurrent.setNextLower(limitToInsert);
-                    limitToInsert.setNextHigher(limitAboveCurrent);
-                    limitToInsert.setNextLower(currentLimitLevel);
-                    currentLimitLevel.setNextHigher(currentLimitLevel);
-                }
-                return;
-
-            } else if (currentLimitLevel.getNextLower() == null) {
-                //We're inserting a price at the bottom of the book
-                currentLimitLevel.setNextLower(limitToInsert);
-                limitToInsert.setNextHigher(currentLimitLevel);
-                return;
-            }
-            //Recurse and step to the next limit in the book
-            insertInChain(limitToInsert, currentLimitLevel.getNextLower());
+    @Override
+    protected boolean isBetterPrice(long price, long comparedTo) {
+        return price > comparedTo;
     }
 }
@@ -0,0 +1,275 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.data.MarketDataType;
+import com.crypto.data.MarketDataUpdate;
+import com.crypto.feed.ObjectPool;
+
+import static com.crypto.engine.OrderStore.NONE;
+
+/**
+ * Market data of one side of a book, only ever touched by the thread running the book.  Order updates (level 3) are
+ * published as they happen.  Price levels (level 2) are marked dirty as their orders change and published with the
+ * state they are in once the message is processed, the top of book (level 1) whenever it differs from what was last
+ * published.  A level touched by many orders of a sweep, or many times while the consumer is behind, goes out once.
+ *
+ * Nothing here waits for the consumer.  Level and top of book updates which do not fit into the queue stay dirty and
+ * go out with a later message or when the book is idle.  Order updates which do not fit are dropped, their sequence
+ * numbers are used up all the same so the consumer sees the gap, and a snapshot follows as soon as it fits.  Should
+ * more levels be dirty than can be tracked, they are dropped for a snapshot too.
+ *
+ * A snapshot goes out in chunks, one per message processed or idle duty cycle, each taking at most half the room left
+ * in the queue so live updates keep fitting however deep the book is.  It walks the book from the top, a level then
+ * its orders in queue order, which are also the order of their ids.  What was sent last is the cursor, and a consumer
+ * rebuilding the book applies a live order update only at or ahead of the cursor, that is at a better price or at the
+ * cursor's price with an order id no higher than the cursor's.  Anything behind the cursor is still to come in the
+ * snapshot with its state as of then.  PriceLevel updates are applied the same way, by price alone.  A snapshot
+ * requested while one is under way, because an update was lost, starts over with a new SnapshotStart.
+ *
+ * The queue must only be offered to by the thread running the book, which is what lets a snapshot chunk check up
+ * front that it fits.  Both sides of a pair run on one thread may share it.
+ */
+class BookMarketData {
+
+    private static final int MAX_DIRTY_LEVELS = 1 << 12;
+    private static final long NO_ORDER_ID = -1;
+
+    private final OrderBookProcessor book;
+    private final RingBuffer<MarketDataUpdate> marketDataQueue;
+    private final ObjectPool<MarketDataUpdate> updatePool;
+    private final int snapshotInterval;
+    //Prices of the levels changed since they were last published, a level removed and added again may be in twice
+    private final long[] dirtyPrices = new long[MAX_DIRTY_LEVELS];
+    private int dirtyCount;
+    private long sequence;
+    private int messagesSinceSnapshot;
+    //The first snapshot tells consumers what the book holds when market data starts
+    private boolean snapshotPending = true;
+    private boolean snapshotInProgress;
+    //Price of the last level the snapshot under way sent, valid once it sent one
+    private boolean snapshotLevelSent;
+    private long snapshotPrice;
+    //Id of the last order of that level the snapshot sent, NO_ORDER_ID until it sent one
+    private long snapshotOrderId;
+    private long publishedTopPrice;
+    private long publishedTopQuantity;
+    private int publishedTopOrderCount;
+
+    BookMarketData(OrderBookProcessor book, RingBuffer<MarketDataUpdate> marketDataQueue, ObjectPool<MarketDataUpdate> updatePool, int snapshotInterval) {
+        this.book = book;
+        this.marketDataQueue = marketDataQueue;
+        this.updatePool = updatePool;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    void orderAdded(int order) {
+        publishOrder(MarketDataType.OrderAdded, order, book.getOrderStore().getSize(order));
+    }
+
+    void orderReduced(int order) {
+        publishOrder(MarketDataType.OrderReduced, order, book.getOrderStore().getSize(order));
+    }
+
+    /**
+     * To be called before the order is removed from the store and before its level is removed from the book
+     */
+    void orderRemoved(int order) {
+        publishOrder(MarketDataType.OrderRemoved, order, 0);
+    }
+
+    private void publishOrder(MarketDataType type, int order, long size) {
+        OrderStore orders = book.getOrderStore();
+        LimitLevel level = orders.getLevel(order);
+        markDirty(level);
+        MarketDataUpdate update = acquire(type);
+        update.setOrderId(orders.getOrderId(order));
+        update.setPrice(level.getPrice());
+        update.setQuantity(size);
+        if (!offer(update)) {
+            //Lost for good, the gap in the sequence tells the consumer and the snapshot brings it back in line
+            sequence++;
+            snapshotPending = true;
+        }
+    }
+
+    private void markDirty(LimitLevel level) {
+        if (level.isMarketDataDirty()) {
+            return;
+        }
+        if (dirtyCount == MAX_DIRTY_LEVELS) {
+            snapshotPending = true;
+            return;
+        }
+        level.setMarketDataDirty(true);
+        dirtyPrices[dirtyCount++] = level.getPrice();
+    }
+
+    /**
+     * Publish what the message just processed changed, and a snapshot if one is due
+     */
+    void messageProcessed() {
+        //Counted from the start of a snapshot, which is left to finish before the next is due
+        if (snapshotInterval > 0 && !snapshotInProgress && ++messagesSinceSnapshot >= snapshotInterval) {
+            snapshotPending = true;
+        }
+        publish();
+    }
+
+    /**
+     * Publish the next chunk of a snapshot if one is pending or under way, then the levels and top of book still
+     * dirty, as far as the queue has room
+     */
+    void publish() {
+        if (snapshotPending || snapshotInProgress) {
+            publishSnapshotChunk();
+        }
+        publishDirtyLevels();
+        publishTopOfBook();
+    }
+
+    private void publishSnapshotChunk() {
+        int room = (marketDataQueue.capacity() - marketDataQueue.size()) / 2;
+        if (snapshotPending) {
+            if (room == 0) {
+                return;
+            }
+            //Whatever is dirty now is covered by the snapshot, levels changed from here on go out as usual
+            clearDirtyLevels();
+            offer(acquire(MarketDataType.SnapshotStart));
+            room--;
+            snapshotPending = false;
+            snapshotInProgress = true;
+            snapshotLevelSent = false;
+            messagesSinceSnapshot = 0;
+        }
+
+        LimitLevel level;
+        if (!snapshotLevelSent) {
+            level = book.getTopOfBook();
+        } else {
+            level = book.getPriceLevel(snapshotPrice);
+            if (level == null) {
+                level = book.getLevelWorseThan(snapshotPrice);
+            }
+        }
+        OrderStore orders = book.getOrderStore();
+        for (; level != null; level = book.getNextLevelLimit(level)) {
+            if (!snapshotLevelSent || level.getPrice() != snapshotPrice) {
+                if (room == 0) {
+                    return;
+                }
+                offer(levelUpdate(MarketDataType.SnapshotLevel, level.getPrice(), level.getQuantity(), level.getOrderCount()));
+                room--;
+                snapshotLevelSent = true;
+                snapshotPrice = level.getPrice();
+                snapshotOrderId = NO_ORDER_ID;
+            }
+            for (int order = level.peekInsideOfBook(); order != NONE; order = level.nextOrder(order)) {
+                long orderId = orders.getOrderId(order);
+                if (orderId <= snapshotOrderId) {
+                    continue;
+                }
+                if (room == 0) {
+                    return;
+                }
+                MarketDataUpdate update = acquire(MarketDataType.SnapshotOrder);
+                update.setOrderId(orderId);
+                update.setPrice(level.getPrice());
+                update.setQuantity(orders.getSize(order));
+                offer(update);
+                room--;
+                snapshotOrderId = orderId;
+            }
+        }
+        if (room == 0) {
+            return;
+        }
+        offer(acquire(MarketDataType.SnapshotEnd));
+        snapshotInProgress = false;
+    }
+
+    private void publishDirtyLevels() {
+        int published = 0;
+        while (published < dirtyCount) {
+            long price = dirtyPrices[published];
+            LimitLevel level = book.getPriceLevel(price);
+            if (level != null && !level.isMarketDataDirty()) {
+                //Already published under an earlier entry of the same price
+                published++;
+                continue;
+            }
+            MarketDataUpdate update = level == null
+                    ? levelUpdate(MarketDataType.PriceLevel, price, 0, 0)
+                    : levelUpdate(MarketDataType.PriceLevel, price, level.getQuantity(), level.getOrderCount());
+            if (!offer(update)) {
+                break;
+            }
+            if (level != null) {
+                level.setMarketDataDirty(false);
+            }
+            published++;
+        }
+        System.arraycopy(dirtyPrices, published, dirtyPrices, 0, dirtyCount - published);
+        dirtyCount -= published;
+    }
+
+    private void clearDirtyLevels() {
+        for (int i = 0; i < dirtyCount; i++) {
+            LimitLevel level = book.getPriceLevel(dirtyPrices[i]);
+            if (level != null) {
+                level.setMarketDataDirty(false);
+            }
+        }
+        dirtyCount = 0;
+    }
+
+    private void publishTopOfBook() {
+        LimitLevel top = book.getTopOfBook();
+        long price = top == null ? 0 : top.getPrice();
+        long quantity = top == null ? 0 : top.getQuantity();
+        int orderCount = top == null ? 0 : top.getOrderCount();
+        if (price == publishedTopPrice && quantity == publishedTopQuantity && orderCount == publishedTopOrderCount) {
+            return;
+        }
+        if (offer(levelUpdate(MarketDataType.TopOfBook, price, quantity, orderCount))) {
+            publishedTopPrice = price;
+            publishedTopQuantity = quantity;
+            publishedTopOrderCount = orderCount;
+        }
+    }
+
+    private MarketDataUpdate levelUpdate(MarketDataType type, long price, long quantity, int orderCount) {
+        MarketDataUpdate update = acquire(type);
+        update.setPrice(price);
+        update.setQuantity(quantity);
+        update.setOrderCount(orderCount);
+        return update;
+    }
+
+    private MarketDataUpdate acquire(MarketDataType type) {
+        MarketDataUpdate update = updatePool.acquireObject();
+        //Pooled updates keep the fields of their last use, every field is written
+        update.setType(type);
+        update.setPair(book.getPair());
+        update.setSide(book.getSide());
+        update.setOrderId(0);
+        update.setPrice(0);
+        update.setQuantity(0);
+        update.setOrderCount(0);
+        return update;
+    }
+
+    /**
+     * @return true if the update was queued under the next sequence, false if the queue was full and the update went
+     * back to the pool without using up a sequence
+     */
+    private boolean offer(MarketDataUpdate update) {
+        update.setSequence(sequence + 1);
+        if (!marketDataQueue.offer(update)) {
+            updatePool.returnObject(update);
+            return false;
+        }
+        sequence++;
+        return true;
+    }
+}
@@ -0,0 +1,178 @@
+package com.crypto.engine;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary snapshot of the resting orders of a set of books, taken at a journal sequence.  Restoring the snapshot and
+ * replaying the journal after that sequence rebuilds the books without replaying the journal from the start.
+ *
+ * Orders are written best price first and in time priority within a price, so restoring them in the order they were
+ * read rebuilds every queue as it was.  Together with the order sequence of each book, the restored books publish
+ * the same executions and hand out the same ids the snapshot books would have.
+ *
+ * A snapshot is written to a temporary file which is forced and then renamed, so a file under the snapshot name is
+ * always complete.  All fields are little endian.
+ *
+ * <pre>
+ * header       magic int, version int, journal sequence long, book count int, reserved int
+ * per book     book index int, order count int, order sequence long
+ * per order    order id long, client id long, client order id long, price long, size long
+ * </pre>
+ */
+final class BookSnapshot {
+
+    static final int MAGIC = 0x4B4F4F42;
+    static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 24;
+    private static final int BOOK_HEADER_LENGTH = 16;
+    private static final int ORDER_LENGTH = 40;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private BookSnapshot() {
+    }
+
+    /**
+     * Write the resting orders of the books.  Only to be called from the thread processing the books.
+     * @param file file to write the snapshot to, replaced if it exists
+     * @param sequence journal sequence of the last message the books processed
+     * @param books books to snapshot
+     */
+    static void write(File file, long sequence, List<OrderBookProcessor> books) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(books.size()).putInt(0);
+
+            for (OrderBookProcessor book : books) {
+                reserve(channel, buffer, BOOK_HEADER_LENGTH);
+                int orderCount = book.getRestingOrderCount();
+                buffer.putInt(OrderIds.bookIndex(book.getPair(), book.getSide())).putInt(orderCount).putLong(book.getOrderSequence());
+
+                int written = 0;
+                OrderStore orders = book.getOrderStore();
+                for (LimitLevel level = book.getTopOfBook(); level != null; level = book.getNextLevelLimit(level)) {
+                    for (int order = level.peekInsideOfBook(); order != OrderStore.NONE; order = level.nextOrder(order)) {
+                        reserve(channel, buffer, ORDER_LENGTH);
+                        buffer.putLong(orders.getOrderId(order)).putLong(orders.getClientId(order)).putLong(orders.getClientOrderId(order))
+                                .putLong(level.getPrice()).putLong(orders.getSize(order));
+                        written++;
+                    }
+                }
+                if (written != orderCount) {
+                    throw new IllegalStateException("Book " + book.getPair() + " " + book.getSide() + " indexes " + orderCount + " orders but " + written + " rest on its levels");
+                }
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restore the resting orders of a snapshot into empty books which are not started yet, and tell the router which
+     * books the clients rest orders in
+     * @param file snapshot to restore
+     * @param booksByIndex books to restore into, indexed by book index.  Every book of the snapshot must be there.
+     * @param router router to hand the mass cancels of the restored clients to their books
+     * @return journal sequence the snapshot was taken at
+     */
+    static long read(File file, OrderBookProcessor[] booksByIndex, MessageRouter router) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            fill(channel, buffer, HEADER_LENGTH);
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " book snapshot");
+            }
+            long sequence = buffer.getLong();
+            int bookCount = buffer.getInt();
+            buffer.getInt();
+
+            long[] orderIds = new long[0];
+            for (int i = 0; i < bookCount; i++) {
+                fill(channel, buffer, BOOK_HEADER_LENGTH);
+                int bookIndex = buffer.getInt();
+                int orderCount = buffer.getInt();
+                long orderSequence = buffer.getLong();
+
+                OrderBookProcessor book = bookIndex < booksByIndex.length ? booksByIndex[bookIndex] : null;
+                if (book == null) {
+                    throw new IllegalStateException("Snapshot " + file + " holds book " + bookIndex + " which is not registered");
+                }
+                if (!book.isEmpty()) {
+                    throw new IllegalStateException("Book " + book.getPair() + " " + book.getSide() + " must be empty to restore a snapshot into");
+                }
+                if (orderCount > 0) {
+                    //Only the order index is sized up front, the client index grows with the clients found
+                    book.presize(orderCount, 1, 0);
+                }
+                if (orderIds.length < orderCount) {
+                    orderIds = new long[orderCount];
+                }
+
+                for (int order = 0; order < orderCount; order++) {
+                    fill(channel, buffer, ORDER_LENGTH);
+                    long orderId = buffer.getLong();
+                    long clientId = buffer.getLong();
+                    long clientOrderId = buffer.getLong();
+                    long price = buffer.getLong();
+                    long size = buffer.getLong();
+                    book.restoreOrder(orderId, clientId, clientOrderId, price, size);
+                    router.addClientBook(clientId, bookIndex);
+                    orderIds[order] = orderId;
+                }
+
+                Arrays.sort(orderIds, 0, orderCount);
+                book.linkRestoredClientOrders(orderIds, orderCount);
+                book.restoreOrderSequence(orderSequence);
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * Write out what is buffered if fewer than length bytes are left
+     */
+    private static void reserve(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Read on until at least length bytes are buffered
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < length) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Book snapshot ends part way through a record");
+            }
+        }
+        buffer.flip();
+    }
+}
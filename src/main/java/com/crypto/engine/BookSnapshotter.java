@@ -0,0 +1,164 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.CcyPair;
+import com.crypto.data.Execution;
+import com.crypto.data.Message;
+import com.crypto.feed.ObjectPool;
+import com.crypto.journal.InputJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * Takes periodic snapshots of the books without ever stopping them.  The snapshotter keeps replicas of the books of
+ * its pairs on its own thread, fed from the input journal rather than the live queues.  To take a snapshot it replays
+ * what was journalled since the last one into the replicas and writes them out, both at the sequence it replayed to,
+ * so the snapshot is consistent without the live books pausing at all.  The price is a second copy of the books in
+ * memory and a core replaying the journal while a snapshot is taken.
+ *
+ * A replica is a PairOrderBook, both sides on one thread, as the live books must be for the distributor to journal
+ * them at all.  Live and replica books are threaded alike, so a replica holds exactly what the live pair held at the
+ * same sequence.  Restore the snapshots into PairOrderBookProcessors, or a JournalReplayer built of them.
+ *
+ * Snapshots are named after their sequence in the snapshot directory and the last few are kept.  The replicas start
+ * from the latest one there, so only the journal after it is replayed.
+ */
+public class BookSnapshotter {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int RETAINED_SNAPSHOTS = 2;
+
+    private final InputJournal journal;
+    private final File directory;
+    private final JournalReplayer replica;
+
+    private volatile boolean runningFlag;
+    private Thread snapshotThread;
+
+    /**
+     * @param journal journal the distributor appends to
+     * @param directory directory to keep the snapshots in, created if missing
+     * @param pairs pairs whose books to snapshot
+     */
+    public BookSnapshotter(InputJournal journal, File directory, List<CcyPair> pairs) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create snapshot directory " + directory);
+        }
+        this.journal = journal;
+        this.directory = directory;
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        replica = new JournalReplayer(new MessageRouter(Collections.emptyList(), messagePool), messagePool, executionPublishQueue, executionPool);
+        for (CcyPair pair : pairs) {
+            replica.addBook(new PairOrderBook(pair, executionPool, messagePool, executionPublishQueue), new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY));
+        }
+
+        File latest = latestSnapshot(directory);
+        if (latest != null) {
+            replica.restore(latest);
+        }
+    }
+
+    /**
+     * Catch the replicas up with the journal and snapshot them, unless nothing was journalled since the last
+     * snapshot.  Only to be called from one thread at a time, and not while the snapshot thread runs.
+     * @return the latest snapshot, null if nothing has been journalled yet
+     */
+    public File snapshot() throws IOException {
+        long previousSequence = replica.getSequence();
+        replica.replay(journal, null);
+        long sequence = replica.getSequence();
+        if (sequence == 0) {
+            return null;
+        }
+
+        File snapshot = new File(directory, snapshotName(sequence));
+        if (sequence != previousSequence || !snapshot.exists()) {
+            replica.snapshot(snapshot);
+            deleteOldSnapshots();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Take a snapshot on a thread of its own every interval
+     */
+    public void start(long interval, TimeUnit unit) {
+        long intervalNanos = unit.toNanos(interval);
+        runningFlag = true;
+        snapshotThread = new Thread(() -> {
+            while (runningFlag) {
+                LockSupport.parkNanos(intervalNanos);
+                if (!runningFlag) {
+                    break;
+                }
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.out.println("Could not snapshot the books: " + e.getMessage());
+                }
+            }
+        }, "book-snapshotter");
+        snapshotThread.setDaemon(true);
+        snapshotThread.start();
+    }
+
+    /**
+     * Stop the snapshot thread, waiting for a snapshot being written to complete
+     */
+    public void shutdown() {
+        runningFlag = false;
+        if (snapshotThread != null) {
+            LockSupport.unpark(snapshotThread);
+            try {
+                snapshotThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the snapshot of the highest sequence in the directory, null if there is none
+     */
+    public static File latestSnapshot(File directory) {
+        File[] snapshots = snapshotFiles(directory);
+        return snapshots.length == 0 ? null : snapshots[snapshots.length - 1];
+    }
+
+    private void deleteOldSnapshots() {
+        File[] snapshots = snapshotFiles(directory);
+        for (int i = 0; i < snapshots.length - RETAINED_SNAPSHOTS; i++) {
+            if (!snapshots[i].delete()) {
+                System.out.println("Could not delete old snapshot " + snapshots[i]);
+            }
+        }
+    }
+
+    private static File[] snapshotFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        //Zero padded sequences, so sorting by name sorts by sequence
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static String snapshotName(long sequence) {
+        return String.format("%s%019d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX);
+    }
+}
@@ -0,0 +1,152 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+
+/**
+ * Startup phase getting the engine to trading speed before clients are let in.  Pools are filled and the indexes of
+ * the books sized up front, then a synthetic stream of limit orders, market orders, cancels and mass cancels is
+ * replayed through both sides of every pair so the JIT compiles the hot paths.  The books are left empty again.
+ *
+ * The replay runs on the calling thread and consumes what the books publish, so it must be run before the books are
+ * started and before anyone reads the execution queue.
+ */
+public class BookWarmUp {
+
+    public static final int DEFAULT_POOLED_OBJECTS = 1 << 16;
+    public static final int DEFAULT_LIMIT_LEVELS = 1 << 12;
+    public static final int DEFAULT_RESTING_ORDERS = 1 << 16;
+    public static final int DEFAULT_CLIENTS = 1 << 10;
+    public static final int DEFAULT_ROUNDS = 20_000;
+
+    //Client the synthetic orders are placed for, negative so it can not clash with a real one
+    private static final long WARM_UP_CLIENT_ID = -1;
+    private static final int LEVELS_TOUCHED = 32;
+    private static final int ROUNDS_PER_MASS_CANCEL = 64;
+
+    private final int messages;
+    private final int executions;
+    private final int limitLevels;
+    private final int restingOrders;
+    private final int clients;
+    private final int rounds;
+
+    public BookWarmUp() {
+        this(DEFAULT_POOLED_OBJECTS, DEFAULT_POOLED_OBJECTS, DEFAULT_LIMIT_LEVELS, DEFAULT_RESTING_ORDERS, DEFAULT_CLIENTS, DEFAULT_ROUNDS);
+    }
+
+    /**
+     * @param messages number of messages to prewarm the message pool with
+     * @param executions number of executions to prewarm the execution pool with
+     * @param limitLevels number of price levels to pool per book side
+     * @param restingOrders number of resting orders per book side to size the order index and order store for
+     * @param clients number of clients per book side to size the client index for
+     * @param rounds number of rounds of synthetic orders to replay through each pair
+     */
+    public BookWarmUp(int messages, int executions, int limitLevels, int restingOrders, int clients, int rounds) {
+        this.messages = messages;
+        this.executions = executions;
+        this.limitLevels = limitLevels;
+        this.restingOrders = restingOrders;
+        this.clients = clients;
+        this.rounds = rounds;
+    }
+
+    public void prewarmPools(ObjectPool<Message> messageObjectPool, ObjectPool<Execution> executionObjectPool) {
+        messageObjectPool.prewarm(messages);
+        executionObjectPool.prewarm(executions);
+    }
+
+    /**
+     * @return nanoseconds the warm up took
+     */
+    public long warmUp(PairOrderBookProcessor pairProcessor) {
+        return warmUp(pairProcessor.getBidProcessor(), pairProcessor.getOfferProcessor());
+    }
+
+    /**
+     * Size and replay the synthetic order stream through the two sides of a pair
+     * @return nanoseconds the warm up took
+     */
+    public long warmUp(OrderBookProcessor bidProcessor, OrderBookProcessor offerProcessor) {
+        long start = System.nanoTime();
+        bidProcessor.presize(restingOrders, clients, limitLevels);
+        offerProcessor.presize(restingOrders, clients, limitLevels);
+
+        CcyPair pair = bidProcessor.getPair();
+        ObjectPool<Message> messagePool = bidProcessor.messageObjectPool;
+        long tick = pair.getTickSize();
+        long lot = pair.getLotSize();
+        long mid = (1L << 20) * tick;
+
+        for (int round = 0; round < rounds; round++) {
+            long depth = round % LEVELS_TOUCHED + 1;
+
+            //A bid and an offer away from mid, then a market bid partially filling the best offer
+            bidProcessor.processMessage(order(messagePool, MessageType.NewLimitOrder, pair, Side.Bid, mid - depth * tick, 2 * lot, round));
+            long bidOrderId = drain(bidProcessor);
+            offerProcessor.processMessage(order(messagePool, MessageType.NewLimitOrder, pair, Side.Offer, mid + depth * tick, 2 * lot, round));
+            drain(offerProcessor);
+            offerProcessor.processMessage(order(messagePool, MessageType.NewMarketOrder, pair, Side.Bid, 0, lot, round));
+            drain(offerProcessor);
+
+            Message cancel = order(messagePool, MessageType.CancelOrder, pair, null, 0, 0, round);
+            cancel.setOrderId(bidOrderId);
+            bidProcessor.processMessage(cancel);
+            drain(bidProcessor);
+
+            if (round % ROUNDS_PER_MASS_CANCEL == ROUNDS_PER_MASS_CANCEL - 1) {
+                cancelAll(bidProcessor, offerProcessor, messagePool, pair);
+            }
+        }
+        cancelAll(bidProcessor, offerProcessor, messagePool, pair);
+
+        if (!bidProcessor.isEmpty() || !offerProcessor.isEmpty()) {
+            throw new IllegalStateException("Warm up left orders in the books of " + pair);
+        }
+        //Order ids must not depend on the warm up, a journal replayed into a fresh engine has to hit the same ids
+        bidProcessor.resetOrderSequence();
+        offerProcessor.resetOrderSequence();
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Warmed up books of " + pair + " in " + elapsed / 1_000_000 + " ms");
+        return elapsed;
+    }
+
+    private void cancelAll(OrderBookProcessor bidProcessor, OrderBookProcessor offerProcessor, ObjectPool<Message> messagePool, CcyPair pair) {
+        bidProcessor.processMessage(order(messagePool, MessageType.CancelAllOrders, pair, null, 0, 0, 0));
+        drain(bidProcessor);
+        offerProcessor.processMessage(order(messagePool, MessageType.CancelAllOrders, pair, null, 0, 0, 0));
+        drain(offerProcessor);
+    }
+
+    private static Message order(ObjectPool<Message> messagePool, MessageType type, CcyPair pair, Side side, long price, long quantity, long clientOrderId) {
+        Message message = messagePool.acquireObject();
+        message.setType(type);
+        message.setClientId(WARM_UP_CLIENT_ID);
+        message.setClientOrderId(clientOrderId);
+        message.setOrderId(0);
+        message.setPair(pair);
+        message.setSide(side);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        return message;
+    }
+
+    /**
+     * Hand what the book published back to the pool
+     * @return id of the last order accepted, 0 if none was
+     */
+    private static long drain(OrderBookProcessor processor) {
+        RingBuffer<Execution> executionQueue = processor.executionPublishQueue;
+        long acceptedOrderId = 0;
+        Execution execution;
+        while ((execution = executionQueue.poll()) != null) {
+            if (execution.getType() == ExecutionType.OrderAccepted) {
+                acceptedOrderId = execution.getOrderId();
+            }
+            processor.executionObjectPool.returnObject(execution);
+        }
+        return acceptedOrderId;
+    }
+}
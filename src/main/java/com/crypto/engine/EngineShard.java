@@ -0,0 +1,196 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.ThreadAffinity;
+import com.crypto.concurrent.WaitStrategy;
+import com.crypto.data.CcyPair;
+import com.crypto.data.InstrumentRegistry;
+import com.crypto.data.Message;
+import com.crypto.data.MessageType;
+import com.crypto.feed.ObjectPool;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * One engine thread hosting the books, both sides, of any number of pairs.  Messages for all of them arrive on a
+ * single queue and are dispatched on instrument id, cancels find the instrument through their order id.
+ *
+ * A book moves between shards without stopping either of them.  The distributor first marks the book as in transit
+ * on the receiving shard, then queues a TransferBook message to the giving shard and only then routes new messages
+ * for the pair to the receiving shard.  The giving shard hands the book over once it has processed everything queued
+ * before the transfer.  Should the receiving shard get a message for the book before that, it spins until the book
+ * arrives, which keeps the messages of the pair in order.
+ *
+ * When the queue is empty the shard publishes the market data its books still have pending, as a PairOrderBookProcessor
+ * does.  It keeps a list of its books for that, rebuilt on the shard thread whenever a book came or went.
+ */
+public class EngineShard {
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final Object IN_TRANSIT = new Object();
+
+    private final int shardId;
+    private final int cpu;
+    private final RingBuffer<Message> inboundQueue;
+    private final ObjectPool<Message> messageObjectPool;
+    private final AtomicReferenceArray<Object> books = new AtomicReferenceArray<>(InstrumentRegistry.MAX_INSTRUMENTS);
+    //Written by the distributor thread before it queues the TransferBook message, read by this thread after
+    private final EngineShard[] transferTargets = new EngineShard[InstrumentRegistry.MAX_INSTRUMENTS];
+    private final Consumer<Message> messageHandler = this::processMessage;
+    private final WaitStrategy waitStrategy;
+    private final Thread engineThread;
+    private volatile boolean runningFlag;
+    //Bumped whenever a book is hosted or handed over, by whichever thread did it
+    private final AtomicInteger bookChanges = new AtomicInteger();
+    //Only touched by the shard thread
+    private PairOrderBook[] hostedBooks = new PairOrderBook[0];
+    private int hostedBookCount;
+    private int hostedBookChanges;
+
+    /**
+     * @param cpu cpu to pin the shard thread to, ThreadAffinity.NO_AFFINITY to leave it to the scheduler
+     * @param waitStrategy strategy owned exclusively by this shard
+     */
+    public EngineShard(int shardId, int cpu, RingBuffer<Message> inboundQueue, ObjectPool<Message> messageObjectPool, WaitStrategy waitStrategy) {
+        this.shardId = shardId;
+        this.cpu = cpu;
+        this.inboundQueue = inboundQueue;
+        this.messageObjectPool = messageObjectPool;
+        this.waitStrategy = waitStrategy;
+        inboundQueue.setConsumerWaitStrategy(waitStrategy);
+
+        engineThread = new Thread(() -> {
+            if (ThreadAffinity.pinCurrentThread(cpu)) {
+                System.out.println("Engine shard [" + shardId + "] pinned to cpu " + cpu);
+            }
+            System.out.println("Engine shard [" + shardId + "] started.");
+
+            while (runningFlag) {
+                int drained = inboundQueue.drain(messageHandler, DRAIN_BATCH_SIZE);
+                if (drained == 0) {
+                    publishMarketData();
+                }
+                waitStrategy.idle(drained);
+            }
+        }, "engine-shard-" + shardId);
+    }
+
+    void processMessage(Message message) {
+        int instrumentId;
+        if (message.getType() == MessageType.CancelOrder) {
+            instrumentId = OrderIds.instrumentIdOf(message.getOrderId());
+        } else if (message.getPair() != null) {
+            instrumentId = message.getPair().getId();
+        } else {
+            System.out.println("Engine shard [" + shardId + "] can not tell which book " + message + " is for");
+            messageObjectPool.returnObject(message);
+            return;
+        }
+
+        if (message.getType() == MessageType.TransferBook) {
+            handOver(instrumentId);
+            messageObjectPool.returnObject(message);
+            return;
+        }
+
+        Object book = books.get(instrumentId);
+        while (book == IN_TRANSIT) {
+            //The giving shard is still working through messages queued before the transfer
+            book = books.get(instrumentId);
+        }
+        if (book == null) {
+            System.out.println("Engine shard [" + shardId + "] hosts no book for instrument " + instrumentId + ", dropping " + message.getType());
+            messageObjectPool.returnObject(message);
+            return;
+        }
+        ((PairOrderBook) book).processMessage(message);
+    }
+
+    private void handOver(int instrumentId) {
+        Object book = books.getAndSet(instrumentId, null);
+        bookChanges.incrementAndGet();
+        EngineShard target = transferTargets[instrumentId];
+        transferTargets[instrumentId] = null;
+        if (target != null) {
+            target.books.set(instrumentId, book);
+            target.bookChanges.incrementAndGet();
+        }
+    }
+
+    /**
+     * Publish whatever market data the books hosted have pending, for the shard thread to call when it is idle
+     */
+    private void publishMarketData() {
+        int changes = bookChanges.get();
+        if (changes != hostedBookChanges) {
+            hostedBookCount = 0;
+            for (int instrumentId = 0; instrumentId < books.length(); instrumentId++) {
+                Object book = books.get(instrumentId);
+                if (book instanceof PairOrderBook) {
+                    if (hostedBookCount == hostedBooks.length) {
+                        hostedBooks = Arrays.copyOf(hostedBooks, Math.max(4, hostedBookCount << 1));
+                    }
+                    hostedBooks[hostedBookCount++] = (PairOrderBook) book;
+                }
+            }
+            hostedBookChanges = changes;
+        }
+        for (int i = 0; i < hostedBookCount; i++) {
+            hostedBooks[i].publishMarketData();
+        }
+    }
+
+    /**
+     * Start hosting a book.  Only to be called by the distributor thread, before any message for the pair is routed
+     * here.
+     */
+    void host(PairOrderBook book) {
+        books.set(book.getPair().getId(), book);
+        bookChanges.incrementAndGet();
+    }
+
+    /**
+     * Hand the book of an instrument over to another shard, or drop it if target is null.  Only to be called by the
+     * distributor thread, which must route messages for the pair to the target from now on.
+     */
+    void transfer(CcyPair pair, EngineShard target) {
+        int instrumentId = pair.getId();
+        if (target != null) {
+            target.books.set(instrumentId, IN_TRANSIT);
+        }
+        transferTargets[instrumentId] = target;
+        Message transfer = messageObjectPool.acquireObject();
+        transfer.setType(MessageType.TransferBook);
+        transfer.setPair(pair);
+        inboundQueue.put(transfer);
+    }
+
+    public int getShardId() {
+        return shardId;
+    }
+
+    public int getCpu() {
+        return cpu;
+    }
+
+    public RingBuffer<Message> getInboundQueue() {
+        return inboundQueue;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void start() {
+        runningFlag = true;
+        engineThread.start();
+    }
+
+    public void shutdown() {
+        System.out.println("Engine shard [" + shardId + "] shutting down.");
+        runningFlag = false;
+    }
+}
@@ -0,0 +1,123 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.WaitStrategy;
+import com.crypto.data.Execution;
+import com.crypto.feed.ObjectPool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Output stage of the engine, the counterpart of the distributor.  Books publish the executions of every message as
+ * one batch onto their execution queue, the publisher thread drains the queues of all books in turn and hands each
+ * batch to every sink before returning the executions to the pool.
+ *
+ * Each book thread can be given an execution queue of its own, a SpscRingBuffer, so the books never contend with each
+ * other on the way out.  Books sharing a MpscRingBuffer contend once per message.  Executions of one queue reach the
+ * sinks in the order they were published, there is no order between queues.
+ */
+public class ExecutionPublisher {
+
+    private static final int BATCH_SIZE = 256;
+
+    private volatile boolean runningFlag = true;
+    private volatile RingBuffer<?>[] executionQueues;
+    private final ExecutionSink[] sinks;
+    private final ObjectPool<Execution> executionObjectPool;
+    private final WaitStrategy waitStrategy;
+    private final Thread publisherThread;
+    private final Execution[] batch = new Execution[BATCH_SIZE];
+    private final Consumer<Execution> batchCollector = this::collect;
+    private int batchSize;
+
+    /**
+     * @param executionQueues queues the books publish to, further ones can be added later on with addQueue
+     * @param sinks receivers of every execution, called in the order given
+     * @param executionObjectPool pool the executions are returned to once the sinks have seen them
+     * @param waitStrategy wait strategy of the publisher thread
+     */
+    public ExecutionPublisher(List<RingBuffer<Execution>> executionQueues, List<ExecutionSink> sinks, ObjectPool<Execution> executionObjectPool, WaitStrategy waitStrategy) {
+        this.executionQueues = executionQueues.toArray(new RingBuffer<?>[0]);
+        this.sinks = sinks.toArray(new ExecutionSink[0]);
+        this.executionObjectPool = executionObjectPool;
+        this.waitStrategy = waitStrategy;
+        for (RingBuffer<Execution> queue : executionQueues) {
+            queue.setConsumerWaitStrategy(waitStrategy);
+        }
+
+        publisherThread = new Thread(() -> {
+            System.out.println("Execution Publisher Running");
+
+            while (runningFlag) {
+                waitStrategy.idle(publish());
+            }
+        }, "execution-publisher");
+
+        publisherThread.start();
+    }
+
+    /**
+     * Start draining the queue of a book added while the publisher is running.  Not to be called from several threads
+     * at once.
+     */
+    public void addQueue(RingBuffer<Execution> executionQueue) {
+        executionQueue.setConsumerWaitStrategy(waitStrategy);
+        RingBuffer<?>[] queues = Arrays.copyOf(executionQueues, executionQueues.length + 1);
+        queues[queues.length - 1] = executionQueue;
+        executionQueues = queues;
+    }
+
+    /**
+     * One duty cycle: drain a batch from every queue and hand it to the sinks
+     * @return number of executions published
+     */
+    @SuppressWarnings("unchecked")
+    private int publish() {
+        int published = 0;
+        for (RingBuffer<?> queue : executionQueues) {
+            ((RingBuffer<Execution>) queue).drain(batchCollector, BATCH_SIZE);
+            if (batchSize == 0) {
+                continue;
+            }
+            for (ExecutionSink sink : sinks) {
+                sink.onExecutions(batch, batchSize);
+            }
+            for (int i = 0; i < batchSize; i++) {
+                executionObjectPool.returnObject(batch[i]);
+                batch[i] = null;
+            }
+            published += batchSize;
+            batchSize = 0;
+        }
+        return published;
+    }
+
+    private void collect(Execution execution) {
+        batch[batchSize++] = execution;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Stop the publisher thread and, once it has stopped, publish whatever is left in the queues on the calling
+     * thread.  Executions published before the books were shut down reach the sinks before this returns.
+     */
+    public void shutdown() {
+        System.out.println("Shuttingdown Execution Publisher");
+        runningFlag = false;
+        waitStrategy.signal();
+        try {
+            publisherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        while (publish() > 0) {
+            //Each pass drains at most a batch per queue
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.crypto.engine;
+
+import com.crypto.data.Execution;
+
+/**
+ * Receiver of the executions the books publish, such as the gateway reporting them to clients or a drop copy.  Sinks
+ * are called on the ExecutionPublisher thread with a batch at a time, and must not hold on to the executions: they go
+ * back to the pool once every sink has seen them.
+ */
+public interface ExecutionSink {
+
+    /**
+     * @param executions batch of executions, in the order their book published them
+     * @param count number of executions at the start of the array
+     */
+    void onExecutions(Execution[] executions, int count);
+}
@@ -0,0 +1,176 @@
+package com.crypto.engine;
+
+import com.crypto.data.CcyPair;
+import com.crypto.data.Order;
+import com.crypto.data.Side;
+import com.crypto.feed.ObjectPool;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every resting order in a pooled Order object, linked to the orders around it by reference.  The index of an
+ * order is its slot in a table of the orders resting, the slots of removed orders are reused.  The Order objects come
+ * from a pool of the store's own, which only the book thread takes from and returns to.
+ */
+class HeapOrderStore implements OrderStore {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final ObjectPool<Order> orderObjectPool = new ObjectPool<>(Order::new);
+    private final CcyPair pair;
+    private final Side side;
+    private Order[] orders = new Order[INITIAL_CAPACITY];
+    //Stack of the slots freed below the high water mark
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int highWaterMark;
+    private int size;
+
+    HeapOrderStore(CcyPair pair, Side side) {
+        this.pair = pair;
+        this.side = side;
+    }
+
+    @Override
+    public int add(long orderId, long clientId, long clientOrderId, long size, LimitLevel level) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWaterMark == orders.length) {
+                orders = Arrays.copyOf(orders, orders.length << 1);
+            }
+            slot = highWaterMark++;
+        }
+        Order order = orderObjectPool.acquireObject();
+        order.populate(orderId, clientId, clientOrderId, size, pair, side, level);
+        order.setIndex(slot);
+        order.setHead(null);
+        order.setTail(null);
+        orders[slot] = order;
+        this.size++;
+        return slot;
+    }
+
+    @Override
+    public void remove(int order) {
+        Order removed = orders[order];
+        orders[order] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length << 1);
+        }
+        freeSlots[freeCount++] = order;
+        size--;
+        orderObjectPool.returnObject(removed);
+    }
+
+    @Override
+    public long getOrderId(int order) {
+        return orders[order].getOrderId();
+    }
+
+    @Override
+    public long getClientId(int order) {
+        return orders[order].getClientId();
+    }
+
+    @Override
+    public long getClientOrderId(int order) {
+        return orders[order].getClientOrderId();
+    }
+
+    @Override
+    public long getSize(int order) {
+        return orders[order].getSize();
+    }
+
+    @Override
+    public void setSize(int order, long size) {
+        orders[order].setSize(size);
+    }
+
+    @Override
+    public LimitLevel getLevel(int order) {
+        return orders[order].getLimit();
+    }
+
+    @Override
+    public int getHead(int order) {
+        return indexOf(orders[order].getHead());
+    }
+
+    @Override
+    public void setHead(int order, int head) {
+        orders[order].setHead(orderAt(head));
+    }
+
+    @Override
+    public int getTail(int order) {
+        return indexOf(orders[order].getTail());
+    }
+
+    @Override
+    public void setTail(int order, int tail) {
+        orders[order].setTail(orderAt(tail));
+    }
+
+    @Override
+    public int getPreviousClientOrder(int order) {
+        return indexOf(orders[order].getPreviousClientOrder());
+    }
+
+    @Override
+    public void setPreviousClientOrder(int order, int previousClientOrder) {
+        orders[order].setPreviousClientOrder(orderAt(previousClientOrder));
+    }
+
+    @Override
+    public int getNextClientOrder(int order) {
+        return indexOf(orders[order].getNextClientOrder());
+    }
+
+    @Override
+    public void setNextClientOrder(int order, int nextClientOrder) {
+        orders[order].setNextClientOrder(orderAt(nextClientOrder));
+    }
+
+    @Override
+    public int getLevelPosition(int order) {
+        return orders[order].getLevelPosition();
+    }
+
+    @Override
+    public void setLevelPosition(int order, int levelPosition) {
+        orders[order].setLevelPosition(levelPosition);
+    }
+
+    @Override
+    public void levelRemoved(LimitLevel level) {
+        //Orders point at their level directly, there is nothing to forget
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void presize(int orders) {
+        if (this.orders.length < orders) {
+            this.orders = Arrays.copyOf(this.orders, orders);
+        }
+        orderObjectPool.prewarm(orders);
+    }
+
+    ObjectPool<Order> getOrderPool() {
+        return orderObjectPool;
+    }
+
+    private Order orderAt(int order) {
+        return order == NONE ? null : orders[order];
+    }
+
+    private static int indexOf(Order order) {
+        return order == null ? NONE : order.getIndex();
+    }
+}
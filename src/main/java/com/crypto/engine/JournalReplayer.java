@@ -0,0 +1,151 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.data.Execution;
+import com.crypto.data.Message;
+import com.crypto.feed.ObjectPool;
+import com.crypto.journal.InputJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds books from an InputJournal on the calling thread, as fast as the messages can be read.  Every journalled
+ * message is routed as the distributor routed it and processed by its book before the next one is read, with no
+ * queue hand off to another thread and nothing to wait for.
+ *
+ * Only pairs run with both sides on one thread, by a PairOrderBookProcessor or an engine shard, are replayed.  Such
+ * a pair hands out order ids from its own sequences and checks a new limit against a spread only it moves, so the
+ * executions it publishes on replay are the ones it published when the messages were live.  Replaying the same
+ * journal twice publishes the same executions in the same order, which is what reproducing an incident needs.
+ * Books whose two sides run on threads of their own read the other side's published top of book to check for a
+ * crossed spread, which depends on how far the other thread has got; the distributor refuses to journal them.
+ *
+ * For a restart the books are replayed before they are started, then the router is handed to the distributor taking
+ * the live traffic so mass cancels still find the books of clients who placed orders before the restart.  Restoring
+ * the latest BookSnapshot first leaves only the messages journalled after it to replay.
+ */
+public class JournalReplayer {
+
+    private final MessageRouter router;
+    private final ObjectPool<Message> messagePool;
+    private final RingBuffer<Execution> executionPublishQueue;
+    private final ObjectPool<Execution> executionObjectPool;
+    private final Consumer<Message> replayHandler = this::replayMessage;
+
+    private final List<OrderBookProcessor> books = new ArrayList<>();
+    private final OrderBookProcessor[] booksByIndex = new OrderBookProcessor[OrderIds.MAX_BOOKS];
+    private long sequence;
+
+    private RingBuffer<?>[] bookQueues = new RingBuffer<?>[0];
+    private Consumer<?>[] bookHandlers = new Consumer<?>[0];
+    private Consumer<Execution> executionConsumer;
+
+    /**
+     * @param router router to route the messages through, to be handed to the distributor afterwards
+     * @param messagePool pool the messages are read into
+     * @param executionPublishQueue queue the books publish to
+     * @param executionObjectPool pool the published executions are returned to
+     */
+    public JournalReplayer(MessageRouter router, ObjectPool<Message> messagePool, RingBuffer<Execution> executionPublishQueue, ObjectPool<Execution> executionObjectPool) {
+        this.router = router;
+        this.messagePool = messagePool;
+        this.executionPublishQueue = executionPublishQueue;
+        this.executionObjectPool = executionObjectPool;
+    }
+
+    /**
+     * Replay the messages of the pair into a pair processor, which must not be started yet
+     */
+    public void addBook(PairOrderBookProcessor pairProcessor) {
+        addBook(pairProcessor.getBook(), pairProcessor.getDistributorInboundQueue());
+    }
+
+    /**
+     * Replay the messages of the pair into a book no thread runs, routed through the given queue
+     */
+    void addBook(PairOrderBook book, RingBuffer<Message> queue) {
+        router.addBook(book.getPair(), queue, queue);
+        register(queue, book::processMessage);
+        addSide(book.getBidProcessor());
+        addSide(book.getOfferProcessor());
+    }
+
+    /**
+     * Restore the books from a snapshot, before anything is replayed into them
+     * @param snapshot snapshot taken of the same pairs
+     * @return journal sequence the snapshot was taken at, which replaying carries on after
+     */
+    public long restore(File snapshot) throws IOException {
+        sequence = BookSnapshot.read(snapshot, booksByIndex, router);
+        return sequence;
+    }
+
+    /**
+     * Snapshot the books at the sequence they have been replayed to
+     * @param snapshot file to write the snapshot to
+     */
+    public void snapshot(File snapshot) throws IOException {
+        BookSnapshot.write(snapshot, sequence, books);
+    }
+
+    /**
+     * Replay the messages of the journal the books have not seen yet, every message unless a snapshot was restored.
+     * The journal may be appended to meanwhile, the messages up to its published sequence are replayed.
+     * @param journal journal to replay
+     * @param executionConsumer receiver of the executions the books publish, which are returned to the pool once it
+     *                          is done with them.  Null to drop them, as on a restart where the clients have already
+     *                          seen them.
+     * @return number of messages replayed
+     */
+    public long replay(InputJournal journal, Consumer<Execution> executionConsumer) throws IOException {
+        long toSequence = Math.max(sequence, journal.getPublishedSequence());
+        this.executionConsumer = executionConsumer;
+        try {
+            long replayed = journal.replay(sequence, toSequence, messagePool, replayHandler);
+            sequence = toSequence;
+            return replayed;
+        } finally {
+            this.executionConsumer = null;
+        }
+    }
+
+    /**
+     * @return journal sequence of the last message the books have seen
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replayMessage(Message message) {
+        router.route(message);
+        for (int i = 0; i < bookQueues.length; i++) {
+            ((RingBuffer<Message>) bookQueues[i]).drain((Consumer<Message>) bookHandlers[i], Integer.MAX_VALUE);
+        }
+
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            if (executionConsumer != null) {
+                executionConsumer.accept(execution);
+            }
+            executionObjectPool.returnObject(execution);
+        }
+    }
+
+    private void addSide(OrderBookProcessor book) {
+        books.add(book);
+        booksByIndex[OrderIds.bookIndex(book.getPair(), book.getSide())] = book;
+    }
+
+    private void register(RingBuffer<Message> queue, Consumer<Message> handler) {
+        bookQueues = Arrays.copyOf(bookQueues, bookQueues.length + 1);
+        bookHandlers = Arrays.copyOf(bookHandlers, bookHandlers.length + 1);
+        bookQueues[bookQueues.length - 1] = queue;
+        bookHandlers[bookHandlers.length - 1] = handler;
+    }
+}
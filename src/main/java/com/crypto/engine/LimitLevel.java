@@ -1,48 +1,76 @@
 package com.crypto.engine;
 
 import com.crypto.data.Execution;
-import com.crypto.data.Order;
 import com.crypto.feed.ObjectPool;
 
+import static com.crypto.engine.OrderStore.NONE;
+
 /**
  * Representation of one price level for a particular side of an order book.  The limit level holds a double
- * linked list of orders in order to allow O(1) matching of orders and cancelation of orders.
+ * linked list of orders in order to allow O(1) matching of orders and cancelation of orders.  The orders are addressed
+ * by their index in the order store of the book, which holds the links.  The quantity and number of orders resting at
+ * the price are kept up to date as orders come and go, so depth is read without walking the list.
+ *
+ * The queue itself is kept by the package private methods enqueue, dequeue and unlink, which ArrayLimitLevel
+ * overrides to keep it in parallel arrays instead.
  */
 public class LimitLevel {
 
     private OrderBookProcessor processor;
-    private Order insideOfBookOrder;
-    private Order outsideOfBookOrder;
+    OrderStore orders;
+    private int insideOfBookOrder = NONE;
+    private int outsideOfBookOrder = NONE;
     private LimitLevel nextHigher;
     private LimitLevel nextLower;
     ObjectPool<Execution> executionObjectPool;
     private long price;
+    private long quantity;
+    private int orderCount;
+    //Set while the level has changes market data has not published yet
+    private boolean marketDataDirty;
+    //Index in the level table of an OffHeapOrderStore, kept while the level is in the book
+    int orderStoreIndex = NONE;
 
     public LimitLevel(){}
 
-    public void populate(Long price, ObjectPool<Execution> executionObjectPool, OrderBookProcessor processor) {
+    public void populate(long price, ObjectPool<Execution> executionObjectPool, OrderBookProcessor processor) {
 
         this.executionObjectPool = executionObjectPool;
-        this.insideOfBookOrder = null;
-        this.outsideOfBookOrder = null;
+        this.insideOfBookOrder = NONE;
+        this.outsideOfBookOrder = NONE;
+        this.nextHigher = null;
+        this.nextLower = null;
         this.price = price;
         this.processor = processor;
+        this.orders = processor == null ? null : processor.getOrderStore();
+        this.quantity = 0;
+        this.orderCount = 0;
+        this.marketDataDirty = false;
     }
 
     /**
      * Method will link in new order to the price level linked list
-     * @param order order to add to limit
+     * @param order index of the order to add to limit
+     */
+    public void addOrder(int order){
+        enqueue(order);
+        quantity += orders.getSize(order);
+        orderCount++;
+    }
+
+    /**
+     * Links the order in behind the order last in line
      */
-    public void addOrder(Order order){
-        if(insideOfBookOrder == null){
+    void enqueue(int order){
+        if(insideOfBookOrder == NONE){
             insideOfBookOrder = order;
             outsideOfBookOrder = order;
-            order.setHead(null);
-            order.setTail(null);
+            orders.setHead(order, NONE);
+            orders.setTail(order, NONE);
         }else{
-            outsideOfBookOrder.setTail(order);
-            order.setHead(outsideOfBookOrder);
-            order.setTail(null);
+            orders.setTail(outsideOfBookOrder, order);
+            orders.setHead(order, outsideOfBookOrder);
+            orders.setTail(order, NONE);
             outsideOfBookOrder = order;
         }
     }
@@ -67,23 +95,101 @@ public class LimitLevel {
         this.nextLower = nextLower;
     }
 
-    public Order peekInsideOfBook(){
+    /**
+     * @return index of the order first in line, NONE if the level is empty
+     */
+    public int peekInsideOfBook(){
         return insideOfBookOrder;
     }
 
+    /**
+     * @param order index of an order resting at this level
+     * @return index of the order behind it in line, NONE if it is the last
+     */
+    public int nextOrder(int order){
+        return orders.getTail(order);
+    }
+
+    public long getInsideOfBookOrderId(){
+        return orders.getOrderId(insideOfBookOrder);
+    }
+
+    public long getInsideOfBookClientId(){
+        return orders.getClientId(insideOfBookOrder);
+    }
+
+    public long getInsideOfBookClientOrderId(){
+        return orders.getClientOrderId(insideOfBookOrder);
+    }
+
+    public long getInsideOfBookSize(){
+        return orders.getSize(insideOfBookOrder);
+    }
+
     /**
      * Remove the head of the list of the book and replace with its follower
-     * @return the order sitting inside of book.
+     * @return index of the order sitting inside of book.
      */
-    public Order pollInsideOfBook(){
+    public int pollInsideOfBook(){
 
-        Order newInsideOfBook = insideOfBookOrder.getTail();
-        Order orderToRemove = insideOfBookOrder;
-        if(newInsideOfBook != null){
-            newInsideOfBook.setHead(null);
+        int orderToRemove = peekInsideOfBook();
+        quantity -= getInsideOfBookSize();
+        orderCount--;
+        dequeue();
+        return orderToRemove;
+    }
+
+    /**
+     * Unlinks the order first in line, its follower takes its place
+     */
+    void dequeue(){
+        int newInsideOfBook = orders.getTail(insideOfBookOrder);
+        if(newInsideOfBook != NONE){
+            orders.setHead(newInsideOfBook, NONE);
+        }else{
+            outsideOfBookOrder = NONE;
         }
         insideOfBookOrder = newInsideOfBook;
-        return orderToRemove;
+    }
+
+    /**
+     * Take a partial fill off an order resting at this level
+     * @param order index of the order partially filled
+     * @param fillSize size filled, less than the size of the order
+     */
+    public void reduceOrder(int order, long fillSize) {
+        orders.setSize(order, orders.getSize(order) - fillSize);
+        quantity -= fillSize;
+    }
+
+    /**
+     * Cancels an order and ties up adjacent orders in the linked list of orders on the particular price.
+     * @param order index of the order to cancel
+     * @return true if this was the last order on the particular price. If so, the limit level should be discarded, else false
+     */
+    public boolean cancelOrder(int order){
+        unlink(order);
+        quantity -= orders.getSize(order);
+        orderCount--;
+        return orderCount == 0;
+    }
+
+    /**
+     * Unlinks an order from wherever it is in line, tying up the orders in front of and behind it
+     */
+    void unlink(int order){
+        int head = orders.getHead(order);
+        int tail = orders.getTail(order);
+        if(head != NONE){
+            orders.setTail(head, tail);
+        }else{
+            insideOfBookOrder = tail;
+        }
+        if(tail != NONE){
+            orders.setHead(tail, head);
+        }else{
+            outsideOfBookOrder = head;
+        }
     }
 
     /**
@@ -111,24 +217,33 @@ public class LimitLevel {
         return processor;
     }
 
-    public void setInsideOfBookOrder(Order insideOfBookOrder) {
-        this.insideOfBookOrder = insideOfBookOrder;
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    boolean isMarketDataDirty() {
+        return marketDataDirty;
     }
 
-    public void setOutsideOfBookOrder(Order outsideOfBookOrder) {
-        this.outsideOfBookOrder = outsideOfBookOrder;
+    void setMarketDataDirty(boolean marketDataDirty) {
+        this.marketDataDirty = marketDataDirty;
     }
 
     public boolean isEmpty() {
-        return peekInsideOfBook() == null;
+        return orderCount == 0;
     }
 
     @Override
     public String toString() {
         return "LimitLevel{" +
-                "insideOfBookOrder=" + insideOfBookOrder +
-                ", outsideOfBookOrder=" + outsideOfBookOrder +
+                "insideOfBookOrder=" + peekInsideOfBook() +
                 ", price=" + price +
+                ", quantity=" + quantity +
+                ", orderCount=" + orderCount +
                 '}';
     }
 }
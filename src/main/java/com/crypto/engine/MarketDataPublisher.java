@@ -0,0 +1,106 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.WaitStrategy;
+import com.crypto.data.MarketDataUpdate;
+import com.crypto.feed.ObjectPool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Market data counterpart of the ExecutionPublisher.  The publisher thread drains the market data queues of the books
+ * in turn and hands each batch to every sink before returning the updates to the pool.
+ *
+ * A slow sink never holds up a book.  Once a queue is full the book conflates level and top of book updates and drops
+ * order updates until it has caught up, followed by a snapshot, see BookMarketData.
+ */
+public class MarketDataPublisher {
+
+    private static final int BATCH_SIZE = 256;
+
+    private volatile boolean runningFlag = true;
+    private volatile RingBuffer<?>[] marketDataQueues;
+    private final MarketDataSink[] sinks;
+    private final ObjectPool<MarketDataUpdate> updatePool;
+    private final WaitStrategy waitStrategy;
+    private final MarketDataUpdate[] batch = new MarketDataUpdate[BATCH_SIZE];
+    private final Consumer<MarketDataUpdate> batchCollector = this::collect;
+    private int batchSize;
+
+    /**
+     * @param marketDataQueues queues the books publish to, further ones can be added later on with addQueue
+     * @param sinks receivers of every update, called in the order given
+     * @param updatePool pool the updates are returned to once the sinks have seen them
+     * @param waitStrategy wait strategy of the publisher thread
+     */
+    public MarketDataPublisher(List<RingBuffer<MarketDataUpdate>> marketDataQueues, List<MarketDataSink> sinks, ObjectPool<MarketDataUpdate> updatePool, WaitStrategy waitStrategy) {
+        this.marketDataQueues = marketDataQueues.toArray(new RingBuffer<?>[0]);
+        this.sinks = sinks.toArray(new MarketDataSink[0]);
+        this.updatePool = updatePool;
+        this.waitStrategy = waitStrategy;
+        for (RingBuffer<MarketDataUpdate> queue : marketDataQueues) {
+            queue.setConsumerWaitStrategy(waitStrategy);
+        }
+
+        Thread thread = new Thread(() -> {
+            System.out.println("Market Data Publisher Running");
+
+            while (runningFlag) {
+                waitStrategy.idle(publish());
+            }
+        }, "market-data-publisher");
+
+        thread.start();
+    }
+
+    /**
+     * Start draining the queue of a book added while the publisher is running.  Not to be called from several threads
+     * at once.
+     */
+    public void addQueue(RingBuffer<MarketDataUpdate> marketDataQueue) {
+        marketDataQueue.setConsumerWaitStrategy(waitStrategy);
+        RingBuffer<?>[] queues = Arrays.copyOf(marketDataQueues, marketDataQueues.length + 1);
+        queues[queues.length - 1] = marketDataQueue;
+        marketDataQueues = queues;
+    }
+
+    /**
+     * One duty cycle: drain a batch from every queue and hand it to the sinks
+     * @return number of updates published
+     */
+    @SuppressWarnings("unchecked")
+    private int publish() {
+        int published = 0;
+        for (RingBuffer<?> queue : marketDataQueues) {
+            ((RingBuffer<MarketDataUpdate>) queue).drain(batchCollector, BATCH_SIZE);
+            if (batchSize == 0) {
+                continue;
+            }
+            for (MarketDataSink sink : sinks) {
+                sink.onMarketData(batch, batchSize);
+            }
+            for (int i = 0; i < batchSize; i++) {
+                updatePool.returnObject(batch[i]);
+                batch[i] = null;
+            }
+            published += batchSize;
+            batchSize = 0;
+        }
+        return published;
+    }
+
+    private void collect(MarketDataUpdate update) {
+        batch[batchSize++] = update;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void shutdown() {
+        System.out.println("Shuttingdown Market Data Publisher");
+        runningFlag = false;
+    }
+}
@@ -0,0 +1,17 @@
+package com.crypto.engine;
+
+import com.crypto.data.MarketDataUpdate;
+
+/**
+ * Receiver of the market data the books publish, such as a feed handler multicasting it or a consolidated book.
+ * Sinks are called on the MarketDataPublisher thread with a batch at a time, and must not hold on to the updates: they
+ * go back to the pool once every sink has seen them.
+ */
+public interface MarketDataSink {
+
+    /**
+     * @param updates batch of updates, in the order their book published them
+     * @param count number of updates at the start of the array
+     */
+    void onMarketData(MarketDataUpdate[] updates, int count);
+}
@@ -0,0 +1,194 @@
+package com.crypto.engine;
+
+import com.crypto.collections.LongObjectHashMap;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.data.CcyPair;
+import com.crypto.data.InstrumentRegistry;
+import com.crypto.data.Message;
+import com.crypto.data.Side;
+import com.crypto.feed.ObjectPool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Routing state of the distributor: the queue of every book, indexed by instrument id and side, and the books each
+ * client has sent limit orders to since its last mass cancel.  Books can be added and removed from any thread while
+ * messages are routed, routing itself is done by one thread at a time.
+ *
+ * The books of a client are a bitmap taken when it sends its first limit order and given back on its mass cancel.
+ * Given back bitmaps are kept for the next clients, so the routing thread allocates only while more clients rest
+ * orders at once than ever before.
+ *
+ * Kept apart from the distributor thread so a JournalReplayer can rebuild the books through the same routing, and
+ * hand the router with everything it learnt about the clients over to the distributor taking the live traffic.
+ */
+public class MessageRouter {
+
+    private static final int EXPECTED_CLIENTS = 1 << 10;
+
+    private final AtomicReferenceArray<RingBuffer<Message>> bookQueues = new AtomicReferenceArray<>(OrderIds.MAX_BOOKS);
+    private final AtomicReferenceArray<CcyPair> pairs = new AtomicReferenceArray<>(InstrumentRegistry.MAX_INSTRUMENTS);
+    private final LongObjectHashMap<long[]> clientBooks = new LongObjectHashMap<>(EXPECTED_CLIENTS);
+    //Cleared bitmaps of clients which mass cancelled, for the next clients to take
+    private long[][] freeClientBooks = new long[EXPECTED_CLIENTS][];
+    private int freeClientBookCount;
+    private final ObjectPool<Message> messagePool;
+
+    /**
+     * @param engineQueues book queues in book index order, pair by pair with the offer side first.  Further books can
+     *                     be added later on with addBook.
+     */
+    public MessageRouter(List<RingBuffer<Message>> engineQueues, ObjectPool<Message> messagePool) {
+        if (engineQueues.size() > OrderIds.MAX_BOOKS) {
+            throw new IllegalArgumentException("Order ids can address at most " + OrderIds.MAX_BOOKS + " books, got " + engineQueues.size() + " queues");
+        }
+        this.messagePool = messagePool;
+        for (int book = 0; book < engineQueues.size(); book++) {
+            bookQueues.set(book, engineQueues.get(book));
+        }
+    }
+
+    /**
+     * Start routing messages for a pair
+     * @param pair pair whose books to add
+     * @param bidQueue queue of the bid book
+     * @param offerQueue queue of the offer book, the same as bidQueue for a PairOrderBookProcessor
+     */
+    public void addBook(CcyPair pair, RingBuffer<Message> bidQueue, RingBuffer<Message> offerQueue) {
+        pairs.set(pair.getId(), pair);
+        bookQueues.set(OrderIds.bookIndex(pair, Side.Bid), bidQueue);
+        bookQueues.set(OrderIds.bookIndex(pair, Side.Offer), offerQueue);
+    }
+
+    /**
+     * @return true if both sides of every pair routed to share a queue, so each pair is processed on one thread
+     */
+    boolean isOneQueuePerPair() {
+        for (int book = 0; book < OrderIds.MAX_BOOKS; book += 2) {
+            if (bookQueues.get(book) != bookQueues.get(book + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop routing messages for a pair
+     * @param pair pair whose books to remove
+     */
+    public void removeBook(CcyPair pair) {
+        bookQueues.set(OrderIds.bookIndex(pair, Side.Bid), null);
+        bookQueues.set(OrderIds.bookIndex(pair, Side.Offer), null);
+        pairs.set(pair.getId(), null);
+    }
+
+    /**
+     * Helper method to decide which queue to send a particular request to.
+     * @param message
+     */
+    void route(Message message) {
+
+        switch (message.getType()) {
+
+            case NewMarketOrder:
+                //Market orders execute against the opposite side of the book
+                Side bookSide = message.getSide() == Side.Bid ? Side.Offer : Side.Bid;
+                sendToBook(OrderIds.bookIndex(message.getPair(), bookSide), message);
+                return;
+
+            case NewLimitOrder:
+                int limitBookIndex = OrderIds.bookIndex(message.getPair(), message.getSide());
+                //Remember the client may now rest orders in this book, mass cancels only need to go there
+                addClientBook(message.getClientId(), limitBookIndex);
+                sendToBook(limitBookIndex, message);
+                return;
+
+            case CancelOrder:
+                //The order id tells which book holds the order
+                sendToBook(OrderIds.bookIndexOf(message.getOrderId()), message);
+                return;
+
+            case CancelAllOrders:
+                //Only the books the client has sent limit orders to since its last mass cancel can hold its orders.
+                //Both sides of a pair processed on one thread share a queue, which only needs to see the cancel once.
+                //The copies carry the pair so a shard hosting many pairs knows which one is meant.
+                long[] clientBookBits = clientBooks.remove(message.getClientId());
+                if (clientBookBits != null) {
+                    RingBuffer<Message> previousQueue = null;
+                    int previousInstrumentId = -1;
+                    for (int word = 0; word < clientBookBits.length; word++) {
+                        long bits = clientBookBits[word];
+                        while (bits != 0) {
+                            int book = (word << 6) + Long.numberOfTrailingZeros(bits);
+                            RingBuffer<Message> queue = bookQueues.get(book);
+                            int instrumentId = book >>> 1;
+                            if (queue != null && (queue != previousQueue || instrumentId != previousInstrumentId)) {
+                                sendClonedMessage(queue, message, pairs.get(instrumentId));
+                                previousQueue = queue;
+                                previousInstrumentId = instrumentId;
+                            }
+                            bits &= bits - 1;
+                        }
+                        clientBookBits[word] = 0;
+                    }
+                    releaseClientBooks(clientBookBits);
+                }
+                messagePool.returnObject(message);
+                return;
+
+            default:
+                System.out.println("Unexpected Message Type which is not handled: " + message.getType());
+                messagePool.returnObject(message);
+        }
+    }
+
+    /**
+     * Remember the client may rest orders in the book, so its mass cancels are sent there
+     * @param clientId client sending a limit order, or owning an order restored from a snapshot
+     * @param bookIndex index of the book
+     */
+    void addClientBook(long clientId, int bookIndex) {
+        long[] books = clientBooks.get(clientId);
+        if (books == null) {
+            books = freeClientBookCount > 0 ? freeClientBooks[--freeClientBookCount] : new long[OrderIds.MAX_BOOKS / Long.SIZE];
+            clientBooks.put(clientId, books);
+        }
+        books[bookIndex >>> 6] |= 1L << bookIndex;
+    }
+
+    /**
+     * @param books bitmap of a client which mass cancelled, all bits cleared
+     */
+    private void releaseClientBooks(long[] books) {
+        if (freeClientBookCount == freeClientBooks.length) {
+            freeClientBooks = Arrays.copyOf(freeClientBooks, freeClientBookCount << 1);
+        }
+        freeClientBooks[freeClientBookCount++] = books;
+    }
+
+    /**
+     * @return number of clients whose books are remembered
+     */
+    int getClientCount() {
+        return clientBooks.size();
+    }
+
+    private void sendToBook(int bookIndex, Message message) {
+        RingBuffer<Message> queue = bookQueues.get(bookIndex);
+        if (queue == null) {
+            System.out.println("No book to handle " + message.getType() + " for pair " + message.getPair() + ", order id " + message.getOrderId());
+            messagePool.returnObject(message);
+            return;
+        }
+        queue.put(message);
+    }
+
+    private void sendClonedMessage(RingBuffer<Message> queue, Message message, CcyPair pair) {
+        Message cloneMessage = messagePool.acquireObject();
+        cloneMessage.populateFields(message);
+        cloneMessage.setPair(pair);
+        queue.put(cloneMessage);
+    }
+}
@@ -0,0 +1,244 @@
+package com.crypto.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Keeps the resting orders in rows of a slab of direct byte buffers, outside the heap.  A row is one cache line
+ * holding all of an order, its links to the orders around it are the indexes of their rows.  A book of millions of
+ * orders thus costs the garbage collector nothing to trace and no card marking when the links change, and walking a
+ * queue reads neighbouring lines of one buffer rather than objects wherever the heap put them.
+ *
+ * The slab grows a chunk of rows at a time and never shrinks, rows of removed orders are chained into a free list
+ * through their tail and reused first.  The price level of an order is kept as the index of the level in a table of
+ * the levels in the book, which the level remembers.  The index of a level leaving the book is reused, so the table
+ * is only ever as long as the book was deep, whichever level objects the pool hands out.
+ */
+class OffHeapOrderStore implements OrderStore {
+
+    static final int ROW_LENGTH = 64;
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+    private static final int MAX_CHUNKS = Integer.MAX_VALUE >> CHUNK_SHIFT;
+
+    private static final int ORDER_ID = 0;
+    private static final int CLIENT_ID = 8;
+    private static final int CLIENT_ORDER_ID = 16;
+    private static final int SIZE = 24;
+    private static final int LEVEL = 32;
+    private static final int HEAD = 36;
+    private static final int TAIL = 40;
+    private static final int PREVIOUS_CLIENT_ORDER = 44;
+    private static final int NEXT_CLIENT_ORDER = 48;
+    private static final int LEVEL_POSITION = 52;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int capacity;
+    private int highWaterMark;
+    private int freeList = NONE;
+    private int size;
+    private LimitLevel[] levels = new LimitLevel[64];
+    private int levelCount;
+    private int[] freeLevels = new int[64];
+    private int freeLevelCount;
+
+    /**
+     * @param expectedOrders number of orders to allocate rows for up front, rounded up to whole chunks
+     */
+    OffHeapOrderStore(int expectedOrders) {
+        presize(expectedOrders);
+    }
+
+    @Override
+    public int add(long orderId, long clientId, long clientOrderId, long size, LimitLevel level) {
+        int order;
+        if (freeList != NONE) {
+            order = freeList;
+            freeList = getTail(order);
+        } else {
+            if (highWaterMark == capacity) {
+                addChunk();
+            }
+            order = highWaterMark++;
+        }
+        ByteBuffer chunk = chunk(order);
+        int row = row(order);
+        chunk.putLong(row + ORDER_ID, orderId);
+        chunk.putLong(row + CLIENT_ID, clientId);
+        chunk.putLong(row + CLIENT_ORDER_ID, clientOrderId);
+        chunk.putLong(row + SIZE, size);
+        chunk.putInt(row + LEVEL, levelIndex(level));
+        chunk.putInt(row + HEAD, NONE);
+        chunk.putInt(row + TAIL, NONE);
+        chunk.putInt(row + PREVIOUS_CLIENT_ORDER, NONE);
+        chunk.putInt(row + NEXT_CLIENT_ORDER, NONE);
+        this.size++;
+        return order;
+    }
+
+    @Override
+    public void remove(int order) {
+        setTail(order, freeList);
+        freeList = order;
+        size--;
+    }
+
+    @Override
+    public long getOrderId(int order) {
+        return chunk(order).getLong(row(order) + ORDER_ID);
+    }
+
+    @Override
+    public long getClientId(int order) {
+        return chunk(order).getLong(row(order) + CLIENT_ID);
+    }
+
+    @Override
+    public long getClientOrderId(int order) {
+        return chunk(order).getLong(row(order) + CLIENT_ORDER_ID);
+    }
+
+    @Override
+    public long getSize(int order) {
+        return chunk(order).getLong(row(order) + SIZE);
+    }
+
+    @Override
+    public void setSize(int order, long size) {
+        chunk(order).putLong(row(order) + SIZE, size);
+    }
+
+    @Override
+    public LimitLevel getLevel(int order) {
+        return levels[chunk(order).getInt(row(order) + LEVEL)];
+    }
+
+    @Override
+    public int getHead(int order) {
+        return chunk(order).getInt(row(order) + HEAD);
+    }
+
+    @Override
+    public void setHead(int order, int head) {
+        chunk(order).putInt(row(order) + HEAD, head);
+    }
+
+    @Override
+    public int getTail(int order) {
+        return chunk(order).getInt(row(order) + TAIL);
+    }
+
+    @Override
+    public void setTail(int order, int tail) {
+        chunk(order).putInt(row(order) + TAIL, tail);
+    }
+
+    @Override
+    public int getPreviousClientOrder(int order) {
+        return chunk(order).getInt(row(order) + PREVIOUS_CLIENT_ORDER);
+    }
+
+    @Override
+    public void setPreviousClientOrder(int order, int previousClientOrder) {
+        chunk(order).putInt(row(order) + PREVIOUS_CLIENT_ORDER, previousClientOrder);
+    }
+
+    @Override
+    public int getNextClientOrder(int order) {
+        return chunk(order).getInt(row(order) + NEXT_CLIENT_ORDER);
+    }
+
+    @Override
+    public void setNextClientOrder(int order, int nextClientOrder) {
+        chunk(order).putInt(row(order) + NEXT_CLIENT_ORDER, nextClientOrder);
+    }
+
+    @Override
+    public int getLevelPosition(int order) {
+        return chunk(order).getInt(row(order) + LEVEL_POSITION);
+    }
+
+    @Override
+    public void setLevelPosition(int order, int levelPosition) {
+        chunk(order).putInt(row(order) + LEVEL_POSITION, levelPosition);
+    }
+
+    @Override
+    public void levelRemoved(LimitLevel level) {
+        int index = level.orderStoreIndex;
+        if (index == NONE) {
+            return;
+        }
+        levels[index] = null;
+        level.orderStoreIndex = NONE;
+        if (freeLevelCount == freeLevels.length) {
+            freeLevels = Arrays.copyOf(freeLevels, freeLevels.length << 1);
+        }
+        freeLevels[freeLevelCount++] = index;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void presize(int orders) {
+        while (capacity < orders) {
+            addChunk();
+        }
+    }
+
+    /**
+     * @return bytes held outside the heap
+     */
+    long getAllocatedBytes() {
+        return (long) capacity * ROW_LENGTH;
+    }
+
+    /**
+     * @return length of the level table in use, freed indexes included
+     */
+    int getLevelTableSize() {
+        return levelCount;
+    }
+
+    /**
+     * A level keeps its index while it is in the book
+     */
+    private int levelIndex(LimitLevel level) {
+        if (level.orderStoreIndex == NONE) {
+            int index;
+            if (freeLevelCount > 0) {
+                index = freeLevels[--freeLevelCount];
+            } else {
+                if (levelCount == levels.length) {
+                    levels = Arrays.copyOf(levels, levels.length << 1);
+                }
+                index = levelCount++;
+            }
+            levels[index] = level;
+            level.orderStoreIndex = index;
+        }
+        return level.orderStoreIndex;
+    }
+
+    private void addChunk() {
+        if (chunks.length == MAX_CHUNKS) {
+            throw new IllegalStateException("Order store can not grow beyond " + capacity + " orders");
+        }
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = ByteBuffer.allocateDirect(CHUNK_ROWS * ROW_LENGTH).order(ByteOrder.nativeOrder());
+        capacity += CHUNK_ROWS;
+    }
+
+    private ByteBuffer chunk(int order) {
+        return chunks[order >>> CHUNK_SHIFT];
+    }
+
+    private static int row(int order) {
+        return (order & CHUNK_MASK) * ROW_LENGTH;
+    }
+}
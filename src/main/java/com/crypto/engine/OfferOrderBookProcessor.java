@@ -1,45 +1,18 @@
 package com.crypto.engine;
 
+import com.crypto.concurrent.RingBuffer;
 import com.crypto.data.*;
 import com.crypto.feed.ObjectPool;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
 
 public class OfferOrderBookProcessor extends OrderBookProcessor{
 
-    public OfferOrderBookProcessor(CcyPair pair, ObjectPool<Order> orderObjectPool, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, ConcurrentLinkedQueue<Message> distributorInboundQueue, ConcurrentLinkedQueue<Execution> executionPublishQueue, AtomicLong orderCounter) {
-        super(pair, orderObjectPool, executionObjectPool, messageObjectPool, distributorInboundQueue, executionPublishQueue, orderCounter);
+    public OfferOrderBookProcessor(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Message> distributorInboundQueue, RingBuffer<Execution> executionPublishQueue) {
+        super(pair, executionObjectPool, messageObjectPool, distributorInboundQueue, executionPublishQueue);
     }
 
-    /**
-     * Limits are ordered in a sorted double linked list. When a new limit arrives, we traverse the list and insert
-     * at the appropriate spot, starting at the top of book as we expect the action to mostly occur there.
-     * Hopefully this won't happen to often.
-     * @param newLimitLevel new price level to be added
-     * @param currentLimitLevel limit price level to compare to, normally start at top of book
-     */
-    protected void insertInChain(LimitLevel newLimitLevel, LimitLevel currentLimitLevel) {
-        if (newLimitLevel.getPrice() < currentLimitLevel.getPrice()) {
-            LimitLevel lowerBelowCurrent = currentLimitLevel.getNextLower();
-            if (lowerBelowCurrent == null) {
-                currentLimitLevel.setNextLower(newLimitLevel);
-                newLimitLevel.setNextHigher(currentLimitLevel);
-                topOfBook = newLimitLevel;
-            }else{
-                lowerBelowCurrent.setNextHigher(currentLimitLevel);
-                newLimitLevel.setNextLower(lowerBelowCurrent);
-                newLimitLevel.setNextHigher(currentLimitLevel);
-                currentLimitLevel.setNextLower(newLimitLevel);
-            }
-            return;
-
-        } else if (currentLimitLevel.getNextHigher() == null) {
-            currentLimitLevel.setNextHigher(newLimitLevel);
-            newLimitLevel.setNextLower(currentLimitLevel);
-            return;
-        }
-        insertInChain(newLimitLevel, currentLimitLevel.getNextHigher());
+    OfferOrderBookProcessor(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Execution> executionPublishQueue) {
+        super(pair, executionObjectPool, messageObjectPool, executionPublishQueue);
     }
 
     @Override
@@ -50,7 +23,7 @@ public class OfferOrderBookProcessor extends OrderBookProcessor{
 
     @Override
     protected boolean priceCrossingSpread(long price) {
-        return price <= correspondingProcessor.getTopOfBookPrice();
+        return price <= correspondingProcessor.getPublishedTopOfBook().getPrice();
     }
 
     @Override
@@ -72,4 +45,9 @@ public class OfferOrderBookProcessor extends OrderBookProcessor{
     protected LimitLevel getNextLevelLimit(LimitLevel limitLevelToExecute) {
         return limitLevelToExecute.getNextHigher();
     }
+
+    @Override
+    protected boolean isBetterPrice(long price, long comparedTo) {
+        return price < comparedTo;
+    }
 }
@@ -1,132 +1,182 @@
 package com.crypto.engine;
 
+import com.crypto.concurrent.BusySpinWaitStrategy;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.WaitStrategy;
+import com.crypto.data.CcyPair;
 import com.crypto.data.Message;
-import com.crypto.data.Order;
 import com.crypto.feed.ObjectPool;
+import com.crypto.journal.InputJournal;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Class responsible for unpacking instructions and sending them for processing to the correct threads.
- * One thread running for each Currency pairs side of book.
- * Non blocking thread communication is provided via ConcurrentLinkedQueues.
+ * One thread running for each Currency pairs side of book, or one per pair when both sides of a pair are handed the
+ * same queue of a PairOrderBookProcessor.
+ * Non blocking thread communication is provided via pre-allocated ring buffers.
+ * Book queues sit in an array indexed by instrument id and side, so routing is a single array lookup however many
+ * pairs are traded.  Books can be added and removed while the distributor is running.
+ * Cancels only go to the books which can hold the order: the order id names its book, and for mass cancels the
+ * distributor remembers which books each client has sent limit orders to.  This routing state is kept in a
+ * MessageRouter.
+ * Changes which must be ordered with the messages being routed, such as moving a book between shards, are run on the
+ * distributor thread through execute.
+ * Given an InputJournal every message is journalled before it is routed, see JournalReplayer for rebuilding the books
+ * from it after a restart.  Only pairs whose two sides share a queue, and so a thread, replay as they ran live, books
+ * with a thread per side can not be journalled.
+ * The fields the distributor thread reads on every cycle are padded away from whatever was allocated before it.
  */
-public class OrderBookDistributor {
+public class OrderBookDistributor extends OrderBookDistributorPad {
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final String DISTRIBUTOR_SHUT_DOWN = "The distributor is shut down, it no longer runs tasks";
+    private static final String SPLIT_BOOKS_NOT_JOURNALLED = "Only pairs with both sides on one queue can be journalled, their replay does not depend on thread timing";
 
     private volatile boolean runningFlag = true;
-    private final ConcurrentLinkedQueue<Message> incomingMessageQueue;
-    private final ConcurrentLinkedQueue<Message> btcUsdOfferBookQueue;
-    private final ConcurrentLinkedQueue<Message> btcUsdBidBookQueue;
-    private final ConcurrentLinkedQueue<Message> ethUsdOfferBookQueue;
-    private final ConcurrentLinkedQueue<Message> ethUsdBidBookQueue;
+    private final RingBuffer<Message> incomingMessageQueue;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final MessageRouter router;
     private final ObjectPool<Message> messagePool;
+    private final Consumer<Message> messageHandler = this::processMessage;
+    private final WaitStrategy waitStrategy;
+    private final InputJournal journal;
+    private final Thread distributorThread;
 
-    public OrderBookDistributor(ConcurrentLinkedQueue<Message> inboundQueue, List<ConcurrentLinkedQueue<Message>> engineQueues, ObjectPool<Message> messagePool) {
+    public OrderBookDistributor(RingBuffer<Message> inboundQueue, List<RingBuffer<Message>> engineQueues, ObjectPool<Message> messagePool) {
+        this(inboundQueue, engineQueues, messagePool, new BusySpinWaitStrategy());
+    }
 
+    /**
+     * @param engineQueues book queues in book index order, pair by pair with the offer side first.  Further books can
+     *                     be added later on with addBook.
+     */
+    public OrderBookDistributor(RingBuffer<Message> inboundQueue, List<RingBuffer<Message>> engineQueues, ObjectPool<Message> messagePool, WaitStrategy waitStrategy) {
+        this(inboundQueue, engineQueues, messagePool, waitStrategy, null);
+    }
+
+    /**
+     * @param engineQueues book queues in book index order, pair by pair with the offer side first
+     * @param journal journal to write every message to before it is routed, null for none
+     */
+    public OrderBookDistributor(RingBuffer<Message> inboundQueue, List<RingBuffer<Message>> engineQueues, ObjectPool<Message> messagePool, WaitStrategy waitStrategy, InputJournal journal) {
+        this(inboundQueue, new MessageRouter(engineQueues, messagePool), messagePool, waitStrategy, journal);
+    }
+
+    /**
+     * Take over a router which already knows the books and clients, such as the one a JournalReplayer rebuilt the
+     * books through
+     * @param journal journal to write every message to before it is routed, null for none
+     * @throws IllegalArgumentException if given a journal and the two sides of a pair have queues of their own
+     */
+    public OrderBookDistributor(RingBuffer<Message> inboundQueue, MessageRouter router, ObjectPool<Message> messagePool, WaitStrategy waitStrategy, InputJournal journal) {
+        if (journal != null && !router.isOneQueuePerPair()) {
+            throw new IllegalArgumentException(SPLIT_BOOKS_NOT_JOURNALLED);
+        }
+        this.router = router;
         this.messagePool = messagePool;
+        this.waitStrategy = waitStrategy;
+        this.journal = journal;
+        inboundQueue.setConsumerWaitStrategy(waitStrategy);
 
         incomingMessageQueue = inboundQueue;
-        btcUsdOfferBookQueue = engineQueues.get(0);
-        btcUsdBidBookQueue = engineQueues.get(1);
-        ethUsdOfferBookQueue = engineQueues.get(2);
-        ethUsdBidBookQueue = engineQueues.get(3);
 
-        Thread thread = new Thread(() -> {
+        distributorThread = new Thread(() -> {
             System.out.println("Order Book Distributor Running");
 
             while (runningFlag) {
-                Message message = incomingMessageQueue.poll();
-                if (message != null) {
-                    processMessage(message);
+                runTasks();
+                waitStrategy.idle(incomingMessageQueue.drain(messageHandler, DRAIN_BATCH_SIZE));
+                if (journal != null) {
+                    journal.flushIfDue();
                 }
             }
+            //Tasks queued while shutting down still run, whoever queued them is waiting
+            runTasks();
         });
 
-        thread.start();
+        distributorThread.start();
     }
 
     /**
-     * Helper method to decide which queue to send a particular request to.
-     * @param message
+     * Start routing messages for a pair.  Safe to call while the distributor is running.
+     * @param pair pair whose books to add
+     * @param bidQueue queue of the bid book
+     * @param offerQueue queue of the offer book, the same as bidQueue for a PairOrderBookProcessor
+     * @throws IllegalArgumentException if the distributor has a journal and the queues differ
      */
-    private void processMessage(Message message) {
+    public void addBook(CcyPair pair, RingBuffer<Message> bidQueue, RingBuffer<Message> offerQueue) {
+        if (journal != null && bidQueue != offerQueue) {
+            throw new IllegalArgumentException(SPLIT_BOOKS_NOT_JOURNALLED);
+        }
+        router.addBook(pair, bidQueue, offerQueue);
+    }
 
-        switch (message.getType()) {
-
-            case NewMarketOrder:
-                switch (message.getSide()) {
-                    case Bid:
-                        switch (message.getPair()) {
-                            case ETHUSD:
-                                ethUsdOfferBookQueue.add(message);
-                                return;
-                            case BTCUSD:
-                                btcUsdOfferBookQueue.add(message);
-                                return;
-                        }
-
-                    case Offer:
-                        switch (message.getPair()) {
-                            case ETHUSD:
-                                ethUsdBidBookQueue.add(message);
-                                return;
-                            case BTCUSD:
-                                btcUsdBidBookQueue.add(message);
-                                return;
-                        }
-
-                    default:
-                        System.out.println("Unexpected Message Type which is not handled: " + message.getType());
-                        messagePool.returnObject(message);
-                        return;
-                }
+    /**
+     * Stop routing messages for a pair.  Messages already handed to its books are still processed by them.
+     * @param pair pair whose books to remove
+     */
+    public void removeBook(CcyPair pair) {
+        router.removeBook(pair);
+    }
 
-            case NewLimitOrder:
-                switch (message.getSide()) {
-                    case Bid:
-                        switch (message.getPair()) {
-                            case ETHUSD:
-                                ethUsdBidBookQueue.add(message);
-                                return;
-                            case BTCUSD:
-                                btcUsdBidBookQueue.add(message);
-                                return;
-                        }
-
-                    case Offer:
-                        switch (message.getPair()) {
-                            case ETHUSD:
-                                ethUsdOfferBookQueue.add(message);
-                                return;
-                            case BTCUSD:
-                                btcUsdOfferBookQueue.add(message);
-                                return;
-                        }
-
-                    default:
-                        System.out.println("Unexpected Message Type which is not handled: " + message.getType());
-                        messagePool.returnObject(message);
-                        return;
+    /**
+     * Run the task on the distributor thread and wait for it to complete.  Messages the distributor drained before
+     * the task are routed as things were, messages drained after it as the task left them.  Called on the
+     * distributor thread itself, by another task, the task is run right away.
+     * @param task change to the routing or the books, must not block
+     * @throws IllegalStateException if the distributor was shut down before it got to run the task
+     */
+    public void execute(Runnable task) {
+        if (Thread.currentThread() == distributorThread) {
+            task.run();
+            return;
+        }
+        if (!runningFlag) {
+            throw new IllegalStateException(DISTRIBUTOR_SHUT_DOWN);
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        Runnable queuedTask = () -> {
+            try {
+                task.run();
+            } finally {
+                done.countDown();
+            }
+        };
+        tasks.add(queuedTask);
+        waitStrategy.signal();
+        try {
+            while (!done.await(1, TimeUnit.MILLISECONDS)) {
+                //Queued after the distributor thread ran its last tasks, nobody is left to run it
+                if (!distributorThread.isAlive() && tasks.remove(queuedTask)) {
+                    throw new IllegalStateException(DISTRIBUTOR_SHUT_DOWN);
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
 
-            case CancelOrder:
-            case CancelAllOrders:
-                //To avoid having to synchronize between threads. Send the same to all. Let them do their stuff.
-                sendClonedMessage(btcUsdBidBookQueue, message);
-                sendClonedMessage(btcUsdOfferBookQueue, message);
-                sendClonedMessage(ethUsdBidBookQueue, message);
-                sendClonedMessage(ethUsdOfferBookQueue, message);
-                messagePool.returnObject(message);
-                return;
+    private void processMessage(Message message) {
+        if (journal != null) {
+            journal.append(message);
         }
+        router.route(message);
     }
 
-    private void sendClonedMessage(ConcurrentLinkedQueue<Message> queue, Message message) {
-        Message cloneMessage = messagePool.acquireObject();
-        cloneMessage.populateFields(message);
-        queue.add(cloneMessage);
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
     }
 
     public void shutdown() {
@@ -134,3 +184,8 @@ public class OrderBookDistributor {
         runningFlag = false;
     }
 }
+
+abstract class OrderBookDistributorPad {
+    int p08;
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
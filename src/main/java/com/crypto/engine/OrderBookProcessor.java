@@ -1,51 +1,93 @@
 package com.crypto.engine;
 
+import com.crypto.collections.LongIntHashMap;
+import com.crypto.concurrent.BusySpinWaitStrategy;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.WaitStrategy;
 import com.crypto.data.*;
 import com.crypto.feed.ObjectPool;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
+import static com.crypto.engine.OrderStore.NONE;
 
 /**
  * The OrderBookProcessor is an instance to represent and manage one side of a book for a particular currency pair
  * It holds Limits in a pseudo linked lists allowing for market orders to be matched in O(1) time relative to the
- * size of the book.
+ * size of the book.  Limits are indexed by price in a PriceLadder, which also finds the neighbours a new limit is
+ * linked in between.  Resting orders are indexed by order id and chained per client through the orders themselves, so
+ * neither inserts nor cancels allocate.  The orders live in an OrderStore, pooled Order objects on the heap by default
+ * or rows of a slab outside the heap for books holding millions of orders.
+ *
+ * The fields are padded away from whatever was allocated before the book, such as the wait strategy and thread of
+ * another book, so the book thread writing them does not invalidate a cache line another thread spins on.
  */
-public abstract class OrderBookProcessor {
+public abstract class OrderBookProcessor extends OrderBookProcessorPad {
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final int EXPECTED_RESTING_ORDERS = 1 << 16;
+    private static final int EXPECTED_CLIENTS = 1 << 10;
+    private static final int EXECUTION_BATCH_SIZE = 256;
+
     private Thread engineThread;
     private final CcyPair pair;
-    private final HashMap<Long, HashSet<Order>> clientToOrdersMap;
-    protected ConcurrentLinkedQueue<Message> distributorInboundQueue;
+    private final int bookIndex;
+    //Only touched by the thread running this book, so ids depend on nothing but the messages the book was given
+    private long orderSequence;
+    private final LongIntHashMap clientToOrdersMap;
+    protected RingBuffer<Message> distributorInboundQueue;
+    private final Consumer<Message> messageHandler = this::processMessage;
+    private WaitStrategy waitStrategy;
     protected volatile boolean runningFlag;
-    protected final TreeMap<Long, LimitLevel> orderBook = new TreeMap<>();
-    protected final AtomicLong orderCounter;
-    protected final ObjectPool<Order> orderObjectPool;
+    protected final PriceLadder priceLadder;
+    private OrderStore orders;
     protected final ObjectPool<Message> messageObjectPool;
-    private final ObjectPool<LimitLevel> limitObjectPool;
-    protected volatile LimitLevel topOfBook;
-
-    protected final LinkedList<Execution> executions;
-    protected final ConcurrentLinkedQueue<Execution> executionPublishQueue;
+    private ObjectPool<LimitLevel> limitObjectPool;
+    //Only read by the thread running the book, any other thread reads the published top of book
+    protected LimitLevel topOfBook;
+    private final TopOfBook publishedTopOfBook;
+
+    protected final RingBuffer<Execution> executionPublishQueue;
+    //Executions of the message being processed, published together once it is done
+    private final Execution[] executionBatch = new Execution[EXECUTION_BATCH_SIZE];
+    private int executionBatchSize;
+    private int maxSweepLevels = Integer.MAX_VALUE;
+    private long maxSweepSlippage = Long.MAX_VALUE;
+    //Market orders cut short by the sweep guard, counted rather than logged to keep the matching thread off System.out
+    private long sweepGuardRejects;
+    //Null unless market data was asked for
+    private BookMarketData marketData;
     protected final ObjectPool<Execution> executionObjectPool;
-    protected final HashMap<Long, Order> idToOrderMap;
+    protected final LongIntHashMap idToOrderMap;
     protected volatile OrderBookProcessor correspondingProcessor;
 
-    public OrderBookProcessor(CcyPair pair, ObjectPool<Order> orderObjectPool, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, ConcurrentLinkedQueue<Message> distributorInboundQueue, ConcurrentLinkedQueue<Execution> executionPublishQueue, AtomicLong orderCounter) {
-        this.orderObjectPool = orderObjectPool;
+    /**
+     * Side of a book run on a thread of its own, draining the given queue once started
+     */
+    public OrderBookProcessor(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Message> distributorInboundQueue, RingBuffer<Execution> executionPublishQueue) {
+        this(pair, executionObjectPool, messageObjectPool, executionPublishQueue);
         this.distributorInboundQueue = distributorInboundQueue;
+
+        setWaitStrategy(new BusySpinWaitStrategy());
+        configureOrderBookThread(distributorInboundQueue);
+    }
+
+    /**
+     * Side of a book with neither queue nor thread, its messages are handed to it by the PairOrderBook it is part of
+     */
+    OrderBookProcessor(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Execution> executionPublishQueue) {
         this.executionPublishQueue = executionPublishQueue;
         this.executionObjectPool = executionObjectPool;
         this.messageObjectPool = messageObjectPool;
-        this.orderCounter = orderCounter;
-        this.executions = new LinkedList<>();
-        this.idToOrderMap = new HashMap<>();
-        this.clientToOrdersMap = new HashMap<>();
+        this.idToOrderMap = new LongIntHashMap(EXPECTED_RESTING_ORDERS, NONE);
+        this.clientToOrdersMap = new LongIntHashMap(EXPECTED_CLIENTS, NONE);
         this.pair = pair;
+        this.bookIndex = OrderIds.bookIndex(pair, getSide());
+        this.orders = new HeapOrderStore(pair, getSide());
         this.limitObjectPool = new ObjectPool<LimitLevel>(LimitLevel::new);
-
-        configureOrderBookThread(distributorInboundQueue);
+        this.priceLadder = new PriceLadder(pair.getTickSize(), PriceLadder.DEFAULT_WINDOW_SIZE);
+        this.publishedTopOfBook = new TopOfBook(getTopOfBookPrice());
     }
 
     /**
@@ -54,55 +96,64 @@ public abstract class OrderBookProcessor {
      *
      * @param message message to be processed by the orderbook
      */
-    private void processMessage(Message message) {
+    void processMessage(Message message) {
+        handleMessage(message);
+        //Published ahead of the executions, so a client told its order rests finds it in the top of book
+        publishTopOfBook();
+        flushExecutions();
+        if (marketData != null) {
+            marketData.messageProcessed();
+        }
+    }
+
+    private void handleMessage(Message message) {
 
         switch (message.getType()) {
             case CancelOrder:
-                Order orderToCancel = idToOrderMap.remove(message.getOrderId());
+                int orderToCancel = idToOrderMap.remove(message.getOrderId());
 
                 //If the cancel order is the last in its limit, we should remove the limit entirely from the book
-                if (orderToCancel != null) {
-                    Set<Order> clientOrders = clientToOrdersMap.get(orderToCancel.getClientId());
-                    clientOrders.remove(orderToCancel);
-                    if(clientOrders.isEmpty()){
-                        clientToOrdersMap.remove(message.getClientId());
+                if (orderToCancel != NONE) {
+                    removeFromClientOrders(orderToCancel);
+                    LimitLevel limit = orders.getLevel(orderToCancel);
+                    boolean lastOnLimit = limit.cancelOrder(orderToCancel);
+                    if (marketData != null) {
+                        marketData.orderRemoved(orderToCancel);
                     }
+                    //Reported while the order still has its limit to take the price from
+                    reportCancelAccepted(orderToCancel);
                     //If the order was the last on the limit, we should remove the limit.
-                    if(orderToCancel.cancelOrder()) {
-                        LimitLevel limitLevelToRemove = orderToCancel.getLimit();
-                        orderBook.remove(limitLevelToRemove.getPrice());
-                        if (limitLevelToRemove.removeLimitFromOrderbook()) {
-                            topOfBook = null;
-                        }
-                        limitObjectPool.returnObject(limitLevelToRemove);
+                    if(lastOnLimit) {
+                        removePriceLevelFromBook(limit);
                     }
-                    reportCancelAccepted(orderToCancel);
                 }
                 messageObjectPool.returnObject(message);
                 return;
 
             case CancelAllOrders:
-                Set<Order> clientOrders = clientToOrdersMap.remove(message.getClientId());
-
-                if(clientOrders != null && !clientOrders.isEmpty()){
-                    clientOrders.forEach(o -> {
-                        //Cancel order is last on particular price, remove the limit level
-                        if(o.cancelOrder()){
-                            LimitLevel limitLevelToRemove = o.getLimit();
-                            orderBook.remove(limitLevelToRemove.getPrice());
-                            if (limitLevelToRemove.removeLimitFromOrderbook()) {
-                                topOfBook = null;
-                            }
-                            limitObjectPool.returnObject(limitLevelToRemove);
-                        };
-                        reportCancelAccepted(o);
-                    });
+                int clientOrder = clientToOrdersMap.remove(message.getClientId());
+
+                while (clientOrder != NONE) {
+                    //Grab the next order before this one is removed from the store
+                    int nextClientOrder = orders.getNextClientOrder(clientOrder);
+                    idToOrderMap.remove(orders.getOrderId(clientOrder));
+                    LimitLevel limit = orders.getLevel(clientOrder);
+                    boolean lastOnLimit = limit.cancelOrder(clientOrder);
+                    if (marketData != null) {
+                        marketData.orderRemoved(clientOrder);
+                    }
+                    reportCancelAccepted(clientOrder);
+                    //Cancel order is last on particular price, remove the limit level
+                    if(lastOnLimit){
+                        removePriceLevelFromBook(limit);
+                    }
+                    clientOrder = nextClientOrder;
                 }
                 messageObjectPool.returnObject(message);
                 return;
 
             case NewLimitOrder:
-                if(priceCrossingSpread(message.getPrice())){
+                if(!priceLadder.isOnTick(message.getPrice()) || !isWholeLots(message.getQuantity()) || priceCrossingSpread(message.getPrice())){
                     sendReject(message);
                 }else{
                     insertOrderOnLimit(message);
@@ -111,184 +162,482 @@ public abstract class OrderBookProcessor {
                 return;
 
             case NewMarketOrder:
-                if (topOfBook == null) {
+                if (!isWholeLots(message.getQuantity())) {
+                    sendReject(message);
+                } else if (topOfBook == null) {
                     System.out.println("There are no orders in the book to execute. Rejecting Order");
                     sendReject(message);
-                    return;
+                } else {
+                    match(message);
                 }
-                match(message);
                 messageObjectPool.returnObject(message);
         }
 
     }
 
+    private boolean isWholeLots(long quantity) {
+        return quantity % pair.getLotSize() == 0;
+    }
+
     private void sendReject(Message message) {
         Execution execution = executionObjectPool.acquireObject();
         execution.setType(ExecutionType.Reject);
         execution.setClientId(message.getClientId());
         execution.setClientOrderId(message.getClientOrderId());
         execution.setQuantity(message.getQuantity());
-        executionPublishQueue.add(execution);
-        messageObjectPool.returnObject(message);
+        //Pooled executions keep the fields of their last use, every field is written so a replay publishes the same
+        execution.setOrderId(0);
+        execution.setPrice(0);
+        execution.setPair(null);
+        execution.setSide(null);
+        publish(execution);
     }
 
     /**
-     * Helper method to match market orders vs limit orders in the book.  The method will traverse and remove,
-     * partially fill execution until the entire quantity of the market order is filled or the liquidity is entirely
-     * dried up
+     * Sweep a market order through the book, best price first and in time priority within a price, until it is filled,
+     * the book runs dry or the sweep guard stops it.  Every order hit fills both sides at its price, the taker's fill
+     * published ahead of the maker's, so the taker's fills add up to the exact notional of the sweep.  Whatever could
+     * not be filled is rejected.  The sweep is a loop rather than a call per order hit, so a liquidation sweeping
+     * thousands of orders runs in constant stack and without allocating.
      * @param message containing a market order to be filled against the limit orders in book
      */
     private void match(Message message) {
-
-        Order insideBookOrder = topOfBook.peekInsideOfBook();
-        long fillSize = message.getQuantity();
-
-        //Full fill on matching order direct -- The market order is smaller than the first order top of book
-        if (insideBookOrder.getSize() > fillSize) {
-            insideBookOrder.setSize(insideBookOrder.getSize() - fillSize);
-            publishFill(message.getClientId(), fillSize, topOfBook, message.getPair(), getOppositeSide(), ExecutionType.Fill, message.getClientOrderId());
-            publishFill(insideBookOrder.getClientId(), fillSize, topOfBook, message.getPair(), getSide(), ExecutionType.PartialFill, insideBookOrder.getClientOrderId());
-            message.setQuantity(0);
-        } else {
-
-            insideBookOrder = topOfBook.pollInsideOfBook();
-
-            long insideBookOrderSize = insideBookOrder.getSize();
-            boolean marketGreaterThanLimitOrder = fillSize != insideBookOrderSize;
-            publishFill(message.getClientId(), insideBookOrderSize, topOfBook, message.getPair(), getOppositeSide(), marketGreaterThanLimitOrder ? ExecutionType.PartialFill: ExecutionType.Fill, message.getClientOrderId());
-            publishFill(insideBookOrder.getClientId(), insideBookOrderSize, topOfBook, message.getPair(), getSide(), ExecutionType.Fill, insideBookOrder.getClientOrderId());
-
-            message.setQuantity(fillSize - insideBookOrderSize);
-
-            if (topOfBook.isEmpty()) {
-                LimitLevel newTopOfBook = getNextLevelLimit(topOfBook);
-                if(topOfBook.removeLimitFromOrderbook()){
-                    LimitLevel oldTopOfBook = topOfBook;
-                    topOfBook = newTopOfBook;
-                    limitObjectPool.returnObject(oldTopOfBook);
-                }else{
-                    topOfBook = newTopOfBook;
+        long remaining = message.getQuantity();
+        long arrivalPrice = topOfBook.getPrice();
+        int levelsSwept = 0;
+
+        while (remaining > 0 && topOfBook != null) {
+            LimitLevel level = topOfBook;
+            long price = level.getPrice();
+            if (levelsSwept == maxSweepLevels || Math.abs(price - arrivalPrice) > maxSweepSlippage) {
+                break;
+            }
+            levelsSwept++;
+
+            while (remaining > 0 && !level.isEmpty()) {
+                int maker = level.peekInsideOfBook();
+                long makerSize = level.getInsideOfBookSize();
+                long makerClientId = level.getInsideOfBookClientId();
+                long makerClientOrderId = level.getInsideOfBookClientOrderId();
+                long fillSize = Math.min(makerSize, remaining);
+                publishFill(message.getClientId(), fillSize, price, getOppositeSide(),
+                        fillSize == remaining ? ExecutionType.Fill : ExecutionType.PartialFill, message.getClientOrderId());
+                if (makerSize > remaining) {
+                    level.reduceOrder(maker, fillSize);
+                    publishFill(makerClientId, fillSize, price, getSide(), ExecutionType.PartialFill, makerClientOrderId);
+                    if (marketData != null) {
+                        marketData.orderReduced(maker);
+                    }
+                } else {
+                    long makerOrderId = level.getInsideOfBookOrderId();
+                    level.pollInsideOfBook();
+                    publishFill(makerClientId, fillSize, price, getSide(), ExecutionType.Fill, makerClientOrderId);
+                    if (marketData != null) {
+                        marketData.orderRemoved(maker);
+                    }
+                    //The limit order is done with, it can no longer be cancelled
+                    idToOrderMap.remove(makerOrderId);
+                    removeFromClientOrders(maker);
+                    orders.remove(maker);
                 }
+                remaining -= fillSize;
+            }
 
-                if(topOfBook == null && message.getQuantity() != 0){
-                    System.out.println("Orderbook has dried up. No more liqiuidity to execute. Rejecting remainder");
-                    sendReject(message);
-                    return;
-                }
+            if (level.isEmpty()) {
+                removePriceLevelFromBook(level);
             }
+        }
 
-            if (message.getQuantity() >0) {
-                match(message);
+        if (remaining > 0) {
+            //Either the book ran dry or the sweep guard stopped the order, the client learns of it from the reject
+            if (topOfBook != null) {
+                sweepGuardRejects++;
             }
+            message.setQuantity(remaining);
+            sendReject(message);
         }
     }
 
     /**
      * Helper method to insert a limit order into its appropriate limit, and if such limit does not exist
      * then create that as well and place it correctly in the linked list of limit levels.
-     * Inserts / lookup of exiting limits in O(log n) relative to number of price limit levels.
+     * Inserts / lookup of exiting limits in O(1) for prices within the ladder window around top of book.
      * @param message containing a limit order which is to be inserted into the book.
      */
     private void insertOrderOnLimit(Message message) {
-        long orderId = orderCounter.getAndIncrement();
+        long orderId = OrderIds.orderId(orderSequence++, bookIndex);
 
-        LimitLevel currentLimitLevel = orderBook.compute(message.getPrice(), (priceLevel, limit) -> {
+        LimitLevel limit = priceLadder.get(message.getPrice());
 
-            //If this is the first order of this price create the new limit book
-            if(limit == null) {
-                limit = addNewPriceLevelToBook(priceLevel);
-            }
+        //If this is the first order of this price create the new limit book
+        if(limit == null) {
+            limit = addNewPriceLevelToBook(message.getPrice());
+        }
 
-            //Finally grab an order object form the pool and place it on the limit either acquired or created
-            Order order = orderObjectPool.acquireObject();
-            order.populate(orderId, message, limit);
-            limit.addOrder(order);
+        //Finally add the order to the store and place it on the limit either acquired or created
+        int order = orders.add(orderId, message.getClientId(), message.getClientOrderId(), message.getQuantity(), limit);
+        limit.addOrder(order);
 
 
-            //Add the order to the set of its client orders and id to order map
-            idToOrderMap.put(orderId, order);
-            clientToOrdersMap.compute(message.getClientId(), (client,orderSet) ->{
-                if(orderSet == null ){
-                    orderSet = new HashSet<>();
-                }
-                orderSet.add(order);
+        //Add the order to the chain of its client orders and id to order map
+        idToOrderMap.put(orderId, order);
+        addToClientOrders(order);
 
-                return orderSet;
-            });
+        reportOrderAccepted(order);
+        if (marketData != null) {
+            marketData.orderAdded(order);
+        }
+    }
 
-            reportOrderAccepted(order);
-            return limit;
-        });
+    /**
+     * Links the order in at the head of the chain of resting orders of its client
+     * @param order newly accepted order
+     */
+    private void addToClientOrders(int order) {
+        int previousHead = clientToOrdersMap.put(orders.getClientId(order), order);
+        if (previousHead != NONE) {
+            orders.setPreviousClientOrder(previousHead, order);
+            orders.setNextClientOrder(order, previousHead);
+        }
     }
 
-    private void reportOrderAccepted(Order order) {
+    /**
+     * Unlinks the order from the chain of resting orders of its client, dropping the client entirely once its last
+     * order is gone
+     * @param order order which is filled or cancelled
+     */
+    private void removeFromClientOrders(int order) {
+        int previous = orders.getPreviousClientOrder(order);
+        int next = orders.getNextClientOrder(order);
+        if (next != NONE) {
+            orders.setPreviousClientOrder(next, previous);
+        }
+        if (previous != NONE) {
+            orders.setNextClientOrder(previous, next);
+        } else if (next != NONE) {
+            clientToOrdersMap.put(orders.getClientId(order), next);
+        } else {
+            clientToOrdersMap.remove(orders.getClientId(order));
+        }
+        orders.setPreviousClientOrder(order, NONE);
+        orders.setNextClientOrder(order, NONE);
+    }
+
+    private void reportOrderAccepted(int order) {
         Execution execution = executionObjectPool.acquireObject();
         execution.setType(ExecutionType.OrderAccepted);
-        execution.setClientId(order.getClientId());
-        execution.setPair(order.getLimit().getProcessor().getPair());
-        execution.setClientOrderId(order.getClientOrderId());
-        execution.setOrderId(order.getOrderId());
-        execution.setPrice(order.getLimit().getPrice());
-        execution.setQuantity(order.getSize());
+        execution.setClientId(orders.getClientId(order));
+        execution.setPair(pair);
+        execution.setClientOrderId(orders.getClientOrderId(order));
+        execution.setOrderId(orders.getOrderId(order));
+        execution.setPrice(orders.getLevel(order).getPrice());
+        execution.setQuantity(orders.getSize(order));
         execution.setSide(getSide());
-        executionPublishQueue.add(execution);
+        publish(execution);
     }
 
     /**
-     * Helper method to aqcuire a new object form pool and insert in to chain of price levels
+     * Helper method to aqcuire a new object form pool and link it in between its neighbouring price levels, which
+     * the price ladder finds without walking the book.
      * @param priceLevel the price for which no current orders exist
      * @return  the newly added price limit
      */
-    private LimitLevel addNewPriceLevelToBook(Long priceLevel) {
+    private LimitLevel addNewPriceLevelToBook(long priceLevel) {
         LimitLevel limit = limitObjectPool.acquireObject();
         limit.populate(priceLevel, executionObjectPool, this);
-        //Unless this is the first order entirely in this book, traverse the list and insert the new limit
-        //where it fits in.
-        if (topOfBook != null) {
-            insertInChain(limit, topOfBook);
-        } else {
-            topOfBook = limit;
+
+        LimitLevel nextHigher = priceLadder.higher(priceLevel);
+        LimitLevel nextLower = priceLadder.lower(priceLevel);
+        limit.setNextHigher(nextHigher);
+        limit.setNextLower(nextLower);
+        if (nextHigher != null) {
+            nextHigher.setNextLower(limit);
+        }
+        if (nextLower != null) {
+            nextLower.setNextHigher(limit);
+        }
+        priceLadder.put(priceLevel, limit);
+
+        if (topOfBook == null || isBetterPrice(priceLevel, topOfBook.getPrice())) {
+            setTopOfBook(limit);
         }
         return limit;
     }
 
+    /**
+     * Helper method to unlink an empty price level from the book and hand it back to the pool.  Should the level be
+     * top of book, the next level in line takes its place.
+     * @param limitLevel level without any orders left
+     */
+    private void removePriceLevelFromBook(LimitLevel limitLevel) {
+        if (limitLevel == topOfBook) {
+            setTopOfBook(getNextLevelLimit(limitLevel));
+        }
+        priceLadder.remove(limitLevel.getPrice());
+        limitLevel.removeLimitFromOrderbook();
+        orders.levelRemoved(limitLevel);
+        limitObjectPool.returnObject(limitLevel);
+    }
+
+    /**
+     * Keeps the price ladder window centred on where the action is.  A new top of book outside the window means the
+     * market has drifted by at least half a window, so the cost of moving the window is amortised over a large move.
+     * @param limitLevel new top of book, null if the book is empty
+     */
+    private void setTopOfBook(LimitLevel limitLevel) {
+        topOfBook = limitLevel;
+        if (limitLevel != null && !priceLadder.isInWindow(limitLevel.getPrice())) {
+            priceLadder.recenter(limitLevel.getPrice());
+        }
+    }
+
+    private void publishTopOfBook() {
+        LimitLevel top = topOfBook;
+        if (top == null) {
+            publishedTopOfBook.publish(getTopOfBookPrice(), 0, 0);
+        } else {
+            publishedTopOfBook.publish(top.getPrice(), top.getQuantity(), top.getOrderCount());
+        }
+    }
+
     /**
      * Helper method to publish order fills
      * @param clientId filling client
      * @param size size of fill
-     * @param limitLevel price
-     * @param pair which currency pair
+     * @param price price of the fill
      * @param side which side
      */
-    private void publishFill(long clientId, Long size, LimitLevel limitLevel, CcyPair pair, Side side, ExecutionType execType, long clientOrderId) {
+    private void publishFill(long clientId, long size, long price, Side side, ExecutionType execType, long clientOrderId) {
         Execution execution = executionObjectPool.acquireObject();
         execution.setClientId(clientId);
         execution.setClientOrderId(clientOrderId);
         execution.setQuantity(size);
         execution.setCcyPair(pair);
-        execution.setPrice(limitLevel.getPrice());
+        execution.setPrice(price);
         execution.setSide(side);
         execution.setType(execType);
-        executionPublishQueue.add(execution);
+        execution.setOrderId(0);
+        publish(execution);
     }
 
     /**
-     * Helper method to report acceptance of cancellation requests
+     * Helper method to report acceptance of cancellation requests, the order is removed from the store after
      * @param order to report cancelled
      */
-    private void reportCancelAccepted(Order order) {
+    private void reportCancelAccepted(int order) {
         Execution execution = executionObjectPool.acquireObject();
         execution.setType(ExecutionType.CancelAccepted);
-        execution.setOrderId(order.getOrderId());
-        execution.setClientOrderId(order.getClientOrderId());
-        execution.setClientId(order.getClientId());
-        execution.setCcyPair(order.getLimit().getProcessor().getPair());
-        execution.setPrice(order.getLimit().getPrice());
-        executionPublishQueue.add(execution);
-        orderObjectPool.returnObject(order);
+        execution.setOrderId(orders.getOrderId(order));
+        execution.setClientOrderId(orders.getClientOrderId(order));
+        execution.setClientId(orders.getClientId(order));
+        execution.setCcyPair(pair);
+        execution.setPrice(orders.getLevel(order).getPrice());
+        execution.setQuantity(0);
+        execution.setSide(null);
+        publish(execution);
+        orders.remove(order);
+    }
+
+    /**
+     * Queue the execution to be published with the others of the message being processed.  A market order sweeping
+     * many orders publishes its executions in batches of EXECUTION_BATCH_SIZE.
+     */
+    private void publish(Execution execution) {
+        executionBatch[executionBatchSize++] = execution;
+        if (executionBatchSize == EXECUTION_BATCH_SIZE) {
+            flushExecutions();
+        }
+    }
+
+    /**
+     * Hand the executions of the message to the publish queue in one go, which the book threads sharing the queue
+     * contend on once per message rather than once per execution
+     */
+    private void flushExecutions() {
+        if (executionBatchSize == 0) {
+            return;
+        }
+        executionPublishQueue.putAll(executionBatch, executionBatchSize);
+        Arrays.fill(executionBatch, 0, executionBatchSize, null);
+        executionBatchSize = 0;
+    }
+
+    /**
+     * Bound how deep a single market order may sweep the book, the part of the order beyond either bound is rejected.
+     * Keeps a fat finger or a liquidation from emptying a thin book in one go.  Only to be called before the book is
+     * started.
+     * @param maxLevels most price levels one market order may take liquidity from
+     * @param maxSlippage furthest from the top of book at the arrival of the order a fill may be, in price units
+     */
+    public void setSweepGuard(int maxLevels, long maxSlippage) {
+        if (maxLevels < 1 || maxSlippage < 0) {
+            throw new IllegalArgumentException("Sweep guard needs at least one level and no negative slippage, got " + maxLevels + " levels and slippage " + maxSlippage);
+        }
+        this.maxSweepLevels = maxLevels;
+        this.maxSweepSlippage = maxSlippage;
+    }
+
+    /**
+     * Publish level 1, 2 and 3 market data of this book, see BookMarketData.  Only to be called before the book is
+     * started.
+     * @param marketDataQueue queue no other thread than the one running this book offers to
+     * @param updatePool pool the updates are taken from, the consumer returns them
+     * @param snapshotInterval number of messages between snapshots of the book, 0 for snapshots only when market data
+     *                         starts and after updates were lost
+     */
+    public void setMarketData(RingBuffer<MarketDataUpdate> marketDataQueue, ObjectPool<MarketDataUpdate> updatePool, int snapshotInterval) {
+        if (snapshotInterval < 0) {
+            throw new IllegalArgumentException("Snapshot interval can not be negative, got " + snapshotInterval);
+        }
+        this.marketData = new BookMarketData(this, marketDataQueue, updatePool, snapshotInterval);
+    }
+
+    /**
+     * Publish the market data which did not fit into the queue earlier on, for the thread running the book to call
+     * when it is idle
+     */
+    void publishMarketData() {
+        if (marketData != null) {
+            marketData.publish();
+        }
+    }
+
+    /**
+     * Keep the resting orders of this book in an OffHeapOrderStore rather than in Order objects on the heap, which
+     * spares the garbage collector a book of millions of orders.  Only to be called on an empty book before it is
+     * started.
+     * @param expectedOrders number of resting orders to allocate room for up front, the store grows beyond
+     */
+    public void setOffHeapOrderStore(int expectedOrders) {
+        if (!isEmpty()) {
+            throw new IllegalStateException("Book " + pair + " " + getSide() + " must be empty to change where its orders are kept");
+        }
+        this.orders = new OffHeapOrderStore(expectedOrders);
+    }
+
+    /**
+     * Keep the queue of each price level of this book in an ArrayLimitLevel rather than linked through the order
+     * store, so sweeps through levels thousands of orders deep read the queue sequentially.  Only to be called on an
+     * empty book before it is started, and before presize, which would otherwise prewarm the pool being replaced.
+     */
+    public void setArrayLimitLevels() {
+        if (!isEmpty()) {
+            throw new IllegalStateException("Book " + pair + " " + getSide() + " must be empty to change how its levels queue orders");
+        }
+        this.limitObjectPool = new ObjectPool<LimitLevel>(ArrayLimitLevel::new);
+    }
+
+    /**
+     * Size the indexes, the order store and the pool of price levels up front, so the first orders do not pay for
+     * growing them.  Only to be called before the book is started.
+     * @param restingOrders number of resting orders the book should index without growing
+     * @param clients number of clients with resting orders the book should index without growing
+     * @param limitLevels number of price levels to pool
+     */
+    void presize(int restingOrders, int clients, int limitLevels) {
+        idToOrderMap.ensureCapacity(restingOrders);
+        clientToOrdersMap.ensureCapacity(clients);
+        orders.presize(restingOrders);
+        limitObjectPool.prewarm(limitLevels);
+    }
+
+    /**
+     * Start handing out order ids from the first sequence again, so a book whose orders were all cancelled hands out
+     * the same ids as a fresh one.  Only to be called on an empty book before it is started.
+     */
+    void resetOrderSequence() {
+        orderSequence = 0;
+    }
+
+    /**
+     * Rest an order taken from a snapshot at the back of its price, without publishing anything.  Orders are to be
+     * restored best price first and in time priority within a price, so the queues come out as they were snapshot.
+     * The client chains are linked once all orders are in.  Only to be called before the book is started.
+     */
+    void restoreOrder(long orderId, long clientId, long clientOrderId, long price, long size) {
+        LimitLevel limit = priceLadder.get(price);
+        if (limit == null) {
+            limit = addNewPriceLevelToBook(price);
+        }
+        int order = orders.add(orderId, clientId, clientOrderId, size, limit);
+        limit.addOrder(order);
+        idToOrderMap.put(orderId, order);
+        publishTopOfBook();
+    }
+
+    /**
+     * Chain the restored orders per client.  Linking them oldest first leaves every chain newest first, as
+     * accepting the orders did, so mass cancels report them in the same order as before the snapshot.
+     * @param orderIds ids of the restored orders in ascending order, which is the order they were accepted in
+     * @param count number of ids
+     */
+    void linkRestoredClientOrders(long[] orderIds, int count) {
+        for (int i = 0; i < count; i++) {
+            addToClientOrders(idToOrderMap.get(orderIds[i]));
+        }
+    }
+
+    /**
+     * Carry on handing out order ids where the book left off when it was snapshot.  Only to be called before the book
+     * is started.
+     */
+    void restoreOrderSequence(long orderSequence) {
+        this.orderSequence = orderSequence;
+    }
+
+    long getOrderSequence() {
+        return orderSequence;
+    }
+
+    /**
+     * @return number of market orders whose remainder the sweep guard rejected, to be read on the book thread
+     */
+    long getSweepGuardRejectCount() {
+        return sweepGuardRejects;
+    }
+
+    int getRestingOrderCount() {
+        return idToOrderMap.size();
+    }
+
+    OrderStore getOrderStore() {
+        return orders;
+    }
+
+    LimitLevel getTopOfBook() {
+        return topOfBook;
+    }
+
+    /**
+     * @return best price of this side as of the last message processed, safe to read from any thread
+     */
+    public TopOfBook getPublishedTopOfBook() {
+        return publishedTopOfBook;
+    }
+
+    LimitLevel getPriceLevel(long price) {
+        return priceLadder.get(price);
+    }
+
+    /**
+     * @return the level next worse than the given price, which need not be in the book, null if there is none
+     */
+    LimitLevel getLevelWorseThan(long price) {
+        return getSide() == Side.Bid ? priceLadder.lower(price) : priceLadder.higher(price);
+    }
+
+    int getPriceLevelCount() {
+        return priceLadder.size();
+    }
+
+    /**
+     * @return true if no order rests in the book
+     */
+    boolean isEmpty() {
+        return topOfBook == null && idToOrderMap.isEmpty() && clientToOrdersMap.isEmpty() && priceLadder.size() == 0;
     }
 
-    public ConcurrentLinkedQueue<Message> getDistributorInboundQueue() {
+    public RingBuffer<Message> getDistributorInboundQueue() {
         return distributorInboundQueue;
     }
 
@@ -300,36 +649,75 @@ public abstract class OrderBookProcessor {
         this.correspondingProcessor = offerProcessor;
     }
 
+    /**
+     * Select how the book thread waits for messages, must be called before the book is started.  Defaults to busy
+     * spinning.
+     * @param waitStrategy strategy owned exclusively by this book
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        checkRunsOnItsOwn();
+        this.waitStrategy = waitStrategy;
+        distributorInboundQueue.setConsumerWaitStrategy(waitStrategy);
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Stop the book thread and wait for it to finish the messages it drained, so whatever it published is in the
+     * queues by the time this returns
+     */
     public void shutdown() {
         System.out.println("Order Book Processor on ccy: [" + pair + "] on side: [" + getSide() +"] shutting down.");
         runningFlag = false;
+        if (engineThread != null) {
+            waitStrategy.signal();
+            try {
+                engineThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
      * Helper method to launch the processor in its own thread.
-     * @param distributorInboundQueue Queue for which to poll for incoming orders / cancellations
+     * @param distributorInboundQueue Queue for which to drain incoming orders / cancellations
      */
-    private void configureOrderBookThread(ConcurrentLinkedQueue<Message> distributorInboundQueue) {
+    private void configureOrderBookThread(RingBuffer<Message> distributorInboundQueue) {
         engineThread = new Thread(() -> {
             System.out.println("Order Book Processor on ccy: [" + pair + "] on side: [" + getSide() +"] started.");
 
+            WaitStrategy idleStrategy = waitStrategy;
             while (runningFlag) {
-                Message message = distributorInboundQueue.poll();
-                if (message != null) {
-                    processMessage(message);
+                int drained = distributorInboundQueue.drain(messageHandler, DRAIN_BATCH_SIZE);
+                if (drained == 0) {
+                    publishMarketData();
                 }
+                idleStrategy.idle(drained);
             }
         });
     }
 
     public void startOrderBook(){
+        checkRunsOnItsOwn();
         runningFlag = true;
         engineThread.start();
     }
 
+    private void checkRunsOnItsOwn() {
+        if (distributorInboundQueue == null) {
+            throw new IllegalStateException("The " + getSide() + " side of " + pair + " is run by the pair book it is part of");
+        }
+    }
+
     //Methods to be implemented depending on side
 
-    abstract void insertInChain(LimitLevel newLimitLevel, LimitLevel currentLimitLevel);
+    /**
+     * @return true if price is more aggressive than comparedTo for this side of the book
+     */
+    protected abstract boolean isBetterPrice(long price, long comparedTo);
 
     abstract LimitLevel getNextLevelLimit(LimitLevel limitLevelToExecute);
 
@@ -342,3 +730,8 @@ public abstract class OrderBookProcessor {
     protected abstract boolean priceCrossingSpread(long price);
 
 }
+
+abstract class OrderBookProcessorPad {
+    int p08;
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
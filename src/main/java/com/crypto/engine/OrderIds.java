@@ -0,0 +1,41 @@
+package com.crypto.engine;
+
+import com.crypto.data.CcyPair;
+import com.crypto.data.InstrumentRegistry;
+import com.crypto.data.Side;
+
+/**
+ * Order ids carry the index of the book holding the order in their low bits, so the distributor can send a cancel
+ * straight to that book rather than asking every book.  Books are indexed by instrument id, offer side first, which
+ * is also the order the distributor takes a list of queues in.
+ */
+final class OrderIds {
+
+    static final int MAX_BOOKS = 2 * InstrumentRegistry.MAX_INSTRUMENTS;
+    static final int BOOK_INDEX_BITS = Integer.numberOfTrailingZeros(MAX_BOOKS);
+    private static final long BOOK_INDEX_MASK = MAX_BOOKS - 1;
+
+    private OrderIds() {
+    }
+
+    static int bookIndex(CcyPair pair, Side side) {
+        return pair.getId() * 2 + (side == Side.Offer ? 0 : 1);
+    }
+
+    /**
+     * @param sequence sequence number of the order, unique within its book
+     * @param bookIndex index of the book the order rests in
+     * @return order id to hand out to the client
+     */
+    static long orderId(long sequence, int bookIndex) {
+        return (sequence << BOOK_INDEX_BITS) | bookIndex;
+    }
+
+    static int bookIndexOf(long orderId) {
+        return (int) (orderId & BOOK_INDEX_MASK);
+    }
+
+    static int instrumentIdOf(long orderId) {
+        return bookIndexOf(orderId) >>> 1;
+    }
+}
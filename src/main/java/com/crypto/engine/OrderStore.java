@@ -0,0 +1,74 @@
+package com.crypto.engine;
+
+/**
+ * The resting orders of one side of a book, each addressed by an int index for as long as it rests.  An order is
+ * linked into the queue of its price level through its head, the order in front of it, and its tail, the order behind
+ * it, and into the chain of resting orders of its client.  NONE stands for no order at the end of a queue or chain.
+ *
+ * HeapOrderStore keeps every order in an Order object of its own, OffHeapOrderStore keeps them in rows of a slab
+ * outside the heap.  Only ever touched by the thread running the book.
+ */
+interface OrderStore {
+
+    int NONE = -1;
+
+    /**
+     * @return index of the new order, not linked to any other order yet
+     */
+    int add(long orderId, long clientId, long clientOrderId, long size, LimitLevel level);
+
+    /**
+     * Free the index of an order which was unlinked from its level and its client, it may be handed out again
+     */
+    void remove(int order);
+
+    long getOrderId(int order);
+
+    long getClientId(int order);
+
+    long getClientOrderId(int order);
+
+    long getSize(int order);
+
+    void setSize(int order, long size);
+
+    LimitLevel getLevel(int order);
+
+    int getHead(int order);
+
+    void setHead(int order, int head);
+
+    int getTail(int order);
+
+    void setTail(int order, int tail);
+
+    int getPreviousClientOrder(int order);
+
+    void setPreviousClientOrder(int order, int previousClientOrder);
+
+    int getNextClientOrder(int order);
+
+    void setNextClientOrder(int order, int nextClientOrder);
+
+    /**
+     * Position of the order in the queue of an ArrayLimitLevel, which keeps no links in the store
+     */
+    int getLevelPosition(int order);
+
+    void setLevelPosition(int order, int levelPosition);
+
+    /**
+     * Forget a level which left the book with no order in it, before it goes back to the level pool
+     */
+    void levelRemoved(LimitLevel level);
+
+    /**
+     * @return number of orders resting
+     */
+    int size();
+
+    /**
+     * Make room for this many resting orders up front, so the first orders do not pay for growing the store
+     */
+    void presize(int orders);
+}
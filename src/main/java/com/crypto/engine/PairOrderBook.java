@@ -0,0 +1,124 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+
+/**
+ * Both sides of the book for one currency pair, with neither queue nor thread of its own.  Whichever thread hosts the
+ * pair, a PairOrderBookProcessor of its own or an EngineShard next to other pairs, hands it the messages of the pair
+ * one at a time.  As that one thread owns both sides, checking whether a new limit crosses the spread reads a top of
+ * book which can not move underneath it.
+ *
+ * Messages are routed to the side they concern here.  Cancels find their side through the order id, mass cancels are
+ * applied to both sides.
+ */
+public class PairOrderBook {
+
+    private final CcyPair pair;
+    private final OrderBookProcessor bidProcessor;
+    private final OrderBookProcessor offerProcessor;
+    private final int bidBookIndex;
+    private final ObjectPool<Message> messageObjectPool;
+
+    public PairOrderBook(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Execution> executionPublishQueue) {
+        this.pair = pair;
+        this.messageObjectPool = messageObjectPool;
+        this.bidProcessor = new BidOrderBookProcessor(pair, executionObjectPool, messageObjectPool, executionPublishQueue);
+        this.offerProcessor = new OfferOrderBookProcessor(pair, executionObjectPool, messageObjectPool, executionPublishQueue);
+        this.bidBookIndex = OrderIds.bookIndex(pair, Side.Bid);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+    }
+
+    /**
+     * Hands the message to the side of the book it concerns.  Market orders execute against the opposite side,
+     * mass cancels are not side specific so both sides get to look for the client's orders.
+     * @param message message to be processed by the pair
+     */
+    void processMessage(Message message) {
+        switch (message.getType()) {
+            case NewLimitOrder:
+                bookForSide(message.getSide()).processMessage(message);
+                return;
+
+            case NewMarketOrder:
+                bookForSide(message.getSide() == Side.Bid ? Side.Offer : Side.Bid).processMessage(message);
+                return;
+
+            case CancelOrder:
+                bookForSide(OrderIds.bookIndexOf(message.getOrderId()) == bidBookIndex ? Side.Bid : Side.Offer).processMessage(message);
+                return;
+
+            case CancelAllOrders:
+                //Each side returns the message it processed to the pool, so the bid side works on a copy
+                Message bidMessage = messageObjectPool.acquireObject();
+                bidMessage.populateFields(message);
+                bidProcessor.processMessage(bidMessage);
+                offerProcessor.processMessage(message);
+        }
+    }
+
+    /**
+     * Publish whatever market data of either side is pending, for the hosting thread to call when it is idle
+     */
+    void publishMarketData() {
+        bidProcessor.publishMarketData();
+        offerProcessor.publishMarketData();
+    }
+
+    private OrderBookProcessor bookForSide(Side side) {
+        return side == Side.Bid ? bidProcessor : offerProcessor;
+    }
+
+    /**
+     * @return best price of one side of the pair as of the last message processed, safe to read from any thread
+     */
+    public TopOfBook getTopOfBook(Side side) {
+        return bookForSide(side).getPublishedTopOfBook();
+    }
+
+    OrderBookProcessor getBidProcessor() {
+        return bidProcessor;
+    }
+
+    OrderBookProcessor getOfferProcessor() {
+        return offerProcessor;
+    }
+
+    public CcyPair getPair() {
+        return pair;
+    }
+
+    /**
+     * Bound how deep a single market order may sweep either side of the pair, see OrderBookProcessor.setSweepGuard
+     */
+    public void setSweepGuard(int maxLevels, long maxSlippage) {
+        bidProcessor.setSweepGuard(maxLevels, maxSlippage);
+        offerProcessor.setSweepGuard(maxLevels, maxSlippage);
+    }
+
+    /**
+     * Keep the resting orders of both sides off the heap, see OrderBookProcessor.setOffHeapOrderStore
+     */
+    public void setOffHeapOrderStore(int expectedOrders) {
+        bidProcessor.setOffHeapOrderStore(expectedOrders);
+        offerProcessor.setOffHeapOrderStore(expectedOrders);
+    }
+
+    /**
+     * Queue the orders of every price level of both sides in parallel arrays, see OrderBookProcessor.setArrayLimitLevels
+     */
+    public void setArrayLimitLevels() {
+        bidProcessor.setArrayLimitLevels();
+        offerProcessor.setArrayLimitLevels();
+    }
+
+    /**
+     * Publish market data of both sides of the pair to one queue, see OrderBookProcessor.setMarketData
+     */
+    public void setMarketData(RingBuffer<MarketDataUpdate> marketDataQueue, ObjectPool<MarketDataUpdate> updatePool, int snapshotInterval) {
+        bidProcessor.setMarketData(marketDataQueue, updatePool, snapshotInterval);
+        offerProcessor.setMarketData(marketDataQueue, updatePool, snapshotInterval);
+    }
+}
@@ -0,0 +1,141 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.BusySpinWaitStrategy;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.WaitStrategy;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+
+import java.util.function.Consumer;
+
+/**
+ * Runs the PairOrderBook of one currency pair on a thread of its own, as an alternative to giving the bid and offer
+ * processors a thread each.  The pair needs one core rather than two and a new limit is checked against the spread
+ * on the thread owning both sides of it.
+ *
+ * The distributor is handed this processor's queue for both sides of the pair.
+ */
+public class PairOrderBookProcessor {
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+
+    private final PairOrderBook book;
+    private final RingBuffer<Message> distributorInboundQueue;
+    private final Consumer<Message> messageHandler;
+    private final Thread engineThread;
+    private WaitStrategy waitStrategy;
+    private volatile boolean runningFlag;
+
+    public PairOrderBookProcessor(CcyPair pair, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Message> distributorInboundQueue, RingBuffer<Execution> executionPublishQueue) {
+        this.book = new PairOrderBook(pair, executionObjectPool, messageObjectPool, executionPublishQueue);
+        this.distributorInboundQueue = distributorInboundQueue;
+        this.messageHandler = book::processMessage;
+
+        setWaitStrategy(new BusySpinWaitStrategy());
+        engineThread = new Thread(() -> {
+            System.out.println("Pair Order Book Processor on ccy: [" + pair + "] started.");
+
+            WaitStrategy idleStrategy = waitStrategy;
+            while (runningFlag) {
+                int drained = distributorInboundQueue.drain(messageHandler, DRAIN_BATCH_SIZE);
+                if (drained == 0) {
+                    book.publishMarketData();
+                }
+                idleStrategy.idle(drained);
+            }
+        });
+    }
+
+    void processMessage(Message message) {
+        book.processMessage(message);
+    }
+
+    /**
+     * @return best price of one side of the pair as of the last message processed, safe to read from any thread
+     */
+    public TopOfBook getTopOfBook(Side side) {
+        return book.getTopOfBook(side);
+    }
+
+    PairOrderBook getBook() {
+        return book;
+    }
+
+    OrderBookProcessor getBidProcessor() {
+        return book.getBidProcessor();
+    }
+
+    OrderBookProcessor getOfferProcessor() {
+        return book.getOfferProcessor();
+    }
+
+    public CcyPair getPair() {
+        return book.getPair();
+    }
+
+    public RingBuffer<Message> getDistributorInboundQueue() {
+        return distributorInboundQueue;
+    }
+
+    /**
+     * Select how the pair thread waits for messages, must be called before the pair is started.  Defaults to busy
+     * spinning.
+     * @param waitStrategy strategy owned exclusively by this pair
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        distributorInboundQueue.setConsumerWaitStrategy(waitStrategy);
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * See PairOrderBook.setSweepGuard
+     */
+    public void setSweepGuard(int maxLevels, long maxSlippage) {
+        book.setSweepGuard(maxLevels, maxSlippage);
+    }
+
+    /**
+     * See PairOrderBook.setOffHeapOrderStore
+     */
+    public void setOffHeapOrderStore(int expectedOrders) {
+        book.setOffHeapOrderStore(expectedOrders);
+    }
+
+    /**
+     * See PairOrderBook.setArrayLimitLevels
+     */
+    public void setArrayLimitLevels() {
+        book.setArrayLimitLevels();
+    }
+
+    /**
+     * See PairOrderBook.setMarketData
+     */
+    public void setMarketData(RingBuffer<MarketDataUpdate> marketDataQueue, ObjectPool<MarketDataUpdate> updatePool, int snapshotInterval) {
+        book.setMarketData(marketDataQueue, updatePool, snapshotInterval);
+    }
+
+    public void startOrderBook() {
+        runningFlag = true;
+        engineThread.start();
+    }
+
+    /**
+     * Stop the pair thread and wait for it to finish the messages it drained, so whatever it published is in the
+     * queues by the time this returns
+     */
+    public void shutdown() {
+        System.out.println("Pair Order Book Processor on ccy: [" + getPair() + "] shutting down.");
+        runningFlag = false;
+        waitStrategy.signal();
+        try {
+            engineThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.crypto.engine;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Price to LimitLevel index for one side of a book.  Prices are converted to ticks and the ticks inside a window
+ * around the top of book are addressed directly in an array, giving O(1) lookup and insert without boxing.
+ * A bitset over the window marks occupied ticks so the next better or worse level is found by scanning 64 ticks
+ * per word rather than walking the book.  Levels which fall outside the window (far away from the action) are kept
+ * in a sorted overflow map.
+ *
+ * The window is re-anchored around a price either when it runs empty or when the owning book asks for it,
+ * typically because the top of book moved outside of it.
+ */
+public class PriceLadder {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 14;
+
+    private final long tickSize;
+    private final int windowSize;
+    private final LimitLevel[] window;
+    private final long[] occupiedTicks;
+    private final TreeMap<Long, LimitLevel> overflow = new TreeMap<>();
+
+    private long windowBaseTick;
+    private int windowLevelCount;
+
+    public PriceLadder(long tickSize, int windowSize) {
+        if (tickSize < 1) {
+            throw new IllegalArgumentException("Tick size must be positive, was " + tickSize);
+        }
+        if (windowSize < Long.SIZE || Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two of at least 64, was " + windowSize);
+        }
+        this.tickSize = tickSize;
+        this.windowSize = windowSize;
+        this.window = new LimitLevel[windowSize];
+        this.occupiedTicks = new long[windowSize / Long.SIZE];
+    }
+
+    public boolean isOnTick(long price) {
+        return price % tickSize == 0;
+    }
+
+    public boolean isInWindow(long price) {
+        long index = toTick(price) - windowBaseTick;
+        return index >= 0 && index < windowSize;
+    }
+
+    public LimitLevel get(long price) {
+        long index = toTick(price) - windowBaseTick;
+        if (index >= 0 && index < windowSize) {
+            return window[(int) index];
+        }
+        return overflow.get(price);
+    }
+
+    /**
+     * Add a level for a price which is not yet in the ladder.
+     * @param price price of the level, must be on tick
+     * @param level level to index
+     */
+    public void put(long price, LimitLevel level) {
+        if (windowLevelCount == 0 && !isInWindow(price)) {
+            recenter(price);
+        }
+        long index = toTick(price) - windowBaseTick;
+        if (index >= 0 && index < windowSize) {
+            window[(int) index] = level;
+            occupiedTicks[(int) (index >>> 6)] |= 1L << index;
+            windowLevelCount++;
+        } else {
+            overflow.put(price, level);
+        }
+    }
+
+    public LimitLevel remove(long price) {
+        long index = toTick(price) - windowBaseTick;
+        if (index >= 0 && index < windowSize) {
+            LimitLevel level = window[(int) index];
+            if (level != null) {
+                window[(int) index] = null;
+                occupiedTicks[(int) (index >>> 6)] &= ~(1L << index);
+                windowLevelCount--;
+            }
+            return level;
+        }
+        return overflow.remove(price);
+    }
+
+    /**
+     * @param price reference price, does not need to be in the ladder itself
+     * @return the level with the lowest price strictly above the given price, null if there is none
+     */
+    public LimitLevel higher(long price) {
+        LimitLevel windowLevel = null;
+        long index = toTick(price) - windowBaseTick;
+        if (index < windowSize - 1) {
+            int nextIndex = nextOccupiedIndex((int) Math.max(index + 1, 0));
+            if (nextIndex >= 0) {
+                windowLevel = window[nextIndex];
+            }
+        }
+        Map.Entry<Long, LimitLevel> overflowEntry = overflow.higherEntry(price);
+        if (overflowEntry == null) {
+            return windowLevel;
+        }
+        if (windowLevel == null || overflowEntry.getKey() < windowLevel.getPrice()) {
+            return overflowEntry.getValue();
+        }
+        return windowLevel;
+    }
+
+    /**
+     * @param price reference price, does not need to be in the ladder itself
+     * @return the level with the highest price strictly below the given price, null if there is none
+     */
+    public LimitLevel lower(long price) {
+        LimitLevel windowLevel = null;
+        long index = toTick(price) - windowBaseTick;
+        if (index > 0) {
+            int previousIndex = previousOccupiedIndex((int) Math.min(index - 1, windowSize - 1));
+            if (previousIndex >= 0) {
+                windowLevel = window[previousIndex];
+            }
+        }
+        Map.Entry<Long, LimitLevel> overflowEntry = overflow.lowerEntry(price);
+        if (overflowEntry == null) {
+            return windowLevel;
+        }
+        if (windowLevel == null || overflowEntry.getKey() > windowLevel.getPrice()) {
+            return overflowEntry.getValue();
+        }
+        return windowLevel;
+    }
+
+    /**
+     * Move the window so the given price sits in its middle.  The levels staying in the window are shifted along in
+     * place, only the levels leaving it are moved to the overflow map and only overflow levels of the ticks newly
+     * covered are moved into it.  Costs O(window) without allocating, plus whatever the overflow map needs for the
+     * levels moved, which is why it should only happen when the top of book has drifted far.
+     * @param price price to centre the window around
+     */
+    public void recenter(long price) {
+        long newBaseTick = toTick(price) - windowSize / 2;
+        long shift = newBaseTick - windowBaseTick;
+        if (shift == 0) {
+            return;
+        }
+
+        if (Math.abs(shift) >= windowSize) {
+            moveToOverflow(0, windowSize);
+            windowBaseTick = newBaseTick;
+            moveFromOverflow(newBaseTick, newBaseTick + windowSize);
+            return;
+        }
+
+        int distance = (int) Math.abs(shift);
+        long oldBaseTick = windowBaseTick;
+        if (shift > 0) {
+            //Window moves up, the lowest ticks leave and the rest slide down
+            moveToOverflow(0, distance);
+            System.arraycopy(window, distance, window, 0, windowSize - distance);
+            clearWindow(windowSize - distance, windowSize);
+            shiftOccupiedTicksDown(distance);
+            windowBaseTick = newBaseTick;
+            moveFromOverflow(oldBaseTick + windowSize, newBaseTick + windowSize);
+        } else {
+            //Window moves down, the highest ticks leave and the rest slide up
+            moveToOverflow(windowSize - distance, windowSize);
+            System.arraycopy(window, 0, window, distance, windowSize - distance);
+            clearWindow(0, distance);
+            shiftOccupiedTicksUp(distance);
+            windowBaseTick = newBaseTick;
+            moveFromOverflow(newBaseTick, oldBaseTick);
+        }
+    }
+
+    public int size() {
+        return windowLevelCount + overflow.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private long toTick(long price) {
+        return Math.floorDiv(price, tickSize);
+    }
+
+    /**
+     * Move the levels of the window indexes from, inclusive, to to, exclusive, into the overflow map
+     */
+    private void moveToOverflow(int from, int to) {
+        int index = nextOccupiedIndex(from);
+        while (index >= 0 && index < to) {
+            LimitLevel level = window[index];
+            overflow.put(level.getPrice(), level);
+            window[index] = null;
+            occupiedTicks[index >>> 6] &= ~(1L << index);
+            windowLevelCount--;
+            index = index + 1 < windowSize ? nextOccupiedIndex(index + 1) : -1;
+        }
+    }
+
+    /**
+     * Move the overflow levels of the ticks from, inclusive, to to, exclusive, into the window which covers them
+     */
+    private void moveFromOverflow(long fromTick, long toTick) {
+        if (overflow.isEmpty()) {
+            return;
+        }
+        Map<Long, LimitLevel> covered = overflow.subMap(fromTick * tickSize, true, toTick * tickSize, false);
+        if (covered.isEmpty()) {
+            return;
+        }
+        for (LimitLevel level : covered.values()) {
+            int index = (int) (toTick(level.getPrice()) - windowBaseTick);
+            window[index] = level;
+            occupiedTicks[index >>> 6] |= 1L << index;
+            windowLevelCount++;
+        }
+        covered.clear();
+    }
+
+    private void clearWindow(int from, int to) {
+        for (int index = from; index < to; index++) {
+            window[index] = null;
+        }
+    }
+
+    /**
+     * Shift the bitset towards index 0, dropping the lowest distance bits
+     */
+    private void shiftOccupiedTicksDown(int distance) {
+        int wordShift = distance >>> 6;
+        int bitShift = distance & 63;
+        int words = occupiedTicks.length;
+        for (int word = 0; word < words; word++) {
+            int source = word + wordShift;
+            long bits = source < words ? occupiedTicks[source] >>> bitShift : 0;
+            if (bitShift != 0 && source + 1 < words) {
+                bits |= occupiedTicks[source + 1] << (Long.SIZE - bitShift);
+            }
+            occupiedTicks[word] = bits;
+        }
+    }
+
+    /**
+     * Shift the bitset away from index 0, dropping the highest distance bits
+     */
+    private void shiftOccupiedTicksUp(int distance) {
+        int wordShift = distance >>> 6;
+        int bitShift = distance & 63;
+        for (int word = occupiedTicks.length - 1; word >= 0; word--) {
+            int source = word - wordShift;
+            long bits = source >= 0 ? occupiedTicks[source] << bitShift : 0;
+            if (bitShift != 0 && source - 1 >= 0) {
+                bits |= occupiedTicks[source - 1] >>> (Long.SIZE - bitShift);
+            }
+            occupiedTicks[word] = bits;
+        }
+    }
+
+    private int nextOccupiedIndex(int fromIndex) {
+        int word = fromIndex >>> 6;
+        long bits = occupiedTicks[word] & (-1L << fromIndex);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == occupiedTicks.length) {
+                return -1;
+            }
+            bits = occupiedTicks[word];
+        }
+    }
+
+    private int previousOccupiedIndex(int fromIndex) {
+        int word = fromIndex >>> 6;
+        long bits = occupiedTicks[word] & (-1L >>> (63 - (fromIndex & 63)));
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (word-- == 0) {
+                return -1;
+            }
+            bits = occupiedTicks[word];
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.BusySpinWaitStrategy;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.concurrent.WaitStrategy;
+import com.crypto.data.CcyPair;
+import com.crypto.data.Execution;
+import com.crypto.data.InstrumentRegistry;
+import com.crypto.data.Message;
+import com.crypto.feed.ObjectPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+
+/**
+ * Runs the books of many pairs on a fixed number of engine shards rather than a thread per book.  Pairs are spread
+ * over the shards the engine was created with by instrument id, each shard thread can be pinned to a cpu of its own.
+ * A pair which trades hot can be moved to another shard, or to a dedicated shard added for it, while the engine runs.
+ *
+ * Changes to the layout are carried out on the distributor thread so they are ordered with the messages it routes.
+ * Not meant to be reconfigured from several threads at once.
+ */
+public class ShardedEngine {
+
+    private final OrderBookDistributor distributor;
+    private final RingBuffer<Message> inboundQueue;
+    private final List<EngineShard> shards = new ArrayList<>();
+    private final EngineShard[] shardOfInstrument = new EngineShard[InstrumentRegistry.MAX_INSTRUMENTS];
+    private final int partitionedShardCount;
+    private final Supplier<WaitStrategy> waitStrategyFactory;
+    private final ObjectPool<Execution> executionObjectPool;
+    private final ObjectPool<Message> messageObjectPool;
+    private final RingBuffer<Execution> executionPublishQueue;
+    private boolean started;
+
+    public ShardedEngine(int[] shardCpus, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Execution> executionPublishQueue) {
+        this(shardCpus, executionObjectPool, messageObjectPool, executionPublishQueue, BusySpinWaitStrategy::new, new BusySpinWaitStrategy());
+    }
+
+    /**
+     * @param shardCpus one entry per shard to create, the cpu to pin it to or ThreadAffinity.NO_AFFINITY
+     * @param waitStrategyFactory creates the wait strategy of every shard, including shards added later on
+     * @param distributorWaitStrategy wait strategy of the distributor thread
+     */
+    public ShardedEngine(int[] shardCpus, ObjectPool<Execution> executionObjectPool, ObjectPool<Message> messageObjectPool, RingBuffer<Execution> executionPublishQueue, Supplier<WaitStrategy> waitStrategyFactory, WaitStrategy distributorWaitStrategy) {
+        if (shardCpus.length < 1) {
+            throw new IllegalArgumentException("The engine needs at least one shard");
+        }
+        this.executionObjectPool = executionObjectPool;
+        this.messageObjectPool = messageObjectPool;
+        this.executionPublishQueue = executionPublishQueue;
+        this.waitStrategyFactory = waitStrategyFactory;
+        this.partitionedShardCount = shardCpus.length;
+
+        inboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        distributor = new OrderBookDistributor(inboundQueue, Collections.emptyList(), messageObjectPool, distributorWaitStrategy);
+        for (int cpu : shardCpus) {
+            newShard(cpu);
+        }
+    }
+
+    /**
+     * Start trading a pair on the shard its instrument id partitions it to
+     * @return index of the shard the pair's books run on
+     */
+    public int addInstrument(CcyPair pair) {
+        int shardIndex = pair.getId() % partitionedShardCount;
+        addInstrument(pair, shardIndex);
+        return shardIndex;
+    }
+
+    public void addInstrument(CcyPair pair, int shardIndex) {
+        EngineShard shard = shards.get(shardIndex);
+        if (shardOfInstrument[pair.getId()] != null) {
+            throw new IllegalStateException("Instrument " + pair + " is already traded on shard " + shardOfInstrument[pair.getId()].getShardId());
+        }
+        shardOfInstrument[pair.getId()] = shard;
+        distributor.execute(() -> {
+            shard.host(new PairOrderBook(pair, executionObjectPool, messageObjectPool, executionPublishQueue));
+            distributor.addBook(pair, shard.getInboundQueue(), shard.getInboundQueue());
+        });
+    }
+
+    /**
+     * Stop trading a pair.  Messages already routed to its books are still processed, its resting orders are dropped
+     * without notice.
+     */
+    public void removeInstrument(CcyPair pair) {
+        EngineShard shard = shardOf(pair);
+        shardOfInstrument[pair.getId()] = null;
+        distributor.execute(() -> {
+            distributor.removeBook(pair);
+            shard.transfer(pair, null);
+        });
+    }
+
+    /**
+     * Move the books of a pair, resting orders included, to another shard.
+     */
+    public void moveInstrument(CcyPair pair, int shardIndex) {
+        EngineShard source = shardOf(pair);
+        EngineShard target = shards.get(shardIndex);
+        if (source == target) {
+            return;
+        }
+        shardOfInstrument[pair.getId()] = target;
+        distributor.execute(() -> {
+            source.transfer(pair, target);
+            distributor.addBook(pair, target.getInboundQueue(), target.getInboundQueue());
+        });
+    }
+
+    /**
+     * Give a hot pair a shard of its own.  The new shard takes no part in partitioning pairs added later on.
+     * @param cpu cpu to pin the new shard to, or ThreadAffinity.NO_AFFINITY
+     * @return index of the new shard
+     */
+    public int moveToDedicatedShard(CcyPair pair, int cpu) {
+        int shardIndex = newShard(cpu).getShardId();
+        moveInstrument(pair, shardIndex);
+        return shardIndex;
+    }
+
+    private EngineShard newShard(int cpu) {
+        EngineShard shard = new EngineShard(shards.size(), cpu, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), messageObjectPool, waitStrategyFactory.get());
+        shards.add(shard);
+        if (started) {
+            shard.start();
+        }
+        return shard;
+    }
+
+    private EngineShard shardOf(CcyPair pair) {
+        EngineShard shard = shardOfInstrument[pair.getId()];
+        if (shard == null) {
+            throw new IllegalStateException("Instrument " + pair + " is not traded");
+        }
+        return shard;
+    }
+
+    /**
+     * @return index of the shard running the pair's books, -1 if the pair is not traded
+     */
+    public int getShardIndex(CcyPair pair) {
+        EngineShard shard = shardOfInstrument[pair.getId()];
+        return shard == null ? -1 : shard.getShardId();
+    }
+
+    public EngineShard getShard(int shardIndex) {
+        return shards.get(shardIndex);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @return queue feeding the distributor, to be handed to the serializer
+     */
+    public RingBuffer<Message> getInboundQueue() {
+        return inboundQueue;
+    }
+
+    public void start() {
+        started = true;
+        shards.forEach(EngineShard::start);
+    }
+
+    public void shutdown() {
+        distributor.shutdown();
+        shards.forEach(EngineShard::shutdown);
+    }
+}
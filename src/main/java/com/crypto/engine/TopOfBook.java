@@ -0,0 +1,121 @@
+package com.crypto.engine;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Best price of one side of a book as last published by the thread running the book, for any other thread to read.
+ * The book publishes it once per message it processes, so readers never touch a LimitLevel, which the book may be
+ * changing or may already have handed back to its pool.
+ *
+ * The price, quantity and order count are guarded by a sequence lock.  The version is odd while the book is writing
+ * and bumped to the next even number once it is done, so half the version counts the updates.  A reader reads the
+ * version, the fields and the version again, and tries again should the version have been odd or have moved in
+ * between.  The book never waits for readers, and readers take no lock: every write is an ordered (lazySet) store,
+ * a plain store on x86, and reading the price on its own is a single volatile read which can not be torn.
+ *
+ * The fields are padded onto a cache line of their own, so readers only miss when the top of book actually changed.
+ */
+public class TopOfBook extends TopOfBookPad1 {
+
+    /**
+     * @param emptyPrice price published while the side is empty, one no limit order on the other side can cross
+     */
+    public TopOfBook(long emptyPrice) {
+        this.price = emptyPrice;
+    }
+
+    /**
+     * Publish a new best price, a no-op if nothing changed.  Only to be called by the thread running the book.
+     */
+    void publish(long price, long quantity, int orderCount) {
+        if (price == this.price && quantity == this.quantity && orderCount == this.orderCount) {
+            return;
+        }
+        long current = version;
+        //Each ordered store keeps every store before it ahead of it, so no field is seen changed under an even version
+        VERSION.lazySet(this, current + 1);
+        PRICE.lazySet(this, price);
+        QUANTITY.lazySet(this, quantity);
+        ORDER_COUNT.lazySet(this, orderCount);
+        VERSION.lazySet(this, current + 2);
+    }
+
+    /**
+     * Copy a consistent view of the best price into a holder of the reader's own, retrying while the book writes
+     * @param target holder only the calling thread reads and writes
+     */
+    public void copyTo(TopOfBook target) {
+        long before;
+        long copiedPrice;
+        long copiedQuantity;
+        int copiedOrderCount;
+        do {
+            before = version;
+            copiedPrice = price;
+            copiedQuantity = quantity;
+            copiedOrderCount = orderCount;
+        } while ((before & 1) != 0 || before != version);
+        target.version = before;
+        target.price = copiedPrice;
+        target.quantity = copiedQuantity;
+        target.orderCount = copiedOrderCount;
+    }
+
+    /**
+     * @return best price, or the empty price the side was created with if no order rests in it
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    /**
+     * Read on its own the quantity may belong to another price than getPrice returned, use copyTo for both
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * @return number of updates published
+     */
+    public long getSequence() {
+        return version >> 1;
+    }
+
+    @Override
+    public String toString() {
+        return "TopOfBook{" +
+                "sequence=" + getSequence() +
+                ", price=" + price +
+                ", quantity=" + quantity +
+                ", orderCount=" + orderCount +
+                '}';
+    }
+}
+
+abstract class TopOfBookPad0 {
+    int p08;
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class TopOfBookFields extends TopOfBookPad0 {
+
+    static final AtomicLongFieldUpdater<TopOfBookFields> VERSION = AtomicLongFieldUpdater.newUpdater(TopOfBookFields.class, "version");
+    static final AtomicLongFieldUpdater<TopOfBookFields> PRICE = AtomicLongFieldUpdater.newUpdater(TopOfBookFields.class, "price");
+    static final AtomicLongFieldUpdater<TopOfBookFields> QUANTITY = AtomicLongFieldUpdater.newUpdater(TopOfBookFields.class, "quantity");
+    static final AtomicIntegerFieldUpdater<TopOfBookFields> ORDER_COUNT = AtomicIntegerFieldUpdater.newUpdater(TopOfBookFields.class, "orderCount");
+
+    protected volatile long version;
+    protected volatile long price;
+    protected volatile long quantity;
+    protected volatile int orderCount;
+}
+
+abstract class TopOfBookPad1 extends TopOfBookFields {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
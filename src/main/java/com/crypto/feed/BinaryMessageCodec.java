@@ -0,0 +1,279 @@
+package com.crypto.feed;
+
+import com.crypto.data.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed layout binary encoding of Message and Execution.  Every field sits at a fixed offset of a 48 byte frame, so
+ * decoding is a handful of absolute reads straight into a pooled object, with nothing to parse and nothing to
+ * allocate.  Enums travel as explicit one byte codes rather than ordinals so reordering an enum can not change the
+ * wire format.  Multi byte fields are little endian whatever the byte order of the buffer, which the codec leaves as
+ * it is; fields are byte swapped on the way in and out of a big endian buffer instead.
+ *
+ * <pre>
+ * offset  size  Message                    Execution
+ *      0     1  message type               execution type
+ *      1     1  side                       side, 0 if none
+ *      2     2  instrument id              instrument id, 0xFFFF if none
+ *      4     4  reserved                   reserved
+ *      8     8  client id                  client id
+ *     16     8  client order id            client order id
+ *     24     8  order id                   order id
+ *     32     8  quantity                   quantity
+ *     40     8  price                      price
+ * </pre>
+ */
+public class BinaryMessageCodec {
+
+    public static final int FRAME_LENGTH = 48;
+
+    private static final int TYPE_OFFSET = 0;
+    private static final int SIDE_OFFSET = 1;
+    private static final int INSTRUMENT_OFFSET = 2;
+    private static final int CLIENT_ID_OFFSET = 8;
+    private static final int CLIENT_ORDER_ID_OFFSET = 16;
+    private static final int ORDER_ID_OFFSET = 24;
+    private static final int QUANTITY_OFFSET = 32;
+    private static final int PRICE_OFFSET = 40;
+
+    private static final int NO_INSTRUMENT = 0xFFFF;
+    private static final byte NO_SIDE = 0;
+
+    private final InstrumentRegistry instrumentRegistry;
+
+    public BinaryMessageCodec(InstrumentRegistry instrumentRegistry) {
+        this.instrumentRegistry = instrumentRegistry;
+    }
+
+    /**
+     * Decode a frame into a message taken from the pool
+     * @param buffer buffer holding the frame
+     * @param offset offset of the frame in the buffer
+     * @param length number of bytes available, at least FRAME_LENGTH
+     * @param messagePool pool to take the message from, it is returned if the frame is rejected
+     * @return the decoded message, null if the frame is not a valid instruction, an order of no or a negative
+     * quantity and a limit at a negative price included
+     */
+    public Message decodeMessage(ByteBuffer buffer, int offset, int length, ObjectPool<Message> messagePool) {
+        if (length < FRAME_LENGTH || !fits(buffer, offset)) {
+            System.out.println("Frame of " + Math.min(length, buffer.limit() - offset) + " bytes is too short, expected " + FRAME_LENGTH);
+            return null;
+        }
+
+        MessageType type = decodeMessageType(buffer.get(offset + TYPE_OFFSET));
+        if (type == null) {
+            System.out.println("I don't handle messages of type " + buffer.get(offset + TYPE_OFFSET));
+            return null;
+        }
+
+        Message message = messagePool.acquireObject();
+        message.setType(type);
+        message.setClientId(getLong(buffer, offset + CLIENT_ID_OFFSET));
+        message.setClientOrderId(getLong(buffer, offset + CLIENT_ORDER_ID_OFFSET));
+        message.setOrderId(getLong(buffer, offset + ORDER_ID_OFFSET));
+        message.setQuantity(getLong(buffer, offset + QUANTITY_OFFSET));
+        message.setPrice(getLong(buffer, offset + PRICE_OFFSET));
+
+        if (type == MessageType.CancelOrder || type == MessageType.CancelAllOrders) {
+            message.setPair(null);
+            message.setSide(null);
+            return message;
+        }
+
+        int instrumentId = getShort(buffer, offset + INSTRUMENT_OFFSET) & 0xFFFF;
+        CcyPair pair = instrumentRegistry.getById(instrumentId);
+        if (pair == null) {
+            System.out.println("I don't offer instrument " + instrumentId);
+            messagePool.returnObject(message);
+            return null;
+        }
+        message.setPair(pair);
+
+        Side side = decodeSide(buffer.get(offset + SIDE_OFFSET));
+        if (side == null) {
+            System.out.println("I can't interpret side " + buffer.get(offset + SIDE_OFFSET));
+            messagePool.returnObject(message);
+            return null;
+        }
+        message.setSide(side);
+
+        if (message.getQuantity() <= 0 || type == MessageType.NewLimitOrder && message.getPrice() < 0) {
+            System.out.println("Dropping order of quantity " + message.getQuantity() + " at price " + message.getPrice());
+            messagePool.returnObject(message);
+            return null;
+        }
+        return message;
+    }
+
+    /**
+     * @return number of bytes written, always FRAME_LENGTH
+     * @throws IndexOutOfBoundsException if the frame does not fit in the buffer, which is left untouched
+     */
+    public int encodeMessage(Message message, ByteBuffer buffer, int offset) {
+        checkFits(buffer, offset);
+        buffer.put(offset + TYPE_OFFSET, encodeMessageType(message.getType()));
+        buffer.put(offset + SIDE_OFFSET, encodeSide(message.getSide()));
+        putShort(buffer, offset + INSTRUMENT_OFFSET, (short) (message.getPair() == null ? NO_INSTRUMENT : message.getPair().getId()));
+        buffer.putInt(offset + 4, 0);
+        putLong(buffer, offset + CLIENT_ID_OFFSET, message.getClientId());
+        putLong(buffer, offset + CLIENT_ORDER_ID_OFFSET, message.getClientOrderId());
+        putLong(buffer, offset + ORDER_ID_OFFSET, message.getOrderId());
+        putLong(buffer, offset + QUANTITY_OFFSET, message.getQuantity());
+        putLong(buffer, offset + PRICE_OFFSET, message.getPrice());
+        return FRAME_LENGTH;
+    }
+
+    /**
+     * @return number of bytes written, always FRAME_LENGTH
+     * @throws IndexOutOfBoundsException if the frame does not fit in the buffer, which is left untouched
+     */
+    public int encodeExecution(Execution execution, ByteBuffer buffer, int offset) {
+        checkFits(buffer, offset);
+        buffer.put(offset + TYPE_OFFSET, encodeExecutionType(execution.getType()));
+        buffer.put(offset + SIDE_OFFSET, encodeSide(execution.getSide()));
+        putShort(buffer, offset + INSTRUMENT_OFFSET, (short) (execution.getPair() == null ? NO_INSTRUMENT : execution.getPair().getId()));
+        buffer.putInt(offset + 4, 0);
+        putLong(buffer, offset + CLIENT_ID_OFFSET, execution.getClientId());
+        putLong(buffer, offset + CLIENT_ORDER_ID_OFFSET, execution.getClientOrderId());
+        putLong(buffer, offset + ORDER_ID_OFFSET, execution.getOrderId());
+        putLong(buffer, offset + QUANTITY_OFFSET, execution.getQuantity());
+        putLong(buffer, offset + PRICE_OFFSET, execution.getPrice());
+        return FRAME_LENGTH;
+    }
+
+    /**
+     * Decode an execution frame into the given execution, for clients of the engine
+     * @return true if the frame held a known execution type, false if it did not or the buffer ends short of it
+     */
+    public boolean decodeExecution(ByteBuffer buffer, int offset, Execution execution) {
+        if (!fits(buffer, offset)) {
+            return false;
+        }
+        ExecutionType type = decodeExecutionType(buffer.get(offset + TYPE_OFFSET));
+        if (type == null) {
+            return false;
+        }
+        int instrumentId = getShort(buffer, offset + INSTRUMENT_OFFSET) & 0xFFFF;
+        execution.setType(type);
+        execution.setSide(decodeSide(buffer.get(offset + SIDE_OFFSET)));
+        execution.setPair(instrumentId == NO_INSTRUMENT ? null : instrumentRegistry.getById(instrumentId));
+        execution.setClientId(getLong(buffer, offset + CLIENT_ID_OFFSET));
+        execution.setClientOrderId(getLong(buffer, offset + CLIENT_ORDER_ID_OFFSET));
+        execution.setOrderId(getLong(buffer, offset + ORDER_ID_OFFSET));
+        execution.setQuantity(getLong(buffer, offset + QUANTITY_OFFSET));
+        execution.setPrice(getLong(buffer, offset + PRICE_OFFSET));
+        return true;
+    }
+
+    private static boolean fits(ByteBuffer buffer, int offset) {
+        return offset >= 0 && offset <= buffer.limit() - FRAME_LENGTH;
+    }
+
+    private static void checkFits(ByteBuffer buffer, int offset) {
+        if (!fits(buffer, offset)) {
+            throw new IndexOutOfBoundsException("Frame at " + offset + " does not fit in a buffer of limit " + buffer.limit());
+        }
+    }
+
+    private static long getLong(ByteBuffer buffer, int index) {
+        long value = buffer.getLong(index);
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private static short getShort(ByteBuffer buffer, int index) {
+        short value = buffer.getShort(index);
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Short.reverseBytes(value);
+    }
+
+    private static void putLong(ByteBuffer buffer, int index, long value) {
+        buffer.putLong(index, buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    private static void putShort(ByteBuffer buffer, int index, short value) {
+        buffer.putShort(index, buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Short.reverseBytes(value));
+    }
+
+    private static MessageType decodeMessageType(byte code) {
+        switch (code) {
+            case 1:
+                return MessageType.NewMarketOrder;
+            case 2:
+                return MessageType.NewLimitOrder;
+            case 3:
+                return MessageType.CancelOrder;
+            case 4:
+                return MessageType.CancelAllOrders;
+            default:
+                return null;
+        }
+    }
+
+    private static byte encodeMessageType(MessageType type) {
+        switch (type) {
+            case NewMarketOrder:
+                return 1;
+            case NewLimitOrder:
+                return 2;
+            case CancelOrder:
+                return 3;
+            case CancelAllOrders:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Message type " + type + " does not go on the wire");
+        }
+    }
+
+    private static ExecutionType decodeExecutionType(byte code) {
+        switch (code) {
+            case 1:
+                return ExecutionType.Fill;
+            case 2:
+                return ExecutionType.PartialFill;
+            case 3:
+                return ExecutionType.OrderAccepted;
+            case 4:
+                return ExecutionType.CancelAccepted;
+            case 5:
+                return ExecutionType.Reject;
+            default:
+                return null;
+        }
+    }
+
+    private static byte encodeExecutionType(ExecutionType type) {
+        switch (type) {
+            case Fill:
+                return 1;
+            case PartialFill:
+                return 2;
+            case OrderAccepted:
+                return 3;
+            case CancelAccepted:
+                return 4;
+            case Reject:
+                return 5;
+            default:
+                throw new IllegalArgumentException("Unknown execution type " + type);
+        }
+    }
+
+    private static Side decodeSide(byte code) {
+        switch (code) {
+            case 1:
+                return Side.Bid;
+            case 2:
+                return Side.Offer;
+            default:
+                return null;
+        }
+    }
+
+    private static byte encodeSide(Side side) {
+        if (side == null) {
+            return NO_SIDE;
+        }
+        return side == Side.Bid ? (byte) 1 : (byte) 2;
+    }
+}
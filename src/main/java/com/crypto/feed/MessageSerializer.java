@@ -1,7 +1,25 @@
 package com.crypto.feed;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Entry point of the gateways into the engine.  Implementations may be called from several gateway threads at once.
+ */
 public interface MessageSerializer {
 
-    boolean onMessage(String message);
+    boolean onMessage(CharSequence message);
+
+    /**
+     * Submit a text instruction held as single byte characters
+     */
+    boolean onMessage(byte[] bytes, int offset, int length);
+
+    /**
+     * Submit an instruction encoded with BinaryMessageCodec
+     * @param buffer buffer holding the frame
+     * @param offset offset of the frame in the buffer
+     * @param length number of bytes of the frame
+     */
+    boolean onMessage(ByteBuffer buffer, int offset, int length);
 
 }
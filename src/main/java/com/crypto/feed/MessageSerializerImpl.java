@@ -1,175 +1,102 @@
 package com.crypto.feed;
 
-import com.crypto.data.CcyPair;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.data.InstrumentRegistry;
 import com.crypto.data.Message;
-import com.crypto.data.MessageType;
-import com.crypto.data.Side;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
-import static com.crypto.data.Constants.*;
+import java.nio.ByteBuffer;
 
 
 /**
- * Not sure if this was really necessary.  The engine needs some serializer mechanism. This one is stupid.
+ * Turns text instructions and BinaryMessageCodec frames into pooled messages and offers them to the engine queue.
+ * Several gateway threads may call it at once: each parses text with a TextMessageParser of its own and the binary
+ * codec keeps no state, as long as the engine queue takes more than one producer.
  */
 public class MessageSerializerImpl implements MessageSerializer {
 
-    private final ConcurrentLinkedQueue<Message> engineMessageQueue;
+    private final RingBuffer<Message> engineMessageQueue;
     private final ObjectPool<Message> messageObjectPool;
-    private final String stringDelimiter;
+    //The parser keeps the position of its scan in fields, so every calling thread gets one of its own
+    private final ThreadLocal<TextMessageParser> textParser;
+    private final BinaryMessageCodec binaryCodec;
     private long offerRetryCount;
     private long sleepTimeMillis;
 
-    public MessageSerializerImpl(ConcurrentLinkedQueue<Message> messageQueue, ObjectPool objectPool, long retryCount, long waitTimeMillis, String delimiter) {
+    public MessageSerializerImpl(RingBuffer<Message> messageQueue, ObjectPool<Message> objectPool, long retryCount, long waitTimeMillis, String delimiter) {
+        this(messageQueue, objectPool, retryCount, waitTimeMillis, delimiter, InstrumentRegistry.withDefaultPairs());
+    }
+
+    /**
+     * @param delimiter single character separating the fields of text instructions
+     * @param instrumentRegistry pairs to accept messages for, pairs registered later on are picked up as they come
+     */
+    public MessageSerializerImpl(RingBuffer<Message> messageQueue, ObjectPool<Message> objectPool, long retryCount, long waitTimeMillis, String delimiter, InstrumentRegistry instrumentRegistry) {
 
+        if (delimiter.length() != 1) {
+            throw new IllegalArgumentException("Fields must be delimited by a single character, got '" + delimiter + "'");
+        }
         engineMessageQueue = messageQueue;
+        char fieldDelimiter = delimiter.charAt(0);
+        textParser = ThreadLocal.withInitial(() -> new TextMessageParser(fieldDelimiter, instrumentRegistry));
+        binaryCodec = new BinaryMessageCodec(instrumentRegistry);
         messageObjectPool = objectPool;
         offerRetryCount = retryCount;
         sleepTimeMillis = waitTimeMillis;
-        stringDelimiter = delimiter;
     }
 
     /**
      *
      * @param messageString instruction to send to matching engine
-     * @return true if message was sucessfully submitted, else false
-     * @throws InterruptedException thrown if thread is interrupted while sleeping in hope of engine to recover
+     * @return true if message was sucessfully submitted, else false.  False is also returned if the engine queue
+     * stayed full for all retries or the thread was interrupted while sleeping in hope of engine to recover
      */
-    public boolean onMessage(String messageString) {
-
-        Message message = deserialize(messageString);
-        if(message == null){
-            return false;
-        }
+    public boolean onMessage(CharSequence messageString) {
 
-        if(!engineMessageQueue.offer(message)) {
-            long currentRetryCount = offerRetryCount;
-
-            while(!engineMessageQueue.offer(message) && currentRetryCount > 0){
-                System.out.println("ERROR: Queue is full.  What do I do now? Just wait?");
-                try {
-                    Thread.sleep(sleepTimeMillis);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    return false;
-                }
-                currentRetryCount -=1;
-            }
-        }
-
-        return true;
+        return submit(textParser.get().parse(messageString, messageObjectPool));
     }
 
+    /**
+     * Parses a text instruction held as single byte characters, without creating a String of it
+     * @return true if message was sucessfully submitted, else false, as for the CharSequence variant
+     */
+    public boolean onMessage(byte[] bytes, int offset, int length) {
 
-    private Message deserialize(String msgToDeSerialize){
-
-        String[] messageString = msgToDeSerialize.split(stringDelimiter);
-        Message message = messageObjectPool.acquireObject();
-
-        if(messageString[0] == null){
-            return null;
-        }
-
-        switch(messageString[0]){
-
-            case NEW_MARKET_ORDER:
-                message.setType(MessageType.NewMarketOrder);
-                message.setClientId(Long.valueOf(messageString[1]));
-                message.setClientOrderId(Long.valueOf(messageString[2]));
-                CcyPair pair = parseCcyPair(messageString[3]);
-                if(pair == null){
-                    messageObjectPool.returnObject(message);
-                    return null;
-                }
-                message.setPair(pair);
-
-                Side side = parseSide(messageString[4]);
-                if(side == null){
-                    messageObjectPool.returnObject(message);
-                    return null;
-                }
-                message.setSide(side);
-                message.setQuantity(Long.valueOf(messageString[5]));
-                return message;
-
-            case NEW_LIMIT_ORDER:
-                message.setType(MessageType.NewLimitOrder);
-                message.setClientId(Long.valueOf(messageString[1]));
-                message.setClientOrderId(Long.valueOf(messageString[2]));
-                pair = parseCcyPair(messageString[3]);
-                if(pair == null){
-                    messageObjectPool.returnObject(message);
-                    return null;
-                }
-                message.setPair(pair);
-
-                side = parseSide(messageString[4]);
-                if(side == null){
-                    messageObjectPool.returnObject(message);
-                    return null;
-                }
-                message.setSide(side);
-                message.setQuantity(Long.valueOf(messageString[5]));
-                message.setPrice(Long.valueOf(messageString[6]));
-                return message;
-
-            case CANCEL_ORDER:
-                message.setType(MessageType.CancelOrder);
-                message.setClientId(Long.valueOf(messageString[1]));
-                message.setOrderId(Long.valueOf(messageString[2]));
-                return message;
-
-            case CANCEL_ALL:
-                message.setType(MessageType.CancelAllOrders);
-                message.setClientId(Long.valueOf(messageString[1]));
-                return message;
-
-            default:
-                System.out.println("What happened here?  I don't handle messages of type " + messageString[0]);
-                messageObjectPool.returnObject(message);
-        }
-
-        return null;
+        return submit(textParser.get().parse(bytes, offset, length, messageObjectPool));
     }
 
-    private Side parseSide(String sideString) {
-
-        if(sideString == null){
-            return null;
-        }
-        switch (sideString){
-
-            case BID:
-                return Side.Bid;
-
-            case OFFER:
-                return Side.Offer;
-
-            default:
-                System.out.println("I can't interpret side " + sideString);
-                return null;
-        }
+    /**
+     * Decodes the frame straight into a pooled message, without any allocation on the way
+     * @return true if message was sucessfully submitted, else false, as for the text variants
+     */
+    public boolean onMessage(ByteBuffer buffer, int offset, int length) {
 
+        return submit(binaryCodec.decodeMessage(buffer, offset, length, messageObjectPool));
     }
 
-    private CcyPair parseCcyPair(String ccyString){
+    private boolean submit(Message message) {
 
-        if(ccyString == null){
-            return null;
+        if(message == null){
+            return false;
         }
-        switch (ccyString){
-
-            case BTCUSD:
-                return CcyPair.BTCUSD;
-
-            case ETHUSD:
-                return CcyPair.ETHUSD;
 
-            default:
-                System.out.println("I don't offer currency pair " + ccyString);
-                return null;
+        long currentRetryCount = offerRetryCount;
+        while(!engineMessageQueue.offer(message)) {
+            if(currentRetryCount <= 0){
+                System.out.println("ERROR: Queue is still full after " + offerRetryCount + " retries. Dropping message " + message);
+                messageObjectPool.returnObject(message);
+                return false;
+            }
+            System.out.println("ERROR: Queue is full.  What do I do now? Just wait?");
+            try {
+                Thread.sleep(sleepTimeMillis);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                messageObjectPool.returnObject(message);
+                return false;
+            }
+            currentRetryCount -=1;
         }
 
+        return true;
     }
 }
@@ -1,40 +1,268 @@
 package com.crypto.feed;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
- * This is an infinitly growing memory pool which can be accessed in a non blocking fashion as it is implemented
- * with an unbounded compare-and-swap based queue.  The pool will only grow if it has run out of objects. Ideally
- * Users of the pool should return object once processing with them are completed.  This way references can be held,
- * propagated to the old generation and avoid being garbage collected.
+ * Pool of reusable objects shared by the engine threads.  Every thread keeps its own cache of two magazines, small
+ * stacks of objects, so acquiring and returning objects is a thread local array access.  Only when both magazines of a
+ * thread are empty, or both full, does the thread swap one with the shared depot, which happens once every magazine
+ * size operations at most.  Objects which cross threads, such as messages acquired by the serializer and returned by
+ * a book, flow back a full magazine at a time.
+ *
+ * The depot holds at most capacity objects.  Objects returned when it is full are left to the garbage collector.  Once
+ * the pool has created capacity objects, an acquire finding the pool empty is handled by the overflow policy.  Objects
+ * sitting in the caches of other threads do not count as available, so a pool failing on overflow needs headroom of
+ * two magazines per thread.
+ *
+ * Hits, misses and the other counters are kept per thread and summed when read, so they are only approximate while
+ * threads are using the pool.  Objects cached by a thread which has died are lost to the pool.
  *
  * @param <T> type of object to be held in pool
  */
 public class ObjectPool<T> {
 
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final int DEFAULT_MAGAZINE_SIZE = 64;
+
     private final ObjectInstantiator<T> objectCreator;
-    private final ConcurrentLinkedQueue<T> messagePool = new ConcurrentLinkedQueue<T>();
+    private final int capacity;
+    private final int magazineSize;
+    private final PoolOverflowPolicy overflowPolicy;
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(this::newThreadCache);
+    private final List<ThreadCache> allThreadCaches = new CopyOnWriteArrayList<>();
+
+    //Depot, guarded by itself.  Entered once per magazine of objects at most.
+    private final ArrayDeque<Object[]> fullMagazines = new ArrayDeque<>();
+    private final ArrayDeque<Object[]> emptyMagazines = new ArrayDeque<>();
+    private final int maxFullMagazines;
+
+    //Only touched when objects are created or dropped
+    private final AtomicLong liveObjects = new AtomicLong();
+    private final AtomicLong highWaterMark = new AtomicLong();
 
     public ObjectPool(ObjectInstantiator<T> objectCreator) {
+        this(objectCreator, DEFAULT_CAPACITY, 0, DEFAULT_MAGAZINE_SIZE, PoolOverflowPolicy.Allocate);
+    }
+
+    /**
+     * @param capacity most objects the pool creates and holds on to before the overflow policy applies
+     * @param prewarm number of objects to create up front, rounded up to whole magazines as far as capacity allows
+     * @param magazineSize number of objects a thread caches per magazine and moves to and from the depot at once
+     * @param overflowPolicy what to do when the pool is empty and capacity objects have been created
+     */
+    public ObjectPool(ObjectInstantiator<T> objectCreator, int capacity, int prewarm, int magazineSize, PoolOverflowPolicy overflowPolicy) {
+        if (magazineSize < 1 || capacity < magazineSize) {
+            throw new IllegalArgumentException("Capacity " + capacity + " must hold at least one magazine of " + magazineSize + " objects");
+        }
+        if (prewarm > capacity) {
+            throw new IllegalArgumentException("Can not prewarm " + prewarm + " objects into a pool of capacity " + capacity);
+        }
         this.objectCreator = objectCreator;
+        this.capacity = capacity;
+        this.magazineSize = magazineSize;
+        this.overflowPolicy = overflowPolicy;
+        this.maxFullMagazines = capacity / magazineSize;
+
+        prewarm(prewarm);
+    }
+
+    /**
+     * Create objects up front, so they are not created while the engine trades.  Meant to be called at startup, the
+     * objects go straight to the depot.
+     * @param count number of objects to add to the pool, rounded up to whole magazines as far as capacity allows
+     */
+    public void prewarm(int count) {
+        synchronized (fullMagazines) {
+            for (int created = 0; created < count && fullMagazines.size() < maxFullMagazines; created += magazineSize) {
+                Object[] magazine = new Object[magazineSize];
+                for (int i = 0; i < magazineSize; i++) {
+                    magazine[i] = objectCreator.newInstance();
+                }
+                fullMagazines.push(magazine);
+                long live = liveObjects.addAndGet(magazineSize);
+                if (live > highWaterMark.get()) {
+                    highWaterMark.set(live);
+                }
+            }
+        }
     }
 
+    @SuppressWarnings("unchecked")
     public T acquireObject(){
 
-        T instance = messagePool.poll();
-        if(instance == null){
-            instance =  objectCreator.newInstance();
+        ThreadCache cache = threadCaches.get();
+        if (cache.loadedSize == 0) {
+            if (cache.previousSize > 0) {
+                cache.swap();
+            } else if (!cache.takeFullMagazine()) {
+                cache.misses++;
+                return createObject();
+            }
         }
+        cache.hits++;
+        T instance = (T) cache.loaded[--cache.loadedSize];
+        cache.loaded[cache.loadedSize] = null;
         return instance;
     }
 
     public void returnObject(T instance){
-        messagePool.add(instance);
+
+        ThreadCache cache = threadCaches.get();
+        if (cache.loadedSize == magazineSize) {
+            if (cache.previousSize < magazineSize) {
+                cache.swap();
+            } else {
+                cache.giveFullMagazine();
+            }
+        }
+        cache.loaded[cache.loadedSize++] = instance;
     }
 
+    private T createObject() {
+        long live;
+        do {
+            live = liveObjects.get();
+            if (live >= capacity && overflowPolicy == PoolOverflowPolicy.Fail) {
+                throw new IllegalStateException("Object pool exhausted, all " + capacity + " objects are in use");
+            }
+        } while (!liveObjects.compareAndSet(live, live + 1));
+        live += 1;
+        long highWater;
+        while (live > (highWater = highWaterMark.get()) && !highWaterMark.compareAndSet(highWater, live)) {
+            //Retry, another thread raised the mark meanwhile
+        }
+        return objectCreator.newInstance();
+    }
 
+    private ThreadCache newThreadCache() {
+        ThreadCache cache = new ThreadCache();
+        allThreadCaches.add(cache);
+        return cache;
+    }
+
+    /**
+     * @return number of objects pooled, in the depot and the thread caches
+     */
     public long getSize(){
-        return messagePool.size();
+        long size;
+        synchronized (fullMagazines) {
+            size = (long) fullMagazines.size() * magazineSize;
+        }
+        for (ThreadCache cache : allThreadCaches) {
+            size += cache.loadedSize + cache.previousSize;
+        }
+        return size;
+    }
+
+    /**
+     * @return number of acquires served from the pool
+     */
+    public long getHits() {
+        long hits = 0;
+        for (ThreadCache cache : allThreadCaches) {
+            hits += cache.hits;
+        }
+        return hits;
+    }
+
+    /**
+     * @return number of acquires which had to create a new object
+     */
+    public long getMisses() {
+        long misses = 0;
+        for (ThreadCache cache : allThreadCaches) {
+            misses += cache.misses;
+        }
+        return misses;
+    }
+
+    /**
+     * @return number of returned objects left to the garbage collector as the depot was full
+     */
+    public long getDropped() {
+        long dropped = 0;
+        for (ThreadCache cache : allThreadCaches) {
+            dropped += cache.dropped;
+        }
+        return dropped;
+    }
+
+    /**
+     * @return most objects the pool has had created and not dropped at any one time, what prewarm should be sized to
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Magazines of one thread.  Objects are taken from and put on the loaded magazine, the previous one saves a trip
+     * to the depot when a thread alternates between acquiring and returning around a magazine boundary.
+     */
+    private final class ThreadCache {
+
+        private Object[] loaded = new Object[magazineSize];
+        private int loadedSize;
+        private Object[] previous = new Object[magazineSize];
+        private int previousSize;
+
+        private long hits;
+        private long misses;
+        private long dropped;
+
+        private void swap() {
+            Object[] magazine = loaded;
+            int size = loadedSize;
+            loaded = previous;
+            loadedSize = previousSize;
+            previous = magazine;
+            previousSize = size;
+        }
+
+        /**
+         * Both magazines are empty, swap the previous one for a full one from the depot
+         * @return false if the depot has no full magazine
+         */
+        private boolean takeFullMagazine() {
+            synchronized (fullMagazines) {
+                Object[] full = fullMagazines.poll();
+                if (full == null) {
+                    return false;
+                }
+                emptyMagazines.push(previous);
+                previous = loaded;
+                previousSize = 0;
+                loaded = full;
+                loadedSize = magazineSize;
+                return true;
+            }
+        }
+
+        /**
+         * Both magazines are full, hand the previous one to the depot and carry on with an empty one
+         */
+        private void giveFullMagazine() {
+            synchronized (fullMagazines) {
+                if (fullMagazines.size() < maxFullMagazines) {
+                    fullMagazines.push(previous);
+                    Object[] empty = emptyMagazines.poll();
+                    previous = empty != null ? empty : new Object[magazineSize];
+                } else {
+                    Arrays.fill(previous, null);
+                    dropped += magazineSize;
+                    liveObjects.addAndGet(-magazineSize);
+                }
+            }
+            previousSize = 0;
+            swap();
+        }
     }
 }
@@ -0,0 +1,17 @@
+package com.crypto.feed;
+
+/**
+ * What an ObjectPool does when it is empty and has already created as many objects as it may hold.
+ */
+public enum PoolOverflowPolicy {
+
+    /**
+     * Create the object anyway.  It is pooled when returned if there is room, else left to the garbage collector.
+     */
+    Allocate,
+
+    /**
+     * Throw an IllegalStateException, for pools sized so they must never run dry.
+     */
+    Fail
+}
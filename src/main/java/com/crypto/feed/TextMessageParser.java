@@ -0,0 +1,270 @@
+package com.crypto.feed;
+
+import com.crypto.data.CcyPair;
+import com.crypto.data.InstrumentRegistry;
+import com.crypto.data.Message;
+import com.crypto.data.MessageType;
+import com.crypto.data.Side;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.crypto.data.Constants.*;
+
+/**
+ * Parses the delimited text instructions, such as LIMIT;client;clOrdId;pair;side;qty;price, in a single pass over
+ * the characters.  Tokens are compared against the Constants in place, numbers are accumulated digit by digit and
+ * pairs are looked up in the registry by the characters of their symbol, so a well formed instruction is parsed
+ * without allocating anything.  Malformed instructions, missing or surplus fields, empty fields, non numeric or
+ * overflowing numbers, are rejected rather than thrown, as are orders of no or a negative quantity and limits at a
+ * negative price.
+ *
+ * Keeps the position of the scan in fields, so an instance must not be shared between threads.
+ */
+public class TextMessageParser {
+
+    private final char delimiter;
+    private final InstrumentRegistry instrumentRegistry;
+    private final AsciiSequence asciiSequence = new AsciiSequence();
+
+    private CharSequence text;
+    private int position;
+    private int end;
+    private int fieldStart;
+    private int fieldEnd;
+    private long longValue;
+
+    public TextMessageParser(char delimiter, InstrumentRegistry instrumentRegistry) {
+        this.delimiter = delimiter;
+        this.instrumentRegistry = instrumentRegistry;
+    }
+
+    /**
+     * @return the parsed message taken from the pool, null if the instruction is malformed
+     */
+    public Message parse(CharSequence instruction, ObjectPool<Message> messagePool) {
+        return parse(instruction, 0, instruction.length(), messagePool);
+    }
+
+    /**
+     * Parse an instruction held as single byte characters, straight off the wire
+     * @return the parsed message taken from the pool, null if the instruction is malformed
+     */
+    public Message parse(byte[] bytes, int offset, int length, ObjectPool<Message> messagePool) {
+        asciiSequence.wrap(bytes, offset, length);
+        return parse(asciiSequence, 0, length, messagePool);
+    }
+
+    private Message parse(CharSequence instruction, int start, int length, ObjectPool<Message> messagePool) {
+        text = instruction;
+        position = start;
+        end = start + length;
+        try {
+            if (!nextField()) {
+                System.out.println("Dropping instruction without a type: " + instruction);
+                return null;
+            }
+
+            MessageType type = parseType();
+            if (type == null) {
+                System.out.println("What happened here?  I don't handle messages of type " + text.subSequence(fieldStart, fieldEnd));
+                return null;
+            }
+
+            Message message = messagePool.acquireObject();
+            if (parseFields(type, message) && position > end) {
+                return message;
+            }
+            System.out.println("Dropping malformed instruction: " + instruction);
+            messagePool.returnObject(message);
+            return null;
+        } finally {
+            text = null;
+        }
+    }
+
+    private MessageType parseType() {
+        if (fieldEquals(NEW_LIMIT_ORDER)) {
+            return MessageType.NewLimitOrder;
+        }
+        if (fieldEquals(NEW_MARKET_ORDER)) {
+            return MessageType.NewMarketOrder;
+        }
+        if (fieldEquals(CANCEL_ORDER)) {
+            return MessageType.CancelOrder;
+        }
+        if (fieldEquals(CANCEL_ALL)) {
+            return MessageType.CancelAllOrders;
+        }
+        return null;
+    }
+
+    /**
+     * Populate every field of the message, those the instruction does not carry are cleared of what the pooled
+     * message held before
+     * @return false if the instruction is malformed
+     */
+    private boolean parseFields(MessageType type, Message message) {
+        message.setType(type);
+        message.setClientId(0);
+        message.setClientOrderId(0);
+        message.setOrderId(0);
+        message.setPair(null);
+        message.setSide(null);
+        message.setQuantity(0);
+        message.setPrice(0);
+
+        if (!nextLong()) {
+            return false;
+        }
+        message.setClientId(longValue);
+
+        switch (type) {
+            case CancelAllOrders:
+                return true;
+
+            case CancelOrder:
+                if (!nextLong()) {
+                    return false;
+                }
+                message.setOrderId(longValue);
+                return true;
+
+            default:
+                if (!nextLong()) {
+                    return false;
+                }
+                message.setClientOrderId(longValue);
+
+                if (!nextField()) {
+                    return false;
+                }
+                CcyPair pair = instrumentRegistry.getBySymbol(text, fieldStart, fieldEnd);
+                if (pair == null) {
+                    System.out.println("I don't offer currency pair " + text.subSequence(fieldStart, fieldEnd));
+                    return false;
+                }
+                message.setPair(pair);
+
+                if (!nextField()) {
+                    return false;
+                }
+                Side side = fieldEquals(BID) ? Side.Bid : fieldEquals(OFFER) ? Side.Offer : null;
+                if (side == null) {
+                    System.out.println("I can't interpret side " + text.subSequence(fieldStart, fieldEnd));
+                    return false;
+                }
+                message.setSide(side);
+
+                if (!nextLong() || longValue <= 0) {
+                    return false;
+                }
+                message.setQuantity(longValue);
+
+                if (type == MessageType.NewLimitOrder) {
+                    if (!nextLong() || longValue < 0) {
+                        return false;
+                    }
+                    message.setPrice(longValue);
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Advance to the next field
+     * @return false if there is none, or it is empty
+     */
+    private boolean nextField() {
+        if (position > end) {
+            return false;
+        }
+        int i = position;
+        while (i < end && text.charAt(i) != delimiter) {
+            i++;
+        }
+        fieldStart = position;
+        fieldEnd = i;
+        position = i + 1;
+        return fieldEnd > fieldStart;
+    }
+
+    /**
+     * Advance to the next field and parse it into longValue, accepting what Long.parseLong does
+     * @return false if there is no field or it is not a long
+     */
+    private boolean nextLong() {
+        if (!nextField()) {
+            return false;
+        }
+        int i = fieldStart;
+        char first = text.charAt(i);
+        boolean negative = first == '-';
+        if (negative || first == '+') {
+            if (++i == fieldEnd) {
+                return false;
+            }
+        }
+        //Accumulate negatively, Long.MIN_VALUE has no positive counterpart
+        long value = 0;
+        for (; i < fieldEnd; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                return false;
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            return false;
+        }
+        longValue = negative ? value : -value;
+        return true;
+    }
+
+    private boolean fieldEquals(String token) {
+        if (token.length() != fieldEnd - fieldStart) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) != text.charAt(fieldStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reusable view of single byte characters as a CharSequence
+     */
+    private static final class AsciiSequence implements CharSequence {
+
+        private byte[] bytes;
+        private int offset;
+        private int length;
+
+        void wrap(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.crypto.journal;
+
+import com.crypto.data.InstrumentRegistry;
+import com.crypto.data.Message;
+import com.crypto.feed.BinaryMessageCodec;
+import com.crypto.feed.ObjectPool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Sequenced journal of the instructions entering the engine, written by the distributor before a message is routed
+ * to its book.  The books hold all their state in memory and hand out order ids from per book sequences, so replaying
+ * the journal into a fresh engine rebuilds every resting order under the id it had before.
+ *
+ * Records are 64 bytes, an 8 byte sequence number followed by the message as a BinaryMessageCodec frame, written
+ * straight into memory mapped segment files.  Segments are created at their full length and every page is touched
+ * once, so appending never grows a file or faults in a page, it is a few stores into memory.  The sequence number is
+ * written last, behind a store fence so it cannot reach the page before the frame does: a record whose sequence is
+ * still zero was never completed and marks the end of the journal.
+ *
+ * When the mapped pages are forced to disk is up to the JournalSyncPolicy.  Only one thread may append, any thread
+ * may read the records up to the published sequence while it does.  Readers map each segment once and keep the
+ * mapping for as long as the journal is open.
+ *
+ * <pre>
+ * offset  size  record
+ *      0     8  sequence number, starting at 1, 0 if the record is free
+ *      8    48  message frame
+ *     56     8  reserved
+ * </pre>
+ */
+public class InputJournal implements Closeable {
+
+    public static final int RECORD_LENGTH = 64;
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+    public static final long DEFAULT_SYNC_INTERVAL_MICROS = 1000;
+
+    private static final int SEQUENCE_OFFSET = 0;
+    private static final int FRAME_OFFSET = 8;
+    private static final int PAGE_SIZE = 4096;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final sun.misc.Unsafe UNSAFE = unsafe();
+
+    private final File directory;
+    private final int segmentRecords;
+    private final JournalSyncPolicy syncPolicy;
+    private final long syncIntervalNanos;
+    private final BinaryMessageCodec codec;
+    //Read only mappings of the segments replayed so far, by file name, shared by every replaying thread
+    private final ConcurrentMap<String, MappedByteBuffer> replayMappings = new ConcurrentHashMap<>();
+
+    //Read by the sync thread of the async policy, which forces whatever segment is current
+    private volatile MappedByteBuffer segment;
+    private int segmentIndex;
+    private int position;
+    private long sequence;
+    //Sequence of the last complete record, for threads reading the journal while it is appended to
+    private final AtomicLong publishedSequence = new AtomicLong();
+    private boolean dirty;
+    private long lastSyncNanos;
+
+    private volatile boolean runningFlag = true;
+    private Thread syncThread;
+
+    public InputJournal(File directory, JournalSyncPolicy syncPolicy) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS, syncPolicy, DEFAULT_SYNC_INTERVAL_MICROS, InstrumentRegistry.withDefaultPairs());
+    }
+
+    /**
+     * Open the journal in the directory, appending after the last record of any segments already there
+     * @param directory directory holding the segment files, created if missing
+     * @param segmentRecords number of records per segment file
+     * @param syncPolicy when to force the journal to disk
+     * @param syncIntervalMicros interval of the batched and async policies, ignored when forcing per message
+     * @param instrumentRegistry registry resolving the instruments of replayed messages
+     */
+    public InputJournal(File directory, int segmentRecords, JournalSyncPolicy syncPolicy, long syncIntervalMicros, InstrumentRegistry instrumentRegistry) throws IOException {
+        if (segmentRecords < 1 || segmentRecords > Integer.MAX_VALUE / RECORD_LENGTH) {
+            throw new IllegalArgumentException("Segment records must be between 1 and " + Integer.MAX_VALUE / RECORD_LENGTH + " but was " + segmentRecords);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalNanos = TimeUnit.MICROSECONDS.toNanos(syncIntervalMicros);
+        this.codec = new BinaryMessageCodec(instrumentRegistry);
+
+        openTail();
+        publishedSequence.set(sequence);
+        lastSyncNanos = System.nanoTime();
+
+        if (syncPolicy == JournalSyncPolicy.Async) {
+            syncThread = new Thread(() -> {
+                while (runningFlag) {
+                    LockSupport.parkNanos(syncIntervalNanos);
+                    segment.force();
+                }
+            }, "journal-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        }
+    }
+
+    /**
+     * Write the message as the next record of the journal
+     * @return sequence number of the record
+     */
+    public long append(Message message) {
+        if (position + RECORD_LENGTH > segment.capacity()) {
+            rollOver();
+        }
+        MappedByteBuffer buffer = segment;
+        codec.encodeMessage(message, buffer, position + FRAME_OFFSET);
+        //The frame has to reach the page before the sequence which completes it
+        UNSAFE.storeFence();
+        buffer.putLong(position + SEQUENCE_OFFSET, ++sequence);
+        position += RECORD_LENGTH;
+        publishedSequence.lazySet(sequence);
+
+        if (syncPolicy == JournalSyncPolicy.PerMessage) {
+            buffer.force();
+        } else if (syncPolicy == JournalSyncPolicy.Batched) {
+            dirty = true;
+            flushIfDue();
+        }
+        return sequence;
+    }
+
+    /**
+     * Force the records appended since the last force once the sync interval has passed.  Only does anything under
+     * the batched policy, the appending thread should also call it when idle so the last batch does not wait for the
+     * next message.
+     */
+    public void flushIfDue() {
+        if (dirty && System.nanoTime() - lastSyncNanos >= syncIntervalNanos) {
+            force();
+        }
+    }
+
+    /**
+     * Force everything appended so far to disk
+     */
+    public void force() {
+        segment.force();
+        lastSyncNanos = System.nanoTime();
+        dirty = false;
+    }
+
+    /**
+     * Hand every message journalled so far to the consumer, oldest first.  To be called on startup, before anything
+     * new is appended.  Records holding an instrument which is no longer registered are skipped.
+     * @param messagePool pool to take the messages from, the consumer owns them
+     * @param consumer receiver of the messages
+     * @return number of messages replayed
+     */
+    public long replay(ObjectPool<Message> messagePool, Consumer<Message> consumer) throws IOException {
+        return replay(0, getPublishedSequence(), messagePool, consumer);
+    }
+
+    /**
+     * Hand the messages journalled after one sequence up to another to the consumer, oldest first.  Segments holding
+     * only earlier records are skipped without reading them, so catching up from a snapshot costs only the records
+     * journalled since.  May be called from any thread while records are appended.
+     * @param afterSequence sequence of the last record not to replay, 0 to replay from the start
+     * @param toSequence sequence of the last record to replay, at most the published sequence
+     * @param messagePool pool to take the messages from, the consumer owns them
+     * @param consumer receiver of the messages
+     * @return number of messages replayed
+     */
+    public long replay(long afterSequence, long toSequence, ObjectPool<Message> messagePool, Consumer<Message> consumer) throws IOException {
+        long replayed = 0;
+        long expectedSequence = afterSequence == 0 ? 0 : afterSequence + 1;
+        for (File file : segmentFiles()) {
+            MappedByteBuffer buffer = replayMapping(file);
+            long firstSequence = buffer.capacity() < RECORD_LENGTH ? 0 : buffer.getLong(SEQUENCE_OFFSET);
+            if (firstSequence == 0 || firstSequence > toSequence) {
+                break;
+            }
+            //Records are numbered consecutively, so the first one to replay is found without reading up to it
+            long skipped = Math.max(0, afterSequence + 1 - firstSequence);
+            if (skipped * RECORD_LENGTH >= buffer.capacity()) {
+                continue;
+            }
+
+            for (int offset = (int) skipped * RECORD_LENGTH; offset + RECORD_LENGTH <= buffer.capacity(); offset += RECORD_LENGTH) {
+                long recordSequence = buffer.getLong(offset + SEQUENCE_OFFSET);
+                if (recordSequence == 0 || recordSequence > toSequence) {
+                    return replayed;
+                }
+                if (expectedSequence != 0 && recordSequence != expectedSequence) {
+                    throw new IllegalStateException("Journal " + file + " jumps from sequence " + (expectedSequence - 1) + " to " + recordSequence);
+                }
+                expectedSequence = recordSequence + 1;
+
+                Message message = codec.decodeMessage(buffer, offset + FRAME_OFFSET, BinaryMessageCodec.FRAME_LENGTH, messagePool);
+                if (message == null) {
+                    System.out.println("Skipping journal record " + recordSequence + " which does not hold a valid instruction");
+                    continue;
+                }
+                consumer.accept(message);
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * @return sequence number of the last record, 0 if the journal is empty
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return sequence number of the last record other threads may replay up to, 0 if the journal is empty
+     */
+    public long getPublishedSequence() {
+        return publishedSequence.get();
+    }
+
+    public JournalSyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Stop the sync thread and force what is left to disk
+     */
+    @Override
+    public void close() {
+        runningFlag = false;
+        if (syncThread != null) {
+            LockSupport.unpark(syncThread);
+            try {
+                syncThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        force();
+        replayMappings.clear();
+    }
+
+    /**
+     * Map the segment for reading, or take the mapping made by an earlier replay.  A segment is only kept once its
+     * first record is written, by then it has its full length; one still being created is mapped again next time.
+     */
+    private MappedByteBuffer replayMapping(File file) throws IOException {
+        MappedByteBuffer buffer = replayMappings.get(file.getName());
+        if (buffer == null) {
+            buffer = map(file, FileChannel.MapMode.READ_ONLY, 0);
+            if (buffer.capacity() >= RECORD_LENGTH && buffer.getLong(SEQUENCE_OFFSET) != 0) {
+                MappedByteBuffer existing = replayMappings.putIfAbsent(file.getName(), buffer);
+                if (existing != null) {
+                    buffer = existing;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Map the last segment and find the first free record in it.  A segment which was created but never written to
+     * takes the sequence on from the last record of the segments before it.
+     */
+    private void openTail() throws IOException {
+        File[] files = segmentFiles();
+        if (files.length == 0) {
+            segmentIndex = 0;
+            segment = createSegment(segmentIndex);
+            return;
+        }
+
+        File tail = files[files.length - 1];
+        segmentIndex = segmentIndexOf(tail);
+        segment = map(tail, FileChannel.MapMode.READ_WRITE, 0);
+        position = endOf(segment);
+        sequence = position == 0 ? 0 : segment.getLong(position - RECORD_LENGTH + SEQUENCE_OFFSET);
+
+        for (int i = files.length - 2; sequence == 0 && i >= 0; i--) {
+            MappedByteBuffer previous = map(files[i], FileChannel.MapMode.READ_ONLY, 0);
+            int end = endOf(previous);
+            if (end > 0) {
+                sequence = previous.getLong(end - RECORD_LENGTH + SEQUENCE_OFFSET);
+            }
+        }
+    }
+
+    private void rollOver() {
+        //The full segment is forced whatever the policy, the sync thread only ever sees the current one
+        segment.force();
+        try {
+            segment = createSegment(++segmentIndex);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create journal segment " + segmentIndex + " in " + directory, e);
+        }
+        position = 0;
+    }
+
+    /**
+     * Create a segment at its full length and touch every page, so the file system allocates its blocks now rather
+     * than on the first append to each page
+     */
+    private MappedByteBuffer createSegment(int index) throws IOException {
+        MappedByteBuffer buffer = map(new File(directory, segmentName(index)), FileChannel.MapMode.READ_WRITE, (long) segmentRecords * RECORD_LENGTH);
+        for (int offset = 0; offset < buffer.capacity(); offset += PAGE_SIZE) {
+            buffer.put(offset, (byte) 0);
+        }
+        buffer.force();
+        return buffer;
+    }
+
+    /**
+     * Map the whole file, growing it to minimumLength first.  The mapping stays valid once the file is closed.
+     */
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long minimumLength) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+            if (randomAccessFile.length() < minimumLength) {
+                randomAccessFile.setLength(minimumLength);
+            }
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(mode, 0, randomAccessFile.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    /**
+     * @return offset of the first free record of the segment, its capacity if it is full
+     */
+    private static int endOf(MappedByteBuffer buffer) {
+        int offset = 0;
+        while (offset + RECORD_LENGTH <= buffer.capacity() && buffer.getLong(offset + SEQUENCE_OFFSET) != 0) {
+            offset += RECORD_LENGTH;
+        }
+        return offset;
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        //Zero padded indexes, so sorting by name sorts by index
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static sun.misc.Unsafe unsafe() {
+        try {
+            Field theUnsafe = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return (sun.misc.Unsafe) theUnsafe.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static String segmentName(int index) {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    private static int segmentIndexOf(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
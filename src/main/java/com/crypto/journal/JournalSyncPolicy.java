@@ -0,0 +1,15 @@
+package com.crypto.journal;
+
+/**
+ * When the input journal forces what it has written to disk.  Appends always land in the page cache through the
+ * mapped segment, so a crash of the engine process alone loses nothing whatever the policy; the policy decides how
+ * much a crash of the machine can lose.
+ */
+public enum JournalSyncPolicy {
+    //Force after every message, nothing is lost but every message waits for the disk
+    PerMessage,
+    //Force from the journalling thread once the sync interval has passed since the last force, losing at most an interval
+    Batched,
+    //Force from a background thread every sync interval, the journalling thread never waits for the disk
+    Async
+}
@@ -0,0 +1,65 @@
+package com.crypto.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongIntHashMapTest {
+
+    private static final int MISSING = -1;
+
+    private LongIntHashMap map;
+
+    @Before
+    public void setup() {
+        map = new LongIntHashMap(4, MISSING);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        assertEquals(MISSING, map.put(1, 0));
+        assertEquals(MISSING, map.put(-7, 7));
+        assertEquals(0, map.put(1, 11));
+
+        assertEquals(11, map.get(1));
+        assertEquals(7, map.get(-7));
+        assertEquals(MISSING, map.get(2));
+        assertEquals(2, map.size());
+
+        assertEquals(11, map.remove(1));
+        assertEquals(MISSING, map.remove(1));
+        assertEquals(MISSING, map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testRandomChurnMatchesHashMap() {
+        //Growing from four slots and constant insert / remove over a small key range exercise rehash and backward shift
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(64);
+            if (random.nextBoolean()) {
+                assertEquals((int) expected.getOrDefault(key, MISSING), map.put(key, i));
+                expected.put(key, i);
+            } else {
+                assertEquals((int) expected.getOrDefault(key, MISSING), map.remove(key));
+                expected.remove(key);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = 0; key < 64; key++) {
+            assertEquals((int) expected.getOrDefault(key, MISSING), map.get(key));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingValueRejected() {
+        map.put(1, MISSING);
+    }
+}
@@ -0,0 +1,178 @@
+package com.crypto.concurrent;
+
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import com.crypto.feed.PoolOverflowPolicy;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress test of the hand-offs message and execution fields rely on for visibility, in the manner of jcstress.
+ * Producers fill every field of a pooled object from one number and offer it, the consumer checks each field against
+ * that number, scribbles over all of them and returns the object to the pool, from where it goes back to a producer.
+ * A field the consumer sees stale, or a scribble which lands after a producer refilled the object, fails the test.
+ *
+ * Queue and magazines are kept small so every object crosses threads in both directions many times.  On x86 only
+ * the compiler may reorder the plain stores, which is what the test guards against there.
+ */
+public class HandOffVisibilityTest {
+
+    private static final int OBJECTS = 500_000;
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int MAGAZINE_SIZE = 8;
+    private static final int BATCH_SIZE = 5;
+
+    @Test
+    public void testMessagesOfTwoProducersOverMpscRingBuffer() throws InterruptedException {
+        RingBuffer<Message> queue = new MpscRingBuffer<>(QUEUE_CAPACITY);
+        ObjectPool<Message> pool = new ObjectPool<>(Message::new, 1 << 16, 0, MAGAZINE_SIZE, PoolOverflowPolicy.Allocate);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            int producer = p;
+            producers[p] = new Thread(() -> {
+                for (long i = producer; i < OBJECTS && failure.get() == null; i += producers.length) {
+                    Message message = pool.acquireObject();
+                    fill(message, i);
+                    while (!queue.offer(message)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        int received = 0;
+        while (received < OBJECTS && failure.get() == null) {
+            Message message = queue.poll();
+            if (message == null) {
+                Thread.yield();
+                continue;
+            }
+            if (!isFilled(message, message.getQuantity())) {
+                failure.compareAndSet(null, message.toString());
+            }
+            scribble(message);
+            pool.returnObject(message);
+            received++;
+        }
+        for (Thread producer : producers) {
+            producer.join(10_000);
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(OBJECTS, received);
+    }
+
+    /**
+     * Executions go out in batches, published with one ordered store per batch as a book publishes them
+     */
+    @Test
+    public void testExecutionBatchesOverSpscRingBuffer() throws InterruptedException {
+        RingBuffer<Execution> queue = new SpscRingBuffer<>(QUEUE_CAPACITY);
+        ObjectPool<Execution> pool = new ObjectPool<>(Execution::new, 1 << 16, 0, MAGAZINE_SIZE, PoolOverflowPolicy.Allocate);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            Execution[] batch = new Execution[BATCH_SIZE];
+            for (long i = 0; i < OBJECTS && failure.get() == null; i += BATCH_SIZE) {
+                for (int j = 0; j < BATCH_SIZE; j++) {
+                    batch[j] = pool.acquireObject();
+                    fill(batch[j], i + j);
+                }
+                queue.putAll(batch, BATCH_SIZE);
+            }
+        });
+        producer.start();
+
+        long expected = 0;
+        while (expected < OBJECTS && failure.get() == null) {
+            Execution execution = queue.poll();
+            if (execution == null) {
+                Thread.yield();
+                continue;
+            }
+            if (!isFilled(execution, expected)) {
+                failure.set("Expected " + expected + " but got " + execution);
+            }
+            scribble(execution);
+            pool.returnObject(execution);
+            expected++;
+        }
+        producer.join(10_000);
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(OBJECTS, expected);
+    }
+
+    private static void fill(Message message, long i) {
+        message.setType(MessageType.values()[(int) (i % MessageType.values().length)]);
+        message.setPair((i & 1) == 0 ? CcyPair.BTCUSD : CcyPair.ETHUSD);
+        message.setSide((i & 2) == 0 ? Side.Bid : Side.Offer);
+        message.setPrice(2 * i);
+        message.setOrderId(3 * i);
+        message.setClientId(5 * i);
+        message.setClientOrderId(~i);
+        //Written last, the field the consumer takes the number from
+        message.setQuantity(i);
+    }
+
+    private static boolean isFilled(Message message, long i) {
+        return i >= 0 && message.getQuantity() == i
+                && message.getType() == MessageType.values()[(int) (i % MessageType.values().length)]
+                && message.getPair() == ((i & 1) == 0 ? CcyPair.BTCUSD : CcyPair.ETHUSD)
+                && message.getSide() == ((i & 2) == 0 ? Side.Bid : Side.Offer)
+                && message.getPrice() == 2 * i
+                && message.getOrderId() == 3 * i
+                && message.getClientId() == 5 * i
+                && message.getClientOrderId() == ~i;
+    }
+
+    private static void scribble(Message message) {
+        message.setType(null);
+        message.setPair(null);
+        message.setSide(null);
+        message.setPrice(-1);
+        message.setOrderId(-1);
+        message.setClientId(-1);
+        message.setClientOrderId(-1);
+        message.setQuantity(-1);
+    }
+
+    private static void fill(Execution execution, long i) {
+        execution.setType(ExecutionType.values()[(int) (i % ExecutionType.values().length)]);
+        execution.setPair((i & 1) == 0 ? CcyPair.BTCUSD : CcyPair.ETHUSD);
+        execution.setSide((i & 2) == 0 ? Side.Bid : Side.Offer);
+        execution.setQuantity(i);
+        execution.setPrice(2 * i);
+        execution.setOrderId(3 * i);
+        execution.setClientId(5 * i);
+        execution.setClientOrderId(~i);
+    }
+
+    private static boolean isFilled(Execution execution, long i) {
+        return execution.getType() == ExecutionType.values()[(int) (i % ExecutionType.values().length)]
+                && execution.getPair() == ((i & 1) == 0 ? CcyPair.BTCUSD : CcyPair.ETHUSD)
+                && execution.getSide() == ((i & 2) == 0 ? Side.Bid : Side.Offer)
+                && execution.getQuantity() == i
+                && execution.getPrice() == 2 * i
+                && execution.getOrderId() == 3 * i
+                && execution.getClientId() == 5 * i
+                && execution.getClientOrderId() == ~i;
+    }
+
+    private static void scribble(Execution execution) {
+        execution.setType(null);
+        execution.setPair(null);
+        execution.setSide(null);
+        execution.setQuantity(-1);
+        execution.setPrice(-1);
+        execution.setOrderId(-1);
+        execution.setClientId(-1);
+        execution.setClientOrderId(-1);
+    }
+}
@@ -0,0 +1,50 @@
+package com.crypto.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RingBufferTest {
+
+    @Test
+    public void testSpscRingBufferIteratesOverWhatItHolds() {
+        assertIteratesOverWhatItHolds(new SpscRingBuffer<>(4));
+    }
+
+    @Test
+    public void testMpscRingBufferIteratesOverWhatItHolds() {
+        assertIteratesOverWhatItHolds(new MpscRingBuffer<>(4));
+    }
+
+    /**
+     * The Queue methods built on the iterator work, over the elements not yet polled, also once the indexes wrapped
+     */
+    private static void assertIteratesOverWhatItHolds(RingBuffer<Integer> queue) {
+        assertEquals("[]", queue.toString());
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+            if (i >= 2) {
+                queue.poll();
+            }
+        }
+        assertEquals("[4, 5]", queue.toString());
+        assertTrue(queue.contains(5));
+        assertFalse(queue.contains(3));
+        List<Integer> copy = new ArrayList<>();
+        copy.addAll(queue);
+        assertEquals(Arrays.asList(4, 5), copy);
+
+        Iterator<Integer> iterator = queue.iterator();
+        queue.poll();
+        queue.offer(6);
+        assertEquals("A weakly consistent copy taken when asked for", Integer.valueOf(4), iterator.next());
+        assertEquals(Integer.valueOf(5), iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals("[5, 6]", queue.toString());
+    }
+}
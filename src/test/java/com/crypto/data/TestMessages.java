@@ -0,0 +1,42 @@
+package com.crypto.data;
+
+/**
+ * Messages on BTCUSD for the tests which journal, replay and snapshot books
+ */
+public final class TestMessages {
+
+    private TestMessages() {
+    }
+
+    public static Message limit(long clientId, long clientOrderId, Side side, long price, long quantity) {
+        Message message = market(clientId, clientOrderId, side, quantity);
+        message.setType(MessageType.NewLimitOrder);
+        message.setPrice(price);
+        return message;
+    }
+
+    public static Message market(long clientId, long clientOrderId, Side side, long quantity) {
+        Message message = new Message();
+        message.setType(MessageType.NewMarketOrder);
+        message.setClientId(clientId);
+        message.setClientOrderId(clientOrderId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(side);
+        message.setQuantity(quantity);
+        return message;
+    }
+
+    public static Message cancel(long clientId, long orderId) {
+        Message message = cancelAll(clientId);
+        message.setType(MessageType.CancelOrder);
+        message.setOrderId(orderId);
+        return message;
+    }
+
+    public static Message cancelAll(long clientId) {
+        Message message = new Message();
+        message.setType(MessageType.CancelAllOrders);
+        message.setClientId(clientId);
+        return message;
+    }
+}
@@ -0,0 +1,110 @@
+package com.crypto.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.crypto.engine.OrderStore.NONE;
+import static org.junit.Assert.*;
+
+public class ArrayLimitLevelTest {
+
+    private OrderStore store;
+    private ArrayLimitLevel level;
+    //Orders expected to rest on the level, first in line first
+    private List<Integer> expected;
+
+    @Before
+    public void setUp() {
+        store = new OffHeapOrderStore(1);
+        level = new ArrayLimitLevel();
+        level.populate(100, null, null);
+        level.orders = store;
+        expected = new ArrayList<>();
+    }
+
+    @Test
+    public void testQueueSurvivesGrowthAndCompaction() {
+        for (int i = 0; i < 1000; i++) {
+            add(i);
+        }
+        assertQueue();
+
+        //Tombstones in the middle, enough of them to be compacted away more than once
+        for (int i = expected.size() - 2; i > 0; i -= 2) {
+            cancel(expected.get(i));
+        }
+        assertQueue();
+
+        //Positions moved by compaction still find their orders
+        Random random = new Random(3);
+        while (expected.size() > 10) {
+            cancel(expected.get(random.nextInt(expected.size())));
+        }
+        assertQueue();
+        for (int i = 0; i < 100; i++) {
+            add(1000 + i);
+        }
+        assertQueue();
+    }
+
+    @Test
+    public void testFillsFromTheHeadPastTombstones() {
+        for (int i = 0; i < 5; i++) {
+            add(i);
+        }
+        cancel(expected.get(1));
+        cancel(expected.get(1));
+        cancel(expected.get(expected.size() - 1));
+
+        level.reduceOrder(level.peekInsideOfBook(), 4);
+        assertEquals(6, level.getInsideOfBookSize());
+        assertEquals(6, store.getSize(level.peekInsideOfBook()));
+        assertEquals(6 + 10, level.getQuantity());
+
+        assertEquals((int) expected.remove(0), level.pollInsideOfBook());
+        assertQueue();
+        assertEquals((int) expected.remove(0), level.pollInsideOfBook());
+        assertTrue(level.isEmpty());
+        assertEquals(NONE, level.peekInsideOfBook());
+        assertEquals(0, level.getQuantity());
+
+        add(5);
+        assertQueue();
+    }
+
+    private void add(long orderId) {
+        int order = store.add(orderId, orderId % 5, -orderId, 10, level);
+        level.addOrder(order);
+        expected.add(order);
+    }
+
+    private void cancel(int order) {
+        expected.remove((Integer) order);
+        assertEquals(expected.isEmpty(), level.cancelOrder(order));
+        store.remove(order);
+    }
+
+    private void assertQueue() {
+        long quantity = 0;
+        int order = level.peekInsideOfBook();
+        for (int expectedOrder : expected) {
+            assertEquals(expectedOrder, order);
+            quantity += store.getSize(order);
+            order = level.nextOrder(order);
+        }
+        assertEquals(NONE, order);
+        assertEquals(expected.size(), level.getOrderCount());
+        assertEquals(quantity, level.getQuantity());
+        if (!expected.isEmpty()) {
+            int first = expected.get(0);
+            assertEquals(store.getOrderId(first), level.getInsideOfBookOrderId());
+            assertEquals(store.getClientId(first), level.getInsideOfBookClientId());
+            assertEquals(store.getClientOrderId(first), level.getInsideOfBookClientOrderId());
+            assertEquals(store.getSize(first), level.getInsideOfBookSize());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.BinaryMessageCodec;
+import com.crypto.feed.ObjectPool;
+import com.crypto.journal.InputJournal;
+import com.crypto.journal.JournalSyncPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static com.crypto.data.TestMessages.*;
+import static org.junit.Assert.*;
+
+public class BookSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BinaryMessageCodec codec = new BinaryMessageCodec(InstrumentRegistry.withDefaultPairs());
+    private final ByteBuffer frame = ByteBuffer.allocate(BinaryMessageCodec.FRAME_LENGTH);
+
+    /**
+     * Books restored from a snapshot and replayed from its sequence publish what the books it was taken of publish:
+     * the same queues at every price, the same client chains for mass cancels and the same next order ids
+     */
+    @Test
+    public void testRestoredBooksPublishTheSameExecutions() throws IOException {
+        File snapshot = new File(folder.getRoot(), "books.bin");
+        try (InputJournal journal = journal(folder.newFolder())) {
+            journal.append(limit(1, 1, Side.Bid, 100, 10));
+            journal.append(limit(2, 2, Side.Bid, 100, 20));
+            journal.append(limit(1, 3, Side.Bid, 99, 10));
+            journal.append(limit(3, 4, Side.Bid, 98, 30));
+            journal.append(limit(2, 5, Side.Offer, 105, 10));
+            journal.append(limit(1, 6, Side.Offer, 106, 10));
+            journal.append(market(4, 7, Side.Offer, 5));
+
+            JournalReplayer original = replayer();
+            assertEquals(7, original.replay(journal, null));
+            original.snapshot(snapshot);
+
+            journal.append(limit(1, 8, Side.Bid, 99, 10));
+            journal.append(cancel(3, OrderIds.orderId(3, OrderIds.bookIndex(CcyPair.BTCUSD, Side.Bid))));
+            journal.append(market(4, 9, Side.Offer, 40));
+            journal.append(cancelAll(1));
+            journal.append(market(4, 10, Side.Bid, 5));
+
+            JournalReplayer restored = replayer();
+            assertEquals(7, restored.restore(snapshot));
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            assertEquals(5, original.replay(journal, execution -> write(execution, expected)));
+            assertEquals(5, restored.replay(journal, execution -> write(execution, actual)));
+            assertTrue(expected.size() > 0);
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    public void testSnapshotterKeepsTheLatestSnapshots() throws IOException {
+        File snapshots = new File(folder.getRoot(), "snapshots");
+        try (InputJournal journal = journal(folder.newFolder())) {
+            BookSnapshotter snapshotter = new BookSnapshotter(journal, snapshots, Collections.singletonList(CcyPair.BTCUSD));
+            assertNull(snapshotter.snapshot());
+
+            File first = null;
+            for (int i = 1; i <= 3; i++) {
+                journal.append(limit(i, i, Side.Bid, 100 - i, 10));
+                File snapshot = snapshotter.snapshot();
+                assertEquals(snapshot, BookSnapshotter.latestSnapshot(snapshots));
+                first = first == null ? snapshot : first;
+            }
+            assertFalse(first.exists());
+            assertEquals(2, snapshots.list((dir, name) -> name.endsWith(".bin")).length);
+
+            JournalReplayer replayer = replayer();
+            assertEquals(3, replayer.restore(BookSnapshotter.latestSnapshot(snapshots)));
+            assertEquals(0, replayer.replay(journal, null));
+        }
+    }
+
+    @Test
+    public void testSnapshotsWhileTheJournalIsAppendedTo() throws IOException, InterruptedException {
+        File snapshots = new File(folder.getRoot(), "snapshots");
+        try (InputJournal journal = journal(folder.newFolder())) {
+            BookSnapshotter snapshotter = new BookSnapshotter(journal, snapshots, Collections.singletonList(CcyPair.BTCUSD));
+            snapshotter.start(1, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < 1000; i++) {
+                journal.append(limit(i % 16, i, Side.Bid, 100 - i % 8, 10));
+                if (i % 100 == 0) {
+                    Thread.sleep(2);
+                }
+            }
+            snapshotter.shutdown();
+
+            JournalReplayer replayer = replayer();
+            File latest = BookSnapshotter.latestSnapshot(snapshots);
+            long sequence = latest == null ? 0 : replayer.restore(latest);
+            assertEquals(1000 - sequence, replayer.replay(journal, null));
+            assertEquals(1000, replayer.getSequence());
+        }
+    }
+
+    private static JournalReplayer replayer() {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        JournalReplayer replayer = new JournalReplayer(new MessageRouter(Collections.emptyList(), messagePool), messagePool, executionPublishQueue, executionPool);
+        replayer.addBook(new PairOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool,
+                new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue));
+        return replayer;
+    }
+
+    private void write(Execution execution, ByteArrayOutputStream out) {
+        codec.encodeExecution(execution, frame, 0);
+        out.write(frame.array(), 0, BinaryMessageCodec.FRAME_LENGTH);
+    }
+
+    private static InputJournal journal(File directory) throws IOException {
+        return new InputJournal(directory, 4, JournalSyncPolicy.Async, 1000, InstrumentRegistry.withDefaultPairs());
+    }
+}
@@ -0,0 +1,59 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.junit.Test;
+
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static org.junit.Assert.*;
+
+public class BookWarmUpTest {
+
+    @Test
+    public void testWarmUpLeavesBooksEmptyAndQuiet() {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        PairOrderBookProcessor pairProcessor = new PairOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool,
+                new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+
+        BookWarmUp warmUp = new BookWarmUp(1024, 1024, 64, 1024, 16, 1000);
+        warmUp.prewarmPools(messagePool, executionPool);
+        assertTrue(warmUp.warmUp(pairProcessor) > 0);
+
+        assertEquals(0, executionPublishQueue.size());
+        assertTrue(pairProcessor.getBidProcessor().isEmpty());
+        assertTrue(pairProcessor.getOfferProcessor().isEmpty());
+        HeapOrderStore bidOrders = (HeapOrderStore) pairProcessor.getBidProcessor().getOrderStore();
+        assertEquals("Synthetic orders came out of the prewarmed pool", 0, bidOrders.getOrderPool().getMisses());
+
+        //The books trade as usual afterwards, without the synthetic levels around
+        Message limit = messagePool.acquireObject();
+        limit.setType(MessageType.NewLimitOrder);
+        limit.setClientId(1);
+        limit.setClientOrderId(1);
+        limit.setPair(CcyPair.BTCUSD);
+        limit.setSide(Side.Offer);
+        limit.setQuantity(10);
+        limit.setPrice(100);
+        pairProcessor.processMessage(limit);
+
+        Message market = messagePool.acquireObject();
+        market.setType(MessageType.NewMarketOrder);
+        market.setClientId(2);
+        market.setClientOrderId(1);
+        market.setPair(CcyPair.BTCUSD);
+        market.setSide(Side.Bid);
+        market.setQuantity(10);
+        pairProcessor.processMessage(market);
+
+        assertEquals(ExecutionType.OrderAccepted, executionPublishQueue.poll().getType());
+        Execution fill = executionPublishQueue.poll();
+        assertEquals(ExecutionType.Fill, fill.getType());
+        assertEquals(100, fill.getPrice());
+    }
+}
@@ -0,0 +1,154 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.BackoffWaitStrategy;
+import com.crypto.concurrent.BlockingWaitStrategy;
+import com.crypto.concurrent.SpinThenYieldWaitStrategy;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the field layout the JVM actually chose, as JOL would print it, keeps the fields written on every cycle by
+ * one thread off the cache lines other threads read.  Padding fields are named p and two digits.
+ */
+public class CacheLineLayoutTest {
+
+    private static final int CACHE_LINE = 64;
+
+    private static Object unsafe;
+    private static Method objectFieldOffset;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        unsafe = theUnsafe.get(null);
+        objectFieldOffset = unsafeClass.getMethod("objectFieldOffset", Field.class);
+    }
+
+    /**
+     * A busy spinning consumer bumps its idle counter every cycle, producers read the strategy to signal it
+     */
+    @Test
+    public void testWaitStrategyCountersHaveACacheLineOfTheirOwn() throws Exception {
+        for (Class<?> strategy : Arrays.asList(BlockingWaitStrategy.class, SpinThenYieldWaitStrategy.class, BackoffWaitStrategy.class)) {
+            assertIsolated(strategy, false, "idleCycles", "workCycles");
+        }
+    }
+
+    /**
+     * Written by the book thread on every change of its best price, read by the opposite side on every limit order
+     */
+    @Test
+    public void testTopOfBookHasACacheLineOfItsOwn() throws Exception {
+        assertIsolated(TopOfBook.class, true, "version", "price", "quantity", "orderCount");
+    }
+
+    /**
+     * Books and the distributor are laid out one after another, the fields of each are kept off the line its
+     * predecessor ends on
+     */
+    @Test
+    public void testEngineThreadsStartOnACacheLineOfTheirOwn() throws Exception {
+        assertIsolated(BidOrderBookProcessor.class, false, allFields(BidOrderBookProcessor.class));
+        assertIsolated(OrderBookDistributor.class, false, allFields(OrderBookDistributor.class));
+    }
+
+    /**
+     * @param trailing whether the hot fields must also be a cache line away from whatever follows the object
+     */
+    private static void assertIsolated(Class<?> type, boolean trailing, String... hotFieldNames) throws Exception {
+        Map<Field, Long> layout = layout(type);
+        Set<String> hot = new HashSet<>(Arrays.asList(hotFieldNames));
+        long objectEnd = 0;
+        for (Map.Entry<Field, Long> entry : layout.entrySet()) {
+            objectEnd = Math.max(objectEnd, entry.getValue() + sizeOf(entry.getKey()));
+        }
+
+        for (Map.Entry<Field, Long> hotEntry : layout.entrySet()) {
+            if (!hot.contains(hotEntry.getKey().getName())) {
+                continue;
+            }
+            long hotStart = hotEntry.getValue();
+            long hotEnd = hotStart + sizeOf(hotEntry.getKey()) - 1;
+            //The object before ends at offset -1
+            assertTrue(type.getSimpleName() + "." + hotEntry.getKey().getName() + " shares a line with the object before it",
+                    hotStart + 1 >= CACHE_LINE);
+            if (trailing) {
+                assertTrue(type.getSimpleName() + "." + hotEntry.getKey().getName() + " shares a line with the object after it",
+                        objectEnd - hotEnd >= CACHE_LINE);
+            }
+            for (Map.Entry<Field, Long> other : layout.entrySet()) {
+                if (hot.contains(other.getKey().getName()) || isPadding(other.getKey())) {
+                    continue;
+                }
+                long otherStart = other.getValue();
+                long otherEnd = otherStart + sizeOf(other.getKey()) - 1;
+                long distance = otherStart > hotEnd ? otherStart - hotEnd : hotStart - otherEnd;
+                assertTrue(type.getSimpleName() + "." + hotEntry.getKey().getName() + " shares a line with " + other.getKey().getName(),
+                        distance >= CACHE_LINE);
+            }
+        }
+    }
+
+    /**
+     * @return instance fields of the class and its super classes by offset, printed as JOL would
+     */
+    private static Map<Field, Long> layout(Class<?> type) throws Exception {
+        Map<Field, Long> layout = new LinkedHashMap<>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    layout.put(field, (Long) objectFieldOffset.invoke(unsafe, field));
+                }
+            }
+        }
+        List<Map.Entry<Field, Long>> byOffset = new ArrayList<>(layout.entrySet());
+        byOffset.sort(Map.Entry.comparingByValue());
+        StringBuilder printout = new StringBuilder(type.getName()).append(" object internals:\n");
+        for (Map.Entry<Field, Long> entry : byOffset) {
+            printout.append(String.format(" %4d %4d %10s %s.%s%n", entry.getValue(), sizeOf(entry.getKey()),
+                    entry.getKey().getType().getSimpleName(), entry.getKey().getDeclaringClass().getSimpleName(), entry.getKey().getName()));
+        }
+        System.out.print(printout);
+        return layout;
+    }
+
+    private static String[] allFields(Class<?> type) {
+        List<String> names = new ArrayList<>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !isPadding(field)) {
+                    names.add(field.getName());
+                }
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    private static boolean isPadding(Field field) {
+        return field.getName().matches("p\\d\\d");
+    }
+
+    private static int sizeOf(Field field) {
+        Class<?> type = field.getType();
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        //Compressed oops
+        return 4;
+    }
+}
@@ -0,0 +1,141 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpinThenYieldWaitStrategy;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static org.junit.Assert.*;
+
+public class ExecutionPublisherTest {
+
+    private static final int RESTING_ORDERS = 50;
+
+    /**
+     * Books publishing to queues of their own reach every sink, a sweep as one batch in the order it was published
+     */
+    @Test
+    public void testSinksSeeTheExecutionsOfEveryBook() throws InterruptedException {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> btcExecutions = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        RingBuffer<Execution> ethExecutions = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        PairOrderBookProcessor btc = pair(CcyPair.BTCUSD, messagePool, executionPool, btcExecutions);
+        PairOrderBookProcessor eth = pair(CcyPair.ETHUSD, messagePool, executionPool, ethExecutions);
+
+        List<String> first = Collections.synchronizedList(new ArrayList<>());
+        List<String> second = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        ExecutionPublisher publisher = new ExecutionPublisher(Arrays.asList(btcExecutions, ethExecutions),
+                Arrays.asList((executions, count) -> {
+                    batchSizes.add(count);
+                    for (int i = 0; i < count; i++) {
+                        first.add(executions[i].getPair() + " " + executions[i].getType() + " " + executions[i].getClientOrderId());
+                    }
+                }, (executions, count) -> {
+                    for (int i = 0; i < count; i++) {
+                        second.add(executions[i].getPair() + " " + executions[i].getType() + " " + executions[i].getClientOrderId());
+                    }
+                }), executionPool, new SpinThenYieldWaitStrategy(100));
+
+        for (int i = 0; i < RESTING_ORDERS; i++) {
+            btc.getDistributorInboundQueue().put(limit(CcyPair.BTCUSD, i));
+        }
+        eth.getDistributorInboundQueue().put(limit(CcyPair.ETHUSD, 0));
+        btc.startOrderBook();
+        eth.startOrderBook();
+        awaitSize(first, RESTING_ORDERS + 1);
+        batchSizes.clear();
+
+        btc.getDistributorInboundQueue().put(sweep());
+        awaitSize(first, 3 * RESTING_ORDERS + 1);
+        publisher.shutdown();
+        btc.shutdown();
+        eth.shutdown();
+
+        assertEquals(Collections.singletonList(2 * RESTING_ORDERS), batchSizes);
+        assertEquals(first, second);
+        assertTrue(first.contains("ETHUSD OrderAccepted 0"));
+        List<String> sweep = first.subList(RESTING_ORDERS + 1, first.size());
+        for (int i = 0; i < RESTING_ORDERS; i++) {
+            assertEquals("BTCUSD Fill " + i, sweep.get(2 * i + 1));
+        }
+    }
+
+    /**
+     * Whatever the books published before the publisher was shut down reaches the sinks before shutdown returns
+     */
+    @Test
+    public void testShutdownPublishesWhatIsLeft() {
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executions = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        List<Long> published = Collections.synchronizedList(new ArrayList<>());
+        ExecutionPublisher publisher = new ExecutionPublisher(Collections.singletonList(executions),
+                Collections.singletonList((batch, count) -> {
+                    for (int i = 0; i < count; i++) {
+                        published.add(batch[i].getClientOrderId());
+                    }
+                }), executionPool, new SpinThenYieldWaitStrategy(100));
+
+        //Several batches, whichever of them the thread has not got to by then are published by shutdown
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            Execution execution = executionPool.acquireObject();
+            execution.setClientOrderId(i);
+            executions.put(execution);
+        }
+        publisher.shutdown();
+
+        assertEquals(count, published.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (long) published.get(i));
+        }
+        assertNull(executions.poll());
+    }
+
+    private static void awaitSize(List<String> executions, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executions.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(size, executions.size());
+    }
+
+    private static PairOrderBookProcessor pair(CcyPair pair, ObjectPool<Message> messagePool, ObjectPool<Execution> executionPool, RingBuffer<Execution> executionQueue) {
+        PairOrderBookProcessor processor = new PairOrderBookProcessor(pair, executionPool, messagePool,
+                new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionQueue);
+        processor.setWaitStrategy(new SpinThenYieldWaitStrategy(100));
+        return processor;
+    }
+
+    private static Message limit(CcyPair pair, long clientOrderId) {
+        Message message = new Message();
+        message.setType(MessageType.NewLimitOrder);
+        message.setClientId(1);
+        message.setClientOrderId(clientOrderId);
+        message.setPair(pair);
+        message.setSide(Side.Bid);
+        message.setPrice(100 - clientOrderId / 10);
+        message.setQuantity(10);
+        return message;
+    }
+
+    private static Message sweep() {
+        Message message = new Message();
+        message.setType(MessageType.NewMarketOrder);
+        message.setClientId(2);
+        message.setClientOrderId(RESTING_ORDERS);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Offer);
+        message.setQuantity(10 * RESTING_ORDERS);
+        return message;
+    }
+}
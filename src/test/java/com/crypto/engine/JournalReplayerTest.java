@@ -0,0 +1,199 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpinThenYieldWaitStrategy;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.BinaryMessageCodec;
+import com.crypto.feed.ObjectPool;
+import com.crypto.journal.InputJournal;
+import com.crypto.journal.JournalSyncPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static com.crypto.data.TestMessages.*;
+import static org.junit.Assert.*;
+
+public class JournalReplayerTest {
+
+    private static final long LAST_CLIENT_ORDER_ID = 99;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BinaryMessageCodec codec = new BinaryMessageCodec(InstrumentRegistry.withDefaultPairs());
+    private final ByteBuffer frame = ByteBuffer.allocate(BinaryMessageCodec.FRAME_LENGTH);
+
+    @Test
+    public void testReplayPublishesTheLiveExecutions() throws IOException, InterruptedException {
+        File directory = folder.newFolder();
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        PairOrderBookProcessor pairProcessor = pair(messagePool, new ObjectPool<>(Execution::new), executionPublishQueue);
+        pairProcessor.setWaitStrategy(new SpinThenYieldWaitStrategy(100));
+        pairProcessor.startOrderBook();
+        RingBuffer<Message> queue = pairProcessor.getDistributorInboundQueue();
+        RingBuffer<Message> inboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        InputJournal journal = journal(directory);
+        OrderBookDistributor distributor = new OrderBookDistributor(inboundQueue, Arrays.asList(queue, queue), messagePool, new SpinThenYieldWaitStrategy(100), journal);
+
+        ByteArrayOutputStream live = new ByteArrayOutputStream();
+        inboundQueue.put(limit(1, 1, Side.Bid, 100, 10));
+        inboundQueue.put(limit(1, 2, Side.Bid, 99, 10));
+        long orderId = collectUntil(executionPublishQueue, 2, live);
+        inboundQueue.put(limit(2, 3, Side.Offer, 105, 10));
+        inboundQueue.put(limit(2, 4, Side.Offer, 95, 10));
+        inboundQueue.put(market(3, 5, Side.Offer, 15));
+        inboundQueue.put(cancel(1, orderId));
+        inboundQueue.put(limit(1, 6, Side.Bid, 98, 10));
+        inboundQueue.put(market(3, 7, Side.Bid, 5));
+        inboundQueue.put(cancelAll(2));
+        inboundQueue.put(limit(4, LAST_CLIENT_ORDER_ID, Side.Offer, 110, 10));
+        collectUntil(executionPublishQueue, LAST_CLIENT_ORDER_ID, live);
+        distributor.shutdown();
+        pairProcessor.shutdown();
+        journal.close();
+
+        assertArrayEquals(live.toByteArray(), replay(directory));
+        assertArrayEquals(live.toByteArray(), replay(directory));
+    }
+
+    /**
+     * A mass cancel after a restart reaches the books the client placed orders in before it
+     */
+    @Test
+    public void testRouterHandedToDistributorKnowsClients() throws IOException, InterruptedException {
+        File directory = folder.newFolder();
+        try (InputJournal journal = journal(directory)) {
+            journal.append(limit(1, 1, Side.Bid, 100, 10));
+            journal.append(limit(1, 2, Side.Offer, 105, 10));
+        }
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        PairOrderBookProcessor pairProcessor = pair(messagePool, executionPool, executionPublishQueue);
+        RingBuffer<Message> queue = pairProcessor.getDistributorInboundQueue();
+
+        MessageRouter router = new MessageRouter(Arrays.asList(queue, queue), messagePool);
+        JournalReplayer replayer = new JournalReplayer(router, messagePool, executionPublishQueue, executionPool);
+        replayer.addBook(pairProcessor);
+        try (InputJournal journal = journal(directory)) {
+            assertEquals(2, replayer.replay(journal, null));
+        }
+        assertEquals(0, executionPublishQueue.size());
+
+        RingBuffer<Message> inboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        OrderBookDistributor distributor = new OrderBookDistributor(inboundQueue, router, messagePool, new SpinThenYieldWaitStrategy(100), null);
+        pairProcessor.setWaitStrategy(new SpinThenYieldWaitStrategy(100));
+        pairProcessor.startOrderBook();
+
+        inboundQueue.put(cancelAll(1));
+        int cancelled = 0;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cancelled < 2 && System.currentTimeMillis() < deadline) {
+            Execution execution = executionPublishQueue.poll();
+            if (execution == null) {
+                Thread.sleep(1);
+            } else {
+                assertEquals(ExecutionType.CancelAccepted, execution.getType());
+                cancelled++;
+            }
+        }
+        assertEquals(2, cancelled);
+        distributor.shutdown();
+        pairProcessor.shutdown();
+    }
+
+    /**
+     * The sides of a split book check the spread against a top of book the other side's thread publishes.  How far
+     * that thread had got is not in the journal, so a replay could cross or reject differently than live; the
+     * distributor refuses to journal such books rather than let them replay otherwise
+     */
+    @Test
+    public void testSplitBooksAreNotJournalled() throws IOException {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        RingBuffer<Message> inboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        RingBuffer<Message> bidQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        RingBuffer<Message> offerQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        RingBuffer<Message> pairQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+
+        try (InputJournal journal = journal(folder.newFolder())) {
+            try {
+                new OrderBookDistributor(inboundQueue, Arrays.asList(offerQueue, bidQueue), messagePool, new SpinThenYieldWaitStrategy(100), journal);
+                fail("Split books were journalled");
+            } catch (IllegalArgumentException expected) {
+                //Refused before anything was routed
+            }
+
+            OrderBookDistributor distributor = new OrderBookDistributor(inboundQueue, Arrays.asList(pairQueue, pairQueue), messagePool, new SpinThenYieldWaitStrategy(100), journal);
+            try {
+                distributor.addBook(CcyPair.ETHUSD, bidQueue, offerQueue);
+                fail("Split books were journalled");
+            } catch (IllegalArgumentException expected) {
+                //The pair sharing a queue is still journalled
+            } finally {
+                distributor.shutdown();
+            }
+        }
+    }
+
+    private byte[] replay(File directory) throws IOException {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        JournalReplayer replayer = new JournalReplayer(new MessageRouter(Collections.emptyList(), messagePool), messagePool, executionPublishQueue, executionPool);
+        replayer.addBook(pair(messagePool, executionPool, executionPublishQueue));
+
+        ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+        try (InputJournal journal = journal(directory)) {
+            assertEquals(10, replayer.replay(journal, execution -> write(execution, replayed)));
+        }
+        return replayed.toByteArray();
+    }
+
+    /**
+     * Encode the published executions until the one of the given client order id
+     * @return order id of the last execution
+     */
+    private long collectUntil(RingBuffer<Execution> queue, long clientOrderId, ByteArrayOutputStream out) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            Execution execution = queue.poll();
+            if (execution == null) {
+                Thread.sleep(1);
+                continue;
+            }
+            write(execution, out);
+            if (execution.getClientOrderId() == clientOrderId) {
+                return execution.getOrderId();
+            }
+        }
+        fail("No execution for client order id " + clientOrderId);
+        return 0;
+    }
+
+    private void write(Execution execution, ByteArrayOutputStream out) {
+        codec.encodeExecution(execution, frame, 0);
+        out.write(frame.array(), 0, BinaryMessageCodec.FRAME_LENGTH);
+    }
+
+    private static PairOrderBookProcessor pair(ObjectPool<Message> messagePool, ObjectPool<Execution> executionPool, RingBuffer<Execution> executionPublishQueue) {
+        return new PairOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool,
+                new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+    }
+
+    private static InputJournal journal(File directory) throws IOException {
+        return new InputJournal(directory, 4, JournalSyncPolicy.Async, 1000, InstrumentRegistry.withDefaultPairs());
+    }
+}
@@ -0,0 +1,360 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static org.junit.Assert.*;
+
+public class MarketDataTest {
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+    private final ObjectPool<MarketDataUpdate> updatePool = new ObjectPool<>(MarketDataUpdate::new);
+    private final RingBuffer<Execution> executionPublishQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+    private OrderBookProcessor bidProcessor;
+    private long clientOrderId;
+
+    @Before
+    public void setUp() {
+        bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+    }
+
+    /**
+     * Order updates as they happen, then each level touched once and the top of book, all in one unbroken sequence
+     */
+    @Test
+    public void testOrderLevelAndTopOfBookUpdates() {
+        RingBuffer<MarketDataUpdate> marketDataQueue = new SpscRingBuffer<>(1024);
+        bidProcessor.setMarketData(marketDataQueue, updatePool, 0);
+        //Market data starts with a snapshot of the book, empty here
+        bidProcessor.publishMarketData();
+
+        bidProcessor.processMessage(limit(100, 10));
+        long firstOrderId = drainExecutions();
+        bidProcessor.processMessage(limit(100, 5));
+        long secondOrderId = drainExecutions();
+        bidProcessor.processMessage(limit(99, 7));
+        drainExecutions();
+        bidProcessor.processMessage(market(12));
+        drainExecutions();
+
+        List<MarketDataUpdate> updates = drain(marketDataQueue);
+        for (int i = 0; i < updates.size(); i++) {
+            assertEquals(i + 1, updates.get(i).getSequence());
+        }
+        assertUpdate(updates.get(0), MarketDataType.SnapshotStart, 0, 0, 0, 0);
+        assertUpdate(updates.get(1), MarketDataType.SnapshotEnd, 0, 0, 0, 0);
+        assertUpdate(updates.get(2), MarketDataType.OrderAdded, firstOrderId, 100, 10, 0);
+        assertUpdate(updates.get(3), MarketDataType.PriceLevel, 0, 100, 10, 1);
+        assertUpdate(updates.get(4), MarketDataType.TopOfBook, 0, 100, 10, 1);
+        assertUpdate(updates.get(5), MarketDataType.OrderAdded, secondOrderId, 100, 5, 0);
+        assertUpdate(updates.get(6), MarketDataType.PriceLevel, 0, 100, 15, 2);
+        assertUpdate(updates.get(7), MarketDataType.TopOfBook, 0, 100, 15, 2);
+        //The top of book is unchanged by a level behind it
+        assertEquals(MarketDataType.OrderAdded, updates.get(8).getType());
+        assertUpdate(updates.get(9), MarketDataType.PriceLevel, 0, 99, 7, 1);
+        //The sweep hits two orders of the level, which goes out once
+        assertUpdate(updates.get(10), MarketDataType.OrderRemoved, firstOrderId, 100, 0, 0);
+        assertUpdate(updates.get(11), MarketDataType.OrderReduced, secondOrderId, 100, 3, 0);
+        assertUpdate(updates.get(12), MarketDataType.PriceLevel, 0, 100, 3, 1);
+        assertUpdate(updates.get(13), MarketDataType.TopOfBook, 0, 100, 3, 1);
+        assertEquals(14, updates.size());
+        for (MarketDataUpdate update : updates) {
+            assertEquals(CcyPair.BTCUSD, update.getPair());
+            assertEquals(Side.Bid, update.getSide());
+        }
+
+        bidProcessor.processMessage(cancel(secondOrderId));
+        drainExecutions();
+        updates = drain(marketDataQueue);
+        assertUpdate(updates.get(0), MarketDataType.OrderRemoved, secondOrderId, 100, 0, 0);
+        assertUpdate(updates.get(1), MarketDataType.PriceLevel, 0, 100, 0, 0);
+        assertUpdate(updates.get(2), MarketDataType.TopOfBook, 0, 99, 7, 1);
+        assertEquals(3, updates.size());
+    }
+
+    @Test
+    public void testPeriodicSnapshot() {
+        RingBuffer<MarketDataUpdate> marketDataQueue = new SpscRingBuffer<>(1024);
+        bidProcessor.setMarketData(marketDataQueue, updatePool, 2);
+
+        bidProcessor.publishMarketData();
+        bidProcessor.processMessage(limit(100, 10));
+        drainExecutions();
+        assertEquals(5, drain(marketDataQueue).size());
+
+        bidProcessor.processMessage(limit(99, 5));
+        drainExecutions();
+        List<MarketDataUpdate> updates = drain(marketDataQueue);
+        List<MarketDataType> types = new ArrayList<>();
+        for (MarketDataUpdate update : updates) {
+            types.add(update.getType());
+        }
+        //The order update of the second message, then the snapshot with the book as the message left it
+        assertEquals(Arrays.asList(MarketDataType.OrderAdded, MarketDataType.SnapshotStart, MarketDataType.SnapshotLevel,
+                MarketDataType.SnapshotOrder, MarketDataType.SnapshotLevel, MarketDataType.SnapshotOrder, MarketDataType.SnapshotEnd), types);
+        assertUpdate(updates.get(2), MarketDataType.SnapshotLevel, 0, 100, 10, 1);
+        assertUpdate(updates.get(4), MarketDataType.SnapshotLevel, 0, 99, 5, 1);
+        assertUpdate(updates.get(5), MarketDataType.SnapshotOrder, updates.get(0).getOrderId(), 99, 5, 0);
+    }
+
+    /**
+     * A consumer which does not keep up neither blocks the book nor ends up with a wrong book: levels are conflated,
+     * lost order updates show as a gap and are followed by a snapshot
+     */
+    @Test
+    public void testSlowConsumerGetsConflatedLevelsAndSnapshot() {
+        RingBuffer<MarketDataUpdate> marketDataQueue = new SpscRingBuffer<>(64);
+        bidProcessor.setMarketData(marketDataQueue, updatePool, 0);
+
+        for (int i = 0; i < 40; i++) {
+            bidProcessor.processMessage(limit(100 - i % 4, 10));
+        }
+        bidProcessor.processMessage(market(25));
+        drainExecutions();
+
+        List<MarketDataUpdate> updates = drain(marketDataQueue);
+        assertEquals(64, updates.size());
+        //The snapshot takes part of the room left per duty cycle
+        List<MarketDataUpdate> batch;
+        do {
+            bidProcessor.publishMarketData();
+            batch = drain(marketDataQueue);
+            updates.addAll(batch);
+        } while (!batch.isEmpty());
+
+        boolean gap = false;
+        for (int i = 1; i < updates.size(); i++) {
+            gap |= updates.get(i).getSequence() != updates.get(i - 1).getSequence() + 1;
+        }
+        assertTrue(gap);
+
+        RebuiltBook rebuilt = new RebuiltBook();
+        rebuilt.applyAll(updates);
+        assertFalse(rebuilt.snapshotting);
+        rebuilt.assertMatches(bidProcessor);
+        assertEquals(4, rebuilt.depth.size());
+        assertEquals(375, rebuilt.depth.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(100, rebuilt.topOfBook.getPrice());
+        assertEquals(75, rebuilt.topOfBook.getQuantity());
+        assertEquals(8, rebuilt.topOfBook.getOrderCount());
+    }
+
+    /**
+     * A book far deeper than the queue still gets its snapshot out, a chunk per duty cycle, while orders keep coming,
+     * being cancelled and being filled at prices both ahead of and behind the part already sent
+     */
+    @Test
+    public void testSnapshotOfBookDeeperThanTheQueue() {
+        Random random = new Random(7);
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            bidProcessor.processMessage(limit(100 - random.nextInt(10), 1 + random.nextInt(10)));
+            orderIds.add(drainExecutions());
+        }
+        RingBuffer<MarketDataUpdate> marketDataQueue = new SpscRingBuffer<>(64);
+        bidProcessor.setMarketData(marketDataQueue, updatePool, 0);
+
+        RebuiltBook rebuilt = new RebuiltBook();
+        int dutyCycles = 0;
+        do {
+            bidProcessor.publishMarketData();
+            rebuilt.applyAll(drain(marketDataQueue));
+            dutyCycles++;
+
+            int action = random.nextInt(3);
+            if (action == 0) {
+                bidProcessor.processMessage(limit(100 - random.nextInt(12), 1 + random.nextInt(10)));
+                orderIds.add(drainExecutions());
+            } else if (action == 1) {
+                bidProcessor.processMessage(cancel(orderIds.remove(random.nextInt(orderIds.size()))));
+                drainExecutions();
+            } else {
+                bidProcessor.processMessage(market(1 + random.nextInt(20)));
+                drainExecutions();
+            }
+            List<MarketDataUpdate> updates = drain(marketDataQueue);
+            for (int i = 1; i < updates.size(); i++) {
+                assertEquals(updates.get(i - 1).getSequence() + 1, updates.get(i).getSequence());
+            }
+            rebuilt.applyAll(updates);
+        } while (rebuilt.snapshotting);
+
+        //Two chunks a cycle, when idle and after the message, of at most half the queue each
+        assertTrue(dutyCycles > 500 / 64);
+        rebuilt.assertMatches(bidProcessor);
+    }
+
+    /**
+     * The bid side of the book as a consumer rebuilds it, taking the live updates sent during a snapshot only at or
+     * ahead of what the snapshot already sent
+     */
+    private static final class RebuiltBook {
+        private final TreeMap<Long, Long> depth = new TreeMap<>();
+        private final Map<Long, Long> orders = new HashMap<>();
+        private MarketDataUpdate topOfBook;
+        private boolean snapshotting;
+        private boolean cursorSet;
+        private long cursorPrice;
+        private long cursorOrderId;
+
+        void applyAll(List<MarketDataUpdate> updates) {
+            for (MarketDataUpdate update : updates) {
+                apply(update);
+            }
+        }
+
+        void apply(MarketDataUpdate update) {
+            switch (update.getType()) {
+                case SnapshotStart:
+                    depth.clear();
+                    orders.clear();
+                    snapshotting = true;
+                    cursorSet = false;
+                    break;
+                case SnapshotLevel:
+                    depth.put(update.getPrice(), update.getQuantity());
+                    cursorSet = true;
+                    cursorPrice = update.getPrice();
+                    cursorOrderId = -1;
+                    break;
+                case SnapshotOrder:
+                    orders.put(update.getOrderId(), update.getQuantity());
+                    cursorOrderId = update.getOrderId();
+                    break;
+                case SnapshotEnd:
+                    snapshotting = false;
+                    break;
+                case PriceLevel:
+                    if (!snapshotting || cursorSet && update.getPrice() >= cursorPrice) {
+                        if (update.getQuantity() == 0) {
+                            depth.remove(update.getPrice());
+                        } else {
+                            depth.put(update.getPrice(), update.getQuantity());
+                        }
+                    }
+                    break;
+                case TopOfBook:
+                    topOfBook = update;
+                    break;
+                default:
+                    if (!snapshotting || cursorSet && (update.getPrice() > cursorPrice
+                            || update.getPrice() == cursorPrice && update.getOrderId() <= cursorOrderId)) {
+                        if (update.getQuantity() == 0) {
+                            orders.remove(update.getOrderId());
+                        } else {
+                            orders.put(update.getOrderId(), update.getQuantity());
+                        }
+                    }
+            }
+        }
+
+        void assertMatches(OrderBookProcessor processor) {
+            TreeMap<Long, Long> bookDepth = new TreeMap<>();
+            Map<Long, Long> bookOrders = new HashMap<>();
+            OrderStore store = processor.getOrderStore();
+            for (LimitLevel level = processor.getTopOfBook(); level != null; level = processor.getNextLevelLimit(level)) {
+                bookDepth.put(level.getPrice(), level.getQuantity());
+                for (int order = level.peekInsideOfBook(); order != OrderStore.NONE; order = level.nextOrder(order)) {
+                    bookOrders.put(store.getOrderId(order), store.getSize(order));
+                }
+            }
+            assertEquals(bookDepth, depth);
+            assertEquals(bookOrders, orders);
+            LimitLevel top = processor.getTopOfBook();
+            assertEquals(top.getPrice(), topOfBook.getPrice());
+            assertEquals(top.getQuantity(), topOfBook.getQuantity());
+        }
+    }
+
+    private static void assertUpdate(MarketDataUpdate update, MarketDataType type, long orderId, long price, long quantity, int orderCount) {
+        assertEquals(type, update.getType());
+        assertEquals(orderId, update.getOrderId());
+        assertEquals(price, update.getPrice());
+        assertEquals(quantity, update.getQuantity());
+        assertEquals(orderCount, update.getOrderCount());
+    }
+
+    private List<MarketDataUpdate> drain(RingBuffer<MarketDataUpdate> marketDataQueue) {
+        List<MarketDataUpdate> updates = new ArrayList<>();
+        MarketDataUpdate update;
+        while ((update = marketDataQueue.poll()) != null) {
+            //Copied as the book reuses the pooled update
+            MarketDataUpdate copy = new MarketDataUpdate();
+            copy.setType(update.getType());
+            copy.setPair(update.getPair());
+            copy.setSide(update.getSide());
+            copy.setSequence(update.getSequence());
+            copy.setOrderId(update.getOrderId());
+            copy.setPrice(update.getPrice());
+            copy.setQuantity(update.getQuantity());
+            copy.setOrderCount(update.getOrderCount());
+            updates.add(copy);
+            updatePool.returnObject(update);
+        }
+        return updates;
+    }
+
+    /**
+     * @return order id of the last order accepted
+     */
+    private long drainExecutions() {
+        long orderId = 0;
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            if (execution.getType() == ExecutionType.OrderAccepted) {
+                orderId = execution.getOrderId();
+            }
+            executionPool.returnObject(execution);
+        }
+        return orderId;
+    }
+
+    private Message limit(long price, long quantity) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.NewLimitOrder);
+        message.setClientId(1);
+        message.setClientOrderId(++clientOrderId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Bid);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        return message;
+    }
+
+    private Message market(long quantity) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.NewMarketOrder);
+        message.setClientId(2);
+        message.setClientOrderId(++clientOrderId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Offer);
+        message.setQuantity(quantity);
+        message.setPrice(0);
+        return message;
+    }
+
+    private Message cancel(long orderId) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.CancelOrder);
+        message.setClientId(1);
+        message.setOrderId(orderId);
+        return message;
+    }
+}
@@ -1,53 +1,85 @@
 package com.crypto.engine;
 
+import com.crypto.concurrent.*;
 import com.crypto.data.*;
 import com.crypto.feed.ObjectPool;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
 import static org.junit.Assert.*;
 
+@RunWith(Parameterized.class)
 public class MatchingEngineIntegrationTest {
 
+    @Parameterized.Parameters(name = "singleThreadPerPair={0}")
+    public static Object[] threadingModels() {
+        return new Object[]{false, true};
+    }
+
+    @Parameterized.Parameter
+    public boolean singleThreadPerPair;
+
     private OrderBookDistributor orderBookDistributor;
     private OrderBookProcessor btcBidProcessor;
     private OrderBookProcessor btcOfferProcessor;
     private OrderBookProcessor ethBidProcessor;
     private OrderBookProcessor ethOfferProcessor;
-    private ConcurrentLinkedQueue<Message> distributorInboundQueue;
-    private ConcurrentLinkedQueue<Execution> executionPublishQueue;
+    private PairOrderBookProcessor btcPairProcessor;
+    private PairOrderBookProcessor ethPairProcessor;
+    private RingBuffer<Message> distributorInboundQueue;
+    private RingBuffer<Execution> executionPublishQueue;
+    private ObjectPool<Message> messagePool;
+    private ObjectPool<Execution> executionPool;
 
     @Before
     public void setup(){
-        AtomicLong orderIdCounter = new AtomicLong(0);
-        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
-        ObjectPool<Order> orderPool = new ObjectPool<>(Order::new);
-        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        messagePool = new ObjectPool<>(Message::new);
+        executionPool = new ObjectPool<>(Execution::new);
 
-        distributorInboundQueue = new ConcurrentLinkedQueue<>();
-        executionPublishQueue = new ConcurrentLinkedQueue<>();
+        distributorInboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
 
-        List<ConcurrentLinkedQueue<Message>> queues = new ArrayList<>(4);
+        List<RingBuffer<Message>> queues = new ArrayList<>(4);
         for (int i = 0; i < 4; i++) {
-            queues.add(new ConcurrentLinkedQueue<>());
+            queues.add(new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY));
+        }
+
+        if (singleThreadPerPair) {
+            //Both sides of a pair share the queue of their pair processor
+            queues.set(1, queues.get(0));
+            queues.set(3, queues.get(2));
+            orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, queues, messagePool, new SpinThenYieldWaitStrategy(100));
+            btcPairProcessor = new PairOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, queues.get(0), executionPublishQueue);
+            ethPairProcessor = new PairOrderBookProcessor(CcyPair.ETHUSD, executionPool, messagePool, queues.get(2), executionPublishQueue);
+            ethPairProcessor.setWaitStrategy(new BlockingWaitStrategy(1, TimeUnit.MILLISECONDS));
+            btcPairProcessor.startOrderBook();
+            ethPairProcessor.startOrderBook();
+            return;
         }
 
-        orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, queues, messagePool);
-        btcOfferProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, orderPool, executionPool, messagePool, queues.get(0), executionPublishQueue, orderIdCounter);
-        btcBidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, orderPool, executionPool, messagePool, queues.get(1), executionPublishQueue, orderIdCounter);
-        ethOfferProcessor = new OfferOrderBookProcessor(CcyPair.ETHUSD, orderPool, executionPool, messagePool, queues.get(2), executionPublishQueue, orderIdCounter);
-        ethBidProcessor = new BidOrderBookProcessor(CcyPair.ETHUSD, orderPool, executionPool, messagePool, queues.get(3), executionPublishQueue, orderIdCounter);
+        orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, queues, messagePool, new SpinThenYieldWaitStrategy(100));
+        btcOfferProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, queues.get(0), executionPublishQueue);
+        btcBidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, queues.get(1), executionPublishQueue);
+        ethOfferProcessor = new OfferOrderBookProcessor(CcyPair.ETHUSD, executionPool, messagePool, queues.get(2), executionPublishQueue);
+        ethBidProcessor = new BidOrderBookProcessor(CcyPair.ETHUSD, executionPool, messagePool, queues.get(3), executionPublishQueue);
 
         btcOfferProcessor.setCorrespondingBook(btcBidProcessor);
         btcBidProcessor.setCorrespondingBook(btcOfferProcessor);
         ethOfferProcessor.setCorrespondingBook(ethBidProcessor);
         ethBidProcessor.setCorrespondingBook(ethOfferProcessor);
 
+        //BTC books spin, ETH books exercise the strategies meant for cold pairs
+        ethOfferProcessor.setWaitStrategy(new BlockingWaitStrategy(1, TimeUnit.MILLISECONDS));
+        ethBidProcessor.setWaitStrategy(new BackoffWaitStrategy(100, 10, 1000, TimeUnit.MICROSECONDS.toNanos(100)));
+
         btcOfferProcessor.startOrderBook();
         btcBidProcessor.startOrderBook();
         ethOfferProcessor.startOrderBook();
@@ -175,7 +207,7 @@ public class MatchingEngineIntegrationTest {
         distributorInboundQueue.add(message);
 
         waitAndAssert(1, 2);
-        assertReject(clientId2,orderId,  250);
+        assertReject(clientId2,1,  250);
     }
 
     @Test
@@ -575,6 +607,146 @@ public class MatchingEngineIntegrationTest {
 
     }
 
+    @Test
+    public void testMiddleOfBookInsertAndTopOfBookCancel() throws InterruptedException {
+
+        //Levels inserted between existing ones and a cancelled top of book must leave a consistent chain of limits
+        int clientId1 = 1;
+        int clientId2 = 2;
+        int clientMarket = 3;
+
+        Message message = prepareMessage(clientId1, 1, CcyPair.BTCUSD, Side.Bid, MessageType.NewLimitOrder, 1, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertExecution(clientId1, CcyPair.BTCUSD, 1, 100, Side.Bid, ExecutionType.OrderAccepted);
+
+        message = prepareMessage(clientId1, 2, CcyPair.BTCUSD, Side.Bid, MessageType.NewLimitOrder, 3, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        long topOfBookOrderId = assertExecution(clientId1, CcyPair.BTCUSD, 3, 100, Side.Bid, ExecutionType.OrderAccepted);
+
+        message = prepareMessage(clientId2, 3, CcyPair.BTCUSD, Side.Bid, MessageType.NewLimitOrder, 2, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertExecution(clientId2, CcyPair.BTCUSD, 2, 100, Side.Bid, ExecutionType.OrderAccepted);
+
+        message = prepareCancel(topOfBookOrderId);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertCancel(clientId1, topOfBookOrderId, 2);
+
+        message = prepareMessage(clientMarket, 4, CcyPair.BTCUSD, Side.Offer, MessageType.NewMarketOrder, 0, 200);
+        distributorInboundQueue.add(message);
+        waitAndAssert(4, 2);
+
+        assertExecution(clientMarket, CcyPair.BTCUSD, 2, 100, Side.Offer, ExecutionType.PartialFill);
+        assertExecution(clientId2, CcyPair.BTCUSD, 2, 100, Side.Bid, ExecutionType.Fill);
+        assertExecution(clientMarket, CcyPair.BTCUSD, 1, 100, Side.Offer, ExecutionType.Fill);
+        assertExecution(clientId1, CcyPair.BTCUSD, 1, 100, Side.Bid, ExecutionType.Fill);
+    }
+
+    @Test
+    public void testMassCancelAfterFill() throws InterruptedException {
+
+        //A filled order leaves the client's resting orders, so neither cancel nor mass cancel reports it again
+        int clientId1 = 1;
+        int clientMarket = 2;
+
+        Message message = prepareMessage(clientId1, 1, CcyPair.BTCUSD, Side.Bid, MessageType.NewLimitOrder, 1, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        long restingOrderId = assertExecution(clientId1, CcyPair.BTCUSD, 1, 100, Side.Bid, ExecutionType.OrderAccepted);
+
+        message = prepareMessage(clientId1, 2, CcyPair.BTCUSD, Side.Bid, MessageType.NewLimitOrder, 2, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        long filledOrderId = assertExecution(clientId1, CcyPair.BTCUSD, 2, 100, Side.Bid, ExecutionType.OrderAccepted);
+
+        message = prepareMessage(clientMarket, 3, CcyPair.BTCUSD, Side.Offer, MessageType.NewMarketOrder, 0, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(2, 2);
+        assertExecution(clientMarket, CcyPair.BTCUSD, 2, 100, Side.Offer, ExecutionType.Fill);
+        assertExecution(clientId1, CcyPair.BTCUSD, 2, 100, Side.Bid, ExecutionType.Fill);
+
+        message = prepareCancel(filledOrderId);
+        distributorInboundQueue.add(message);
+        waitAndAssert(0, 1);
+
+        message = prepareMessage(clientId1, 0, null, null, MessageType.CancelAllOrders, 0, 0);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertCancel(clientId1, restingOrderId, 1);
+    }
+
+    @Test
+    public void testMassCancelOnlyReachesClientBooks() throws InterruptedException {
+
+        //Mass cancels go to the books a client used since its previous mass cancel, which must still find new orders
+        int clientId1 = 1;
+        int clientId2 = 2;
+
+        Message message = prepareMessage(clientId1, 1, CcyPair.ETHUSD, Side.Offer, MessageType.NewLimitOrder, 5, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        long firstOrderId = assertExecution(clientId1, CcyPair.ETHUSD, 5, 100, Side.Offer, ExecutionType.OrderAccepted);
+
+        message = prepareMessage(clientId2, 0, null, null, MessageType.CancelAllOrders, 0, 0);
+        distributorInboundQueue.add(message);
+        waitAndAssert(0, 1);
+
+        message = prepareMessage(clientId1, 0, null, null, MessageType.CancelAllOrders, 0, 0);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertCancel(clientId1, firstOrderId, 1);
+
+        message = prepareMessage(clientId1, 2, CcyPair.BTCUSD, Side.Bid, MessageType.NewLimitOrder, 3, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        long secondOrderId = assertExecution(clientId1, CcyPair.BTCUSD, 3, 100, Side.Bid, ExecutionType.OrderAccepted);
+
+        message = prepareMessage(clientId1, 0, null, null, MessageType.CancelAllOrders, 0, 0);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertCancel(clientId1, secondOrderId, 2);
+    }
+
+    @Test
+    public void testPairAddedAndRemovedAtRuntime() throws InterruptedException {
+
+        //A pair with tick and lot size of 5 is brought up on the running engine, traded and taken down again
+        CcyPair solUsd = new CcyPair(7, "SOLUSD", 5, 5, 2);
+        PairOrderBookProcessor solProcessor = new PairOrderBookProcessor(solUsd, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        solProcessor.startOrderBook();
+        orderBookDistributor.addBook(solUsd, solProcessor.getDistributorInboundQueue(), solProcessor.getDistributorInboundQueue());
+
+        Message message = prepareMessage(1, 1, solUsd, Side.Offer, MessageType.NewLimitOrder, 103, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertReject(1, 1, 100);
+
+        message = prepareMessage(1, 2, solUsd, Side.Offer, MessageType.NewLimitOrder, 105, 101);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        assertReject(1, 2, 101);
+
+        message = prepareMessage(1, 3, solUsd, Side.Offer, MessageType.NewLimitOrder, 105, 100);
+        distributorInboundQueue.add(message);
+        waitAndAssert(1, 2);
+        long orderId = assertExecution(1, solUsd, 105, 100, Side.Offer, ExecutionType.OrderAccepted);
+
+        message = prepareMessage(2, 4, solUsd, Side.Bid, MessageType.NewMarketOrder, 0, 50);
+        distributorInboundQueue.add(message);
+        waitAndAssert(2, 2);
+        assertExecution(2, solUsd, 105, 50, Side.Bid, ExecutionType.Fill);
+        assertExecution(1, solUsd, 105, 50, Side.Offer, ExecutionType.PartialFill);
+
+        orderBookDistributor.removeBook(solUsd);
+        message = prepareCancel(orderId);
+        distributorInboundQueue.add(message);
+        waitAndAssert(0, 1);
+        solProcessor.shutdown();
+    }
+
     private void waitAndAssert(int expectedMessages, int waitCount) throws InterruptedException {
 
         Thread.sleep(50);
@@ -638,6 +810,11 @@ public class MatchingEngineIntegrationTest {
     @After
     public void tearDown() {
         orderBookDistributor.shutdown();
+        if (singleThreadPerPair) {
+            btcPairProcessor.shutdown();
+            ethPairProcessor.shutdown();
+            return;
+        }
         btcBidProcessor.shutdown();
         btcOfferProcessor.shutdown();
         ethBidProcessor.shutdown();
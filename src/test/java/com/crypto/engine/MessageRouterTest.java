@@ -0,0 +1,55 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.crypto.data.TestMessages.*;
+import static org.junit.Assert.*;
+
+public class MessageRouterTest {
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+
+    /**
+     * A mass cancel reaches the books of the client's limit orders once and lets go of the client, which is
+     * remembered again with its next limit order
+     */
+    @Test
+    public void testMassCancelForgetsTheClient() {
+        RingBuffer<Message> queue = new SpscRingBuffer<>(16);
+        MessageRouter router = new MessageRouter(Arrays.asList(queue, queue), messagePool);
+
+        router.route(limit(1, 1, Side.Bid, 100, 10));
+        router.route(limit(1, 2, Side.Offer, 101, 10));
+        router.route(limit(2, 3, Side.Bid, 99, 10));
+        assertEquals(2, router.getClientCount());
+        assertEquals(3, drain(queue));
+
+        router.route(cancelAll(1));
+        assertEquals("Both sides share the queue, which sees the cancel once", 1, drain(queue));
+        assertEquals(1, router.getClientCount());
+
+        router.route(cancelAll(1));
+        assertEquals(0, drain(queue));
+
+        router.route(limit(1, 4, Side.Bid, 100, 10));
+        router.route(cancelAll(1));
+        assertEquals(2, drain(queue));
+        assertEquals(1, router.getClientCount());
+    }
+
+    private int drain(RingBuffer<Message> queue) {
+        int drained = 0;
+        Message message;
+        while ((message = queue.poll()) != null) {
+            messagePool.returnObject(message);
+            drained++;
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,174 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static org.junit.Assert.*;
+
+public class OrderBookProcessorTest {
+
+    private static final int DEEP_BOOK_ORDERS = 100_000;
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+    private final RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(2 * DEEP_BOOK_ORDERS);
+    private OrderBookProcessor bidProcessor;
+
+    @Before
+    public void setUp() {
+        bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+    }
+
+    /**
+     * A liquidation sweeping the whole of a deep book, a fill for the taker and one for the maker per order hit, in
+     * price time order
+     */
+    @Test
+    public void testMarketOrderSweepsDeepBook() {
+        for (int i = 0; i < DEEP_BOOK_ORDERS; i++) {
+            bidProcessor.processMessage(limit(i, 1000 - i / 100, 10));
+        }
+        drain();
+
+        bidProcessor.processMessage(market(DEEP_BOOK_ORDERS, 10L * DEEP_BOOK_ORDERS));
+
+        long takerNotional = 0;
+        for (int i = 0; i < DEEP_BOOK_ORDERS; i++) {
+            Execution taker = executionPublishQueue.poll();
+            assertEquals(DEEP_BOOK_ORDERS, taker.getClientOrderId());
+            assertEquals(Side.Offer, taker.getSide());
+            assertEquals(i == DEEP_BOOK_ORDERS - 1 ? ExecutionType.Fill : ExecutionType.PartialFill, taker.getType());
+            takerNotional += taker.getPrice() * taker.getQuantity();
+
+            Execution fill = executionPublishQueue.poll();
+            assertEquals(i, fill.getClientOrderId());
+            assertEquals(1000 - i / 100, fill.getPrice());
+            assertEquals(taker.getPrice(), fill.getPrice());
+            assertEquals(ExecutionType.Fill, fill.getType());
+        }
+        //Prices 1000 down to 1, 100 orders of 10 each
+        assertEquals(10L * 100 * (1000 * 1001 / 2), takerNotional);
+        assertNull(executionPublishQueue.poll());
+        assertTrue(bidProcessor.isEmpty());
+    }
+
+    @Test
+    public void testSweepStopsAtTheLevelGuard() {
+        bidProcessor.setSweepGuard(2, Long.MAX_VALUE);
+        bidProcessor.processMessage(limit(1, 100, 10));
+        bidProcessor.processMessage(limit(2, 99, 10));
+        bidProcessor.processMessage(limit(3, 98, 10));
+        drain();
+
+        bidProcessor.processMessage(market(4, 30));
+
+        assertFill(4, 100, 10, ExecutionType.PartialFill);
+        assertFill(1, 100, 10, ExecutionType.Fill);
+        assertFill(4, 99, 10, ExecutionType.PartialFill);
+        assertFill(2, 99, 10, ExecutionType.Fill);
+        Execution reject = executionPublishQueue.poll();
+        assertEquals(ExecutionType.Reject, reject.getType());
+        assertEquals(10, reject.getQuantity());
+        assertEquals(98, bidProcessor.getTopOfBookPrice());
+        assertEquals(1, bidProcessor.getSweepGuardRejectCount());
+    }
+
+    @Test
+    public void testSweepStopsAtTheSlippageGuard() {
+        bidProcessor.setSweepGuard(Integer.MAX_VALUE, 1);
+        bidProcessor.processMessage(limit(1, 100, 10));
+        bidProcessor.processMessage(limit(2, 99, 10));
+        bidProcessor.processMessage(limit(3, 97, 10));
+        drain();
+
+        bidProcessor.processMessage(market(4, 15));
+        assertFill(4, 100, 10, ExecutionType.PartialFill);
+        assertFill(1, 100, 10, ExecutionType.Fill);
+        assertFill(4, 99, 5, ExecutionType.Fill);
+        assertFill(2, 99, 5, ExecutionType.PartialFill);
+
+        //The slippage is measured from the top of book when the order arrives
+        bidProcessor.processMessage(market(5, 15));
+        assertFill(5, 99, 5, ExecutionType.PartialFill);
+        assertFill(2, 99, 5, ExecutionType.Fill);
+        Execution reject = executionPublishQueue.poll();
+        assertEquals(ExecutionType.Reject, reject.getType());
+        assertEquals(10, reject.getQuantity());
+        assertEquals(97, bidProcessor.getTopOfBookPrice());
+    }
+
+    /**
+     * The other side checks whether a limit crosses against the top of book published once the message is done
+     */
+    @Test
+    public void testPublishedTopOfBookFollowsTheBook() {
+        TopOfBook topOfBook = bidProcessor.getPublishedTopOfBook();
+        assertEquals(0, topOfBook.getPrice());
+
+        bidProcessor.processMessage(limit(1, 100, 10));
+        bidProcessor.processMessage(limit(2, 100, 5));
+        bidProcessor.processMessage(limit(3, 99, 10));
+        assertEquals(100, topOfBook.getPrice());
+        assertEquals(15, topOfBook.getQuantity());
+        assertEquals(2, topOfBook.getOrderCount());
+        assertEquals(2, topOfBook.getSequence());
+
+        bidProcessor.processMessage(market(4, 15));
+        assertEquals(99, topOfBook.getPrice());
+        assertEquals(10, topOfBook.getQuantity());
+        assertEquals(1, topOfBook.getOrderCount());
+
+        bidProcessor.processMessage(market(5, 10));
+        assertEquals(0, topOfBook.getPrice());
+        assertEquals(0, topOfBook.getQuantity());
+        assertEquals(4, topOfBook.getSequence());
+    }
+
+    private void assertFill(long clientOrderId, long price, long quantity, ExecutionType type) {
+        Execution fill = executionPublishQueue.poll();
+        assertEquals(clientOrderId, fill.getClientOrderId());
+        assertEquals(price, fill.getPrice());
+        assertEquals(quantity, fill.getQuantity());
+        assertEquals(type, fill.getType());
+    }
+
+    private void drain() {
+        Execution execution;
+        while ((execution = executionPublishQueue.poll()) != null) {
+            executionPool.returnObject(execution);
+        }
+    }
+
+    private Message limit(long clientOrderId, long price, long quantity) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.NewLimitOrder);
+        message.setClientId(1);
+        message.setClientOrderId(clientOrderId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Bid);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        return message;
+    }
+
+    private Message market(long clientOrderId, long quantity) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.NewMarketOrder);
+        message.setClientId(2);
+        message.setClientOrderId(clientOrderId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Offer);
+        message.setQuantity(quantity);
+        message.setPrice(0);
+        return message;
+    }
+}
@@ -0,0 +1,186 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static com.crypto.engine.OrderStore.NONE;
+import static org.junit.Assert.*;
+
+public class OrderStoreTest {
+
+    private static final int MESSAGES = 200_000;
+    private static final int CLIENTS = 50;
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+
+    @Test
+    public void testOffHeapBookPublishesWhatTheHeapBookPublishes() {
+        assertPublishesTheSame(book -> book.setOffHeapOrderStore(1024));
+    }
+
+    @Test
+    public void testArrayLevelsPublishWhatLinkedLevelsPublish() {
+        assertPublishesTheSame(OrderBookProcessor::setArrayLimitLevels);
+    }
+
+    @Test
+    public void testArrayLevelsOffHeapPublishWhatLinkedLevelsPublish() {
+        assertPublishesTheSame(book -> {
+            book.setArrayLimitLevels();
+            book.setOffHeapOrderStore(1024);
+        });
+    }
+
+    /**
+     * A default book and one configured otherwise behind the same random flow of inserts, cancels, mass cancels and
+     * sweeps, execution for execution and order for order at the end
+     */
+    private void assertPublishesTheSame(Consumer<OrderBookProcessor> configuration) {
+        RingBuffer<Execution> defaultExecutions = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        RingBuffer<Execution> otherExecutions = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        OrderBookProcessor defaultBook = bidBook(defaultExecutions);
+        OrderBookProcessor otherBook = bidBook(otherExecutions);
+        configuration.accept(otherBook);
+
+        Random random = new Random(7);
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            int kind = random.nextInt(20);
+            long clientId = 1 + random.nextInt(CLIENTS);
+            Message defaultMessage;
+            Message otherMessage;
+            if (kind < 12) {
+                long price = 90 + random.nextInt(21);
+                long quantity = 1 + random.nextInt(10);
+                defaultMessage = message(MessageType.NewLimitOrder, clientId, i, Side.Bid, price, quantity, 0);
+                otherMessage = message(MessageType.NewLimitOrder, clientId, i, Side.Bid, price, quantity, 0);
+            } else if (kind < 17 && !orderIds.isEmpty()) {
+                long orderId = orderIds.remove(random.nextInt(orderIds.size()));
+                defaultMessage = message(MessageType.CancelOrder, clientId, i, null, 0, 0, orderId);
+                otherMessage = message(MessageType.CancelOrder, clientId, i, null, 0, 0, orderId);
+            } else if (kind < 18) {
+                defaultMessage = message(MessageType.CancelAllOrders, clientId, i, null, 0, 0, 0);
+                otherMessage = message(MessageType.CancelAllOrders, clientId, i, null, 0, 0, 0);
+            } else {
+                long quantity = 1 + random.nextInt(60);
+                defaultMessage = message(MessageType.NewMarketOrder, clientId, i, Side.Offer, 0, quantity, 0);
+                otherMessage = message(MessageType.NewMarketOrder, clientId, i, Side.Offer, 0, quantity, 0);
+            }
+            defaultBook.processMessage(defaultMessage);
+            otherBook.processMessage(otherMessage);
+
+            Execution expected;
+            while ((expected = defaultExecutions.poll()) != null) {
+                Execution actual = otherExecutions.poll();
+                assertNotNull("Missing " + expected, actual);
+                assertEquals(expected.toString(), actual.toString());
+                if (expected.getType() == ExecutionType.OrderAccepted) {
+                    orderIds.add(expected.getOrderId());
+                }
+                executionPool.returnObject(expected);
+                executionPool.returnObject(actual);
+            }
+            assertNull(otherExecutions.poll());
+        }
+
+        assertEquals(defaultBook.getRestingOrderCount(), otherBook.getRestingOrderCount());
+        assertEquals(defaultBook.getRestingOrderCount(), otherBook.getOrderStore().size());
+        LimitLevel otherLevel = otherBook.getTopOfBook();
+        for (LimitLevel level = defaultBook.getTopOfBook(); level != null; level = defaultBook.getNextLevelLimit(level)) {
+            assertEquals(level.toString(), otherLevel.toString());
+            int otherOrder = otherLevel.peekInsideOfBook();
+            for (int order = level.peekInsideOfBook(); order != NONE; order = level.nextOrder(order)) {
+                assertEquals(defaultBook.getOrderStore().getOrderId(order), otherBook.getOrderStore().getOrderId(otherOrder));
+                assertEquals(defaultBook.getOrderStore().getSize(order), otherBook.getOrderStore().getSize(otherOrder));
+                otherOrder = otherLevel.nextOrder(otherOrder);
+            }
+            assertEquals(NONE, otherOrder);
+            otherLevel = otherBook.getNextLevelLimit(otherLevel);
+        }
+        assertNull(otherLevel);
+    }
+
+    @Test
+    public void testOffHeapStoreGrowsAndReusesRows() {
+        OffHeapOrderStore store = new OffHeapOrderStore(1);
+        LimitLevel level = new LimitLevel();
+        level.populate(100, null, null);
+
+        //Past the first chunk of rows
+        int orders = 100_000;
+        for (int i = 0; i < orders; i++) {
+            assertEquals(i, store.add(i, i % 7, -i, 10 + i, level));
+        }
+        assertEquals(orders, store.size());
+        assertEquals(2L * (1 << 16) * OffHeapOrderStore.ROW_LENGTH, store.getAllocatedBytes());
+        for (int i = 0; i < orders; i += 997) {
+            assertEquals(i, store.getOrderId(i));
+            assertEquals(i % 7, store.getClientId(i));
+            assertEquals(-i, store.getClientOrderId(i));
+            assertEquals(10 + i, store.getSize(i));
+            assertSame(level, store.getLevel(i));
+            assertEquals(NONE, store.getTail(i));
+        }
+
+        store.remove(5);
+        store.remove(70_000);
+        assertEquals(orders - 2, store.size());
+        //Freed rows go out again, last freed first, with every field and link written afresh
+        assertEquals(70_000, store.add(1, 2, 3, 4, level));
+        assertEquals(NONE, store.getTail(70_000));
+        assertEquals(5, store.add(5, 6, 7, 8, level));
+        assertEquals(orders, store.add(9, 10, 11, 12, level));
+        assertEquals(8, store.getSize(5));
+    }
+
+    @Test
+    public void testOffHeapStoreReusesTheIndexesOfLevelsLeavingTheBook() {
+        OffHeapOrderStore store = new OffHeapOrderStore(1);
+        LimitLevel resting = new LimitLevel();
+        resting.populate(90, null, null);
+        int restingOrder = store.add(1, 1, 1, 10, resting);
+
+        for (int i = 0; i < 1_000; i++) {
+            //A new level object every time, as if the level pool had dropped the one before
+            LimitLevel level = new LimitLevel();
+            level.populate(100 + i, null, null);
+            int order = store.add(2 + i, 1, 2 + i, 10, level);
+            assertSame(level, store.getLevel(order));
+            store.remove(order);
+            store.levelRemoved(level);
+        }
+        assertEquals(2, store.getLevelTableSize());
+        assertSame(resting, store.getLevel(restingOrder));
+    }
+
+    private OrderBookProcessor bidBook(RingBuffer<Execution> executionPublishQueue) {
+        OrderBookProcessor bidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        OrderBookProcessor offerProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY), executionPublishQueue);
+        bidProcessor.setCorrespondingBook(offerProcessor);
+        offerProcessor.setCorrespondingBook(bidProcessor);
+        return bidProcessor;
+    }
+
+    private Message message(MessageType type, long clientId, long clientOrderId, Side side, long price, long quantity, long orderId) {
+        Message message = messagePool.acquireObject();
+        message.setType(type);
+        message.setClientId(clientId);
+        message.setClientOrderId(clientOrderId);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(side);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        message.setOrderId(orderId);
+        return message;
+    }
+}
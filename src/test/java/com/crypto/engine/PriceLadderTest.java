@@ -0,0 +1,147 @@
+package com.crypto.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class PriceLadderTest {
+
+    private static final long TICK_SIZE = 5;
+    private static final int WINDOW_SIZE = 128;
+
+    private PriceLadder ladder;
+
+    @Before
+    public void setup() {
+        ladder = new PriceLadder(TICK_SIZE, WINDOW_SIZE);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        LimitLevel level = addLevel(1000);
+
+        assertSame(level, ladder.get(1000));
+        assertNull(ladder.get(1005));
+        assertEquals(1, ladder.size());
+
+        assertSame(level, ladder.remove(1000));
+        assertNull(ladder.get(1000));
+        assertTrue(ladder.isEmpty());
+    }
+
+    @Test
+    public void testTickSize() {
+        assertTrue(ladder.isOnTick(1000));
+        assertFalse(ladder.isOnTick(1003));
+    }
+
+    @Test
+    public void testNeighboursWithinWindow() {
+        //Spread over several bitset words to check the scan crosses word boundaries
+        LimitLevel low = addLevel(900);
+        LimitLevel middle = addLevel(1000);
+        LimitLevel high = addLevel(1300);
+
+        assertSame(middle, ladder.higher(900));
+        assertSame(high, ladder.higher(1000));
+        assertSame(middle, ladder.higher(905));
+        assertNull(ladder.higher(1300));
+
+        assertSame(middle, ladder.lower(1300));
+        assertSame(low, ladder.lower(1000));
+        assertSame(low, ladder.lower(995));
+        assertNull(ladder.lower(900));
+    }
+
+    @Test
+    public void testNeighboursAcrossOverflow() {
+        LimitLevel inside = addLevel(1000);
+        //Both far outside of the 128 tick window anchored around 1000
+        LimitLevel farAbove = addLevel(1000 + TICK_SIZE * WINDOW_SIZE * 4);
+        LimitLevel farBelow = addLevel(1000 - TICK_SIZE * WINDOW_SIZE * 4);
+
+        assertTrue(ladder.isInWindow(1000));
+        assertFalse(ladder.isInWindow(farAbove.getPrice()));
+        assertEquals(3, ladder.size());
+
+        assertSame(farAbove, ladder.higher(1000));
+        assertSame(inside, ladder.higher(farBelow.getPrice()));
+        assertSame(farBelow, ladder.lower(1000));
+        assertSame(inside, ladder.lower(farAbove.getPrice()));
+        assertSame(farAbove, ladder.get(farAbove.getPrice()));
+    }
+
+    @Test
+    public void testRecenterMovesLevelsBetweenWindowAndOverflow() {
+        LimitLevel first = addLevel(1000);
+        LimitLevel second = addLevel(1005);
+        long farPrice = 1000 + TICK_SIZE * WINDOW_SIZE * 4;
+        LimitLevel far = addLevel(farPrice);
+
+        ladder.recenter(farPrice);
+
+        assertTrue(ladder.isInWindow(farPrice));
+        assertFalse(ladder.isInWindow(1000));
+        assertSame(first, ladder.get(1000));
+        assertSame(second, ladder.get(1005));
+        assertSame(far, ladder.get(farPrice));
+        assertSame(second, ladder.lower(farPrice));
+        assertSame(far, ladder.higher(1005));
+        assertEquals(3, ladder.size());
+
+        assertSame(first, ladder.remove(1000));
+        assertSame(far, ladder.remove(farPrice));
+        assertEquals(1, ladder.size());
+    }
+
+    @Test
+    public void testEmptyWindowReanchors() {
+        addLevel(1000);
+        ladder.remove(1000);
+
+        long farPrice = 1000 + TICK_SIZE * WINDOW_SIZE * 4;
+        addLevel(farPrice);
+        assertTrue(ladder.isInWindow(farPrice));
+    }
+
+    @Test
+    public void testRecenterByPartOfTheWindowMatchesSortedMap() {
+        TreeMap<Long, LimitLevel> expected = new TreeMap<>();
+        Random random = new Random(5);
+        long centre = 10_000;
+        for (int round = 0; round < 2_000; round++) {
+            long price = (centre / TICK_SIZE + random.nextInt(3 * WINDOW_SIZE) - 3 * WINDOW_SIZE / 2) * TICK_SIZE;
+            if (expected.containsKey(price)) {
+                assertSame(expected.remove(price), ladder.remove(price));
+            } else {
+                expected.put(price, addLevel(price));
+            }
+            if (round % 10 == 0) {
+                //Moves of less than a window, both ways, not all of them by whole bitset words
+                centre += (random.nextInt(WINDOW_SIZE) - WINDOW_SIZE / 2) * TICK_SIZE;
+                ladder.recenter(centre);
+                assertTrue(ladder.isInWindow(centre));
+            }
+
+            assertEquals(expected.size(), ladder.size());
+            long probe = (centre / TICK_SIZE + random.nextInt(3 * WINDOW_SIZE) - 3 * WINDOW_SIZE / 2) * TICK_SIZE;
+            assertSame(expected.get(probe), ladder.get(probe));
+            Map.Entry<Long, LimitLevel> higher = expected.higherEntry(probe);
+            assertSame(higher == null ? null : higher.getValue(), ladder.higher(probe));
+            Map.Entry<Long, LimitLevel> lower = expected.lowerEntry(probe);
+            assertSame(lower == null ? null : lower.getValue(), ladder.lower(probe));
+        }
+    }
+
+    private LimitLevel addLevel(long price) {
+        LimitLevel level = new LimitLevel();
+        level.populate(price, null, null);
+        ladder.put(price, level);
+        return level;
+    }
+}
@@ -0,0 +1,201 @@
+package com.crypto.engine;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpinThenYieldWaitStrategy;
+import com.crypto.concurrent.ThreadAffinity;
+import com.crypto.data.*;
+import com.crypto.feed.ObjectPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static org.junit.Assert.*;
+
+public class ShardedEngineTest {
+
+    private static final CcyPair SOLUSD = new CcyPair(2, "SOLUSD", 1, 1, 2);
+
+    private ShardedEngine engine;
+    private RingBuffer<Execution> executionPublishQueue;
+
+    @Before
+    public void setup() {
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        int[] cpus = {ThreadAffinity.NO_AFFINITY, ThreadAffinity.NO_AFFINITY};
+        engine = new ShardedEngine(cpus, new ObjectPool<>(Execution::new), new ObjectPool<>(Message::new),
+                executionPublishQueue, () -> new SpinThenYieldWaitStrategy(100), new SpinThenYieldWaitStrategy(100));
+        engine.start();
+    }
+
+    @Test
+    public void testInstrumentsPartitionedById() throws InterruptedException {
+        assertEquals(0, engine.addInstrument(CcyPair.BTCUSD));
+        assertEquals(1, engine.addInstrument(CcyPair.ETHUSD));
+        assertEquals(0, engine.addInstrument(SOLUSD));
+
+        send(limit(1, 1, CcyPair.ETHUSD, Side.Offer, 10, 100));
+        waitAndAssert(1);
+        assertExecution(1, CcyPair.ETHUSD, 10, 100, Side.Offer, ExecutionType.OrderAccepted);
+
+        send(limit(1, 2, SOLUSD, Side.Bid, 5, 100));
+        waitAndAssert(1);
+        assertExecution(1, SOLUSD, 5, 100, Side.Bid, ExecutionType.OrderAccepted);
+
+        //A limit crossing the spread of its own pair is rejected, the other pairs on the shard are not involved
+        send(limit(2, 3, SOLUSD, Side.Offer, 5, 100));
+        waitAndAssert(1);
+        assertEquals(ExecutionType.Reject, executionPublishQueue.poll().getType());
+
+        //The mass cancel reaches the books of the client on both shards
+        send(cancelAll(1));
+        waitAndAssert(2);
+        assertEquals(ExecutionType.CancelAccepted, executionPublishQueue.poll().getType());
+        assertEquals(ExecutionType.CancelAccepted, executionPublishQueue.poll().getType());
+    }
+
+    @Test
+    public void testMoveToDedicatedShardKeepsRestingOrders() throws InterruptedException {
+        engine.addInstrument(CcyPair.BTCUSD);
+
+        send(limit(1, 1, CcyPair.BTCUSD, Side.Bid, 100, 50));
+        waitAndAssert(1);
+        assertExecution(1, CcyPair.BTCUSD, 100, 50, Side.Bid, ExecutionType.OrderAccepted);
+
+        send(limit(1, 2, CcyPair.BTCUSD, Side.Bid, 99, 50));
+        waitAndAssert(1);
+        long orderId = assertExecution(1, CcyPair.BTCUSD, 99, 50, Side.Bid, ExecutionType.OrderAccepted);
+
+        int dedicatedShard = engine.moveToDedicatedShard(CcyPair.BTCUSD, ThreadAffinity.NO_AFFINITY);
+        assertEquals(2, dedicatedShard);
+        assertEquals(dedicatedShard, engine.getShardIndex(CcyPair.BTCUSD));
+
+        send(market(2, 3, CcyPair.BTCUSD, Side.Offer, 50));
+        waitAndAssert(2);
+        assertExecution(2, CcyPair.BTCUSD, 100, 50, Side.Offer, ExecutionType.Fill);
+        assertExecution(1, CcyPair.BTCUSD, 100, 50, Side.Bid, ExecutionType.Fill);
+
+        Message cancel = new Message();
+        cancel.setType(MessageType.CancelOrder);
+        cancel.setOrderId(orderId);
+        send(cancel);
+        waitAndAssert(1);
+        assertEquals(orderId, executionPublishQueue.poll().getOrderId());
+
+        engine.removeInstrument(CcyPair.BTCUSD);
+        assertEquals(-1, engine.getShardIndex(CcyPair.BTCUSD));
+        send(limit(1, 4, CcyPair.BTCUSD, Side.Bid, 100, 50));
+        waitAndAssert(0);
+    }
+
+    /**
+     * A shard with nothing to process still gets the market data of its books out, here the snapshot of a book too
+     * deep for the market data queue to take at once
+     */
+    @Test
+    public void testIdleShardPublishesPendingMarketData() throws InterruptedException {
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+        PairOrderBook book = new PairOrderBook(CcyPair.BTCUSD, executionPool, messagePool, executionPublishQueue);
+        for (int i = 0; i < 40; i++) {
+            book.processMessage(limit(1, i, CcyPair.BTCUSD, Side.Bid, 100 - i % 4, 10));
+        }
+        executionPublishQueue.clear();
+        RingBuffer<MarketDataUpdate> marketDataQueue = new MpscRingBuffer<>(16);
+        book.setMarketData(marketDataQueue, new ObjectPool<>(MarketDataUpdate::new), 0);
+
+        EngineShard shard = new EngineShard(9, ThreadAffinity.NO_AFFINITY, new MpscRingBuffer<>(16), messagePool, new SpinThenYieldWaitStrategy(100));
+        shard.host(book);
+        shard.start();
+        try {
+            int snapshotOrders = 0;
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (snapshotOrders < 40 && System.nanoTime() < deadline) {
+                MarketDataUpdate update = marketDataQueue.poll();
+                if (update == null) {
+                    Thread.sleep(1);
+                } else if (update.getType() == MarketDataType.SnapshotOrder) {
+                    snapshotOrders++;
+                }
+            }
+            assertEquals(40, snapshotOrders);
+        } finally {
+            shard.shutdown();
+        }
+    }
+
+    @Test
+    public void testDistributorTasksRunNestedAndNotAfterShutdown() {
+        OrderBookDistributor distributor = new OrderBookDistributor(new MpscRingBuffer<>(16), Collections.emptyList(), new ObjectPool<>(Message::new));
+        boolean[] ran = new boolean[1];
+        //A task queueing a task would wait for itself
+        distributor.execute(() -> distributor.execute(() -> ran[0] = true));
+        assertTrue(ran[0]);
+
+        distributor.shutdown();
+        try {
+            distributor.execute(() -> ran[0] = false);
+            fail("Task accepted by a distributor shut down");
+        } catch (IllegalStateException expected) {
+            assertTrue(ran[0]);
+        }
+    }
+
+    private void send(Message message) {
+        engine.getInboundQueue().put(message);
+    }
+
+    private Message limit(long clientId, long clientOrderId, CcyPair pair, Side side, long price, long quantity) {
+        Message message = market(clientId, clientOrderId, pair, side, quantity);
+        message.setType(MessageType.NewLimitOrder);
+        message.setPrice(price);
+        return message;
+    }
+
+    private Message market(long clientId, long clientOrderId, CcyPair pair, Side side, long quantity) {
+        Message message = new Message();
+        message.setType(MessageType.NewMarketOrder);
+        message.setClientId(clientId);
+        message.setClientOrderId(clientOrderId);
+        message.setPair(pair);
+        message.setSide(side);
+        message.setQuantity(quantity);
+        return message;
+    }
+
+    private Message cancelAll(long clientId) {
+        Message message = new Message();
+        message.setType(MessageType.CancelAllOrders);
+        message.setClientId(clientId);
+        return message;
+    }
+
+    private void waitAndAssert(int expectedMessages) throws InterruptedException {
+        Thread.sleep(50);
+        int waitCount = 2;
+        while (executionPublishQueue.size() < expectedMessages && waitCount > 0) {
+            Thread.sleep(100);
+            waitCount -= 1;
+        }
+        assertEquals(expectedMessages + " Executions Expected", expectedMessages, executionPublishQueue.size());
+    }
+
+    private long assertExecution(int clientId, CcyPair pair, long price, long quantity, Side side, ExecutionType type) {
+        Execution execution = executionPublishQueue.poll();
+        assertEquals(clientId, execution.getClientId());
+        assertEquals(pair, execution.getPair());
+        assertEquals(price, execution.getPrice());
+        assertEquals(quantity, execution.getQuantity());
+        assertEquals(side, execution.getSide());
+        assertEquals(type, execution.getType());
+        return execution.getOrderId();
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+}
@@ -0,0 +1,57 @@
+package com.crypto.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TopOfBookTest {
+
+    private static final long UPDATES = 2_000_000;
+
+    @Test
+    public void testPublishSkipsUnchangedValues() {
+        TopOfBook topOfBook = new TopOfBook(0);
+        topOfBook.publish(100, 10, 1);
+        topOfBook.publish(100, 10, 1);
+        topOfBook.publish(100, 15, 2);
+
+        TopOfBook copy = new TopOfBook(0);
+        topOfBook.copyTo(copy);
+        assertEquals(2, copy.getSequence());
+        assertEquals(100, copy.getPrice());
+        assertEquals(15, copy.getQuantity());
+        assertEquals(2, copy.getOrderCount());
+    }
+
+    /**
+     * A reader racing the writer only ever sees the fields of one and the same update
+     */
+    @Test
+    public void testReaderNeverSeesATornUpdate() throws InterruptedException {
+        TopOfBook topOfBook = new TopOfBook(0);
+        AtomicReference<String> torn = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            TopOfBook copy = new TopOfBook(0);
+            long lastSequence = 0;
+            while (lastSequence < UPDATES && torn.get() == null) {
+                topOfBook.copyTo(copy);
+                if (copy.getQuantity() != 2 * copy.getPrice() || copy.getOrderCount() != (int) (copy.getPrice() % 7)
+                        || copy.getPrice() != copy.getSequence() || copy.getSequence() < lastSequence) {
+                    torn.set(copy.toString());
+                }
+                lastSequence = copy.getSequence();
+            }
+        });
+        reader.start();
+
+        for (long i = 1; i <= UPDATES; i++) {
+            topOfBook.publish(i, 2 * i, (int) (i % 7));
+        }
+        reader.join(10_000);
+
+        assertNull(torn.get(), torn.get());
+        assertFalse(reader.isAlive());
+    }
+}
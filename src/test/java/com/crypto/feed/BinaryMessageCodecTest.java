@@ -0,0 +1,162 @@
+package com.crypto.feed;
+
+import com.crypto.data.*;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class BinaryMessageCodecTest {
+
+    private final InstrumentRegistry registry = InstrumentRegistry.withDefaultPairs();
+    private final BinaryMessageCodec codec = new BinaryMessageCodec(registry);
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+
+    @Test
+    public void testLimitOrderRoundTrip() {
+        Message limit = new Message();
+        limit.setType(MessageType.NewLimitOrder);
+        limit.setClientId(666);
+        limit.setClientOrderId(42);
+        limit.setPair(CcyPair.ETHUSD);
+        limit.setSide(Side.Offer);
+        limit.setQuantity(100);
+        limit.setPrice(Long.MAX_VALUE);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(3 * BinaryMessageCodec.FRAME_LENGTH);
+        int offset = 17;
+        assertEquals(BinaryMessageCodec.FRAME_LENGTH, codec.encodeMessage(limit, buffer, offset));
+
+        Message decoded = codec.decodeMessage(buffer, offset, BinaryMessageCodec.FRAME_LENGTH, messagePool);
+        assertEquals(MessageType.NewLimitOrder, decoded.getType());
+        assertEquals(666, decoded.getClientId());
+        assertEquals(42, decoded.getClientOrderId());
+        assertEquals(CcyPair.ETHUSD, decoded.getPair());
+        assertEquals(Side.Offer, decoded.getSide());
+        assertEquals(100, decoded.getQuantity());
+        assertEquals(Long.MAX_VALUE, decoded.getPrice());
+    }
+
+    @Test
+    public void testCancelNeedsNoInstrument() {
+        Message cancel = new Message();
+        cancel.setType(MessageType.CancelOrder);
+        cancel.setClientId(666);
+        cancel.setOrderId(1234567);
+
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryMessageCodec.FRAME_LENGTH);
+        codec.encodeMessage(cancel, buffer, 0);
+
+        Message decoded = codec.decodeMessage(buffer, 0, BinaryMessageCodec.FRAME_LENGTH, messagePool);
+        assertEquals(MessageType.CancelOrder, decoded.getType());
+        assertEquals(1234567, decoded.getOrderId());
+        assertNull(decoded.getPair());
+        assertNull(decoded.getSide());
+    }
+
+    @Test
+    public void testRejectsInvalidFrames() {
+        Message market = new Message();
+        market.setType(MessageType.NewMarketOrder);
+        market.setPair(new CcyPair(7, "SOLUSD", 1, 1, 2));
+        market.setSide(Side.Bid);
+        market.setQuantity(10);
+
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryMessageCodec.FRAME_LENGTH);
+        codec.encodeMessage(market, buffer, 0);
+        assertNull("Instrument is not registered", codec.decodeMessage(buffer, 0, BinaryMessageCodec.FRAME_LENGTH, messagePool));
+
+        market.setPair(CcyPair.BTCUSD);
+        codec.encodeMessage(market, buffer, 0);
+        assertNull("Frame is truncated", codec.decodeMessage(buffer, 0, BinaryMessageCodec.FRAME_LENGTH - 1, messagePool));
+
+        market.setQuantity(0);
+        codec.encodeMessage(market, buffer, 0);
+        assertNull("No quantity", codec.decodeMessage(buffer, 0, BinaryMessageCodec.FRAME_LENGTH, messagePool));
+
+        market.setQuantity(-10);
+        codec.encodeMessage(market, buffer, 0);
+        assertNull("Negative quantity", codec.decodeMessage(buffer, 0, BinaryMessageCodec.FRAME_LENGTH, messagePool));
+
+        market.setType(MessageType.NewLimitOrder);
+        market.setQuantity(10);
+        market.setPrice(-1);
+        codec.encodeMessage(market, buffer, 0);
+        assertNull("Negative price", codec.decodeMessage(buffer, 0, BinaryMessageCodec.FRAME_LENGTH, messagePool));
+
+        buffer.put(0, (byte) 99);
+        assertNull("Unknown message type", codec.decodeMessage(buffer, 0, BinaryMessageCodec.FRAME_LENGTH, messagePool));
+    }
+
+    @Test
+    public void testExecutionRoundTrip() {
+        Execution fill = new Execution();
+        fill.setType(ExecutionType.PartialFill);
+        fill.setClientId(666);
+        fill.setClientOrderId(3);
+        fill.setOrderId(99);
+        fill.setPair(CcyPair.BTCUSD);
+        fill.setSide(Side.Bid);
+        fill.setQuantity(5);
+        fill.setPrice(10000);
+
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryMessageCodec.FRAME_LENGTH);
+        codec.encodeExecution(fill, buffer, 0);
+
+        Execution decoded = new Execution();
+        assertTrue(codec.decodeExecution(buffer, 0, decoded));
+        assertEquals(ExecutionType.PartialFill, decoded.getType());
+        assertEquals(666, decoded.getClientId());
+        assertEquals(3, decoded.getClientOrderId());
+        assertEquals(99, decoded.getOrderId());
+        assertEquals(CcyPair.BTCUSD, decoded.getPair());
+        assertEquals(Side.Bid, decoded.getSide());
+        assertEquals(5, decoded.getQuantity());
+        assertEquals(10000, decoded.getPrice());
+    }
+
+    @Test
+    public void testLeavesTheByteOrderOfTheBufferAlone() {
+        Message limit = new Message();
+        limit.setType(MessageType.NewLimitOrder);
+        limit.setClientId(0x0102030405060708L);
+        limit.setPair(CcyPair.ETHUSD);
+        limit.setSide(Side.Bid);
+        limit.setQuantity(100);
+        limit.setPrice(2000);
+
+        ByteBuffer bigEndian = ByteBuffer.allocate(BinaryMessageCodec.FRAME_LENGTH);
+        ByteBuffer littleEndian = ByteBuffer.allocate(BinaryMessageCodec.FRAME_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        codec.encodeMessage(limit, bigEndian, 0);
+        codec.encodeMessage(limit, littleEndian, 0);
+
+        assertEquals(ByteOrder.BIG_ENDIAN, bigEndian.order());
+        assertArrayEquals("Same frame whatever the order of the buffer", littleEndian.array(), bigEndian.array());
+        assertEquals(0x08, bigEndian.get(8));
+        assertEquals(0x0102030405060708L, codec.decodeMessage(bigEndian, 0, BinaryMessageCodec.FRAME_LENGTH, messagePool).getClientId());
+        assertEquals(ByteOrder.BIG_ENDIAN, bigEndian.order());
+    }
+
+    @Test
+    public void testFrameRunningPastTheBufferIsRejected() {
+        Execution fill = new Execution();
+        fill.setType(ExecutionType.Fill);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * BinaryMessageCodec.FRAME_LENGTH);
+        codec.encodeExecution(fill, buffer, 0);
+
+        //Length claims a whole frame, the buffer ends before it does
+        int offset = BinaryMessageCodec.FRAME_LENGTH + 1;
+        assertNull(codec.decodeMessage(buffer, offset, BinaryMessageCodec.FRAME_LENGTH, messagePool));
+        assertFalse(codec.decodeExecution(buffer, offset, new Execution()));
+        buffer.limit(BinaryMessageCodec.FRAME_LENGTH - 1);
+        assertFalse(codec.decodeExecution(buffer, 0, new Execution()));
+        try {
+            codec.encodeExecution(fill, buffer, 0);
+            fail("Frame does not fit");
+        } catch (IndexOutOfBoundsException expected) {
+            //Nothing written
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.crypto.feed;
+
+import com.crypto.data.Message;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ObjectPoolTest {
+
+    @Test
+    public void testPrewarmedPoolServesFromDepot() {
+        ObjectPool<Message> pool = new ObjectPool<>(Message::new, 64, 32, 8, PoolOverflowPolicy.Fail);
+        assertEquals(32, pool.getSize());
+        assertEquals(32, pool.getHighWaterMark());
+
+        List<Message> messages = acquire(pool, 32);
+        assertEquals(32, pool.getHits());
+        assertEquals(0, pool.getMisses());
+
+        messages.forEach(pool::returnObject);
+        assertEquals(32, pool.getSize());
+        assertSame(messages.get(31), pool.acquireObject());
+    }
+
+    @Test
+    public void testFailPolicyCapsCreatedObjects() {
+        ObjectPool<Message> pool = new ObjectPool<>(Message::new, 16, 0, 8, PoolOverflowPolicy.Fail);
+        acquire(pool, 16);
+        assertEquals(16, pool.getMisses());
+        assertEquals(16, pool.getHighWaterMark());
+        try {
+            pool.acquireObject();
+            fail("Pool should be exhausted");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testAllocatePolicyDropsWhatDepotCannotHold() {
+        ObjectPool<Message> pool = new ObjectPool<>(Message::new, 16, 0, 8, PoolOverflowPolicy.Allocate);
+        List<Message> messages = acquire(pool, 40);
+        assertEquals(40, pool.getHighWaterMark());
+
+        //Two magazines stay with this thread, the depot takes two more and the rest is dropped
+        messages.forEach(pool::returnObject);
+        assertEquals(32, pool.getSize());
+        assertEquals(8, pool.getDropped());
+    }
+
+    @Test
+    public void testObjectsReturnedByAnotherThreadAreReused() throws InterruptedException {
+        ObjectPool<Message> pool = new ObjectPool<>(Message::new, 1024, 0, 8, PoolOverflowPolicy.Fail);
+        List<Message> messages = acquire(pool, 64);
+
+        Thread consumer = new Thread(() -> messages.forEach(pool::returnObject));
+        consumer.start();
+        consumer.join();
+
+        //The consumer keeps two magazines, the other six went back through the depot
+        acquire(pool, 48);
+        assertEquals(64, pool.getMisses());
+        assertEquals(48, pool.getHits());
+        assertEquals(64, pool.getHighWaterMark());
+    }
+
+    private static List<Message> acquire(ObjectPool<Message> pool, int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(pool.acquireObject());
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,89 @@
+package com.crypto.feed;
+
+import com.crypto.data.*;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TextMessageParserTest {
+
+    private final InstrumentRegistry registry = InstrumentRegistry.withDefaultPairs();
+    private final TextMessageParser parser = new TextMessageParser(';', registry);
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+
+    @Test
+    public void testLimitOrder() {
+        Message message = parser.parse("LIMIT;666;1;ETHUSD;OFFER;100;9223372036854775807", messagePool);
+        assertEquals(MessageType.NewLimitOrder, message.getType());
+        assertEquals(666, message.getClientId());
+        assertEquals(1, message.getClientOrderId());
+        assertEquals(CcyPair.ETHUSD, message.getPair());
+        assertEquals(Side.Offer, message.getSide());
+        assertEquals(100, message.getQuantity());
+        assertEquals(Long.MAX_VALUE, message.getPrice());
+    }
+
+    @Test
+    public void testBytesAndPooledLeftovers() {
+        Message message = parser.parse("LIMIT;666;1;BTCUSD;BID;100;10000", messagePool);
+        messagePool.returnObject(message);
+
+        byte[] bytes = "xxNEW;667;2;BTCUSD;OFFER;+50xx".getBytes(StandardCharsets.US_ASCII);
+        message = parser.parse(bytes, 2, bytes.length - 4, messagePool);
+        assertEquals(MessageType.NewMarketOrder, message.getType());
+        assertEquals(667, message.getClientId());
+        assertEquals(CcyPair.BTCUSD, message.getPair());
+        assertEquals(Side.Offer, message.getSide());
+        assertEquals(50, message.getQuantity());
+        assertEquals("Price left by the pooled limit order is cleared", 0, message.getPrice());
+
+        message = parser.parse("CANCEL;667;12345", messagePool);
+        assertEquals(MessageType.CancelOrder, message.getType());
+        assertEquals(12345, message.getOrderId());
+        assertNull(message.getPair());
+
+        message = parser.parse("CANCELALL;667", messagePool);
+        assertEquals(MessageType.CancelAllOrders, message.getType());
+        assertEquals(667, message.getClientId());
+    }
+
+    @Test
+    public void testPairRegisteredLater() {
+        assertNull(parser.parse("NEW;1;1;SOLUSD;BID;5", messagePool));
+        CcyPair solusd = new CcyPair(2, "SOLUSD", 1, 1, 2);
+        registry.register(solusd);
+        assertEquals(solusd, parser.parse("NEW;1;1;SOLUSD;BID;5", messagePool).getPair());
+        registry.unregister(solusd);
+        assertNull(parser.parse("NEW;1;1;SOLUSD;BID;5", messagePool));
+    }
+
+    @Test
+    public void testMalformedInstructionsRejected() {
+        String[] malformed = {
+                "",
+                ";666",
+                "LIMIT",
+                "LIMIT;666;1;BTCUSD;BID;100",
+                "LIMIT;666;1;BTCUSD;BID;100;10000;",
+                "LIMIT;666;1;BTCUSD;BID;100;10000;5",
+                "LIMIT;666;1;BTCUSD;BID;;10000",
+                "LIMIT;666;1;BTCUSD;BUY;100;10000",
+                "LIMIT;666;1;BTC;BID;100;10000",
+                "LIMIT;666;1;BTCUSD;BID;1x0;10000",
+                "LIMIT;666;1;BTCUSD;BID;-;10000",
+                "LIMIT;666;1;BTCUSD;BID;100;9223372036854775808",
+                "LIMIT;666;1;BTCUSD;BID;0;10000",
+                "LIMIT;666;1;BTCUSD;BID;-100;10000",
+                "LIMIT;666;1;BTCUSD;BID;100;-10000",
+                "NEW;666;1;BTCUSD;BID;-9223372036854775808",
+                "LIMITED;666;1;BTCUSD;BID;100;10000",
+                "CANCEL;666",
+                "CANCELALL;abc",
+        };
+        for (String instruction : malformed) {
+            assertNull(instruction, parser.parse(instruction, messagePool));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.crypto.journal;
+
+import com.crypto.concurrent.MpscRingBuffer;
+import com.crypto.concurrent.RingBuffer;
+import com.crypto.concurrent.SpinThenYieldWaitStrategy;
+import com.crypto.concurrent.SpscRingBuffer;
+import com.crypto.data.*;
+import com.crypto.engine.JournalReplayer;
+import com.crypto.engine.MessageRouter;
+import com.crypto.engine.OrderBookDistributor;
+import com.crypto.engine.PairOrderBookProcessor;
+import com.crypto.feed.ObjectPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.crypto.data.Constants.DEFAULT_RING_BUFFER_CAPACITY;
+import static com.crypto.data.TestMessages.*;
+import static org.junit.Assert.*;
+
+public class InputJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayAcrossSegments() throws IOException {
+        File directory = folder.newFolder();
+        try (InputJournal journal = journal(directory, JournalSyncPolicy.Batched)) {
+            for (int i = 1; i <= 10; i++) {
+                assertEquals(i, journal.append(limit(i, i, Side.Bid, 100 + i, 10)));
+            }
+        }
+        assertEquals(3, directory.listFiles().length);
+
+        List<Message> replayed = new ArrayList<>();
+        try (InputJournal journal = journal(directory, JournalSyncPolicy.PerMessage)) {
+            assertEquals(10, journal.getSequence());
+            assertEquals(10, journal.replay(new ObjectPool<>(Message::new), replayed::add));
+        }
+        for (int i = 1; i <= 10; i++) {
+            Message message = replayed.get(i - 1);
+            assertEquals(MessageType.NewLimitOrder, message.getType());
+            assertEquals(i, message.getClientOrderId());
+            assertEquals(100 + i, message.getPrice());
+            assertEquals(CcyPair.BTCUSD, message.getPair());
+            assertEquals(Side.Bid, message.getSide());
+        }
+    }
+
+    @Test
+    public void testReopenAppendsAfterLastRecord() throws IOException {
+        File directory = folder.newFolder();
+        try (InputJournal journal = journal(directory, JournalSyncPolicy.Async)) {
+            journal.append(limit(1, 1, Side.Bid, 100, 10));
+            journal.append(limit(1, 2, Side.Bid, 101, 10));
+            journal.append(limit(1, 3, Side.Bid, 102, 10));
+        }
+        try (InputJournal journal = journal(directory, JournalSyncPolicy.Async)) {
+            assertEquals(4, journal.append(cancelAll(1)));
+            assertEquals(5, journal.append(limit(1, 4, Side.Bid, 103, 10)));
+        }
+
+        List<Message> replayed = new ArrayList<>();
+        try (InputJournal journal = journal(directory, JournalSyncPolicy.Async)) {
+            journal.replay(new ObjectPool<>(Message::new), replayed::add);
+        }
+        assertEquals(5, replayed.size());
+        assertEquals(MessageType.CancelAllOrders, replayed.get(3).getType());
+        assertEquals(4, replayed.get(4).getClientOrderId());
+    }
+
+    /**
+     * Segments mapped by an earlier replay still show the records appended to them since
+     */
+    @Test
+    public void testReplayFollowsAppends() throws IOException {
+        File directory = folder.newFolder();
+        try (InputJournal journal = journal(directory, JournalSyncPolicy.Batched)) {
+            ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+            for (int i = 1; i <= 10; i++) {
+                journal.append(limit(1, i, Side.Bid, 100 + i, 10));
+                List<Message> replayed = new ArrayList<>();
+                assertEquals(i, journal.replay(messagePool, replayed::add));
+                assertEquals(i, replayed.get(i - 1).getClientOrderId());
+                assertEquals(1, journal.replay(i - 1, i, messagePool, message -> { }));
+            }
+        }
+    }
+
+    /**
+     * Orders resting before a restart are back in the books under the same ids once the journal is recovered
+     */
+    @Test
+    public void testRecoveredBooksKeepOrderIds() throws IOException, InterruptedException {
+        File directory = folder.newFolder();
+        RingBuffer<Execution> executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        Engine engine = new Engine(journal(directory, JournalSyncPolicy.Batched), executionPublishQueue);
+        engine.inboundQueue.put(limit(1, 1, Side.Bid, 100, 10));
+        engine.inboundQueue.put(limit(1, 2, Side.Bid, 99, 10));
+        engine.inboundQueue.put(limit(2, 3, Side.Offer, 105, 10));
+        List<Execution> accepts = poll(executionPublishQueue, 3);
+        long offerOrderId = accepts.get(2).getOrderId();
+        engine.shutdown();
+
+        executionPublishQueue = new MpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        engine = new Engine(journal(directory, JournalSyncPolicy.Batched), executionPublishQueue);
+        //Executions of the replayed messages were seen before the restart and are not published again
+        assertNull(executionPublishQueue.poll());
+
+        engine.inboundQueue.put(cancel(2, offerOrderId));
+        Execution cancelAccepted = poll(executionPublishQueue, 1).get(0);
+        assertEquals(ExecutionType.CancelAccepted, cancelAccepted.getType());
+        assertEquals(offerOrderId, cancelAccepted.getOrderId());
+
+        //A market order sweeps both recovered bids
+        engine.inboundQueue.put(market(3, 4, Side.Offer, 20));
+        List<Execution> fills = poll(executionPublishQueue, 4);
+        assertTrue(fills.stream().anyMatch(fill -> fill.getClientOrderId() == 2 && fill.getPrice() == 99 && fill.getType() == ExecutionType.Fill));
+        engine.shutdown();
+    }
+
+    private static InputJournal journal(File directory, JournalSyncPolicy syncPolicy) throws IOException {
+        return new InputJournal(directory, 4, syncPolicy, 10, InstrumentRegistry.withDefaultPairs());
+    }
+
+    private static List<Execution> poll(RingBuffer<Execution> queue, int count) throws InterruptedException {
+        List<Execution> executions = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executions.size() < count && System.currentTimeMillis() < deadline) {
+            Execution execution = queue.poll();
+            if (execution == null) {
+                Thread.sleep(1);
+            } else {
+                executions.add(execution);
+            }
+        }
+        assertEquals(count, executions.size());
+        return executions;
+    }
+
+    private static class Engine {
+        final InputJournal journal;
+        final RingBuffer<Message> inboundQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+        final PairOrderBookProcessor pairProcessor;
+        final OrderBookDistributor distributor;
+
+        /**
+         * Rebuilds the book from whatever the journal holds before starting it, as a restart does
+         */
+        Engine(InputJournal journal, RingBuffer<Execution> executionPublishQueue) throws IOException {
+            this.journal = journal;
+            ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+            ObjectPool<Execution> executionPool = new ObjectPool<>(Execution::new);
+            RingBuffer<Message> bookQueue = new SpscRingBuffer<>(DEFAULT_RING_BUFFER_CAPACITY);
+            pairProcessor = new PairOrderBookProcessor(CcyPair.BTCUSD, executionPool, messagePool, bookQueue, executionPublishQueue);
+            pairProcessor.setWaitStrategy(new SpinThenYieldWaitStrategy(100));
+
+            MessageRouter router = new MessageRouter(Collections.emptyList(), messagePool);
+            JournalReplayer replayer = new JournalReplayer(router, messagePool, executionPublishQueue, executionPool);
+            replayer.addBook(pairProcessor);
+            replayer.replay(journal, null);
+
+            pairProcessor.startOrderBook();
+            distributor = new OrderBookDistributor(inboundQueue, router, messagePool, new SpinThenYieldWaitStrategy(100), journal);
+        }
+
+        void shutdown() {
+            distributor.shutdown();
+            pairProcessor.shutdown();
+            journal.close();
+        }
+    }
+}